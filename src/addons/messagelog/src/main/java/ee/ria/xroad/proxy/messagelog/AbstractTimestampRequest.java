@@ -41,7 +41,17 @@ import org.bouncycastle.tsp.TimeStampToken;
 
 import java.io.InputStream;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
@@ -53,6 +63,13 @@ import static ee.ria.xroad.proxy.messagelog.TimestamperUtil.getTimestampResponse
 @RequiredArgsConstructor
 abstract class AbstractTimestampRequest {
 
+    // Runs the requests to the time-stamping providers, a request may be sent to several providers at once
+    private static final ExecutorService REQUEST_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "TimestamperClient");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     protected final Long[] logRecords;
 
     abstract byte[] getRequestData() throws Exception;
@@ -76,10 +93,73 @@ abstract class AbstractTimestampRequest {
         }
     }
 
+    /**
+     * Sends the time-stamp request to the first time-stamping provider. If there is no answer within the hedge
+     * delay or the provider fails, the request is sent to the next provider as well. The first verified time-stamp
+     * is used, the remaining answers are ignored.
+     */
     protected Timestamper.TimestampResult makeTsRequest(TimeStampRequest tsRequest,
                                       List<String> tspUrls) throws Exception {
         log.debug("tspUrls: {}", tspUrls);
-        for (String url: tspUrls) {
+
+        int hedgeDelay = MessageLogProperties.getTimestamperClientHedgeDelay();
+
+        CompletionService<Timestamper.TimestampResult> completionService =
+                new ExecutorCompletionService<>(REQUEST_EXECUTOR);
+        List<Future<Timestamper.TimestampResult>> requests = new ArrayList<>();
+        Iterator<String> urls = tspUrls.iterator();
+
+        int pending = 0;
+
+        try {
+            while (pending > 0 || urls.hasNext()) {
+                if (pending == 0) {
+                    requests.add(completionService.submit(new TsCall(tsRequest, urls.next())));
+                    pending++;
+                }
+
+                Future<Timestamper.TimestampResult> answered;
+
+                if (hedgeDelay > 0 && urls.hasNext()) {
+                    answered = completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+
+                    if (answered == null) {
+                        String url = urls.next();
+                        log.info("No time-stamp within {} ms, sending the request also to {}", hedgeDelay, url);
+
+                        requests.add(completionService.submit(new TsCall(tsRequest, url)));
+                        pending++;
+
+                        continue;
+                    }
+                } else {
+                    answered = completionService.take();
+                }
+
+                pending--;
+
+                try {
+                    return answered.get();
+                } catch (ExecutionException e) {
+                    // Already logged by the failed call, continue with the other providers
+                }
+            }
+        } finally {
+            requests.forEach(r -> r.cancel(true));
+        }
+
+        // All the URLs failed. Throw exception.
+        throw new RuntimeException(
+                "Failed to get time stamp from any time-stamping providers");
+    }
+
+    @RequiredArgsConstructor
+    private final class TsCall implements Callable<Timestamper.TimestampResult> {
+        private final TimeStampRequest tsRequest;
+        private final String url;
+
+        @Override
+        public Timestamper.TimestampResult call() throws Exception {
             try {
                 log.debug("Sending time-stamp request to {}", url);
 
@@ -91,15 +171,12 @@ abstract class AbstractTimestampRequest {
                 verify(tsRequest, tsResponse);
 
                 return result(tsResponse, url);
-
             } catch (Exception ex) {
                 log.error("Failed to get time stamp from " + url, ex);
+
+                throw ex;
             }
         }
-
-        // All the URLs failed. Throw exception.
-        throw new RuntimeException(
-                "Failed to get time stamp from any time-stamping providers");
     }
 
     private TimeStampRequest createTimestampRequest(byte[] data)
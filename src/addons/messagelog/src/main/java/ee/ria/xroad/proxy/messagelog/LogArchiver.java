@@ -33,6 +33,7 @@ import ee.ria.xroad.common.messagelog.TimestampRecord;
 import ee.ria.xroad.common.messagelog.archive.DigestEntry;
 import ee.ria.xroad.common.messagelog.archive.LogArchiveBase;
 import ee.ria.xroad.common.messagelog.archive.LogArchiveWriter;
+import ee.ria.xroad.common.messagelog.archive.PreparedContainer;
 
 import akka.actor.UntypedAbstractActor;
 import lombok.RequiredArgsConstructor;
@@ -51,9 +52,19 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveParallelism;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransactionBatchSize;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransferCommand;
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
@@ -62,7 +73,9 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 
 /**
  * Reads all non-archived time-stamped records from the database, writes them
- * to archive file and marks the records as archived.
+ * to archive file and marks the records as archived. If archive parallelism is
+ * configured, the ASiC containers are prepared on a worker pool while the archive
+ * files are still written in order.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -77,6 +90,9 @@ public class LogArchiver extends UntypedAbstractActor {
     private final Path archivePath;
     private final Path workingPath;
 
+    private final int parallelism = getArchiveParallelism();
+    private ExecutorService preparer;
+
     @Override
     public void onReceive(Object message) {
         log.trace("onReceive({})", message);
@@ -96,6 +112,35 @@ public class LogArchiver extends UntypedAbstractActor {
         }
     }
 
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+
+        if (parallelism > 1) {
+            preparer = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread preparerThread = new Thread(r);
+                    preparerThread.setName("log-archiver-" + threadNumber.incrementAndGet());
+                    preparerThread.setDaemon(true);
+
+                    return preparerThread;
+                }
+            });
+        }
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        if (preparer != null) {
+            preparer.shutdownNow();
+        }
+
+        super.postStop();
+    }
+
     private boolean handleArchive(long maxTimestampId) throws Exception {
         return doInTransaction(session -> {
             final List<TimestampRecord> batch =
@@ -107,38 +152,14 @@ public class LogArchiver extends UntypedAbstractActor {
             }
 
             long start = System.currentTimeMillis();
-            int recordsArchived = 0;
+            int recordsArchived;
             final int limit = getArchiveTransactionBatchSize();
             log.info("Archiving log records...");
 
             try (LogArchiveWriter archiveWriter = createLogArchiveWriter(session)) {
-                for (TimestampRecord ts : batch) {
-
-                    try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, ts.getId())) {
-                        recordsArchived += records.peek(record -> {
-                            try {
-                                if (archiveWriter.write(record)) {
-                                    runTransferCommand(getArchiveTransferCommand());
-                                }
-                                //evict record from persistence context to avoid running out of memory
-                                session.detach(record);
-                            } catch (Exception e) {
-                                throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
-                            }
-                        }).count();
-
-                        archiveWriter.write(ts);
-                        recordsArchived++;
-                        session.flush();
-                        session.detach(ts);
-                    }
-
-                    if (recordsArchived >= limit) {
-                        log.info("Archived {} log records in {} ms", recordsArchived,
-                                System.currentTimeMillis() - start);
-                        return true;
-                    }
-                }
+                recordsArchived = preparer != null
+                        ? archiveInParallel(session, archiveWriter, batch, limit)
+                        : archive(session, archiveWriter, batch, limit);
             } catch (Exception e) {
                 throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
             } finally {
@@ -147,11 +168,132 @@ public class LogArchiver extends UntypedAbstractActor {
 
             log.info("Archived {} log records in {} ms", recordsArchived, System.currentTimeMillis() - start);
 
-            //try to continue if the batch was full (there might be more)
-            return batch.size() == MAX_RECORDS_IN_BATCH;
+            //try to continue if the transaction limit was reached or the batch was full (there might be more)
+            return recordsArchived >= limit || batch.size() == MAX_RECORDS_IN_BATCH;
+        });
+    }
+
+    private int archive(Session session, LogArchiveWriter archiveWriter, List<TimestampRecord> batch, int limit)
+            throws Exception {
+        int recordsArchived = 0;
+
+        for (TimestampRecord ts : batch) {
+
+            try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, ts.getId())) {
+                recordsArchived += records.peek(record -> {
+                    try {
+                        if (archiveWriter.write(record)) {
+                            runTransferCommand(getArchiveTransferCommand());
+                        }
+                        //evict record from persistence context to avoid running out of memory
+                        session.detach(record);
+                    } catch (Exception e) {
+                        throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
+                    }
+                }).count();
+
+                archiveTimestampRecord(session, archiveWriter, ts);
+                recordsArchived++;
+            }
+
+            if (recordsArchived >= limit) {
+                break;
+            }
+        }
+
+        return recordsArchived;
+    }
+
+    /**
+     * Prepares the ASiC containers of the message records of each timestamp record on the worker pool and
+     * writes them to the archive in timestamp record order, keeping the linking info identical to the one
+     * created by {@link #archive}. At most {@code 2 * parallelism} timestamp records are prepared ahead of the
+     * archive writer.
+     */
+    private int archiveInParallel(Session session, LogArchiveWriter archiveWriter, List<TimestampRecord> batch,
+            int limit) throws Exception {
+        final Iterator<TimestampRecord> timestamps = batch.iterator();
+        final Deque<PreparedTimestamp> inProgress = new ArrayDeque<>();
+        int recordsArchived = 0;
+
+        try {
+            while (recordsArchived < limit) {
+                while (inProgress.size() < 2 * parallelism && timestamps.hasNext()) {
+                    final TimestampRecord ts = timestamps.next();
+                    final Long timestampId = ts.getId();
+
+                    inProgress.add(new PreparedTimestamp(ts, preparer.submit(() -> prepareContainers(timestampId))));
+                }
+
+                final PreparedTimestamp next = inProgress.poll();
+
+                if (next == null) {
+                    break;
+                }
+
+                final List<PreparedContainer> containers = next.getContainers().get();
+
+                try {
+                    for (PreparedContainer container : containers) {
+                        if (archiveWriter.write(container)) {
+                            runTransferCommand(getArchiveTransferCommand());
+                        }
+                    }
+                } finally {
+                    containers.forEach(PreparedContainer::close);
+                }
+
+                archiveTimestampRecord(session, archiveWriter, next.getTimestampRecord());
+                recordsArchived += containers.size() + 1;
+            }
+        } finally {
+            discard(inProgress);
+        }
+
+        return recordsArchived;
+    }
+
+    private List<PreparedContainer> prepareContainers(Long timestampRecordNumber) throws Exception {
+        return doInTransaction(session -> {
+            final List<PreparedContainer> containers = new ArrayList<>();
+
+            try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, timestampRecordNumber)) {
+                final Iterator<MessageRecord> it = records.iterator();
+
+                while (it.hasNext()) {
+                    final MessageRecord record = it.next();
+                    containers.add(PreparedContainer.prepare(record, workingPath));
+                    //evict record from persistence context to avoid running out of memory
+                    session.detach(record);
+                }
+            } catch (Exception e) {
+                containers.forEach(PreparedContainer::close);
+                throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
+            }
+
+            return containers;
         });
     }
 
+    private static void discard(Deque<PreparedTimestamp> inProgress) {
+        for (PreparedTimestamp prepared : inProgress) {
+            if (!prepared.getContainers().cancel(false)) {
+                try {
+                    prepared.getContainers().get().forEach(PreparedContainer::close);
+                } catch (Exception e) {
+                    log.debug("Discarded preparing of containers failed", e);
+                }
+            }
+        }
+    }
+
+    private static void archiveTimestampRecord(Session session, LogArchiveWriter archiveWriter,
+            TimestampRecord ts) throws Exception {
+        archiveWriter.write(ts);
+        session.flush();
+        session.detach(ts);
+    }
+
     private LogArchiveWriter createLogArchiveWriter(Session session) {
         return new LogArchiveWriter(
                 getArchivePath(),
@@ -259,6 +401,12 @@ public class LogArchiver extends UntypedAbstractActor {
         }
     }
 
+    @Value
+    private static class PreparedTimestamp {
+        private TimestampRecord timestampRecord;
+        private Future<List<PreparedContainer>> containers;
+    }
+
     @Value
     private class HibernateLogArchiveBase implements LogArchiveBase {
 
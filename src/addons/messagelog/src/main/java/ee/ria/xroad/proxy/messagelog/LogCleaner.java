@@ -33,18 +33,36 @@ import org.hibernate.query.Query;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
 
 
 /**
- * Deletes all archived log records from the database.
+ * Deletes all archived log records from the database. If the log record table
+ * is partitioned by time, whole archived partitions are dropped instead.
  */
 @Slf4j
 public class LogCleaner extends UntypedAbstractActor {
 
     public static final String START_CLEANING = "doClean";
     public static final int CLEAN_BATCH_LIMIT = MessageLogProperties.getCleanTransactionBatchSize();
+    public static final int PARTITION_DAYS = MessageLogProperties.getLogRecordPartitionDays();
+
+    // partitions are created ahead of time, records can not be inserted if the partition does not exist
+    private static final int CREATE_PARTITIONS_AHEAD_DAYS = 7;
+
+    @Override
+    public void preStart() {
+        if (getPartitionDays() > 0) {
+            // the partition of the current records must exist, even if the cleaner has not been run for a long time
+            try {
+                createPartitions();
+            } catch (Exception e) {
+                log.error("Error when creating log record partitions", e);
+            }
+        }
+    }
 
     @Override
     public void onReceive(Object message) {
@@ -71,6 +89,11 @@ public class LogCleaner extends UntypedAbstractActor {
 
         final Long time =
                 Instant.now().minus(MessageLogProperties.getKeepRecordsForDays(), ChronoUnit.DAYS).toEpochMilli();
+
+        if (getPartitionDays() > 0) {
+            return handlePartitions(time);
+        }
+
         long count = 0;
         int removed;
         do {
@@ -85,4 +108,29 @@ public class LogCleaner extends UntypedAbstractActor {
         } while (removed > 0);
         return count;
     }
+
+    private long handlePartitions(Long time) throws Exception {
+        createPartitions();
+
+        // dropping a partition does not leave dead rows behind, the cost does not depend on the number of records
+        final Number removed = doInTransaction(session -> (Number)session.getNamedQuery("drop-logrecord-partitions")
+                .setParameter("time", time)
+                .uniqueResult());
+        return removed.longValue();
+    }
+
+    private void createPartitions() throws Exception {
+        final long interval = TimeUnit.DAYS.toMillis(getPartitionDays());
+        final long until = Instant.now().plus(CREATE_PARTITIONS_AHEAD_DAYS, ChronoUnit.DAYS).toEpochMilli();
+
+        final Number created = doInTransaction(session -> (Number)session.getNamedQuery("create-logrecord-partitions")
+                .setParameter("interval", interval)
+                .setParameter("until", until)
+                .uniqueResult());
+        log.debug("Created {} log record partitions", created);
+    }
+
+    protected int getPartitionDays() {
+        return PARTITION_DAYS;
+    }
 }
@@ -70,8 +70,12 @@ import static ee.ria.xroad.common.ErrorCodes.X_MLOG_TIMESTAMPER_FAILED;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getAcceptableTimestampFailurePeriodSeconds;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveInterval;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getCleanInterval;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getGroupCommitMaxDelay;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getGroupCommitMaxRecords;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getHashAlg;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getTimestampRetryDelay;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.isGroupCommitEnabled;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.isMessageBodyCompressionEnabled;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.shouldTimestampImmediately;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
@@ -107,6 +111,9 @@ public class LogManager extends AbstractLogManager {
     private final ActorRef timestamper;
     private final ActorRef timestamperJob;
 
+    // Saves message records in shared transactions, null if group commit is disabled
+    private final MessageRecordGroupWriter groupWriter;
+
     // package private for testing
     final ActorRef taskQueueRef;
     final ActorRef logArchiver;
@@ -120,6 +127,15 @@ public class LogManager extends AbstractLogManager {
         timestamperJob = createTimestamperJob();
         logArchiver = createArchiver(jobManager);
         logCleaner = createCleaner(jobManager);
+        groupWriter = createGroupWriter();
+    }
+
+    private static MessageRecordGroupWriter createGroupWriter() {
+        if (!isGroupCommitEnabled()) {
+            return null;
+        }
+
+        return new MessageRecordGroupWriter(getGroupCommitMaxRecords(), getGroupCommitMaxDelay());
     }
 
     private ActorRef createTaskQueue() {
@@ -164,19 +180,27 @@ public class LogManager extends AbstractLogManager {
 
         verifyCanLogMessage(shouldTimestampImmediately);
 
-        MessageRecord logRecord;
-        if (message instanceof SoapLogMessage) {
-            logRecord = createMessageRecord((SoapLogMessage)message);
-        } else {
-            logRecord = createMessageRecord((RestLogMessage)message);
-        }
-        logRecord = saveMessageRecord(logRecord);
+        MessageRecord logRecord = saveMessageRecord(createMessageRecord(message));
 
         if (shouldTimestampImmediately) {
             timestampImmediately(logRecord);
         }
     }
 
+    /**
+     * Hands the message record over to the group writer. The sender is answered when the record has been
+     * committed, in the meantime this actor continues processing messages from other requests.
+     */
+    private void logInGroup(LogMessage message) throws Exception {
+        verifyCanLogMessage(false);
+
+        final ActorRef sender = getSender();
+        final ActorRef self = getSelf();
+
+        groupWriter.submit(createMessageRecord(message))
+                .whenComplete((record, error) -> sender.tell(error != null ? error : new Object(), self));
+    }
+
     @Override
     protected TimestampRecord timestamp(Long messageRecordId) throws Exception {
         log.trace("timestamp({})", messageRecordId);
@@ -212,6 +236,8 @@ public class LogManager extends AbstractLogManager {
                 getSender().tell(statusMap, getSelf());
             } else if (message instanceof SetTimestampingStatusMessage) {
                 setTimestampingStatus((SetTimestampingStatusMessage)message);
+            } else if (message instanceof LogMessage && groupWriter != null && !shouldTimestampImmediately()) {
+                logInGroup((LogMessage)message);
             } else {
                 super.onReceive(message);
             }
@@ -220,6 +246,15 @@ public class LogManager extends AbstractLogManager {
         }
     }
 
+    @Override
+    public void postStop() throws Exception {
+        if (groupWriter != null) {
+            groupWriter.stop();
+        }
+
+        super.postStop();
+    }
+
     // ------------------------------------------------------------------------
 
     protected Props getTaskQueueImpl() {
@@ -263,19 +298,32 @@ public class LogManager extends AbstractLogManager {
         }
     }
 
+    private static MessageRecord createMessageRecord(LogMessage message) throws Exception {
+        if (message instanceof SoapLogMessage) {
+            return createMessageRecord((SoapLogMessage)message);
+        } else {
+            return createMessageRecord((RestLogMessage)message);
+        }
+    }
+
     private static MessageRecord createMessageRecord(SoapLogMessage message) throws Exception {
         log.trace("createMessageRecord()");
 
-        String loggedMessage = new MessageBodyManipulator().getLoggableMessageText(message);
+        final MessageBodyManipulator manipulator = new MessageBodyManipulator();
+        final boolean compressed = isMessageBodyCompressionEnabled();
 
         MessageRecord messageRecord = new MessageRecord(
                 message.getQueryId(),
-                loggedMessage,
+                compressed ? null : manipulator.getLoggableMessageText(message),
                 message.getSignature().getSignatureXml(),
                 message.isResponse(),
                 message.isClientSide() ? message.getClient() : message.getService().getClientId(),
                 message.getXRequestId());
 
+        if (compressed) {
+            messageRecord.compressMessage(manipulator.getLoggableMessageBytes(message));
+        }
+
         messageRecord.setTime(new Date().getTime());
 
         if (message.getSignature().isBatchSignature()) {
@@ -291,14 +339,20 @@ public class LogManager extends AbstractLogManager {
         log.trace("createMessageRecord()");
 
         final MessageBodyManipulator manipulator = new MessageBodyManipulator();
+        final boolean compressed = isMessageBodyCompressionEnabled();
+
         MessageRecord messageRecord = new MessageRecord(
                 message.getQueryId(),
-                manipulator.getLoggableMessageText(message),
+                compressed ? null : manipulator.getLoggableMessageText(message),
                 message.getSignature().getSignatureXml(),
                 message.isResponse(),
                 message.isClientSide() ? message.getClient() : message.getService().getClientId(),
                 message.getXRequestId());
 
+        if (compressed) {
+            messageRecord.compressMessage(manipulator.getLoggableMessageBytes(message));
+        }
+
         messageRecord.setTime(new Date().getTime());
 
         if (message.getBody() != null
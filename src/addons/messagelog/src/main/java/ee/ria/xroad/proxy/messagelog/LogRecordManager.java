@@ -149,6 +149,33 @@ public final class LogRecordManager {
         });
     }
 
+    /**
+     * Saves the message records to database in one transaction.
+     * @param messageRecords the message records to be saved.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    static void saveMessageRecords(List<MessageRecord> messageRecords) throws Exception {
+        doInTransaction(session -> {
+            int storedCount = 0;
+            int batchSize = getConfiguredBatchSize(session);
+
+            for (MessageRecord messageRecord : messageRecords) {
+                //the blob must be created within hibernate session
+                final InputStream is = messageRecord.getAttachmentStream();
+                if (is != null) {
+                    messageRecord.setAttachment(session.getLobHelper().createBlob(is,
+                            messageRecord.getAttachmentStreamSize()));
+                }
+                save(session, messageRecord);
+
+                if (++storedCount % batchSize == 0) {
+                    session.flush();
+                }
+            }
+            return null;
+        });
+    }
+
     /**
      * Saves the message record in the database.
      * @param messageRecord the message record to be updated.
@@ -38,6 +38,7 @@ import ee.ria.xroad.common.messagelog.SoapLogMessage;
 import com.google.common.collect.Iterables;
 import lombok.Setter;
 
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Objects;
@@ -94,7 +95,23 @@ public class MessageBodyManipulator {
         if (isBodyLogged(message)) {
             return message.getMessage().getXml();
         } else {
-            return buildBodyRemovedMessage(message);
+            return buildBodyRemovedMessage(message).getXml();
+        }
+    }
+
+    /**
+     * Returns the UTF-8 encoded bytes that should be logged. Same as
+     * {@link #getLoggableMessageText(SoapLogMessage)}, but does not decode the message
+     * to a string when it already is in UTF-8.
+     * @param message soap message
+     * @return the UTF-8 encoded message that should be logged
+     * @throws Exception when error occurs
+     */
+    public byte[] getLoggableMessageBytes(SoapLogMessage message) throws Exception {
+        if (isBodyLogged(message)) {
+            return toUtf8Bytes(message.getMessage());
+        } else {
+            return toUtf8Bytes(buildBodyRemovedMessage(message));
         }
     }
 
@@ -110,7 +127,27 @@ public class MessageBodyManipulator {
         }
     }
 
-    private String buildBodyRemovedMessage(SoapLogMessage message) throws Exception {
+    /**
+     * Returns the UTF-8 encoded bytes that should be logged. Same as
+     * {@link #getLoggableMessageText(RestLogMessage)}, but without decoding the message
+     */
+    public byte[] getLoggableMessageBytes(RestLogMessage message) {
+        if (isBodyLogged(message)) {
+            return message.getMessage().getMessageBytes();
+        } else {
+            return message.getMessage().getFilteredMessage();
+        }
+    }
+
+    private static byte[] toUtf8Bytes(SoapMessageImpl message) throws Exception {
+        if (StandardCharsets.UTF_8.equals(Charset.forName(message.getCharset()))) {
+            return message.getBytes();
+        }
+
+        return message.getXml().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private SoapMessageImpl buildBodyRemovedMessage(SoapLogMessage message) throws Exception {
         // build a new empty message with SoapBuilder and
         // set old SoapHeader to it
         SoapHeader oldHeader = message.getMessage().getHeader();
@@ -123,7 +160,7 @@ public class MessageBodyManipulator {
             // otherwise asicverifier gets confused
             blankedMessage = SoapUtils.toResponse(blankedMessage);
         }
-        return blankedMessage.getXml();
+        return blankedMessage;
     }
 
     /**
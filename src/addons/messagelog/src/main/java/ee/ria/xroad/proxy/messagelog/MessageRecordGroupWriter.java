@@ -0,0 +1,237 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves message records logged by concurrent requests in shared transactions (group commit).
+ * A batch is committed when it contains the maximum number of records or when the maximum delay
+ * has passed since its first record arrived. The future returned to the caller is completed only
+ * after the batch containing the record has been committed. If saving a batch fails, its records are
+ * saved one by one, so that only the records that cannot be saved are failed. Records with an
+ * attachment stream are always saved in their own transaction, because the stream cannot be read again.
+ */
+@Slf4j
+class MessageRecordGroupWriter {
+
+    private static final String THREAD_NAME = "MessageRecordGroupWriter";
+
+    private final BlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+
+    private final int maxRecords;
+    private final long maxDelayNanos;
+
+    private final Thread writerThread;
+
+    private final Object lock = new Object();
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates the writer and starts the writer thread.
+     * @param maxRecords maximum number of records saved in one transaction
+     * @param maxDelayMillis maximum time in milliseconds to wait for more records to arrive
+     */
+    MessageRecordGroupWriter(int maxRecords, long maxDelayMillis) {
+        this.maxRecords = Math.max(1, maxRecords);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+
+        writerThread = new Thread(this::run, THREAD_NAME);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues the message record for saving.
+     * @param messageRecord the message record
+     * @return future that is completed when the record has been committed to the database
+     */
+    CompletableFuture<MessageRecord> submit(MessageRecord messageRecord) {
+        PendingRecord pending = new PendingRecord(messageRecord);
+
+        synchronized (lock) {
+            if (running) {
+                queue.add(pending);
+
+                return pending.result;
+            }
+        }
+
+        pending.result.completeExceptionally(stoppedException());
+
+        return pending.result;
+    }
+
+    /**
+     * Stops the writer thread. Records that have not been saved yet are failed.
+     */
+    void stop() {
+        synchronized (lock) {
+            running = false;
+        }
+
+        writerThread.interrupt();
+
+        // The writer thread fails what it finds in the queue when it exits, this covers the case
+        // where the thread has already exited
+        List<PendingRecord> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        fail(leftover, stoppedException());
+    }
+
+    private void run() {
+        List<PendingRecord> batch = new ArrayList<>(maxRecords);
+
+        try {
+            while (running) {
+                batch.add(queue.take());
+                collect(batch);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queue.drainTo(batch);
+            fail(batch, stoppedException());
+        }
+    }
+
+    private void collect(List<PendingRecord> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+
+        // Take what is already queued without waiting, then wait for the rest of the window
+        queue.drainTo(batch, maxRecords - batch.size());
+
+        while (batch.size() < maxRecords) {
+            long remaining = deadline - System.nanoTime();
+
+            if (remaining <= 0) {
+                break;
+            }
+
+            PendingRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+            if (next == null) {
+                break;
+            }
+
+            batch.add(next);
+            queue.drainTo(batch, maxRecords - batch.size());
+        }
+    }
+
+    private static void write(List<PendingRecord> batch) {
+        log.trace("write({})", batch.size());
+
+        List<PendingRecord> grouped = new ArrayList<>(batch.size());
+
+        for (PendingRecord pending : batch) {
+            if (pending.record.getAttachmentStream() != null) {
+                writeSingle(pending);
+            } else {
+                grouped.add(pending);
+            }
+        }
+
+        if (grouped.isEmpty()) {
+            return;
+        }
+
+        List<MessageRecord> records = new ArrayList<>(grouped.size());
+
+        for (PendingRecord pending : grouped) {
+            records.add(pending.record);
+        }
+
+        try {
+            LogRecordManager.saveMessageRecords(records);
+        } catch (Exception e) {
+            if (grouped.size() == 1) {
+                fail(grouped, e);
+
+                return;
+            }
+
+            log.warn("Saving {} message records failed, saving them one by one", records.size(), e);
+
+            for (PendingRecord pending : grouped) {
+                // The identifier was assigned in the rolled back transaction
+                pending.record.setId(null);
+                writeSingle(pending);
+            }
+
+            return;
+        }
+
+        for (PendingRecord pending : grouped) {
+            pending.result.complete(pending.record);
+        }
+    }
+
+    private static void writeSingle(PendingRecord pending) {
+        try {
+            LogRecordManager.saveMessageRecord(pending.record);
+        } catch (Exception e) {
+            log.error("Saving message record failed", e);
+
+            pending.result.completeExceptionally(e);
+
+            return;
+        }
+
+        pending.result.complete(pending.record);
+    }
+
+    private static void fail(List<PendingRecord> batch, Exception e) {
+        for (PendingRecord pending : batch) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    private static IllegalStateException stoppedException() {
+        return new IllegalStateException("Message record writer is stopped");
+    }
+
+    private static final class PendingRecord {
+        private final MessageRecord record;
+        private final CompletableFuture<MessageRecord> result = new CompletableFuture<>();
+
+        PendingRecord(MessageRecord record) {
+            this.record = record;
+        }
+    }
+}
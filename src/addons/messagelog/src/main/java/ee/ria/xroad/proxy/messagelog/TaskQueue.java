@@ -39,13 +39,22 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.proxy.messagelog.LogManager.TIMESTAMPER_NAME;
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
 
 /**
  * Handles the TaskQueues -- adds tasks to the queue and sends the active queue for time-stamping.
+ *
+ * Up to timestamp-batches-in-flight batches are time-stamped at the same time. The records of the batches in
+ * progress are left out of the next batches, so that a slow time-stamping provider does not stop the queue.
  */
 @Slf4j
 @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
@@ -56,6 +65,19 @@ public class TaskQueue extends UntypedAbstractActor {
     static final double TIMESTAMPED_RECORDS_RATIO_THRESHOLD = 0.7;
     static final int TIMESTAMP_RECORDS_LIMIT_RETRY_MODE = 1;
 
+    // A batch that has not been answered in this time is assumed to be lost and its records are time-stamped again
+    private static final long BATCH_IN_FLIGHT_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    // Batches sent for time-stamping, by the first message record of the batch
+    private final Map<Long, InFlightBatch> batchesInFlight = new HashMap<>();
+    private final Set<Long> recordsInFlight = new HashSet<>();
+
+    @RequiredArgsConstructor
+    private static final class InFlightBatch {
+        private final Long[] messageRecords;
+        private final long sentAt;
+    }
+
     @Override
     public void onReceive(Object message) throws Exception {
         log.trace("onReceive({})", message);
@@ -63,7 +85,7 @@ public class TaskQueue extends UntypedAbstractActor {
         if (message.equals(START_TIMESTAMPING)) {
             handleStartTimestamping();
         } else if (message.equals(START_TIMESTAMPING_RETRY_MODE)) {
-            handleStartTimestamping(TIMESTAMP_RECORDS_LIMIT_RETRY_MODE);
+            handleStartTimestamping(TIMESTAMP_RECORDS_LIMIT_RETRY_MODE, 1);
         } else if (message instanceof Timestamper.TimestampSucceeded) {
             handleTimestampSucceeded((Timestamper.TimestampSucceeded) message);
         } else if (message instanceof Timestamper.TimestampFailed) {
@@ -76,6 +98,8 @@ public class TaskQueue extends UntypedAbstractActor {
     protected void handleTimestampSucceeded(TimestampSucceeded message) {
         log.trace("handleTimestampSucceeded");
 
+        releaseBatch(message.getMessageRecords());
+
         if (log.isTraceEnabled()) {
             log.trace("Time-stamped message records {}", Arrays.toString(message.getMessageRecords()));
         }
@@ -135,24 +159,43 @@ public class TaskQueue extends UntypedAbstractActor {
     protected void handleTimestampFailed(TimestampFailed message) {
         log.trace("handleTimestampFailed");
 
+        releaseBatch(message.getMessageRecords());
+
         indicateFailure();
     }
 
     protected void handleStartTimestamping() {
-        handleStartTimestamping(MessageLogProperties.getTimestampRecordsLimit());
+        handleStartTimestamping(MessageLogProperties.getTimestampRecordsLimit(),
+                MessageLogProperties.getTimestampBatchesInFlight());
     }
 
-    protected void handleStartTimestamping(int timestampRecordsLimit) {
+    protected void handleStartTimestamping(int timestampRecordsLimit, int maxBatchesInFlight) {
+        expireBatches();
+
+        int freeBatches = maxBatchesInFlight - batchesInFlight.size();
+
+        if (freeBatches <= 0) {
+            log.trace("{} time-stamping batches already in progress", batchesInFlight.size());
+
+            return;
+        }
+
+        // Records of the batches in progress are still in the queue and are skipped
+        int maxResults = (int) Math.min(Integer.MAX_VALUE,
+                (long) timestampRecordsLimit * freeBatches + recordsInFlight.size());
+
         List<Task> timestampTasks;
 
         try {
-            timestampTasks = doInTransaction(session -> getTimestampTasks(session, timestampRecordsLimit));
+            timestampTasks = doInTransaction(session -> getTimestampTasks(session, maxResults));
         } catch (Exception e) {
             log.error("Error getting time-stamp tasks", e);
 
             return;
         }
 
+        timestampTasks.removeIf(task -> recordsInFlight.contains(task.getMessageRecordNo()));
+
         if (timestampTasks.isEmpty()) {
             log.trace("Nothing to time-stamp, task queue is empty");
 
@@ -163,20 +206,65 @@ public class TaskQueue extends UntypedAbstractActor {
 
         log.info("Start time-stamping {} message records", timestampTasksSize);
 
-        if (timestampTasksSize / (double) MessageLogProperties.getTimestampRecordsLimit()
+        int batchSize = Math.min(timestampTasksSize, timestampRecordsLimit);
+
+        if (batchSize / (double) MessageLogProperties.getTimestampRecordsLimit()
                 >= TIMESTAMPED_RECORDS_RATIO_THRESHOLD) {
             log.warn("Number of time-stamped records is over {} % of 'timestamp-records-limit' value",
                     TIMESTAMPED_RECORDS_RATIO_THRESHOLD * 100);
         }
 
-        sendToTimestamper(createTimestampTask(timestampTasks));
+        for (int from = 0; from < timestampTasksSize; from += batchSize) {
+            int to = Math.min(from + batchSize, timestampTasksSize);
+
+            sendToTimestamper(createTimestampTask(timestampTasks.subList(from, to)));
+        }
     }
 
     private void sendToTimestamper(TimestampTask timestampTask) {
+        Long[] messageRecords = timestampTask.getMessageRecords();
+
+        batchesInFlight.put(messageRecords[0], new InFlightBatch(messageRecords, System.currentTimeMillis()));
+        recordsInFlight.addAll(Arrays.asList(messageRecords));
+
         ActorSelection timestamper = getContext().actorSelection("../" + TIMESTAMPER_NAME);
         timestamper.tell(timestampTask, getSelf());
     }
 
+    private void releaseBatch(Long[] messageRecords) {
+        if (messageRecords == null || messageRecords.length == 0) {
+            return;
+        }
+
+        InFlightBatch batch = batchesInFlight.remove(messageRecords[0]);
+
+        if (batch != null) {
+            removeRecordsInFlight(batch);
+        }
+    }
+
+    private void removeRecordsInFlight(InFlightBatch batch) {
+        for (Long messageRecord : batch.messageRecords) {
+            recordsInFlight.remove(messageRecord);
+        }
+    }
+
+    private void expireBatches() {
+        long now = System.currentTimeMillis();
+
+        for (Iterator<InFlightBatch> it = batchesInFlight.values().iterator(); it.hasNext();) {
+            InFlightBatch batch = it.next();
+
+            if (now - batch.sentAt > BATCH_IN_FLIGHT_EXPIRY_MILLIS) {
+                log.warn("No time-stamping result for message records {} in {} ms, releasing them",
+                        Arrays.toString(batch.messageRecords), BATCH_IN_FLIGHT_EXPIRY_MILLIS);
+
+                removeRecordsInFlight(batch);
+                it.remove();
+            }
+        }
+    }
+
     private TimestampTask createTimestampTask(List<Task> timestampTasks) {
         Long[] messageRecords = new Long[timestampTasks.size()];
         String[] signatureHashes = new String[timestampTasks.size()];
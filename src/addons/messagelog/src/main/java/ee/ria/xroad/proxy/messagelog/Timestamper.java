@@ -25,6 +25,7 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.messagelog.MessageRecord;
@@ -39,6 +40,8 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.Serializable;
 
+import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
+
 /**
  * Timestamper is responsible for routing timestamping tasks to the timestamp worker.
  */
@@ -93,6 +96,11 @@ public class Timestamper extends UntypedAbstractActor {
 
     private void handleTimestampTask(TimestampTask message) {
         if (!GlobalConf.isValid()) {
+            // Answer so that the sender does not keep waiting for the records
+            TimestampFailed failed = new TimestampFailed(message.getMessageRecords(),
+                    new CodedException(X_OUTDATED_GLOBALCONF, "Global configuration is expired"));
+            getSender().tell(failed, ActorRef.noSender());
+
             return;
         }
 
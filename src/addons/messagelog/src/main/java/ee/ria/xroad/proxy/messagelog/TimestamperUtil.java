@@ -28,6 +28,18 @@ package ee.ria.xroad.proxy.messagelog;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.cmp.PKIFreeText;
 import org.bouncycastle.asn1.cmp.PKIStatus;
@@ -39,22 +51,46 @@ import org.bouncycastle.tsp.TimeStampRequest;
 import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampToken;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.math.BigInteger;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 final class TimestamperUtil {
 
+    private static final ContentType TIMESTAMP_QUERY = ContentType.create("application/timestamp-query");
+
+    private static final int VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MILLIS = 2000;
+    private static final int IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+
     private TimestamperUtil() {
     }
 
+    // Keep-alive connections to the time-stamping providers, shared by all the time-stamp requests
+    private static final class ClientHolder {
+        static final CloseableHttpClient CLIENT = createClient();
+
+        private static CloseableHttpClient createClient() {
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setDefaultMaxPerRoute(MessageLogProperties.getTimestamperClientMaxConnectionsPerRoute());
+            connectionManager.setMaxTotal(Integer.MAX_VALUE);
+            connectionManager.setValidateAfterInactivity(VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MILLIS);
+
+            return HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .evictExpiredConnections()
+                    .evictIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .disableAutomaticRetries()
+                    .disableCookieManagement()
+                    .build();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     static TimeStampToken addSignerCertificate(TimeStampResponse tsResponse,
             X509Certificate signerCertificate) throws Exception {
@@ -69,33 +105,30 @@ final class TimestamperUtil {
     }
 
     static InputStream makeTsRequest(TimeStampRequest req, String tspUrl) throws Exception {
-        byte[] request = req.getEncoded();
-
-        URL url = new URL(tspUrl);
-        HttpURLConnection con = (HttpURLConnection) url.openConnection();
-
-        con.setDoOutput(true);
-        con.setDoInput(true);
-        con.setConnectTimeout(MessageLogProperties.getTimestamperClientConnectTimeout());
-        con.setReadTimeout(MessageLogProperties.getTimestamperClientReadTimeout());
-        con.setRequestMethod("POST");
-        con.setRequestProperty("Content-type", "application/timestamp-query");
-        con.setRequestProperty("Content-length", String.valueOf(request.length));
-
-        OutputStream out = con.getOutputStream();
-        out.write(request);
-        out.flush();
-
-        if (con.getResponseCode() != HttpURLConnection.HTTP_OK) {
-            con.disconnect();
-            throw new RuntimeException("Received HTTP error: " + con.getResponseCode() + " - "
-                    + con.getResponseMessage());
-        } else if (con.getInputStream() == null) {
-            con.disconnect();
-            throw new IOException("Could not get response from TSP");
-        }
+        HttpPost post = new HttpPost(tspUrl);
+        post.setConfig(RequestConfig.custom()
+                .setConnectTimeout(MessageLogProperties.getTimestamperClientConnectTimeout())
+                .setConnectionRequestTimeout(MessageLogProperties.getTimestamperClientConnectTimeout())
+                .setSocketTimeout(MessageLogProperties.getTimestamperClientReadTimeout())
+                .build());
+        post.setEntity(new ByteArrayEntity(req.getEncoded(), TIMESTAMP_QUERY));
+
+        // The response is read fully so that the connection is returned to the pool
+        try (CloseableHttpResponse response = ClientHolder.CLIENT.execute(post)) {
+            StatusLine status = response.getStatusLine();
+            HttpEntity entity = response.getEntity();
+
+            if (status.getStatusCode() != HttpStatus.SC_OK) {
+                EntityUtils.consumeQuietly(entity);
+
+                throw new RuntimeException("Received HTTP error: " + status.getStatusCode() + " - "
+                        + status.getReasonPhrase());
+            } else if (entity == null) {
+                throw new IOException("Could not get response from TSP");
+            }
 
-        return con.getInputStream();
+            return new ByteArrayInputStream(EntityUtils.toByteArray(entity));
+        }
     }
 
     static TimeStampResponse getTimestampResponse(InputStream in) throws Exception {
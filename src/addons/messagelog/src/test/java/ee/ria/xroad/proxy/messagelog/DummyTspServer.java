@@ -0,0 +1,136 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local time-stamping provider for tests. Answers every request with the time-stamp response in
+ * src/test/resources/tsp.response, optionally after a delay or with an HTTP error.
+ */
+final class DummyTspServer {
+
+    private final Server server = new Server();
+    private final ServerConnector connector = new ServerConnector(server);
+
+    private final byte[] response;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    // Counted down when the server is stopped, so that delayed requests do not keep it running
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private volatile long delayMillis;
+    private volatile int status = HttpServletResponse.SC_OK;
+
+    DummyTspServer() throws IOException {
+        response = Files.readAllBytes(Paths.get("src/test/resources/tsp.response"));
+
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+
+        server.addConnector(connector);
+        server.setHandler(new TspHandler());
+    }
+
+    void start() throws Exception {
+        server.start();
+    }
+
+    void stop() throws Exception {
+        stopped.countDown();
+        server.stop();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + connector.getLocalPort() + "/";
+    }
+
+    void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    void setStatus(int status) {
+        this.status = status;
+    }
+
+    int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of client connections the requests have been received from
+     */
+    int getConnectionCount() {
+        return clientPorts.size();
+    }
+
+    private final class TspHandler extends AbstractHandler {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                HttpServletResponse httpResponse) throws IOException {
+            requestCount.incrementAndGet();
+            clientPorts.add(request.getRemotePort());
+
+            IOUtils.toByteArray(request.getInputStream());
+
+            try {
+                if (delayMillis > 0) {
+                    stopped.await(delayMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (status != HttpServletResponse.SC_OK) {
+                httpResponse.sendError(status);
+            } else {
+                httpResponse.setContentType("application/timestamp-reply");
+                httpResponse.setContentLength(response.length);
+                httpResponse.getOutputStream().write(response);
+            }
+
+            baseRequest.setHandled(true);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.TestActorRef;
+import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.cleanUpDatabase;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.initForTest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests dropping of log record partitions. The partitioning functions of PostgreSQL are replaced with Java stubs
+ * following the same rules, a partition is the range of log records having time within the partition bounds.
+ */
+public class LogCleanerTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final String PARTITIONING_CHANGELOG =
+            "../../packages/src/xroad/common/addon/proxy/messagelog/8-logrecord-partitioning.xml";
+    private static final String MAPPING = "src/main/resources/messagelog.hbm.xml";
+
+    private static final List<Long> UNLINKED_ATTACHMENTS = Collections.synchronizedList(new ArrayList<>());
+
+    private static ActorSystem system;
+
+    private long base;
+
+    /**
+     * Creates the partition table and the function stubs.
+     * @throws Exception in case of any unexpected errors
+     */
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        initForTest();
+
+        system = ActorSystem.create("Proxy", ConfigFactory.load().getConfig("proxy")
+                .withValue("akka.remote.artery.canonical.port", ConfigValueFactory.fromAnyRef(0)));
+
+        execute("CREATE TABLE logrecord_partition (name VARCHAR(255) PRIMARY KEY, "
+                        + "time_from BIGINT NOT NULL, time_to BIGINT NOT NULL)",
+                "CREATE FUNCTION create_logrecord_partitions(p_interval BIGINT, p_until BIGINT) RETURNS INTEGER "
+                        + "LANGUAGE JAVA MODIFIES SQL DATA EXTERNAL NAME "
+                        + "'CLASSPATH:ee.ria.xroad.proxy.messagelog.LogCleanerTest.createPartitions'",
+                "CREATE FUNCTION drop_logrecord_partitions(p_time BIGINT) RETURNS BIGINT "
+                        + "LANGUAGE JAVA MODIFIES SQL DATA EXTERNAL NAME "
+                        + "'CLASSPATH:ee.ria.xroad.proxy.messagelog.LogCleanerTest.dropPartitions'");
+    }
+
+    /**
+     * Removes the partition table and the function stubs.
+     * @throws Exception in case of any unexpected errors
+     */
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        execute("DROP FUNCTION drop_logrecord_partitions",
+                "DROP FUNCTION create_logrecord_partitions",
+                "DROP TABLE logrecord_partition");
+
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    /**
+     * Creates three daily partitions ending well before the cleaning time.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        // the named queries select without a from clause, which HSQLDB accepts in PostgreSQL compatibility mode
+        execute("SET DATABASE SQL SYNTAX PGS TRUE");
+
+        base = (System.currentTimeMillis() / DAY - MessageLogProperties.getKeepRecordsForDays() - 30) * DAY;
+
+        for (int i = 0; i < 3; i++) {
+            insertPartition(partitionName(i), base + i * DAY, base + (i + 1) * DAY);
+        }
+
+        UNLINKED_ATTACHMENTS.clear();
+    }
+
+    /**
+     * Cleanup test environment for other tests.
+     * @throws Exception in case of any unexpected errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        execute("SET DATABASE SQL SYNTAX PGS FALSE");
+        cleanUpDatabase();
+    }
+
+    @Test
+    public void neverDropsPartitionWithNonArchivedRecords() throws Exception {
+        insertRecord(1, base, true, true);
+        insertRecord(2, base + 1, true, false);
+        insertRecord(3, base + DAY, true, false);
+        insertRecord(4, base + DAY + 1, false, false);
+        insertRecord(5, base + 2 * DAY, true, true);
+
+        assertEquals(2, clean());
+
+        assertEquals(Arrays.asList(3L, 4L, 5L), getRecordIds());
+        assertEquals(Collections.singletonList(1L), UNLINKED_ATTACHMENTS);
+
+        List<String> partitions = getPartitionNames();
+        assertFalse(partitions.contains(partitionName(0)));
+        // the archived partition after the first non-archived one is not dropped either
+        assertTrue(partitions.contains(partitionName(1)));
+        assertTrue(partitions.contains(partitionName(2)));
+    }
+
+    @Test
+    public void dropsArchivedPartitionsEndingBeforeCleaningTime() throws Exception {
+        long now = System.currentTimeMillis();
+
+        insertRecord(1, base, true, true);
+        insertRecord(2, base + DAY, true, false);
+        insertRecord(3, base + 2 * DAY, true, true);
+        insertRecord(4, now, true, false);
+
+        assertEquals(3, clean());
+
+        assertEquals(Collections.singletonList(4L), getRecordIds());
+        assertEquals(Arrays.asList(1L, 3L), UNLINKED_ATTACHMENTS);
+
+        // partitions are created ahead and the partition of current records is kept
+        assertTrue(getLastPartitionEnd() > now + TimeUnit.DAYS.toMillis(7));
+        assertTrue(getPartitionNames().stream().noneMatch(name -> partitionName(0).equals(name)
+                || partitionName(1).equals(name) || partitionName(2).equals(name)));
+        assertEquals(1, countPartitions(now));
+    }
+
+    @Test
+    public void createsPartitionOfCurrentRecordsOnStart() throws Exception {
+        long now = System.currentTimeMillis();
+
+        TestActorRef<PartitionedLogCleaner> cleaner = TestActorRef.create(system,
+                Props.create(PartitionedLogCleaner.class));
+        system.stop(cleaner);
+
+        assertEquals(1, countPartitions(now));
+        assertTrue(getLastPartitionEnd() > now + TimeUnit.DAYS.toMillis(7));
+    }
+
+    @Test
+    public void partitioningFunctionsMatchNamedQueries() throws Exception {
+        String changelog = new String(Files.readAllBytes(Paths.get(PARTITIONING_CHANGELOG)), StandardCharsets.UTF_8);
+        String mapping = new String(Files.readAllBytes(Paths.get(MAPPING)), StandardCharsets.UTF_8);
+
+        // the stubs of this test stand in for these functions
+        assertTrue(changelog.contains("FUNCTION create_logrecord_partitions(p_interval bigint, p_until bigint)"));
+        assertTrue(changelog.contains("FUNCTION drop_logrecord_partitions(p_time bigint)"));
+        assertTrue(mapping.contains("SELECT create_logrecord_partitions(:interval, :until)"));
+        assertTrue(mapping.contains("SELECT drop_logrecord_partitions(:time)"));
+
+        // records for which no partition exists yet are kept in the default partition
+        assertTrue(changelog.contains("CREATE TABLE logrecord_default PARTITION OF logrecord DEFAULT"));
+    }
+
+    /**
+     * Stub of create_logrecord_partitions(bigint, bigint).
+     * @param connection the connection of the calling session
+     * @param interval partition length in milliseconds
+     * @param until time until partitions are created
+     * @return number of created partitions
+     * @throws SQLException if the table is not partitioned
+     */
+    public static int createPartitions(Connection connection, long interval, long until) throws SQLException {
+        long from;
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT max(time_to) FROM logrecord_partition")) {
+            rs.next();
+            from = rs.getLong(1);
+            if (rs.wasNull()) {
+                throw new SQLException("logrecord table is not partitioned");
+            }
+        }
+
+        int created = 0;
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO logrecord_partition (name, time_from, time_to) VALUES (?, ?, ?)")) {
+            for (; from <= until; from += interval) {
+                insert.setString(1, "logrecord_" + from);
+                insert.setLong(2, from);
+                insert.setLong(3, from + interval);
+                insert.executeUpdate();
+                created++;
+            }
+        }
+
+        return created;
+    }
+
+    /**
+     * Stub of drop_logrecord_partitions(bigint).
+     * @param connection the connection of the calling session
+     * @param time time until partitions may be dropped
+     * @return number of removed records
+     * @throws SQLException in case of database errors
+     */
+    public static long dropPartitions(Connection connection, long time) throws SQLException {
+        long removed = 0;
+
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT name, time_from, time_to FROM logrecord_partition WHERE time_to <= ? ORDER BY time_from");
+                PreparedStatement count = connection.prepareStatement(
+                        "SELECT count(*), sum(CASE WHEN archived THEN 0 ELSE 1 END) FROM logrecord "
+                                + "WHERE \"TIME\" >= ? AND \"TIME\" < ?");
+                PreparedStatement attachments = connection.prepareStatement(
+                        "SELECT id FROM logrecord WHERE \"TIME\" >= ? AND \"TIME\" < ? AND attachment IS NOT NULL "
+                                + "ORDER BY id");
+                PreparedStatement drop = connection.prepareStatement(
+                        "DELETE FROM logrecord WHERE \"TIME\" >= ? AND \"TIME\" < ?");
+                PreparedStatement delete = connection.prepareStatement(
+                        "DELETE FROM logrecord_partition WHERE name = ?")) {
+            select.setLong(1, time);
+
+            try (ResultSet partitions = select.executeQuery()) {
+                while (partitions.next()) {
+                    long from = partitions.getLong(2);
+                    long to = partitions.getLong(3);
+
+                    long records;
+                    long notArchived;
+                    try (ResultSet rs = query(count, from, to)) {
+                        rs.next();
+                        records = rs.getLong(1);
+                        notArchived = rs.getLong(2);
+                    }
+
+                    if (notArchived > 0) {
+                        break;
+                    }
+
+                    try (ResultSet rs = query(attachments, from, to)) {
+                        while (rs.next()) {
+                            UNLINKED_ATTACHMENTS.add(rs.getLong(1));
+                        }
+                    }
+
+                    drop.setLong(1, from);
+                    drop.setLong(2, to);
+                    drop.executeUpdate();
+
+                    delete.setString(1, partitions.getString(1));
+                    delete.executeUpdate();
+
+                    removed += records;
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    private static ResultSet query(PreparedStatement statement, long from, long to) throws SQLException {
+        statement.setLong(1, from);
+        statement.setLong(2, to);
+        return statement.executeQuery();
+    }
+
+    private static String partitionName(int index) {
+        return "partition_" + index;
+    }
+
+    private static long clean() throws Exception {
+        TestActorRef<PartitionedLogCleaner> cleaner = TestActorRef.create(system,
+                Props.create(PartitionedLogCleaner.class));
+        try {
+            return cleaner.underlyingActor().handleClean();
+        } finally {
+            system.stop(cleaner);
+        }
+    }
+
+    private static void execute(String... sqls) throws Exception {
+        doInTransaction(session -> {
+            for (String sql : sqls) {
+                session.createSQLQuery(sql).executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    private static void insertPartition(String name, long from, long to) throws Exception {
+        doInTransaction(session -> session
+                .createSQLQuery("INSERT INTO logrecord_partition (name, time_from, time_to) VALUES (:name, :from, :to)")
+                .setParameter("name", name)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .executeUpdate());
+    }
+
+    private static void insertRecord(long id, long time, boolean archived, boolean attachment) throws Exception {
+        doInTransaction(session -> {
+            session.doWork(connection -> {
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO logrecord "
+                        + "(id, discriminator, \"TIME\", archived, attachment) VALUES (?, 'm', ?, ?, ?)")) {
+                    insert.setLong(1, id);
+                    insert.setLong(2, time);
+                    insert.setBoolean(3, archived);
+                    insert.setBytes(4, attachment ? new byte[] {1} : null);
+                    insert.executeUpdate();
+                }
+            });
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> getRecordIds() throws Exception {
+        return doInTransaction(session -> session.createQuery("select r.id from AbstractLogRecord r order by r.id")
+                .list());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getPartitionNames() throws Exception {
+        return doInTransaction(session -> session.createSQLQuery("SELECT name FROM logrecord_partition").list());
+    }
+
+    private static long getLastPartitionEnd() throws Exception {
+        return doInTransaction(session -> ((Number) session
+                .createSQLQuery("SELECT max(time_to) FROM logrecord_partition")
+                .uniqueResult()).longValue());
+    }
+
+    private static long countPartitions(long time) throws Exception {
+        return doInTransaction(session -> ((Number) session
+                .createSQLQuery("SELECT count(*) FROM logrecord_partition WHERE time_from <= :time AND time_to > :time")
+                .setParameter("time", time)
+                .uniqueResult()).longValue());
+    }
+
+    /**
+     * Log cleaner using daily partitions.
+     */
+    static class PartitionedLogCleaner extends LogCleaner {
+        @Override
+        protected int getPartitionDays() {
+            return 1;
+        }
+    }
+}
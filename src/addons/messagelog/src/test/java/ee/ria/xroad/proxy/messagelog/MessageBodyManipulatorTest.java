@@ -54,6 +54,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -192,8 +193,10 @@ public class MessageBodyManipulatorTest {
                                                      boolean clientSide,
                                                      String elementName,
                                                      boolean keepBody) throws Exception {
-        String loggableMessage = new TestableMessageBodyManipulator(keepBody)
-                .getLoggableMessageText(new SoapLogMessage(query, null, clientSide));
+        MessageBodyManipulator manipulator = new TestableMessageBodyManipulator(keepBody);
+        String loggableMessage = manipulator.getLoggableMessageText(new SoapLogMessage(query, null, clientSide));
+        assertArrayEquals(loggableMessage.getBytes(StandardCharsets.UTF_8),
+                manipulator.getLoggableMessageBytes(new SoapLogMessage(query, null, clientSide)));
         log.debug("loggable message with body"
                 + (keepBody ? " intact: " : " removed: ")
                 + loggableMessage);
@@ -41,9 +41,12 @@ import ee.ria.xroad.common.util.JobManager;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampFailed;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampSucceeded;
 
+import akka.actor.ActorRef;
 import akka.actor.Props;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.After;
@@ -57,22 +60,38 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import static ee.ria.xroad.common.ErrorCodes.X_MLOG_TIMESTAMPER_FAILED;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeHex;
+import static ee.ria.xroad.common.util.CryptoUtils.hexDigest;
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.assertTaskQueueSize;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.cleanUpDatabase;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.createMessage;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.createSignature;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.getTaskQueue;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.initForTest;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -87,6 +106,7 @@ import static org.junit.Assert.fail;
 public class MessageLogTest extends AbstractMessageLogTest {
     private static final String LAST_LOG_ARCHIVE_FILE = "mlog-20150520112233-20150520123344-asdlfjlasa.zip";
     private static final String LAST_DIGEST = "123567890abcdef";
+    private static final int PARALLEL_ARCHIVE_TIMESTAMPS = 4;
 
     static Date logRecordTime;
 
@@ -192,8 +212,10 @@ public class MessageLogTest extends AbstractMessageLogTest {
     public void testTimestampRecordsLimit() throws Exception {
         log.trace("testTimestampRecordsLimit()");
         int orig = MessageLogProperties.getTimestampRecordsLimit();
+        int origBatches = MessageLogProperties.getTimestampBatchesInFlight();
         try {
             System.setProperty(MessageLogProperties.TIMESTAMP_RECORDS_LIMIT, "2");
+            System.setProperty(MessageLogProperties.TIMESTAMP_BATCHES_IN_FLIGHT, "1");
             log(createMessage(), createSignature());
             log(createMessage(), createSignature());
             log(createMessage(), createSignature());
@@ -209,6 +231,42 @@ public class MessageLogTest extends AbstractMessageLogTest {
             assertEquals(2, timestamp.getMessageRecords().length);
         } finally {
             System.setProperty(MessageLogProperties.TIMESTAMP_RECORDS_LIMIT, String.valueOf(orig));
+            System.setProperty(MessageLogProperties.TIMESTAMP_BATCHES_IN_FLIGHT, String.valueOf(origBatches));
+        }
+    }
+
+    /**
+     * Test for system property timestamp-batches-in-flight. The records are split into batches that are
+     * time-stamped at the same time.
+     */
+    @Test
+    public void testTimestampBatchesInFlight() throws Exception {
+        log.trace("testTimestampBatchesInFlight()");
+        int orig = MessageLogProperties.getTimestampRecordsLimit();
+        int origBatches = MessageLogProperties.getTimestampBatchesInFlight();
+        try {
+            System.setProperty(MessageLogProperties.TIMESTAMP_RECORDS_LIMIT, "2");
+            System.setProperty(MessageLogProperties.TIMESTAMP_BATCHES_IN_FLIGHT, "3");
+            log(createMessage(), createSignature());
+            log(createMessage(), createSignature());
+            log(createMessage(), createSignature());
+            log(createMessage(), createSignature());
+            log(createMessage(), createSignature());
+            assertTaskQueueSize(5);
+
+            // Each of the three batches waits until all of them have been sent
+            TestTimestamperWorker.expectConcurrentRequests(3);
+
+            startTimestamping();
+
+            for (int i = 0; i < 100 && !getTaskQueue().isEmpty(); i++) {
+                Thread.sleep(100);
+            }
+
+            assertTaskQueueSize(0);
+        } finally {
+            System.setProperty(MessageLogProperties.TIMESTAMP_RECORDS_LIMIT, String.valueOf(orig));
+            System.setProperty(MessageLogProperties.TIMESTAMP_BATCHES_IN_FLIGHT, String.valueOf(origBatches));
         }
     }
 
@@ -285,6 +343,44 @@ public class MessageLogTest extends AbstractMessageLogTest {
         assertArchiveHashChain();
     }
 
+    /**
+     * Logs and time-stamps messages in several time-stamp batches. Then archives them serially and, after resetting
+     * the archived state, in parallel. Both must produce the same archive contents, linking info and archived flags.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void archiveInParallelLikeSerially() throws Exception {
+        log.trace("archiveInParallelLikeSerially()");
+
+        for (int i = 0; i < PARALLEL_ARCHIVE_TIMESTAMPS; i++) {
+            log(createMessage("parallel" + i + "a"), createSignature());
+            log(createMessage("parallel" + i + "b"), createSignature());
+
+            startTimestamping();
+            waitForTimestampSuccessful();
+            assertTrue(TestTaskQueue.waitForTimestampSaved());
+        }
+
+        ArchiveContents serial = archive(1, "build/archive-serial");
+
+        doInTransaction(session -> session.createQuery("update AbstractLogRecord set archived = false")
+                .executeUpdate());
+        initLastHashStep();
+
+        ArchiveContents parallel = archive(PARALLEL_ARCHIVE_TIMESTAMPS, "build/archive-parallel");
+
+        assertEquals(PARALLEL_ARCHIVE_TIMESTAMPS * 2, serial.containerNames.size());
+        assertEquals(serial.containerNames, parallel.containerNames);
+        assertEquals(serial.containers, parallel.containers);
+        assertEquals(serial.linkingInfoHeader, parallel.linkingInfoHeader);
+        assertEquals(serial.linkingInfoFiles, parallel.linkingInfoFiles);
+        assertEquals(serial.archived, parallel.archived);
+
+        // the containers may differ in zip entry times, so the linking info digests are verified separately
+        serial.assertLinkingInfoDigests();
+        parallel.assertLinkingInfoDigests();
+    }
+
     /**
      * Logs 3 messages, time-stamping fails. Task queue must have 3 tasks. Logs 1 more message, task queue must
      * have 4 tasks.
@@ -399,6 +495,32 @@ public class MessageLogTest extends AbstractMessageLogTest {
         assertNull(findByQueryId("foo", "02-04-2014 12:34:56.100", "02-04-2014 12:34:59.100"));
     }
 
+    /**
+     * Log message with compressed message body storage.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void logCompressedMessage() throws Exception {
+        log.trace("logCompressedMessage()");
+
+        System.setProperty(MessageLogProperties.MESSAGE_BODY_COMPRESSION_ENABLED, "true");
+
+        try {
+            SoapMessageImpl message = createMessage("compressed");
+            log("02-04-2014 12:34:56.100", message);
+
+            LogRecord logRecord = findByQueryId("compressed", "02-04-2014 12:34:50.100", "02-04-2014 12:34:59.100");
+            assertMessageRecord(logRecord, "compressed");
+
+            MessageRecord messageRecord = (MessageRecord) logRecord;
+            assertNotNull(messageRecord.getCompressedMessage());
+            assertEquals(message.getXml(), messageRecord.getMessage());
+            assertEquals(message.getXml(), messageRecord.toAsicContainer().getMessage());
+        } finally {
+            System.clearProperty(MessageLogProperties.MESSAGE_BODY_COMPRESSION_ENABLED);
+        }
+    }
+
     /**
      * Wants to time-stamp, but no TSP urls configured.
      * @throws Exception in case of any unexpected errors
@@ -444,6 +566,7 @@ public class MessageLogTest extends AbstractMessageLogTest {
         TestTaskQueue.throwWhenSavingTimestamp = null;
 
         TestTimestamperWorker.failNextTimestamping(false);
+        TestTimestamperWorker.expectConcurrentRequests(0);
     }
 
     @SneakyThrows
@@ -586,6 +709,131 @@ public class MessageLogTest extends AbstractMessageLogTest {
         return new SimpleDateFormat("dd-MM-yyyy HH:mm:ss.SSS").parse(dateStr);
     }
 
+    private ArchiveContents archive(int parallelism, String outputDir) throws Exception {
+        File output = new File(outputDir);
+        FileUtils.deleteDirectory(output);
+        assertTrue(output.mkdirs());
+        new File("build/tmp").mkdirs();
+
+        System.setProperty(MessageLogProperties.ARCHIVE_PARALLELISM, String.valueOf(parallelism));
+
+        try {
+            ActorRef archiver = actorSystem.actorOf(Props.create(TestLogArchiver.class, output.toPath(),
+                    Paths.get("build/tmp")));
+            archiver.tell(LogArchiver.START_ARCHIVING, ActorRef.noSender());
+            TestLogArchiver.waitForArchiveSuccessful();
+
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (getNumberOfRecords(false) > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            actorSystem.stop(archiver);
+        } finally {
+            System.clearProperty(MessageLogProperties.ARCHIVE_PARALLELISM);
+        }
+
+        assertEquals(0, getNumberOfRecords(false));
+
+        File[] archives = output.listFiles((dir, name) -> name.endsWith(".zip"));
+        assertNotNull(archives);
+        assertEquals(1, archives.length);
+
+        return new ArchiveContents(archives[0], getArchivedFlags(), getLastHashStepInDatabase());
+    }
+
+    private static Map<Long, Boolean> getArchivedFlags() throws Exception {
+        return doInTransaction(session -> {
+            Map<Long, Boolean> flags = new TreeMap<>();
+            for (Object row : session.createQuery("select r.id, r.archived from AbstractLogRecord r").list()) {
+                Object[] columns = (Object[]) row;
+                flags.put((Long) columns[0], (Boolean) columns[1]);
+            }
+            return flags;
+        });
+    }
+
+    /**
+     * Contents of a log archive file. The random parts of the container names are removed.
+     */
+    private static final class ArchiveContents {
+        private final List<String> containerNames = new ArrayList<>();
+        private final List<Map<String, String>> containers = new ArrayList<>();
+        private final List<byte[]> containerBytes = new ArrayList<>();
+
+        private String linkingInfoHeader;
+        private final List<String> linkingInfoFiles = new ArrayList<>();
+        private final List<String> linkingInfoDigests = new ArrayList<>();
+
+        private final Map<Long, Boolean> archived;
+        private final String lastDigestInDatabase;
+
+        ArchiveContents(File archive, Map<Long, Boolean> archived, String lastDigestInDatabase) throws Exception {
+            this.archived = archived;
+            this.lastDigestInDatabase = lastDigestInDatabase;
+
+            try (ZipFile zip = new ZipFile(archive)) {
+                for (ZipEntry entry : Collections.list(zip.entries())) {
+                    byte[] bytes;
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        bytes = IOUtils.toByteArray(in);
+                    }
+
+                    if ("linkinginfo".equals(entry.getName())) {
+                        readLinkingInfo(new String(bytes, StandardCharsets.UTF_8));
+                    } else {
+                        containerNames.add(withoutRandom(entry.getName()));
+                        containers.add(readContainer(bytes));
+                        containerBytes.add(bytes);
+                    }
+                }
+            }
+        }
+
+        void assertLinkingInfoDigests() throws Exception {
+            String hashAlg = MessageLogProperties.getHashAlg();
+            String digest = LAST_DIGEST;
+
+            assertEquals(containerBytes.size(), linkingInfoDigests.size());
+
+            for (int i = 0; i < containerBytes.size(); i++) {
+                digest = hexDigest(hashAlg, (digest + encodeHex(calculateDigest(hashAlg, containerBytes.get(i))))
+                        .getBytes(StandardCharsets.UTF_8));
+                assertEquals(digest, linkingInfoDigests.get(i));
+            }
+
+            assertEquals(digest, lastDigestInDatabase);
+        }
+
+        private void readLinkingInfo(String linkingInfo) {
+            String[] lines = linkingInfo.split("\n");
+            linkingInfoHeader = lines[0];
+
+            for (int i = 1; i < lines.length; i++) {
+                String[] parts = lines[i].split(" ", 2);
+                linkingInfoDigests.add(parts[0]);
+                linkingInfoFiles.add(withoutRandom(parts[1]));
+            }
+        }
+
+        private static Map<String, String> readContainer(byte[] bytes) throws Exception {
+            Map<String, String> entries = new LinkedHashMap<>();
+
+            try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+                ZipEntry entry;
+                while ((entry = in.getNextEntry()) != null) {
+                    entries.put(entry.getName(), new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8));
+                }
+            }
+
+            return entries;
+        }
+
+        private static String withoutRandom(String containerName) {
+            return containerName.replaceAll("-\\w+\\.asice$", ".asice");
+        }
+    }
+
     private static int getNumberOfRecords(final boolean archived) throws Exception {
         return doInTransaction(session -> {
             final CriteriaBuilder cb = session.getCriteriaBuilder();
@@ -0,0 +1,200 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.messagelog.TestUtil.assertTaskQueueSize;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.cleanUpDatabase;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.createMessage;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.createSignature;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.initForTest;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests group committing of message records.
+ */
+public class MessageRecordGroupWriterTest {
+
+    private static final int RECORD_COUNT = 25;
+    private static final int GROUP_SIZE = 10;
+
+    private MessageRecordGroupWriter writer;
+
+    @Before
+    public void setUp() {
+        initForTest();
+        writer = new MessageRecordGroupWriter(GROUP_SIZE, 5);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        writer.stop();
+        cleanUpDatabase();
+    }
+
+    /**
+     * Submits records concurrently and checks that every record is committed when its future completes.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void savesConcurrentlySubmittedRecords() throws Exception {
+        List<CompletableFuture<MessageRecord>> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            MessageRecord record = createRecord("group" + i);
+            CompletableFuture<MessageRecord> result = new CompletableFuture<>();
+            results.add(result);
+
+            Thread thread = new Thread(() -> writer.submit(record).whenComplete((r, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(r);
+                }
+            }));
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (CompletableFuture<MessageRecord> result : results) {
+            assertNotNull(result.get(10, TimeUnit.SECONDS).getId());
+        }
+
+        assertTaskQueueSize(RECORD_COUNT);
+    }
+
+    /**
+     * Checks that records submitted after the writer has been stopped are failed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void failsRecordsAfterStop() throws Exception {
+        writer.stop();
+
+        try {
+            writer.submit(createRecord("stopped")).get(10, TimeUnit.SECONDS);
+            fail("Record should not be saved after the writer has been stopped");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * Checks that a record that cannot be saved fails alone and the rest of its group is committed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void failsOnlyRecordThatCannotBeSaved() throws Exception {
+        List<CompletableFuture<MessageRecord>> results = new ArrayList<>();
+
+        for (int i = 0; i < GROUP_SIZE; i++) {
+            results.add(writer.submit(createRecord("good" + i)));
+        }
+
+        // exceeds the length of the query id column
+        CompletableFuture<MessageRecord> bad = writer.submit(createRecord(StringUtils.repeat('x', 300)));
+
+        for (CompletableFuture<MessageRecord> result : results) {
+            assertNotNull(result.get(10, TimeUnit.SECONDS).getId());
+        }
+
+        try {
+            bad.get(10, TimeUnit.SECONDS);
+            fail("Record with too long query id should not be saved");
+        } catch (ExecutionException expected) {
+            // expected
+        }
+
+        assertTaskQueueSize(GROUP_SIZE);
+    }
+
+    /**
+     * Checks that every record submitted while the writer is being stopped is either saved or failed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void completesRecordsSubmittedDuringStop() throws Exception {
+        List<CompletableFuture<MessageRecord>> results = new ArrayList<>();
+        List<MessageRecord> records = new ArrayList<>();
+
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            records.add(createRecord("stopping" + i));
+        }
+
+        Thread submitter = new Thread(() -> {
+            for (MessageRecord record : records) {
+                synchronized (results) {
+                    results.add(writer.submit(record));
+                }
+            }
+        });
+
+        submitter.start();
+        writer.stop();
+        submitter.join();
+
+        synchronized (results) {
+            for (CompletableFuture<MessageRecord> result : results) {
+                try {
+                    result.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException expected) {
+                    assertTrue(expected.getCause() instanceof IllegalStateException);
+                }
+            }
+        }
+    }
+
+    private static MessageRecord createRecord(String queryId) throws Exception {
+        SoapMessageImpl message = createMessage(queryId);
+        String signatureXml = createSignature().getSignatureXml();
+
+        MessageRecord record = new MessageRecord(message, signatureXml, message.getClient(), null);
+        record.setTime(System.currentTimeMillis());
+        record.setSignatureHash(LogManager.signatureHash(signatureXml));
+
+        return record;
+    }
+}
@@ -33,6 +33,8 @@ import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampToken;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.proxy.messagelog.TimestamperUtil.getTimestampResponse;
 
@@ -40,6 +42,8 @@ class TestTimestamperWorker extends TimestamperWorker {
 
     private static volatile Boolean shouldFail;
 
+    private static volatile CountDownLatch concurrentRequests = new CountDownLatch(0);
+
     TestTimestamperWorker(List<String> tspUrls) {
         super(tspUrls);
     }
@@ -48,6 +52,22 @@ class TestTimestamperWorker extends TimestamperWorker {
         TestTimestamperWorker.shouldFail = failureExpected;
     }
 
+    /**
+     * Makes the next time-stamp requests wait until the given number of requests are in progress at the same time.
+     */
+    public static void expectConcurrentRequests(int count) {
+        TestTimestamperWorker.concurrentRequests = new CountDownLatch(count);
+    }
+
+    private static void awaitConcurrentRequests() throws InterruptedException {
+        CountDownLatch latch = concurrentRequests;
+        latch.countDown();
+
+        if (!latch.await(5, TimeUnit.SECONDS)) {
+            throw new RuntimeException("time-stamp requests were not made concurrently");
+        }
+    }
+
     @Override
     protected AbstractTimestampRequest createSingleTimestampRequest(Long logRecord) {
         return new SingleTimestampRequest(logRecord) {
@@ -61,6 +81,8 @@ class TestTimestamperWorker extends TimestamperWorker {
                         throw new RuntimeException("time-stamping failed");
                     }
                 }
+                awaitConcurrentRequests();
+
                 TsRequest req = DummyTSP.makeRequest(tsRequest);
 
                 TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
@@ -92,6 +114,8 @@ class TestTimestamperWorker extends TimestamperWorker {
                         throw new RuntimeException("time-stamping failed");
                     }
                 }
+                awaitConcurrentRequests();
+
                 TsRequest req = DummyTSP.makeRequest(tsRequest);
 
                 TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
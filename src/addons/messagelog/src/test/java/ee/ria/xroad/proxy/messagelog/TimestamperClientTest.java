@@ -0,0 +1,175 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampSucceeded;
+
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the time-stamping client against local time-stamping providers.
+ */
+public class TimestamperClientTest {
+
+    private static final long SLOW_PROVIDER_DELAY_MILLIS = 10000;
+
+    private DummyTspServer first;
+    private DummyTspServer second;
+
+    /**
+     * Starts the time-stamping providers.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        first = new DummyTspServer();
+        first.start();
+
+        second = new DummyTspServer();
+        second.start();
+    }
+
+    /**
+     * Stops the time-stamping providers.
+     * @throws Exception in case of any unexpected errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty(MessageLogProperties.TIMESTAMPER_CLIENT_HEDGE_DELAY);
+
+        first.stop();
+        second.stop();
+    }
+
+    /**
+     * Consecutive requests to a provider reuse the same connection.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void reusesConnections() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(first.getUrl(), timestamp(first.getUrl()).getUrl());
+        }
+
+        assertEquals(5, first.getRequestCount());
+        assertEquals(1, first.getConnectionCount());
+    }
+
+    /**
+     * A request that is not answered within the hedge delay is sent to the next provider as well, and the first
+     * answer is used.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void hedgesSlowProvider() throws Exception {
+        System.setProperty(MessageLogProperties.TIMESTAMPER_CLIENT_HEDGE_DELAY, "100");
+        first.setDelayMillis(SLOW_PROVIDER_DELAY_MILLIS);
+
+        long start = System.currentTimeMillis();
+
+        assertEquals(second.getUrl(), timestamp(first.getUrl(), second.getUrl()).getUrl());
+        assertTrue(System.currentTimeMillis() - start < SLOW_PROVIDER_DELAY_MILLIS);
+        assertEquals(1, first.getRequestCount());
+        assertEquals(1, second.getRequestCount());
+    }
+
+    /**
+     * The next provider is not asked as long as the first one answers within the hedge delay.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void doesNotHedgeFastProvider() throws Exception {
+        System.setProperty(MessageLogProperties.TIMESTAMPER_CLIENT_HEDGE_DELAY, "5000");
+
+        assertEquals(first.getUrl(), timestamp(first.getUrl(), second.getUrl()).getUrl());
+        assertEquals(0, second.getRequestCount());
+    }
+
+    /**
+     * Without hedging the next provider is asked when the previous one fails.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void failsOverToNextProvider() throws Exception {
+        System.setProperty(MessageLogProperties.TIMESTAMPER_CLIENT_HEDGE_DELAY, "0");
+        first.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+
+        assertEquals(second.getUrl(), timestamp(first.getUrl(), second.getUrl()).getUrl());
+        assertEquals(1, first.getRequestCount());
+        assertEquals(1, second.getRequestCount());
+    }
+
+    /**
+     * Time-stamping fails when none of the providers answers.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test(expected = RuntimeException.class)
+    public void failsWhenAllProvidersFail() throws Exception {
+        first.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        second.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+
+        timestamp(first.getUrl(), second.getUrl());
+    }
+
+    private static TimestampSucceeded timestamp(String... tspUrls) throws Exception {
+        return (TimestampSucceeded) new TestTimestampRequest().execute(Arrays.asList(tspUrls));
+    }
+
+    private static final class TestTimestampRequest extends AbstractTimestampRequest {
+
+        TestTimestampRequest() {
+            super(new Long[] {1L});
+        }
+
+        @Override
+        byte[] getRequestData() {
+            return "data".getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        Timestamper.TimestampResult result(TimeStampResponse tsResponse, String url) {
+            return new TimestampSucceeded(logRecords, null, null, null, url);
+        }
+
+        @Override
+        protected void verify(TimeStampRequest request, TimeStampResponse response) {
+            // the providers answer with a prepared response that does not match the request
+        }
+    }
+}
@@ -30,7 +30,6 @@ import ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonHttpClient;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
-import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
 import ee.ria.xroad.common.util.JsonUtils;
 import ee.ria.xroad.common.util.TimeUtils;
 
@@ -38,6 +37,9 @@ import akka.actor.ActorRef;
 import akka.actor.Cancellable;
 import akka.actor.Props;
 import com.google.gson.Gson;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
@@ -45,10 +47,14 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.net.NetworkInterface;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static java.net.NetworkInterface.getNetworkInterfaces;
@@ -57,7 +63,10 @@ import static java.util.Collections.list;
 /**
  * Operational monitoring buffer. This buffer is used for gathering
  * operational data and for periodically sending the data to the operational
- * monitoring daemon (using OpMonitoringDaemonSender).
+ * monitoring daemon (using OpMonitoringDaemonSender). The records are kept in
+ * a memory-mapped record log, so that they survive restarts and bursts do not
+ * grow the heap. Several messages can be in flight at the same time, one per
+ * sender actor.
  */
 @Slf4j
 public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
@@ -70,6 +79,8 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
     private static final int MAX_RECORDS_IN_MESSAGE =
             OpMonitoringSystemProperties.getOpMonitorBufferMaxRecordsInMessage();
+    private static final int MAX_MESSAGES_IN_FLIGHT =
+            OpMonitoringSystemProperties.getOpMonitorBufferMaxMessagesInFlight();
     private static final long SENDING_INTERVAL_SECONDS =
             OpMonitoringSystemProperties.getOpMonitorBufferSendingIntervalSeconds();
 
@@ -83,28 +94,17 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
     private Cancellable tick;
 
-    final Map<Long, OpMonitoringData> buffer =
-            new LinkedHashMap<Long, OpMonitoringData>() {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    boolean overflow = size() > MAX_BUFFER_SIZE;
+    private final OpMonitoringRecordLog recordLog;
 
-                    if (overflow) {
-                        log.warn("Operational monitoring buffer overflow, removing eldest record: {}", eldest.getKey());
-                    }
+    // messages read from the record log but not yet committed, in the order of the log
+    private final Deque<Message> messages = new ArrayDeque<>();
 
-                    return overflow;
-                }
-            };
-
-    private long bufferIndex = 0;
+    private final Map<ActorRef, Message> messagesInFlight = new HashMap<>();
 
-    private final Set<Long> processedBufferIndices = new HashSet<>();
+    private final Deque<ActorRef> idleSenders = new ArrayDeque<>();
 
     private final CloseableHttpClient httpClient;
 
-    private final ActorRef sender;
-
     private static String ipAddress;
 
     /**
@@ -115,22 +115,35 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         if (ignoreOpMonitoringData()) {
             log.info("Operational monitoring buffer is switched off, no operational monitoring data is stored");
 
+            recordLog = null;
             httpClient = null;
-            sender = null;
         } else {
+            recordLog = createRecordLog();
             httpClient = createHttpClient();
-            sender = createSender();
+            idleSenders.addAll(createSenders());
         }
     }
 
+    OpMonitoringRecordLog createRecordLog() throws Exception {
+        return new OpMonitoringRecordLog(Paths.get(OpMonitoringSystemProperties.getOpMonitorBufferPath()),
+                OpMonitoringSystemProperties.getOpMonitorBufferSegmentSize(),
+                OpMonitoringSystemProperties.getOpMonitorBufferMaxSegments());
+    }
+
     CloseableHttpClient createHttpClient() throws Exception {
-        return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(), 1, 1,
-                CLIENT_CONNECTION_TIMEOUT_MILLISECONDS, CLIENT_SOCKET_TIMEOUT_MILLISECONDS);
+        return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(), MAX_MESSAGES_IN_FLIGHT,
+                MAX_MESSAGES_IN_FLIGHT, CLIENT_CONNECTION_TIMEOUT_MILLISECONDS, CLIENT_SOCKET_TIMEOUT_MILLISECONDS);
     }
 
-    ActorRef createSender() {
-        return getContext().system().actorOf(Props.create(OpMonitoringDaemonSender.class, httpClient),
-                OP_MONITORING_DAEMON_SENDER);
+    List<ActorRef> createSenders() {
+        List<ActorRef> senders = new ArrayList<>();
+
+        for (int i = 0; i < MAX_MESSAGES_IN_FLIGHT; i++) {
+            senders.add(getContext().system().actorOf(Props.create(OpMonitoringDaemonSender.class, httpClient),
+                    OP_MONITORING_DAEMON_SENDER + i));
+        }
+
+        return senders;
     }
 
     @Override
@@ -141,64 +154,94 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
         data.setSecurityServerInternalIp(getIpAddress());
 
-        buffer.put(getNextBufferIndex(), data);
+        recordLog.append(GSON.toJson(data.getData()).getBytes(StandardCharsets.UTF_8));
 
         send();
     }
 
     @Override
     protected void send() throws Exception {
-        if (!canSend()) {
+        if (ignoreOpMonitoringData()) {
             return;
         }
 
-        String json = prepareMonitoringMessage();
+        while (!idleSenders.isEmpty()) {
+            Message message = getNextMessage();
 
-        sender.tell(json, getSelf());
-    }
+            if (message == null) {
+                return;
+            }
 
-    private boolean canSend() {
-        return !buffer.isEmpty() && processedBufferIndices.isEmpty();
-    }
+            ActorRef sender = idleSenders.poll();
 
-    private String prepareMonitoringMessage() {
-        StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
+            message.setInFlight(true);
+            messagesInFlight.put(sender, message);
 
-        for (Map.Entry<Long, OpMonitoringData> entry : buffer.entrySet()) {
-            processedBufferIndices.add(entry.getKey());
-            request.addRecord(entry.getValue().getData());
+            sender.tell(message.getRecords(), getSelf());
+        }
+    }
 
-            if (request.getRecords().size() == MAX_RECORDS_IN_MESSAGE) {
-                break;
+    private Message getNextMessage() {
+        // resend the messages that failed before reading new records
+        for (Message message : messages) {
+            if (!message.isInFlight() && !message.isDelivered()) {
+                return message;
             }
         }
 
-        log.debug("Op monitoring buffer records count: {}", buffer.size());
+        List<byte[]> records = recordLog.read(MAX_RECORDS_IN_MESSAGE);
 
-        return GSON.toJson(request);
+        if (records.isEmpty()) {
+            return null;
+        }
+
+        log.debug("Op monitoring buffer sending {} records", records.size());
+
+        Message message = new Message(new OpMonitoringDaemonSender.Records(records), recordLog.getReadPosition());
+        messages.add(message);
+
+        return message;
     }
 
     @Override
     protected void sendingSuccess() throws Exception {
-        processedBufferIndices.forEach(buffer::remove);
-        processedBufferIndices.clear();
+        Message message = messagesInFlight.remove(getSender());
+
+        if (message == null) {
+            return;
+        }
+
+        idleSenders.add(getSender());
+
+        message.setInFlight(false);
+        message.setDelivered(true);
+
+        OpMonitoringRecordLog.Position delivered = null;
 
-        if (canSend()) {
-            send();
+        while (!messages.isEmpty() && messages.peek().isDelivered()) {
+            delivered = messages.poll().getEnd();
         }
+
+        if (delivered != null) {
+            recordLog.commit(delivered);
+        }
+
+        send();
     }
 
     @Override
     protected void sendingFailure() throws Exception {
-        processedBufferIndices.clear();
+        Message message = messagesInFlight.remove(getSender());
 
-        // Do not worry, scheduled sending retries..
-    }
+        if (message == null) {
+            return;
+        }
 
-    long getNextBufferIndex() {
-        bufferIndex = bufferIndex == Long.MAX_VALUE ? 0 : bufferIndex + 1;
+        idleSenders.add(getSender());
 
-        return bufferIndex;
+        message.setInFlight(false);
+
+        // Do not worry, scheduled sending retries..
     }
 
     private void scheduleSendMonitoringData() {
@@ -265,4 +308,18 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private static boolean isNonLoopback(NetworkInterface ni) {
         return !ni.isLoopback() && ni.isUp();
     }
+
+    /**
+     * Message sent to the operational monitoring daemon. Once all the messages
+     * before it have been delivered, the record log is committed up to its end.
+     */
+    @Getter
+    @Setter
+    @RequiredArgsConstructor
+    private static final class Message {
+        private final OpMonitoringDaemonSender.Records records;
+        private final OpMonitoringRecordLog.Position end;
+        private boolean inFlight;
+        private boolean delivered;
+    }
 }
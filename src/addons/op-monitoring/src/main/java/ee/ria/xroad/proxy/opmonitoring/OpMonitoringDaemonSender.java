@@ -29,13 +29,13 @@ import ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonEndpoints;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataStream;
 import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.common.util.JsonUtils;
 import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.common.util.TimeUtils;
 
-import akka.actor.ActorRef;
 import akka.actor.UntypedAbstractActor;
 import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
@@ -43,15 +43,27 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
 
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_ERROR;
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_OK;
 
 /**
  * Actor for sending operational data to the operational monitoring daemon. This actor is used by the
- * OpMonitoringBuffer class for periodically forwarding operational data gathered in the buffer.
+ * OpMonitoringBuffer class for periodically forwarding operational data gathered in the buffer. The buffer uses
+ * several senders to have multiple messages in flight, so the replies identify the sender.
+ * <p>
+ * The records are sent in JSON until the daemon announces support for the length-prefixed format of
+ * StoreOpMonitoringDataStream in its response.
  */
 @Slf4j
 public class OpMonitoringDaemonSender extends UntypedAbstractActor {
@@ -64,6 +76,9 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
     private static final int SOCKET_TIMEOUT_MILLISECONDS = TimeUtils.secondsToMillis(
             OpMonitoringSystemProperties.getOpMonitorBufferSocketTimeoutSeconds());
 
+    // shared by the senders, all of them send to the same daemon
+    private static volatile boolean recordStreamAccepted;
+
     private CloseableHttpClient httpClient;
 
     OpMonitoringDaemonSender(CloseableHttpClient httpClient) {
@@ -72,13 +87,13 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
 
     @Override
     public void onReceive(Object message) throws Exception {
-        if (message instanceof String) {
-            String json = (String) message;
+        if (message instanceof Records) {
+            Records records = (Records) message;
 
-            log.trace("onReceive: {}", json);
+            log.trace("onReceive: {} records", records.size());
 
             try {
-                send(json);
+                send(records);
                 success();
             } catch (Exception e) {
                 log.error("Sending operational monitoring data failed", e);
@@ -91,19 +106,28 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
     }
 
     private void success() {
-        getSender().tell(AbstractOpMonitoringBuffer.SENDING_SUCCESS, ActorRef.noSender());
+        getSender().tell(AbstractOpMonitoringBuffer.SENDING_SUCCESS, getSelf());
     }
 
     private void failure() {
-        getSender().tell(AbstractOpMonitoringBuffer.SENDING_FAILURE, ActorRef.noSender());
+        getSender().tell(AbstractOpMonitoringBuffer.SENDING_FAILURE, getSelf());
     }
 
-    private void send(String json) throws Exception {
+    private void send(Records records) throws Exception {
         try (HttpSender sender = new HttpSender(httpClient)) {
             sender.setConnectionTimeout(CONNECTION_TIMEOUT_MILLISECONDS);
             sender.setSocketTimeout(SOCKET_TIMEOUT_MILLISECONDS);
 
-            sender.doPost(getAddress(), json, MimeTypes.JSON);
+            if (recordStreamAccepted) {
+                byte[] content = records.toRecordStream();
+
+                sender.doPost(getAddress(), new ByteArrayInputStream(content), content.length,
+                        StoreOpMonitoringDataStream.CONTENT_TYPE);
+            } else {
+                sender.doPost(getAddress(), records.toJson(), MimeTypes.JSON);
+            }
+
+            recordStreamAccepted = isRecordStreamAccepted(sender.getResponseHeaders());
 
             String responseJson = IOUtils.toString(sender.getResponseContent(), MimeUtils.UTF8);
             StoreOpMonitoringDataResponse response;
@@ -129,9 +153,52 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
         }
     }
 
+    private static boolean isRecordStreamAccepted(Map<String, String> responseHeaders) {
+        return responseHeaders.entrySet().stream()
+                .filter(header -> StoreOpMonitoringDataStream.ACCEPT_POST.equalsIgnoreCase(header.getKey()))
+                .anyMatch(header -> StoreOpMonitoringDataStream.isAccepted(header.getValue()));
+    }
+
     private URI getAddress() throws URISyntaxException {
         return new URI(OpMonitoringSystemProperties.getOpMonitorDaemonScheme(), null,
                 OpMonitoringSystemProperties.getOpMonitorHost(), OpMonitoringSystemProperties.getOpMonitorPort(),
                 OpMonitoringDaemonEndpoints.STORE_DATA_PATH, null, null);
     }
+
+    /**
+     * Operational monitoring records to be sent in a single message. Each record is the JSON representation of
+     * the operational monitoring data in UTF-8.
+     */
+    static final class Records {
+        private final List<byte[]> records;
+
+        Records(List<byte[]> records) {
+            this.records = Collections.unmodifiableList(records);
+        }
+
+        int size() {
+            return records.size();
+        }
+
+        // assembled as StoreOpMonitoringDataRequest would be serialized
+        String toJson() {
+            StringJoiner json = new StringJoiner(",", "{\"records\":[", "]}");
+
+            for (byte[] record : records) {
+                json.add(new String(record, StandardCharsets.UTF_8));
+            }
+
+            return json.toString();
+        }
+
+        byte[] toRecordStream() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            for (byte[] record : records) {
+                StoreOpMonitoringDataStream.writeRecord(out, record);
+            }
+
+            return out.toByteArray();
+        }
+    }
 }
@@ -0,0 +1,324 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append-only log of serialized operational monitoring records. The records are written to fixed size
+ * memory-mapped segment files. The position up to which the records have been delivered is kept in a
+ * checkpoint file, so that undelivered records survive restarts of the proxy. Disk usage is bounded by the
+ * maximum number of segments, in case it is exceeded the oldest segment is dropped.
+ * <p>
+ * Each record is stored as a 4-byte length followed by the record bytes. A zero length marks the end of the
+ * records in a segment. The log is not thread-safe, it is meant to be used by the owning actor only.
+ */
+@Slf4j
+class OpMonitoringRecordLog {
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+    private static final int CHECKPOINT_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private final MappedByteBuffer checkpoint;
+
+    private Position committed;
+    private Position read;
+    private int writeOffset;
+
+    /**
+     * Opens the log in the given directory and recovers the records that have not been committed yet.
+     * @param directory directory of the segment files
+     * @param segmentSize size of a segment file in bytes
+     * @param maxSegments maximum number of segment files
+     * @throws IOException if an I/O error occurs
+     */
+    OpMonitoringRecordLog(Path directory, int segmentSize, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(maxSegments, 2);
+
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.put(getSegmentId(file), map(file, Math.max(Files.size(file), LENGTH_BYTES)));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            segments.put(0L, map(getSegmentFile(0), segmentSize));
+        }
+
+        checkpoint = map(directory.resolve(CHECKPOINT_FILE), CHECKPOINT_BYTES);
+
+        committed = new Position(checkpoint.getLong(0), checkpoint.getInt(Long.BYTES));
+
+        if (!segments.containsKey(committed.getSegmentId())) {
+            committed = new Position(segments.firstKey(), 0);
+        }
+
+        deleteSegmentsBefore(committed.getSegmentId());
+
+        read = committed;
+        writeOffset = findEnd(segments.lastEntry().getValue(),
+                committed.getSegmentId() == segments.lastKey() ? committed.getOffset() : 0);
+
+        log.info("Operational monitoring buffer opened in {}, {} segment(s)", directory, segments.size());
+    }
+
+    /**
+     * Appends a record to the log. Starts a new segment if the record does not fit in the current one.
+     * @param record the record bytes
+     * @throws IOException if the record is larger than a segment or an I/O error occurs
+     */
+    void append(byte[] record) throws IOException {
+        if (record.length == 0 || LENGTH_BYTES + record.length > segmentSize) {
+            throw new IOException("Cannot store a record of " + record.length + " bytes in the buffer");
+        }
+
+        MappedByteBuffer segment = segments.lastEntry().getValue();
+
+        if (writeOffset + LENGTH_BYTES + record.length > segment.capacity()) {
+            segment = startSegment();
+        }
+
+        int recordOffset = writeOffset + LENGTH_BYTES;
+        int nextOffset = recordOffset + record.length;
+
+        ByteBuffer target = segment.duplicate();
+        target.position(recordOffset);
+        target.put(record);
+
+        // terminate the records before publishing the length, so that an incomplete write is never
+        // mistaken for a record
+        if (nextOffset + LENGTH_BYTES <= segment.capacity()) {
+            segment.putInt(nextOffset, 0);
+        }
+
+        segment.putInt(writeOffset, record.length);
+
+        writeOffset = nextOffset;
+    }
+
+    /**
+     * Reads the records following the previously read ones.
+     * @param maxRecords maximum number of records to read
+     * @return the records, empty list if there are no unread records
+     */
+    List<byte[]> read(int maxRecords) {
+        List<byte[]> records = new ArrayList<>();
+
+        while (records.size() < maxRecords) {
+            long segmentId = read.getSegmentId();
+            MappedByteBuffer segment = segments.get(segmentId);
+            int length = getLength(segmentId, segment, read.getOffset());
+
+            if (length > 0) {
+                byte[] record = new byte[length];
+                ByteBuffer source = segment.duplicate();
+                source.position(read.getOffset() + LENGTH_BYTES);
+                source.get(record);
+
+                records.add(record);
+                read = new Position(segmentId, read.getOffset() + LENGTH_BYTES + length);
+            } else if (segmentId < segments.lastKey()) {
+                read = new Position(segments.higherKey(segmentId), 0);
+            } else {
+                break;
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * @return position following the last record read
+     */
+    Position getReadPosition() {
+        return read;
+    }
+
+    /**
+     * Marks the records before the given position delivered. Segments containing only delivered records
+     * are deleted.
+     * @param position the position following the last delivered record
+     */
+    void commit(Position position) {
+        if (position.compareTo(committed) <= 0) {
+            return;
+        }
+
+        setCommitted(position);
+        deleteSegmentsBefore(position.getSegmentId());
+    }
+
+    private MappedByteBuffer startSegment() throws IOException {
+        long segmentId = segments.lastKey() + 1;
+        MappedByteBuffer segment = map(getSegmentFile(segmentId), segmentSize);
+
+        segments.put(segmentId, segment);
+        writeOffset = 0;
+
+        while (segments.size() > maxSegments) {
+            dropOldestSegment();
+        }
+
+        return segment;
+    }
+
+    private void dropOldestSegment() {
+        Map.Entry<Long, MappedByteBuffer> oldest = segments.firstEntry();
+        long nextSegmentId = segments.higherKey(oldest.getKey());
+
+        if (committed.getSegmentId() == oldest.getKey()) {
+            log.warn("Operational monitoring buffer overflow, dropping {} undelivered record(s)",
+                    countRecords(oldest.getValue(), committed.getOffset()));
+
+            setCommitted(new Position(nextSegmentId, 0));
+        }
+
+        if (read.getSegmentId() == oldest.getKey()) {
+            read = new Position(nextSegmentId, 0);
+        }
+
+        deleteSegmentsBefore(nextSegmentId);
+    }
+
+    private void setCommitted(Position position) {
+        committed = position;
+
+        checkpoint.putLong(0, position.getSegmentId());
+        checkpoint.putInt(Long.BYTES, position.getOffset());
+    }
+
+    private void deleteSegmentsBefore(long segmentId) {
+        while (segments.firstKey() < segmentId) {
+            long oldestId = segments.pollFirstEntry().getKey();
+
+            try {
+                Files.deleteIfExists(getSegmentFile(oldestId));
+            } catch (IOException e) {
+                log.error("Failed to delete operational monitoring buffer segment {}", oldestId, e);
+            }
+        }
+    }
+
+    private int getLength(long segmentId, ByteBuffer segment, int offset) {
+        if (segmentId == segments.lastKey() && offset >= writeOffset) {
+            return 0;
+        }
+
+        return getStoredLength(segment, offset);
+    }
+
+    private static int getStoredLength(ByteBuffer segment, int offset) {
+        if (offset + LENGTH_BYTES > segment.capacity()) {
+            return 0;
+        }
+
+        int length = segment.getInt(offset);
+
+        // treat anything not fitting in the segment as the end of the records
+        return length > 0 && length <= segment.capacity() - offset - LENGTH_BYTES ? length : 0;
+    }
+
+    private static int findEnd(ByteBuffer segment, int offset) {
+        int length;
+
+        while ((length = getStoredLength(segment, offset)) > 0) {
+            offset += LENGTH_BYTES + length;
+        }
+
+        return offset;
+    }
+
+    private static int countRecords(ByteBuffer segment, int offset) {
+        int count = 0;
+        int length;
+
+        while ((length = getStoredLength(segment, offset)) > 0) {
+            offset += LENGTH_BYTES + length;
+            count++;
+        }
+
+        return count;
+    }
+
+    private Path getSegmentFile(long segmentId) {
+        return directory.resolve(String.format("%019d%s", segmentId, SEGMENT_SUFFIX));
+    }
+
+    private static long getSegmentId(Path file) {
+        String name = file.getFileName().toString();
+
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        // the mapping stays valid after the channel has been closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Position of a record in the log.
+     */
+    @Value
+    static class Position implements Comparable<Position> {
+        long segmentId;
+        int offset;
+
+        @Override
+        public int compareTo(Position other) {
+            int result = Long.compare(segmentId, other.segmentId);
+
+            return result != 0 ? result : Integer.compare(offset, other.offset);
+        }
+    }
+}
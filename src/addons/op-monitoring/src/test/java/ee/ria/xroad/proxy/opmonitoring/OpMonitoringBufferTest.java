@@ -26,15 +26,29 @@
 package ee.ria.xroad.proxy.opmonitoring;
 
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
+import ee.ria.xroad.common.util.JsonUtils;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.testkit.TestActorRef;
+import akka.testkit.TestProbe;
+import org.apache.commons.io.FileUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer.SENDING_FAILURE;
+import static ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer.SENDING_SUCCESS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests operational monitoring buffer.
@@ -42,47 +56,104 @@ import static org.junit.Assert.assertEquals;
 public class OpMonitoringBufferTest {
     private static final ActorSystem ACTOR_SYSTEM = ActorSystem.create();
 
+    private static final Path RECORD_LOG_DIR = Paths.get("build/op-monitor-buffer");
+    private static final int SEGMENT_SIZE = 4096;
+    private static final int MAX_SEGMENTS = 4;
+
+    private static final TestProbe SENDER_1 = new TestProbe(ACTOR_SYSTEM);
+    private static final TestProbe SENDER_2 = new TestProbe(ACTOR_SYSTEM);
+
     private static class TestOpMonitoringBuffer extends OpMonitoringBuffer {
         TestOpMonitoringBuffer() throws Exception {
             super();
         }
 
         @Override
-        CloseableHttpClient createHttpClient() throws Exception {
-            return null;
+        OpMonitoringRecordLog createRecordLog() throws Exception {
+            return new OpMonitoringRecordLog(RECORD_LOG_DIR, SEGMENT_SIZE, MAX_SEGMENTS);
         }
 
         @Override
-        ActorRef createSender() {
+        CloseableHttpClient createHttpClient() throws Exception {
             return null;
         }
 
         @Override
-        protected void store(OpMonitoringData data) throws Exception {
-            buffer.put(getNextBufferIndex(), data);
+        List<ActorRef> createSenders() {
+            return Arrays.asList(SENDER_1.ref(), SENDER_2.ref());
         }
     }
 
-    @Test
-    public void bufferOverflow() throws Exception {
-        System.setProperty("xroad.op-monitor-buffer.size", "2");
-
-        final Props props = Props.create(TestOpMonitoringBuffer.class);
-        final TestActorRef<TestOpMonitoringBuffer> testActorRef =
-                TestActorRef.create(ACTOR_SYSTEM, props, "testActorRef");
-
-        TestOpMonitoringBuffer opMonitoringBuffer =
-                testActorRef.underlyingActor();
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteDirectory(RECORD_LOG_DIR.toFile());
+    }
 
-        OpMonitoringData opMonitoringData = new OpMonitoringData(
-                OpMonitoringData.SecurityServerType.CLIENT, 100);
+    @Test
+    public void pipelineMessages() throws Exception {
+        TestOpMonitoringBuffer opMonitoringBuffer = createBuffer("pipelineMessages");
+        OpMonitoringData opMonitoringData = new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 100);
 
         opMonitoringBuffer.store(opMonitoringData);
         opMonitoringBuffer.store(opMonitoringData);
         opMonitoringBuffer.store(opMonitoringData);
 
-        assertEquals(2, opMonitoringBuffer.buffer.size());
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(2L));
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(3L));
+        assertRecordsInMessage(1, SENDER_1.expectMsgClass(OpMonitoringDaemonSender.Records.class));
+        assertRecordsInMessage(1, SENDER_2.expectMsgClass(OpMonitoringDaemonSender.Records.class));
+
+        // the third record waits for an idle sender
+        SENDER_2.reply(SENDING_SUCCESS);
+
+        assertRecordsInMessage(1, SENDER_2.expectMsgClass(OpMonitoringDaemonSender.Records.class));
+
+        SENDER_2.reply(SENDING_SUCCESS);
+
+        // the first message is still in flight, nothing can be committed yet
+        assertEquals(3, countUncommittedRecords());
+
+        SENDER_1.reply(SENDING_SUCCESS);
+
+        assertEquals(0, countUncommittedRecords());
+    }
+
+    @Test
+    public void resendFailedMessage() throws Exception {
+        TestOpMonitoringBuffer opMonitoringBuffer = createBuffer("resendFailedMessage");
+
+        opMonitoringBuffer.store(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 100));
+
+        OpMonitoringDaemonSender.Records message = SENDER_1.expectMsgClass(OpMonitoringDaemonSender.Records.class);
+
+        SENDER_1.reply(SENDING_FAILURE);
+
+        assertEquals(1, countUncommittedRecords());
+
+        opMonitoringBuffer.send();
+
+        assertSame(message, SENDER_2.expectMsgClass(OpMonitoringDaemonSender.Records.class));
+
+        SENDER_2.reply(SENDING_SUCCESS);
+
+        assertEquals(0, countUncommittedRecords());
+    }
+
+    private static TestOpMonitoringBuffer createBuffer(String name) {
+        Props props = Props.create(TestOpMonitoringBuffer.class);
+        TestActorRef<TestOpMonitoringBuffer> testActorRef = TestActorRef.create(ACTOR_SYSTEM, props, name);
+
+        return testActorRef.underlyingActor();
+    }
+
+    private static void assertRecordsInMessage(int expected, OpMonitoringDaemonSender.Records records) {
+        StoreOpMonitoringDataRequest request = JsonUtils.getSerializer().fromJson(records.toJson(),
+                StoreOpMonitoringDataRequest.class);
+
+        assertEquals(expected, request.getRecords().size());
+        assertTrue(request.getRecords().get(0).containsKey("securityServerType"));
+    }
+
+    private static int countUncommittedRecords() throws Exception {
+        // a new log instance sees the committed position of the buffer's log
+        return new OpMonitoringRecordLog(RECORD_LOG_DIR, SEGMENT_SIZE, MAX_SEGMENTS).read(Integer.MAX_VALUE).size();
     }
 }
@@ -0,0 +1,100 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests operational monitoring record log.
+ */
+public class OpMonitoringRecordLogTest {
+    private static final Path RECORD_LOG_DIR = Paths.get("build/op-monitor-record-log");
+
+    // four records of 9 bytes fit in a segment
+    private static final int SEGMENT_SIZE = 64;
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteDirectory(RECORD_LOG_DIR.toFile());
+    }
+
+    @Test
+    public void recoverUncommittedRecords() throws Exception {
+        OpMonitoringRecordLog recordLog = new OpMonitoringRecordLog(RECORD_LOG_DIR, SEGMENT_SIZE, 10);
+        append(recordLog, 0, 10);
+
+        assertEquals(asList("record-00", "record-01", "record-02"), read(recordLog, 3));
+
+        recordLog.commit(recordLog.getReadPosition());
+
+        assertEquals(asList("record-03", "record-04"), read(recordLog, 2));
+
+        recordLog = new OpMonitoringRecordLog(RECORD_LOG_DIR, SEGMENT_SIZE, 10);
+
+        assertEquals(asList("record-03", "record-04", "record-05", "record-06", "record-07", "record-08",
+                "record-09"), read(recordLog, Integer.MAX_VALUE));
+
+        append(recordLog, 10, 11);
+
+        assertEquals(asList("record-10"), read(recordLog, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void dropOldestSegmentOnOverflow() throws Exception {
+        OpMonitoringRecordLog recordLog = new OpMonitoringRecordLog(RECORD_LOG_DIR, SEGMENT_SIZE, 2);
+        append(recordLog, 0, 10);
+
+        assertEquals(asList("record-04", "record-05", "record-06", "record-07", "record-08", "record-09"),
+                read(recordLog, Integer.MAX_VALUE));
+
+        recordLog.commit(recordLog.getReadPosition());
+
+        assertEquals(1, RECORD_LOG_DIR.toFile().list((dir, name) -> name.endsWith(".segment")).length);
+    }
+
+    private static void append(OpMonitoringRecordLog recordLog, int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            recordLog.append(String.format("record-%02d", i).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<String> read(OpMonitoringRecordLog recordLog, int maxRecords) {
+        return recordLog.read(maxRecords).stream()
+                .map(record -> new String(record, StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+    }
+}
@@ -52,10 +52,21 @@ public final class MessageLogProperties {
 
     private static final int DEFAULT_TIMESTAMPER_CLIENT_READ_TIMEOUT = 60000;
 
+    private static final int DEFAULT_TIMESTAMPER_CLIENT_HEDGE_DELAY = 5000;
+
+    private static final int DEFAULT_TIMESTAMPER_CLIENT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    private static final int DEFAULT_TIMESTAMP_BATCHES_IN_FLIGHT = 4;
+
     private static final int DEFAULT_TIMESTAMP_RETRY_DELAY = 60;
 
     private static final int DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE = 10000;
     private static final int DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE = 10000;
+    private static final int DEFAULT_ARCHIVE_PARALLELISM = 1;
+    private static final int DEFAULT_LOGRECORD_PARTITION_DAYS = 0;
+
+    private static final int DEFAULT_GROUP_COMMIT_MAX_RECORDS = 100;
+    private static final int DEFAULT_GROUP_COMMIT_MAX_DELAY = 5;
 
     private static final long DEFAULT_MAX_LOGGABLE_MESSAGE_BODY_SIZE = 10 * 1024 * 1024;
     private static final long MAX_LOGGABLE_MESSAGE_BODY_SIZE_LIMIT = 1024 * 1024 * 1024;
@@ -68,10 +79,23 @@ public final class MessageLogProperties {
     /** Property name of the timestamper client read timeout (milliseconds). */
     public static final String TIMESTAMPER_CLIENT_READ_TIMEOUT = PREFIX + "timestamper-client-read-timeout";
 
+    /**
+     * Property name of the delay (milliseconds) after which a time-stamp request is also sent to the next
+     * time-stamping provider
+     */
+    public static final String TIMESTAMPER_CLIENT_HEDGE_DELAY = PREFIX + "timestamper-client-hedge-delay";
+
+    /** Property name of the maximum number of pooled connections to one time-stamping provider */
+    public static final String TIMESTAMPER_CLIENT_MAX_CONNECTIONS_PER_ROUTE =
+            PREFIX + "timestamper-client-max-connections-per-route";
+
     public static final String TIMESTAMP_IMMEDIATELY = PREFIX + "timestamp-immediately";
 
     public static final String TIMESTAMP_RECORDS_LIMIT = PREFIX + "timestamp-records-limit";
 
+    /** Property name of the maximum number of time-stamping batches in progress at the same time */
+    public static final String TIMESTAMP_BATCHES_IN_FLIGHT = PREFIX + "timestamp-batches-in-flight";
+
     /** Property name of the timestamp retry delay (seconds). */
     public static final String TIMESTAMP_RETRY_DELAY = PREFIX + "timestamp-retry-delay";
 
@@ -87,12 +111,27 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_TRANSACTION_BATCH = PREFIX + "archive-transaction-batch";
 
+    /** Property name of the number of threads preparing ASiC containers for the log archive */
+    public static final String ARCHIVE_PARALLELISM = PREFIX + "archive-parallelism";
+
     public static final String CLEAN_INTERVAL = PREFIX + "clean-interval";
 
     private static final String CLEAN_TRANSACTION_BATCH = "clean-transaction-batch";
 
+    /** Property name of the length (days) of the time partitions of the log record table */
+    public static final String LOGRECORD_PARTITION_DAYS = PREFIX + "logrecord-partition-days";
+
     public static final String HASH_ALGO_ID = PREFIX + "hash-algo-id";
 
+    /** Property name for toggling group commit of message records on/off */
+    public static final String GROUP_COMMIT_ENABLED = PREFIX + "group-commit-enabled";
+
+    /** Property name of the maximum number of message records saved in one group commit */
+    public static final String GROUP_COMMIT_MAX_RECORDS = PREFIX + "group-commit-max-records";
+
+    /** Property name of the maximum time (milliseconds) a message record waits for other records to commit with */
+    public static final String GROUP_COMMIT_MAX_DELAY = PREFIX + "group-commit-max-delay";
+
     public static final String ARCHIVE_TRANSFER_COMMAND = PREFIX + "archive-transfer-command";
 
     /**
@@ -104,6 +143,9 @@ public final class MessageLogProperties {
     /** Property name for toggling message body logging on/off **/
     public static final String MESSAGE_BODY_LOGGING_ENABLED = PREFIX + "message-body-logging";
 
+    /** Property name for toggling compressed storage of logged message bodies on/off **/
+    public static final String MESSAGE_BODY_COMPRESSION_ENABLED = PREFIX + "message-body-compression";
+
     /** Prefix for enable-overriding message body logging **/
     private static final String MESSAGE_BODY_LOGGING_ENABLE = PREFIX + "enabled-body-logging";
 
@@ -149,6 +191,24 @@ public final class MessageLogProperties {
                 DEFAULT_TIMESTAMPER_CLIENT_READ_TIMEOUT);
     }
 
+    /**
+     * @return the delay in milliseconds after which a time-stamp request that has not been answered yet is also
+     * sent to the next time-stamping provider. The first answer is used. A delay of zero disables hedging, the next
+     * provider is then tried only after the previous one has failed. '5000' by default.
+     */
+    public static int getTimestamperClientHedgeDelay() {
+        return getInt(System.getProperty(TIMESTAMPER_CLIENT_HEDGE_DELAY),
+                DEFAULT_TIMESTAMPER_CLIENT_HEDGE_DELAY);
+    }
+
+    /**
+     * @return the maximum number of pooled keep-alive connections to one time-stamping provider, '20' by default.
+     */
+    public static int getTimestamperClientMaxConnectionsPerRoute() {
+        return getInt(System.getProperty(TIMESTAMPER_CLIENT_MAX_CONNECTIONS_PER_ROUTE),
+                DEFAULT_TIMESTAMPER_CLIENT_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
     /**
      * @return the timestamp retry delay in seconds. A retry delay of zero is
      * interpreted as retry delay is disabled. '60' by default.
@@ -173,6 +233,15 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(TIMESTAMP_RECORDS_LIMIT), DEFAULT_TIMESTAMP_RECORDS_LIMIT);
     }
 
+    /**
+     * @return the maximum number of time-stamping batches in progress at the same time. The records of a batch in
+     * progress are not included in the next batches. '4' by default.
+     */
+    public static int getTimestampBatchesInFlight() {
+        return Math.max(1, getInt(System.getProperty(TIMESTAMP_BATCHES_IN_FLIGHT),
+                DEFAULT_TIMESTAMP_BATCHES_IN_FLIGHT));
+    }
+
     /**
      * @return the time period in seconds, how long is time-stamping allowed to be failed before message log stops
      * accepting any more messages.
@@ -182,6 +251,28 @@ public final class MessageLogProperties {
                 DEFAULT_ACCEPTABLE_TIMESTAMP_FAILURE_PERIOD);
     }
 
+    /**
+     * @return true if message records logged by concurrent requests are saved to the database in shared
+     * transactions. The caller is still released only after its record has been committed.
+     */
+    public static boolean isGroupCommitEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(GROUP_COMMIT_ENABLED, "false"));
+    }
+
+    /**
+     * @return the maximum number of message records saved in one group commit.
+     */
+    public static int getGroupCommitMaxRecords() {
+        return getInt(System.getProperty(GROUP_COMMIT_MAX_RECORDS), DEFAULT_GROUP_COMMIT_MAX_RECORDS);
+    }
+
+    /**
+     * @return the maximum time in milliseconds a group commit waits for more message records to arrive.
+     */
+    public static int getGroupCommitMaxDelay() {
+        return getInt(System.getProperty(GROUP_COMMIT_MAX_DELAY), DEFAULT_GROUP_COMMIT_MAX_DELAY);
+    }
+
     /**
      * @return the time interval as Cron expression for archiving time-stamped records.
      */
@@ -196,6 +287,14 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(ARCHIVE_TRANSACTION_BATCH), DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return the number of threads preparing ASiC containers for the log archive. With 1 (the default)
+     * the containers are prepared by the archiver itself.
+     */
+    public static int getArchiveParallelism() {
+        return Math.max(1, getInt(System.getProperty(ARCHIVE_PARALLELISM), DEFAULT_ARCHIVE_PARALLELISM));
+    }
+
     /**
      * @return the time interval as Cron expression for cleaning archived records from online database.
      */
@@ -260,6 +359,13 @@ public final class MessageLogProperties {
         return "true".equalsIgnoreCase(System.getProperty(MESSAGE_BODY_LOGGING_ENABLED, "true"));
     }
 
+    /**
+     * @return true if logged messages are stored compressed in the database
+     */
+    public static boolean isMessageBodyCompressionEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(MESSAGE_BODY_COMPRESSION_ENABLED, "false"));
+    }
+
     /**
      * Returns list of remote producer subsystem ClientIds for which global SOAP body logging setting is overridden.
      *
@@ -299,6 +405,14 @@ public final class MessageLogProperties {
         return Integer.getInteger(CLEAN_TRANSACTION_BATCH, DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return the length in days of the time partitions of the log record table, 0 (the default) if the table
+     * is not partitioned. When partitioned, archived records are removed by dropping whole partitions.
+     */
+    public static int getLogRecordPartitionDays() {
+        return getInt(System.getProperty(LOGRECORD_PARTITION_DAYS), DEFAULT_LOGRECORD_PARTITION_DAYS);
+    }
+
     private static String getMessageBodyLoggingOverrideParameterName(boolean enable, boolean local) {
         String prefix = enable ? MESSAGE_BODY_LOGGING_ENABLE : MESSAGE_BODY_LOGGING_DISABLE;
         String postfix = local ? MESSAGE_BODY_LOGGING_LOCAL_PRODUCER : MESSAGE_BODY_LOGGING_REMOTE_PRODUCER;
@@ -39,10 +39,19 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Blob;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.util.CryptoUtils.MD5_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.hexDigest;
 
@@ -50,7 +59,7 @@ import static ee.ria.xroad.common.util.CryptoUtils.hexDigest;
  * A message log record.
  */
 @Slf4j
-@ToString(callSuper = true, exclude = {"attachment"})
+@ToString(callSuper = true, exclude = {"attachment", "compressedMessage"})
 @EqualsAndHashCode(callSuper = true, exclude = {"attachment"})
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 public class MessageRecord extends AbstractLogRecord {
@@ -59,10 +68,14 @@ public class MessageRecord extends AbstractLogRecord {
     @Setter
     private String queryId;
 
-    @Getter
     @Setter
     private String message;
 
+    // GZIP compressed UTF-8 bytes of the message, used instead of message
+    // when the message body is stored compressed
+    @Getter
+    private byte[] compressedMessage;
+
     @Getter
     @Setter
     private String signature;
@@ -152,9 +165,41 @@ public class MessageRecord extends AbstractLogRecord {
         this.xRequestId = xRequestId;
     }
 
+    /**
+     * @return the message, decompressed if it is stored compressed
+     */
+    public String getMessage() {
+        if (message == null && compressedMessage != null) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressedMessage))) {
+                return IOUtils.toString(in, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw translateException(e);
+            }
+        }
+
+        return message;
+    }
+
+    /**
+     * Sets the message from its UTF-8 encoded bytes. The message is stored compressed.
+     *
+     * @param messageBytes UTF-8 encoded message
+     * @throws IOException if compressing the message fails
+     */
+    public void compressMessage(byte[] messageBytes) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        try (OutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(messageBytes);
+        }
+
+        this.message = null;
+        this.compressedMessage = buffer.toByteArray();
+    }
+
     @Override
     public Object[] getLinkingInfoFields() {
-        return new Object[] {getId(), getTime(), queryId, message, signature,
+        return new Object[] {getId(), getTime(), queryId, getMessage(), signature,
                 memberClass, memberCode, subsystemCode};
     }
 
@@ -175,7 +220,7 @@ public class MessageRecord extends AbstractLogRecord {
                     timestampHashChain);
         }
 
-        return new AsicContainer(message, signatureData, timestamp,
+        return new AsicContainer(getMessage(), signatureData, timestamp,
                 (attachment != null) ? attachment.getBinaryStream() : null);
     }
 
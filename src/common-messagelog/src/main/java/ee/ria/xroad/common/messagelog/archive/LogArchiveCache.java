@@ -98,6 +98,18 @@ class LogArchiveCache implements Closeable {
         }
     }
 
+    void addPrepared(PreparedContainer container) throws Exception {
+        try {
+            validatePreparedContainer(container);
+            handleRotation();
+            updateCreationTime(new Date(container.getTime()));
+            addPreparedContainerToArchive(container);
+            updateState();
+        } catch (Exception e) {
+            handleCacheError(e);
+        }
+    }
+
     Path getArchiveFile() throws IOException {
         try {
             addLinkingInfoToArchive(archiveTmp);
@@ -158,6 +170,13 @@ class LogArchiveCache implements Closeable {
         }
     }
 
+    private void validatePreparedContainer(PreparedContainer container) {
+        if (container == null) {
+            throw new IllegalArgumentException(
+                    "Container to be archived must not be null");
+        }
+    }
+
     private void handleRotation() {
         if (state != State.ROTATING) {
             return;
@@ -166,10 +185,13 @@ class LogArchiveCache implements Closeable {
         reset();
     }
 
-    @SuppressWarnings("checkstyle:InnerAssignment")
     private void cacheRecord(MessageRecord messageRecord) throws Exception {
-        final Date creationTime = new Date(messageRecord.getTime());
+        updateCreationTime(new Date(messageRecord.getTime()));
+        addContainerToArchive(messageRecord);
+    }
 
+    @SuppressWarnings("checkstyle:InnerAssignment")
+    private void updateCreationTime(Date creationTime) {
         if (minCreationTime == null && maxCreationTime == null) {
             minCreationTime = maxCreationTime = creationTime;
         } else if (creationTime.before(minCreationTime)) {
@@ -177,7 +199,6 @@ class LogArchiveCache implements Closeable {
         } else if (creationTime.after(maxCreationTime)) {
             maxCreationTime = creationTime;
         }
-        addContainerToArchive(messageRecord);
     }
 
     private void updateState() {
@@ -209,6 +230,19 @@ class LogArchiveCache implements Closeable {
         linkingInfoBuilder.addNextFile(archiveFilename, digest.digest());
     }
 
+    private void addPreparedContainerToArchive(PreparedContainer container) throws Exception {
+        String archiveFilename =
+                nameGenerator.getArchiveFilename(container.getQueryId(),
+                        container.isResponse() ? AsicContainerNameGenerator.TYPE_RESPONSE
+                                : AsicContainerNameGenerator.TYPE_REQUEST);
+
+        archiveTmp.putNextEntry(new ZipEntry(archiveFilename));
+        container.writeTo(new EntryStream(archiveTmp));
+        archivesTotalSize += container.getSize();
+        archiveTmp.closeEntry();
+        linkingInfoBuilder.addNextFile(archiveFilename, container.getDigest());
+    }
+
     private void reset() {
         try {
             resetArchive();
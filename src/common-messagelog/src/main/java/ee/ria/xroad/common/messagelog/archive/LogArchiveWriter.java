@@ -110,6 +110,23 @@ public class LogArchiveWriter implements Closeable {
         return false;
     }
 
+    /**
+     * Write a prepared container of a message record. The message record itself is
+     * marked as archived together with its timestamp record.
+     * @param container the prepared container
+     * @return true if the a archive file was rotated
+     * @throws Exception in case of any errors
+     */
+    public boolean write(PreparedContainer container) throws Exception {
+        logArchiveCache.addPrepared(container);
+
+        if (logArchiveCache.isRotating()) {
+            rotate();
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void close() throws IOException {
         log.trace("Closing log archive writer ...");
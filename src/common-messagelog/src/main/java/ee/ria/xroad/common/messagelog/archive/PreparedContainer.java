@@ -0,0 +1,121 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import com.google.common.io.CountingOutputStream;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+
+/**
+ * ASiC container of a message record that has been serialized and digested ahead of
+ * being added to a log archive. Preparing containers is independent of the archive
+ * digest chain and can thus be done concurrently, leaving only copying the container
+ * into the archive to the (ordered) archive writer.
+ */
+@Getter
+public final class PreparedContainer implements Closeable {
+
+    private final long time;
+    private final String queryId;
+    private final boolean response;
+
+    private final byte[] digest;
+    private final long size;
+
+    @Getter(AccessLevel.NONE)
+    private final Path file;
+
+    private PreparedContainer(MessageRecord record, byte[] digest, long size, Path file) {
+        this.time = record.getTime();
+        this.queryId = record.getQueryId();
+        this.response = record.isResponse();
+        this.digest = digest;
+        this.size = size;
+        this.file = file;
+    }
+
+    /**
+     * Writes the ASiC container of the given message record to a temporary file.
+     * The message record is not referenced by the prepared container.
+     * @param record the message record
+     * @param workingDir directory where the temporary file is created
+     * @return the prepared container
+     * @throws Exception in case of any errors
+     */
+    public static PreparedContainer prepare(MessageRecord record, Path workingDir) throws Exception {
+        if (record == null) {
+            throw new IllegalArgumentException("Message record to be archived must not be null");
+        }
+
+        final Path file = Files.createTempFile(workingDir, "tmp-asic-", ".tmp");
+
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(MessageLogProperties.getHashAlg());
+
+            try (CountingOutputStream cos = new CountingOutputStream(
+                    new DigestOutputStream(Files.newOutputStream(file), digest));
+                    OutputStream bos = new BufferedOutputStream(cos)) {
+                record.toAsicContainer().write(bos);
+                bos.flush();
+
+                return new PreparedContainer(record, digest.digest(), cos.getCount(), file);
+            }
+        } catch (Exception e) {
+            FileUtils.deleteQuietly(file.toFile());
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the serialized container to the given stream.
+     * @param out the output stream
+     * @throws IOException if copying fails
+     */
+    void writeTo(OutputStream out) throws IOException {
+        Files.copy(file, out);
+    }
+
+    /**
+     * Deletes the temporary file of the container.
+     */
+    @Override
+    public void close() {
+        FileUtils.deleteQuietly(file.toFile());
+    }
+}
@@ -213,6 +213,59 @@ public class LogArchiveCacheTest {
         assertZip(expectedConflictingEntryNames(), getArchiveBytes());
     }
 
+    /**
+     * Test to ensure prepared containers are rotated like the message records they were prepared from.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void addMultiplePreparedContainersWithRotationMeanwhile() throws Exception {
+        setMaxArchiveSizeMedium();
+
+        // First container
+        try (PreparedContainer container = prepare(createRequestRecordNormal())) {
+            assertEquals(containerOfNormalSize().length, container.getSize());
+            cache.addPrepared(container);
+        }
+        assertFalse("Step 1: no need to rotate yet.", cache.isRotating());
+
+        // Second container
+        try (PreparedContainer container = prepare(createRequestRecordTooLarge())) {
+            cache.addPrepared(container);
+        }
+
+        assertTrue("Step 2: should be rotated.", cache.isRotating());
+        assertEquals(largeRequestCreationTime(), cache.getStartTime());
+        assertEquals(normalRequestCreationTime(), cache.getEndTime());
+        assertZip(expectedNormalAndLargeRequestEntryNames(), getArchiveBytes());
+
+        // Third container
+        try (PreparedContainer container = prepare(createResponseRecordNormal())) {
+            cache.addPrepared(container);
+        }
+
+        assertFalse("Step 3: new rotation.", cache.isRotating());
+        assertEquals(normalResponseCreationTime(), cache.getStartTime());
+        assertZip(expectedNormalSizeResponseEntryName(), getArchiveBytes());
+    }
+
+    /**
+     * Test to ensure null prepared containers are not allowed.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void doNotAllowNullPreparedContainers() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Container to be archived must not be null");
+
+        cache.addPrepared(null);
+    }
+
+    private PreparedContainer prepare(MessageRecord record) throws Exception {
+        return PreparedContainer.prepare(record, Paths.get("build/tmp/"));
+    }
+
     private byte[] getArchiveBytes() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         final Path archive = cache.getArchiveFile();
@@ -74,6 +74,31 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_BUFFER_CONNECTION_TIMEOUT_SECONDS =
             PREFIX + "op-monitor-buffer.connection-timeout-seconds";
 
+    /**
+     * Property name of the directory of the operational monitoring buffer segment files.
+     */
+    private static final String OP_MONITOR_BUFFER_PATH =
+            PREFIX + "op-monitor-buffer.path";
+
+    /**
+     * Property name of the size of an operational monitoring buffer segment file in bytes.
+     */
+    private static final String OP_MONITOR_BUFFER_SEGMENT_SIZE =
+            PREFIX + "op-monitor-buffer.segment-size";
+
+    /**
+     * Property name of the maximum number of operational monitoring buffer segment files.
+     */
+    private static final String OP_MONITOR_BUFFER_MAX_SEGMENTS =
+            PREFIX + "op-monitor-buffer.max-segments";
+
+    /**
+     * Property name of the maximum number of messages the operational monitoring buffer sends to the
+     * operational monitoring daemon concurrently.
+     */
+    private static final String OP_MONITOR_BUFFER_MAX_MESSAGES_IN_FLIGHT =
+            PREFIX + "op-monitor-buffer.max-messages-in-flight";
+
     // Operational monitoring service ---------------------------------------//
 
     /**
@@ -134,6 +159,12 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_HEALTH_STATISTICS_PERIOD_SECONDS =
             PREFIX + "op-monitor.health-statistics-period-seconds";
 
+    /**
+     * Property name of the number of time buckets the health statistics period is divided into.
+     */
+    private static final String OP_MONITOR_HEALTH_STATISTICS_BUCKETS =
+            PREFIX + "op-monitor.health-statistics-buckets";
+
     /**
      * Property name of the period in days for keeping operational data records in the database.
      */
@@ -158,7 +189,8 @@ public final class OpMonitoringSystemProperties {
 
     /**
      * @return the size of the operational monitoring buffer, '20000' by default. In case buffer size < 1, operational
-     * monitoring data is not stored.
+     * monitoring data is not stored. Otherwise the buffer is bounded by the segment size and the maximum number of
+     * segments.
      */
     public static int getOpMonitorBufferSize() {
         return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_SIZE, "20000"));
@@ -193,6 +225,37 @@ public final class OpMonitoringSystemProperties {
         return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_CONNECTION_TIMEOUT_SECONDS, "30"));
     }
 
+    /**
+     * @return the directory of the operational monitoring buffer segment files,
+     * '/var/lib/xroad/op-monitor-buffer' by default.
+     */
+    public static String getOpMonitorBufferPath() {
+        return System.getProperty(OP_MONITOR_BUFFER_PATH, "/var/lib/xroad/op-monitor-buffer");
+    }
+
+    /**
+     * @return the size of an operational monitoring buffer segment file in bytes, '4194304' (4 MiB) by default.
+     */
+    public static int getOpMonitorBufferSegmentSize() {
+        return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_SEGMENT_SIZE, "4194304"));
+    }
+
+    /**
+     * @return the maximum number of operational monitoring buffer segment files, '32' by default. In case the limit
+     * is exceeded, the oldest segment file is dropped.
+     */
+    public static int getOpMonitorBufferMaxSegments() {
+        return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_MAX_SEGMENTS, "32"));
+    }
+
+    /**
+     * @return the maximum number of messages the operational monitoring buffer sends to the operational monitoring
+     * daemon concurrently, '4' by default.
+     */
+    public static int getOpMonitorBufferMaxMessagesInFlight() {
+        return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_MAX_MESSAGES_IN_FLIGHT, "4"));
+    }
+
     /**
      * @return the operational monitoring service HTTP client SO_TIMEOUT in seconds, '60' by default.
      */
@@ -252,6 +315,13 @@ public final class OpMonitoringSystemProperties {
         return Integer.parseInt(System.getProperty(OP_MONITOR_HEALTH_STATISTICS_PERIOD_SECONDS, "600"));
     }
 
+    /**
+     * @return the number of time buckets the health statistics period is divided into, 60 by default.
+     */
+    public static int getOpMonitorHealthStatisticsBuckets() {
+        return Integer.parseInt(System.getProperty(OP_MONITOR_HEALTH_STATISTICS_BUCKETS, "60"));
+    }
+
     /**
      * @return the period in days for keeping operational data records in the database, 7 days by default.
      */
@@ -0,0 +1,120 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.opmonitoring;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * Length-prefixed format of store operational monitoring data requests. The request body is a sequence of
+ * records, each written as a 4-byte big-endian length followed by the JSON representation of the record in
+ * UTF-8. Unlike the JSON request, the records can be written and read one at a time.
+ * <p>
+ * The operational monitoring daemon lists the format in the {@link #ACCEPT_POST} header of its store data
+ * responses. Senders use the format only after receiving such a response and fall back to JSON otherwise.
+ */
+public final class StoreOpMonitoringDataStream {
+
+    public static final String CONTENT_TYPE = "application/x-road-op-monitoring-records";
+
+    public static final String ACCEPT_POST = "Accept-Post";
+
+    private static final int MAX_RECORD_LENGTH = 1024 * 1024;
+
+    private StoreOpMonitoringDataStream() {
+    }
+
+    /**
+     * Writes a record to the stream.
+     * @param out the output stream
+     * @param record JSON representation of the record in UTF-8
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeRecord(OutputStream out, byte[] record) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+
+        data.writeInt(record.length);
+        data.write(record);
+        data.flush();
+    }
+
+    /**
+     * Reads the next record from the stream.
+     * @param in the input stream
+     * @return JSON representation of the record in UTF-8, or null at the end of the stream
+     * @throws IOException if the stream is malformed or an I/O error occurs
+     */
+    public static byte[] readRecord(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 1);
+        int first = pushback.read();
+
+        if (first < 0) {
+            return null;
+        }
+
+        pushback.unread(first);
+
+        DataInputStream data = new DataInputStream(pushback);
+        int length = data.readInt();
+
+        if (length < 0 || length > MAX_RECORD_LENGTH) {
+            throw new IOException("Invalid record length " + length);
+        }
+
+        byte[] record = new byte[length];
+
+        try {
+            data.readFully(record);
+        } catch (EOFException e) {
+            throw new IOException("Unexpected end of stream in a record of " + length + " bytes", e);
+        }
+
+        return record;
+    }
+
+    /**
+     * @param acceptPost value of the {@link #ACCEPT_POST} header, may be null
+     * @return true if the value lists the length-prefixed format
+     */
+    public static boolean isAccepted(String acceptPost) {
+        if (acceptPost == null) {
+            return false;
+        }
+
+        for (String mediaType : acceptPost.split(",")) {
+            if (CONTENT_TYPE.equalsIgnoreCase(mediaType.trim())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -52,6 +52,12 @@ public final class SystemProperties {
     public static final String CONFIGURATION_PATH =
             PREFIX + "common.configuration-path";
 
+    /** Property name of the number of bytes the SOAP parser keeps in memory before using temporary files. */
+    public static final String SOAP_PARSER_MEMORY_THRESHOLD =
+            PREFIX + "common.soap-parser-memory-threshold";
+
+    private static final String DEFAULT_SOAP_PARSER_MEMORY_THRESHOLD = "1048576";
+
     /** Current version number of the global configuration **/
     public static final int CURRENT_GLOBAL_CONFIGURATION_VERSION = 2;
 
@@ -194,6 +200,18 @@ public final class SystemProperties {
 
     public static final String SERVER_CONF_ACL_CACHE_SIZE = PREFIX + "proxy.server-conf-acl-cache-size";
 
+    /** Property name of the maximum number of signing requests in a batch signature */
+    private static final String BATCH_SIGNER_MAX_BATCH_SIZE =
+            PREFIX + "proxy.batch-signer-max-batch-size";
+
+    /** Property name of the maximum time a signing request waits for other requests to batch with, in milliseconds */
+    private static final String BATCH_SIGNER_MAX_BATCH_WAIT_TIME =
+            PREFIX + "proxy.batch-signer-max-batch-wait-time";
+
+    /** Property name of the maximum number of batches signed concurrently with the same key */
+    private static final String BATCH_SIGNER_MAX_OUTSTANDING_BATCHES =
+            PREFIX + "proxy.batch-signer-max-outstanding-batches";
+
 
     /** Property name of the idle time that connections to the ServerProxy Connector are allowed, in milliseconds */
     private static final String SERVERPROXY_CONNECTOR_MAX_IDLE_TIME =
@@ -266,6 +284,13 @@ public final class SystemProperties {
     private static final String CLIENTPROXY_POOL_REUSE_CONNECTIONS =
             PREFIX + "proxy.pool-enable-connection-reuse";
 
+    /**
+     * Property name of the on/off switch for processing client proxy SOAP requests in the request thread only,
+     * without a separate SOAP handler thread and piped streams
+     */
+    public static final String CLIENTPROXY_SOAP_SINGLE_THREADED_PROCESSING =
+            PREFIX + "proxy.client-soap-single-threaded-processing";
+
     private static final String PROXY_HEALTH_CHECK_INTERFACE = PREFIX + "proxy.health-check-interface";
 
     private static final String PROXY_HEALTH_CHECK_PORT = PREFIX + "proxy.health-check-port";
@@ -313,6 +338,8 @@ public final class SystemProperties {
 
     private static final String DEFAULT_CLIENTPROXY_TIMEOUT = "30000";
 
+    private static final String DEFAULT_CONFIGURATION_PROXY_INSTANCE_PARALLELISM = "4";
+
     private static final String DEFAULT_CLIENTPROXY_USE_FASTEST_CONNECTING_SSL_SOCKET_AUTOCLOSE = "true";
 
     private static final String DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD = "3600";
@@ -329,6 +356,8 @@ public final class SystemProperties {
      **/
     private static final String DEFAULT_CLIENTPROXY_POOL_REUSE_CONNECTIONS = "false";
 
+    private static final String DEFAULT_CLIENTPROXY_SOAP_SINGLE_THREADED_PROCESSING = "false";
+
     private static final String DEFAULT_PROXY_HEALTH_CHECK_INTERFACE = "0.0.0.0";
 
     private static final String DEFAULT_PROXY_HEALTH_CHECK_PORT = "0";
@@ -385,11 +414,27 @@ public final class SystemProperties {
 
     private static final String DEFAULT_SIGNER_OCSP_RETRY_DELAY = "60";
 
+    /** Property name of the number of OCSP responses the signer fetches concurrently. */
+    public static final String SIGNER_OCSP_FETCH_THREADS =
+            PREFIX + "signer.ocsp-fetch-threads";
+
+    private static final String DEFAULT_SIGNER_OCSP_FETCH_THREADS = "8";
+
+    /** Property name of the number of concurrent connections the signer opens to a single OCSP responder. */
+    public static final String SIGNER_OCSP_FETCH_CONNECTIONS_PER_RESPONDER =
+            PREFIX + "signer.ocsp-fetch-connections-per-responder";
+
+    private static final String DEFAULT_SIGNER_OCSP_FETCH_CONNECTIONS_PER_RESPONDER = "2";
+
     public static final String SIGNER_MODULE_MANAGER_UPDATE_INTERVAL =
             PREFIX + "signer.module-manager-update-interval";
 
     public static final String DEFAULT_SIGNER_MODULE_MANAGER_UPDATE_INTERVAL = "60";
 
+    /** Property name of the number of threads signing concurrently with a software token. */
+    public static final String SIGNER_SOFTWARE_TOKEN_SIGNING_THREADS =
+            PREFIX + "signer.software-token-signing-threads";
+
     // AntiDos ----------------------------------------------------------------
 
     /** Property name of the AntiDos on/off switch */
@@ -412,6 +457,10 @@ public final class SystemProperties {
     public static final String ANTIDOS_MAX_HEAP_USAGE =
             PREFIX + "anti-dos.max-heap-usage";
 
+    /** Property name of the interval of sampling system resources and known member addresses */
+    public static final String ANTIDOS_RESOURCE_SAMPLE_INTERVAL =
+            PREFIX + "anti-dos.resource-sample-interval";
+
     // Configuration client ---------------------------------------------------
 
     public static final String CONFIGURATION_CLIENT_PORT =
@@ -535,10 +584,17 @@ public final class SystemProperties {
 
     // Configuration proxy ------------------------------------------------- //
 
-    /** Property name of the confproxy download script path. */
+    /**
+     * Property name of the confproxy download script path.
+     * @deprecated the configuration proxy downloads global configuration in-process
+     */
     public static final String CONFIGURATION_PROXY_DOWNLOAD_SCRIPT =
             PREFIX + "configuration-proxy.download-script";
 
+    /** Property name of the number of confproxy instances processed at the same time. */
+    public static final String CONFIGURATION_PROXY_INSTANCE_PARALLELISM =
+            PREFIX + "configuration-proxy.instance-parallelism";
+
     /** Property name of the confproxy configuration path. */
     public static final String CONFIGURATION_PROXY_CONF_PATH =
             PREFIX + "configuration-proxy.configuration-path";
@@ -800,6 +856,15 @@ public final class SystemProperties {
         return System.getProperty(TEMP_FILES_PATH, DefaultFilepaths.TEMP_FILES_PATH);
     }
 
+    /**
+     * @return number of bytes of a SOAP message the parser keeps in memory before caching it
+     * in a temporary file, 1048576 (1 MiB) by default.
+     */
+    public static int getSoapParserMemoryThreshold() {
+        return Integer.parseInt(System.getProperty(SOAP_PARSER_MEMORY_THRESHOLD,
+                DEFAULT_SOAP_PARSER_MEMORY_THRESHOLD));
+    }
+
     /**
      * @return path to the directory where OCSP responses are stored, '/var/cache/xroad/' by default.
      */
@@ -902,6 +967,13 @@ public final class SystemProperties {
         return System.getProperty(SIGNER_CSR_SIGNATURE_DIGEST_ALGORITHM, CryptoUtils.SHA256_ID);
     }
 
+    /**
+     * @return number of threads signing concurrently with a software token, 1 by default
+     */
+    public static int getSignerSoftwareTokenSigningThreads() {
+        return Math.max(1, Integer.getInteger(SIGNER_SOFTWARE_TOKEN_SIGNING_THREADS, 1));
+    }
+
     /**
      * @return whether OCSP-response retrieval loop should be activated
      */
@@ -917,6 +989,22 @@ public final class SystemProperties {
                 DEFAULT_SIGNER_OCSP_RETRY_DELAY));
     }
 
+    /**
+     * @return the number of OCSP responses the signer fetches concurrently, 8 by default
+     */
+    public static int getOcspFetchThreads() {
+        return Math.max(1, Integer.parseInt(System.getProperty(SIGNER_OCSP_FETCH_THREADS,
+                DEFAULT_SIGNER_OCSP_FETCH_THREADS)));
+    }
+
+    /**
+     * @return the number of concurrent connections the signer opens to a single OCSP responder, 2 by default
+     */
+    public static int getOcspFetchConnectionsPerResponder() {
+        return Math.max(1, Integer.parseInt(System.getProperty(SIGNER_OCSP_FETCH_CONNECTIONS_PER_RESPONDER,
+                DEFAULT_SIGNER_OCSP_FETCH_CONNECTIONS_PER_RESPONDER)));
+    }
+
     /**
      * @return the module manager update interval in seconds that should be set for signer, 60 by default
      */
@@ -1095,12 +1183,22 @@ public final class SystemProperties {
     /**
      * @return path to the global configuration download script,
      * '/usr/share/xroad/scripts/download_instance_configuration.sh' by default.
+     * @deprecated the configuration proxy downloads global configuration in-process
      */
     public static String getConfigurationProxyDownloadScript() {
         return System.getProperty(CONFIGURATION_PROXY_DOWNLOAD_SCRIPT,
                 "/usr/share/xroad/scripts/download_instance_configuration.sh");
     }
 
+    /**
+     * @return the number of configuration proxy instances that are downloaded, signed and published at the
+     * same time, '4' by default.
+     */
+    public static int getConfigurationProxyInstanceParallelism() {
+        return Math.max(1, Integer.parseInt(System.getProperty(CONFIGURATION_PROXY_INSTANCE_PARALLELISM,
+                DEFAULT_CONFIGURATION_PROXY_INSTANCE_PARALLELISM)));
+    }
+
     /**
      * @return path to the directory on the configuration proxy where global
      * configuration files are generated for distribution, '/var/lib/xroad/public' by default.
@@ -1247,6 +1345,14 @@ public final class SystemProperties {
         return Double.parseDouble(System.getProperty(ANTIDOS_MAX_HEAP_USAGE, "1.1"));
     }
 
+    /**
+     * @return the interval in milliseconds at which Anti-Dos samples system
+     * resource usage and refreshes the known member addresses, '100' by default.
+     */
+    public static int getAntiDosResourceSampleInterval() {
+        return Math.max(1, Integer.parseInt(System.getProperty(ANTIDOS_RESOURCE_SAMPLE_INTERVAL, "100")));
+    }
+
     /**
      * @return whether Anti-Dos should be used, 'true' by default.
      */
@@ -1429,6 +1535,15 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_POOL_REUSE_CONNECTIONS));
     }
 
+    /**
+     * @return true if client proxy SOAP requests should be parsed, signed and sent in the request thread,
+     * 'false' by default.
+     */
+    public static boolean isClientProxySoapSingleThreadedProcessing() {
+        return Boolean.parseBoolean(System.getProperty(CLIENTPROXY_SOAP_SINGLE_THREADED_PROCESSING,
+                DEFAULT_CLIENTPROXY_SOAP_SINGLE_THREADED_PROCESSING));
+    }
+
     public static boolean isServerProxySupportClientsPooledConnections() {
         return Boolean.parseBoolean(System.getProperty(SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS,
                 DEFAULT_SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS));
@@ -1548,6 +1663,28 @@ public final class SystemProperties {
         return Long.getLong(SERVER_CONF_ACL_CACHE_SIZE, 100_000);
     }
 
+    /**
+     * @return maximum number of signing requests in a batch signature, 256 by default
+     */
+    public static int getBatchSignerMaxBatchSize() {
+        return Integer.parseInt(System.getProperty(BATCH_SIGNER_MAX_BATCH_SIZE, "256"));
+    }
+
+    /**
+     * @return maximum time in milliseconds a signing request waits for other requests to be signed in
+     * the same batch, 0 (batches are signed as soon as the previous batch is done) by default
+     */
+    public static int getBatchSignerMaxBatchWaitTime() {
+        return Integer.parseInt(System.getProperty(BATCH_SIGNER_MAX_BATCH_WAIT_TIME, "0"));
+    }
+
+    /**
+     * @return maximum number of batches signed concurrently with the same key, 1 by default
+     */
+    public static int getBatchSignerMaxOutstandingBatches() {
+        return Integer.parseInt(System.getProperty(BATCH_SIGNER_MAX_OUTSTANDING_BATCHES, "1"));
+    }
+
     private static void checkVersionValidity(int version, int current, String defaultVersion) {
         if (version > current || version < 1) {
             throw new IllegalArgumentException("Illegal minimum global configuration version in system parameters");
@@ -29,20 +29,29 @@ import ee.ria.xroad.common.SystemProperties;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
- * Caching configuration directory
+ * Caching configuration directory. The parameters are served from an immutable snapshot of the directory
+ * that is replaced atomically when the directory is reloaded, readers never block.
  */
 @Slf4j
 public class CachingConfigurationDirectory extends ConfigurationDirectoryV2 {
 
-    public static final String INSTANCE_IDENTIFIER = "instanceIdentifier";
-    public static final String PRIVATE_PARAMS = "privateParams";
-    public static final String SHARED_PARAMS = "sharedParams";
-    public static final String VERIFY_UP_TO_DATE = "verifyUpToDate";
-    public static final String RELOAD_CONF_DIR = "reload";
+    private final boolean reloadIfChanged;
+    private final long expireNanos;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
 
-    private final int expireSeconds;
-    private final TimeBasedObjectCache cache;
+    private volatile Snapshot snapshot;
+    private volatile long verifiedUpToDateAt;
 
     /**
      * Constructs new caching directory from the given path.
@@ -51,10 +60,7 @@ public class CachingConfigurationDirectory extends ConfigurationDirectoryV2 {
      * @throws Exception if loading configuration fails
      */
     public CachingConfigurationDirectory(String directoryPath) throws Exception {
-        super(directoryPath, false);
-        expireSeconds = SystemProperties.getConfigurationClientUpdateIntervalSeconds();
-        cache = new TimeBasedObjectCache(expireSeconds);
-        reload();
+        this(directoryPath, false);
     }
 
     /**
@@ -68,20 +74,20 @@ public class CachingConfigurationDirectory extends ConfigurationDirectoryV2 {
     public CachingConfigurationDirectory(String directoryPath,
                                          boolean reloadIfChanged) throws Exception {
         super(directoryPath, reloadIfChanged);
-        expireSeconds = SystemProperties.getConfigurationClientUpdateIntervalSeconds();
-        cache = new TimeBasedObjectCache(expireSeconds);
+        this.reloadIfChanged = reloadIfChanged;
+        this.expireNanos = TimeUnit.SECONDS.toNanos(SystemProperties.getConfigurationClientUpdateIntervalSeconds());
         reload();
     }
 
     /**
-     *
+     * @return the instance identifier of this configuration.
      */
     @Override
-    public synchronized String getInstanceIdentifier() {
-        if (!cache.isValid(INSTANCE_IDENTIFIER)) {
-            cache.setValue(INSTANCE_IDENTIFIER, super.getInstanceIdentifier());
-        }
-        return (String) cache.getValue(INSTANCE_IDENTIFIER);
+    public String getInstanceIdentifier() {
+        String instanceIdentifier = getSnapshot().instanceIdentifier;
+
+        // not available in the snapshot, let the directory report the error
+        return instanceIdentifier != null ? instanceIdentifier : super.getInstanceIdentifier();
     }
 
     /**
@@ -90,16 +96,10 @@ public class CachingConfigurationDirectory extends ConfigurationDirectoryV2 {
      * @param instanceId the instance identifier
      * @return private parameters or null, if no private parameters exist for
      * given instance identifier
-     * @throws Exception if an error occurs while reading parameters
      */
     @Override
-    public synchronized PrivateParametersV2 getPrivate(String instanceId)
-            throws Exception {
-        final String key = String.format("%s-%s", PRIVATE_PARAMS, instanceId);
-        if (!cache.isValid(key)) {
-            cache.setValue(key, super.getPrivate(instanceId));
-        }
-        return (PrivateParametersV2) cache.getValue(key);
+    public PrivateParametersV2 getPrivate(String instanceId) {
+        return getSnapshot().privateParameters.get(instanceId);
     }
 
     /**
@@ -108,16 +108,18 @@ public class CachingConfigurationDirectory extends ConfigurationDirectoryV2 {
      * @param instanceId the instance identifier
      * @return shared parameters or null, if no shared parameters exist for
      * given instance identifier
-     * @throws Exception if an error occurs while reading parameters
      */
     @Override
-    public synchronized SharedParametersV2 getShared(String instanceId)
-            throws Exception {
-        final String key = String.format("%s-%s", SHARED_PARAMS, instanceId);
-        if (!cache.isValid(key)) {
-            cache.setValue(key, super.getShared(instanceId));
-        }
-        return (SharedParametersV2) cache.getValue(key);
+    public SharedParametersV2 getShared(String instanceId) {
+        return getSnapshot().sharedParameters.get(instanceId);
+    }
+
+    /**
+     * @return all known shared parameters
+     */
+    @Override
+    public List<SharedParametersV2> getShared() {
+        return getSnapshot().allSharedParameters;
     }
 
     /**
@@ -125,10 +127,11 @@ public class CachingConfigurationDirectory extends ConfigurationDirectoryV2 {
      * configuration files is too old.
      */
     @Override
-    public synchronized void verifyUpToDate() throws Exception {
-        if (!cache.isValid(VERIFY_UP_TO_DATE)) {
+    public void verifyUpToDate() throws Exception {
+        // concurrent callers may verify the files at the same time, which is harmless
+        if (isExpired(verifiedUpToDateAt)) {
             super.verifyUpToDate();
-            cache.setValue(VERIFY_UP_TO_DATE, 1);
+            verifiedUpToDateAt = System.nanoTime();
         }
     }
 
@@ -140,11 +143,84 @@ public class CachingConfigurationDirectory extends ConfigurationDirectoryV2 {
      */
     @Override
     public synchronized void reload() throws Exception {
-        // cache validity indicates whether reloading should be done at this time
-        // cache value is meaningless in this case
-        if (cache != null && !cache.isValid(RELOAD_CONF_DIR)) {
-            cache.setValue(RELOAD_CONF_DIR, 1);
+        // the super class constructor calls reload before this class is initialized
+        if (refreshing == null) {
+            return;
+        }
+
+        Snapshot current = snapshot;
+
+        if (current == null || isExpired(current.loadedAt)) {
             super.reload();
+            snapshot = new Snapshot(this);
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+
+        // one reader refreshes an expired snapshot, the others keep using the current one meanwhile
+        if (reloadIfChanged && isExpired(current.loadedAt) && refreshing.compareAndSet(false, true)) {
+            try {
+                reload();
+                current = snapshot;
+            } catch (Exception e) {
+                log.error("Failed to reload configuration directory {}", getPath(), e);
+            } finally {
+                refreshing.set(false);
+            }
         }
+
+        return current;
+    }
+
+    private boolean isExpired(long time) {
+        return time == 0 || System.nanoTime() - time >= expireNanos;
+    }
+
+    private static String unescapeInstanceIdentifier(String directoryName) {
+        try {
+            return URLDecoder.decode(directoryName, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            //IGNORE, UTF-8 is always available
+            return directoryName;
+        }
+    }
+
+    private static <T> Map<String, T> byInstanceIdentifier(Map<String, T> byDirectoryName) {
+        Map<String, T> result = new HashMap<>();
+        byDirectoryName.forEach((directoryName, value) -> result.put(unescapeInstanceIdentifier(directoryName), value));
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static final class Snapshot {
+        private final long loadedAt;
+        private final String instanceIdentifier;
+        private final Map<String, PrivateParametersV2> privateParameters;
+        private final Map<String, SharedParametersV2> sharedParameters;
+        private final List<SharedParametersV2> allSharedParameters;
+
+        Snapshot(CachingConfigurationDirectory directory) {
+            this.loadedAt = System.nanoTime();
+            this.instanceIdentifier = readInstanceIdentifier(directory);
+            this.privateParameters = byInstanceIdentifier(directory.getLoadedPrivateParameters());
+            this.sharedParameters = byInstanceIdentifier(directory.getLoadedSharedParameters());
+            this.allSharedParameters = Collections.unmodifiableList(new ArrayList<>(sharedParameters.values()));
+        }
+
+        private static String readInstanceIdentifier(CachingConfigurationDirectory directory) {
+            try {
+                return directory.readInstanceIdentifier();
+            } catch (Exception e) {
+                log.debug("Instance identifier is not available", e);
+
+                return null;
+            }
+        }
+    }
+
+    private String readInstanceIdentifier() {
+        return super.getInstanceIdentifier();
     }
 }
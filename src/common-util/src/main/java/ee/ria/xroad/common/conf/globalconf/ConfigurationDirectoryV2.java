@@ -165,10 +165,8 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
             return parameters;
         }
 
-        if (parameters != null && parameters.hasChanged()) {
-            parameters.reload();
-        } else if (parameters == null) {
-            // Parameters not cached, attempt to load it from disk.
+        if (parameters == null || parameters.hasChanged()) {
+            // Parameters not cached or changed, attempt to load it from disk.
             Path instanceDir = Paths.get(path.toString(), safeInstanceId);
             loadPrivateParameters(instanceDir, privateParameters);
         }
@@ -194,10 +192,8 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
             return parameters;
         }
 
-        if (parameters != null && parameters.hasChanged()) {
-            parameters.reload();
-        } else if (parameters == null) {
-            // Parameters not cached, attempt to load it from disk.
+        if (parameters == null || parameters.hasChanged()) {
+            // Parameters not cached or changed, attempt to load it from disk.
             Path instanceDir = Paths.get(path.toString(), safeInstanceId);
             loadSharedParameters(instanceDir, sharedParameters);
         }
@@ -205,6 +201,20 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
         return sharedParameters.get(safeInstanceId);
     }
 
+    /**
+     * @return the currently loaded private parameters by instance directory name
+     */
+    protected synchronized Map<String, PrivateParametersV2> getLoadedPrivateParameters() {
+        return new HashMap<>(privateParameters);
+    }
+
+    /**
+     * @return the currently loaded shared parameters by instance directory name
+     */
+    protected synchronized Map<String, SharedParametersV2> getLoadedSharedParameters() {
+        return new HashMap<>(sharedParameters);
+    }
+
     /**
      * @return all known shared parameters
      */
@@ -375,17 +385,19 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
         }
     }
 
-    // Loads the parameters from file if the file has changed.
+    // Loads the parameters from file if the file has changed. A changed file is loaded to a new instance,
+    // so that parameters once returned from this directory are never modified.
     // Returns the parameters or null if the file does not exist.
     private static <T extends ConfProvider> T loadParameters(Path path, Class<T> clazz, T existingInstance)
             throws Exception {
-        T params = existingInstance != null ? existingInstance : (T) clazz.newInstance();
+        if (existingInstance != null && !existingInstance.hasChanged()) {
+            return existingInstance;
+        }
 
-        if (params.hasChanged()) {
-            log.trace("Loading {} from {}", clazz.getSimpleName(), path);
+        log.trace("Loading {} from {}", clazz.getSimpleName(), path);
 
-            params.load(path.toString());
-        }
+        T params = clazz.newInstance();
+        params.load(path.toString());
 
         return params;
     }
@@ -41,6 +41,7 @@ import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.SubsystemType;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.GlobalGroupId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.common.identifier.ServiceId;
 
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -91,6 +92,11 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
     private final List<X509Certificate> verificationCaCerts = new ArrayList<>();
     private final Set<String> knownAddresses = new HashSet<>();
     private final Map<SecurityServerId, SecurityServerType> securityServersById = new HashMap<>();
+    private final Map<SecurityServerId, ClientId> securityServerOwners = new HashMap<>();
+    private final Map<ClientId, String> memberNames = new HashMap<>();
+    private final Map<String, GlobalGroupType> globalGroupsByCode = new HashMap<>();
+    private final Map<String, Set<ClientId>> globalGroupMembers = new HashMap<>();
+    private final Map<String, ServiceId> centralServiceImplementations = new HashMap<>();
 
     SharedParametersV2() {
         super(ObjectFactory.class, SharedParametersSchemaValidatorV2.class);
@@ -150,9 +156,26 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
             return null;
         }
 
-        return confType.getGlobalGroup().stream()
-                .filter(g -> g.getGroupCode().equals(groupId.getGroupCode()))
-                .findFirst().orElse(null);
+        return globalGroupsByCode.get(groupId.getGroupCode());
+    }
+
+    boolean isGlobalGroupMember(GlobalGroupId groupId, ClientId subjectId) {
+        if (!groupId.getXRoadInstance().equals(
+                confType.getInstanceIdentifier())) {
+            return false;
+        }
+
+        Set<ClientId> members = globalGroupMembers.get(groupId.getGroupCode());
+        return members != null && members.contains(subjectId);
+    }
+
+    String getMemberName(ClientId clientId) {
+        return memberNames.get(ClientId.create(clientId.getXRoadInstance(),
+                clientId.getMemberClass(), clientId.getMemberCode()));
+    }
+
+    ServiceId getCentralServiceImplementation(String serviceCode) {
+        return centralServiceImplementations.get(serviceCode);
     }
 
     X509Certificate getCaCertForSubject(X509Certificate subject)
@@ -179,6 +202,9 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
             cacheCaCerts();
             cacheKnownAddresses();
             cacheSecurityServers();
+            cacheMembers();
+            cacheGlobalGroups();
+            cacheCentralServices();
         } catch (Exception e) {
             throw translateException(e);
         }
@@ -206,6 +232,11 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         verificationCaCerts.clear();
         knownAddresses.clear();
         securityServersById.clear();
+        securityServerOwners.clear();
+        memberNames.clear();
+        globalGroupsByCode.clear();
+        globalGroupMembers.clear();
+        centralServiceImplementations.clear();
     }
 
     private void cacheCaCerts() throws CertificateException, IOException {
@@ -271,6 +302,7 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
                     owner.getMemberClass().getCode(),
                     owner.getMemberCode(), securityServer.getServerCode());
             securityServersById.put(securityServerId, securityServer);
+            securityServerOwners.put(securityServerId, createMemberId(owner));
 
             // Add clients of the security server.
             for (JAXBElement<?> client : securityServer.getClient()) {
@@ -288,6 +320,29 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         }
     }
 
+    private void cacheMembers() {
+        for (MemberType member : confType.getMember()) {
+            memberNames.putIfAbsent(createMemberId(member), member.getName());
+        }
+    }
+
+    private void cacheGlobalGroups() {
+        for (GlobalGroupType globalGroup : confType.getGlobalGroup()) {
+            if (globalGroupsByCode.putIfAbsent(globalGroup.getGroupCode(), globalGroup) == null) {
+                globalGroupMembers.put(globalGroup.getGroupCode(), new HashSet<>(globalGroup.getGroupMember()));
+            }
+        }
+    }
+
+    private void cacheCentralServices() {
+        for (CentralServiceType centralService : confType.getCentralService()) {
+            if (centralService.getImplementingService() != null) {
+                centralServiceImplementations.putIfAbsent(centralService.getServiceCode(),
+                        centralService.getImplementingService());
+            }
+        }
+    }
+
     private void addServerClient(ClientId client, SecurityServerType server) {
         // Add the mapping from client to security server address.
         if (isNotBlank(server.getAddress())) {
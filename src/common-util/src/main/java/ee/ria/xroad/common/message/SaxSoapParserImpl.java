@@ -26,12 +26,14 @@
 package ee.ria.xroad.common.message;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.identifier.XRoadObjectType;
 import ee.ria.xroad.common.util.MimeUtils;
+import ee.ria.xroad.common.util.SpillingStream;
 import ee.ria.xroad.common.util.XmlUtils;
 
 import lombok.Getter;
@@ -55,7 +57,7 @@ import javax.xml.parsers.SAXParserFactory;
 import javax.xml.soap.SOAPException;
 
 import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
@@ -194,21 +196,29 @@ public class SaxSoapParserImpl implements SoapParser {
     private Soap parseMessage(InputStream is, String mimeType, String contentType, String charset) throws Exception {
         log.trace("parseMessage({}, {})", mimeType, charset);
 
-        ByteArrayOutputStream rawXml = new ByteArrayOutputStream();
-        ByteArrayOutputStream processedXml = new ByteArrayOutputStream();
+        // large messages are cached in temporary files while parsing, so that
+        // only the resulting message bytes are held on heap
+        int memoryThreshold = SystemProperties.getSoapParserMemoryThreshold();
+        SpillingStream rawXml = new SpillingStream(memoryThreshold);
+        SpillingStream processedXml = new SpillingStream(memoryThreshold);
 
-        InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
-        Writer outputWriter = new OutputStreamWriter(processedXml, charset);
-        XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
+        try {
+            InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
+            Writer outputWriter = new OutputStreamWriter(processedXml, charset);
+            XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
 
-        CodedException fault = handler.getFault();
-        if (fault != null) {
-            return createSoapFault(charset, rawXml, fault);
-        }
+            CodedException fault = handler.getFault();
+            if (fault != null) {
+                return createSoapFault(charset, rawXml, fault);
+            }
 
-        byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
+            byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
 
-        return createSoapMessage(contentType, charset, handler, xmlBytes);
+            return createSoapMessage(contentType, charset, handler, xmlBytes);
+        } finally {
+            rawXml.consume();
+            processedXml.consume();
+        }
     }
 
     private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream)
@@ -236,7 +246,7 @@ public class SaxSoapParserImpl implements SoapParser {
     }
 
     private static Soap createSoapFault(String charset,
-            ByteArrayOutputStream rawXml, CodedException fault) {
+            SpillingStream rawXml, CodedException fault) throws IOException {
         return new SoapFault(fault.getFaultCode(), fault.getFaultString(),
                 fault.getFaultActor(), fault.getFaultDetail(),
                 rawXml.toByteArray(), charset);
@@ -0,0 +1,159 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Caches stuff in memory until the given threshold is exceeded, after which
+ * the contents are moved to a temporary file (see {@link CachingStream}).
+ */
+public class SpillingStream extends OutputStream {
+    private final int threshold;
+
+    private MemoryBuffer memory = new MemoryBuffer();
+    private CachingStream file;
+    private long size;
+
+    /**
+     * Constructs a new stream that keeps up to threshold bytes in memory.
+     * @param threshold maximum number of bytes kept in memory
+     */
+    public SpillingStream(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        spillIfNeeded(1);
+        current().write(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        spillIfNeeded(len);
+        current().write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        current().flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the temporary file must stay open until the contents have been read
+        flush();
+    }
+
+    /**
+     * @return number of bytes written to this stream
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true, if the contents have been moved to a temporary file
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * @return input stream that contains the cached contents. Closing the stream has no effect.
+     * @throws IOException if I/O errors occurred
+     * @see #consume() to free resources used by the cache.
+     */
+    public InputStream getCachedContents() throws IOException {
+        if (file == null) {
+            return memory.getContents();
+        }
+
+        file.flush();
+
+        return file.getCachedContents();
+    }
+
+    /**
+     * Reads the cached contents into a byte array. When the contents are held in
+     * a temporary file, this is the only copy of the contents on heap.
+     * @return the cached contents
+     * @throws IOException if I/O errors occurred
+     */
+    public byte[] toByteArray() throws IOException {
+        if (file == null) {
+            return memory.toByteArray();
+        }
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Cached contents too large for a byte array: " + size + " bytes");
+        }
+
+        byte[] bytes = new byte[(int) size];
+        IOUtils.readFully(getCachedContents(), bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Releases the memory buffer and the temporary file. Use to avoid file handle leaks.
+     */
+    public void consume() {
+        memory = null;
+
+        if (file != null) {
+            file.consume();
+        }
+    }
+
+    private OutputStream current() {
+        return file != null ? file : memory;
+    }
+
+    private void spillIfNeeded(int len) throws IOException {
+        if (file == null && size + len > threshold) {
+            file = new CachingStream();
+            memory.writeTo(file);
+            memory = null;
+        }
+    }
+
+    private static final class MemoryBuffer extends ByteArrayOutputStream {
+        InputStream getContents() {
+            // read straight from the internal buffer instead of copying it
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
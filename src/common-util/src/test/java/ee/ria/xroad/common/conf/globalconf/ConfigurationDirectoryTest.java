@@ -36,6 +36,7 @@ import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Tests to verify configuration directories are read correctly.
@@ -73,6 +74,30 @@ public class ConfigurationDirectoryTest {
         assertNull(dir.getShared("xxx"));
     }
 
+    /**
+     * Test to ensure a caching configuration directory serves the same parameters from its snapshot.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void readCachingDirectoryV2() throws Exception {
+        CachingConfigurationDirectory dir =
+                new CachingConfigurationDirectory("src/test/resources/globalconf_good_v2", true);
+
+        assertEquals("EE", dir.getInstanceIdentifier());
+
+        SharedParametersV2 s = dir.getShared("foo");
+
+        assertNotNull(s);
+        assertEquals("foo", s.getInstanceIdentifier());
+        assertSame(s, dir.getShared("foo"));
+        assertEquals(3, dir.getShared().size());
+
+        assertNotNull(dir.getPrivate("foo"));
+        assertNull(dir.getPrivate("bar"));
+        assertNull(dir.getShared("xxx"));
+    }
+
     /**
      * Test to ensure an empty configuration directory is read properly.
      *
@@ -25,6 +25,7 @@
  */
 package ee.ria.xroad.common.message;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
@@ -397,6 +398,34 @@ public class SoapMessageTest {
         assertTrue(Arrays.areEqual(in, out));
     }
 
+    /**
+     * Test that input message is not altered when it is cached in a temporary file while parsing.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void shouldNotAlterMessageCachedInFile() throws Exception {
+        String tempFilesPath = System.getProperty(SystemProperties.TEMP_FILES_PATH);
+
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/tmp");
+        System.setProperty(SystemProperties.SOAP_PARSER_MEMORY_THRESHOLD, "16");
+        try {
+            byte[] in = fileToBytes("simple.query");
+            SoapMessageImpl message = (SoapMessageImpl) new SaxSoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8,
+                    new ByteArrayInputStream(in));
+
+            assertTrue(Arrays.areEqual(in, message.getBytes()));
+            assertEquals("1234567890", message.getQueryId());
+        } finally {
+            System.clearProperty(SystemProperties.SOAP_PARSER_MEMORY_THRESHOLD);
+
+            if (tempFilesPath != null) {
+                System.setProperty(SystemProperties.TEMP_FILES_PATH, tempFilesPath);
+            } else {
+                System.clearProperty(SystemProperties.TEMP_FILES_PATH);
+            }
+        }
+    }
+
     /**
      * Test that central service query is parsed correctly.
      * @throws Exception in case of any unexpected errors
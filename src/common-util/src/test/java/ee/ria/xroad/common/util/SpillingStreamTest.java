@@ -0,0 +1,94 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link SpillingStream}
+ */
+public class SpillingStreamTest {
+    private static final byte[] CONTENT = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    @BeforeClass
+    public static void setUp() {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/tmp");
+    }
+
+    /**
+     * Ensure that contents below the threshold are kept in memory.
+     */
+    @Test
+    public void keepsSmallContentsInMemory() throws Exception {
+        SpillingStream stream = new SpillingStream(CONTENT.length);
+        try {
+            stream.write(CONTENT, 0, 10);
+            stream.write(CONTENT, 10, CONTENT.length - 10);
+            stream.close();
+
+            assertFalse(stream.isSpilled());
+            assertEquals(CONTENT.length, stream.size());
+            assertArrayEquals(CONTENT, stream.toByteArray());
+            assertArrayEquals(CONTENT, IOUtils.toByteArray(stream.getCachedContents()));
+        } finally {
+            stream.consume();
+        }
+    }
+
+    /**
+     * Ensure that contents exceeding the threshold are moved to a temporary file.
+     */
+    @Test
+    public void spillsLargeContentsToFile() throws Exception {
+        SpillingStream stream = new SpillingStream(CONTENT.length - 1);
+        try {
+            stream.write(CONTENT, 0, 10);
+            assertFalse(stream.isSpilled());
+
+            stream.write(CONTENT[10]);
+            stream.write(CONTENT, 11, CONTENT.length - 11);
+            stream.close();
+
+            assertTrue(stream.isSpilled());
+            assertEquals(CONTENT.length, stream.size());
+            assertArrayEquals(CONTENT, stream.toByteArray());
+            assertArrayEquals(CONTENT, IOUtils.toByteArray(stream.getCachedContents()));
+        } finally {
+            stream.consume();
+        }
+    }
+}
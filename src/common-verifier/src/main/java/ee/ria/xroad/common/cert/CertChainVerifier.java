@@ -26,11 +26,14 @@
 package ee.ria.xroad.common.cert;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
 import ee.ria.xroad.common.ocsp.OcspVerifier;
 import ee.ria.xroad.common.ocsp.OcspVerifierOptions;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import java.security.cert.CertPath;
@@ -50,23 +53,40 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_CERT_PATH;
 import static ee.ria.xroad.common.ErrorCodes.X_CERT_VALIDATION;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_CERT_PATH_X;
 import static ee.ria.xroad.common.ErrorCodes.translateWithPrefix;
 import static ee.ria.xroad.common.cert.CertHelper.getOcspResponseForCert;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
 
 /**
- * Certificate chain verifier.
+ * Certificate chain verifier. Successfully built and validated certificate
+ * paths are cached, so that repeated verification of the same chain only
+ * needs to check that the verification date is within the validity period of
+ * the path and to verify the OCSP responses.
  */
 public class CertChainVerifier {
 
     /** Default validation algorithm type is PKIX. */
     private static final String VALIDATION_ALGORITHM = "PKIX";
 
-    /** Holds the PKIX algorithm parameters. */
-    private final PKIXBuilderParameters pkixParams;
+    private static final int VERIFIED_PATH_CACHE_MAX_SIZE = 1000;
+
+    private static final int PKIX_PARAMS_CACHE_MAX_SIZE = 100;
+
+    /** Holds the validated certificate paths, keyed by the certificates of the chain. */
+    private static final Cache<String, VerifiedPath> VERIFIED_PATH_CACHE = CacheBuilder.newBuilder()
+            .expireAfterWrite(SystemProperties.getOcspVerifierCachePeriod(), TimeUnit.SECONDS)
+            .maximumSize(VERIFIED_PATH_CACHE_MAX_SIZE)
+            .build();
+
+    /** Holds the prebuilt PKIX parameters, keyed by the trusted root certificate. */
+    private static final Cache<String, PKIXBuilderParameters> PKIX_PARAMS_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(PKIX_PARAMS_CACHE_MAX_SIZE)
+            .build();
 
     /** Holds the constructed certificate path. */
     private CertPath certPath;
@@ -81,28 +101,14 @@ public class CertChainVerifier {
      */
     public CertChainVerifier(CertChain certChain) {
         this.certChain = certChain;
+    }
 
-        Set<TrustAnchor> trustAnchors =
-                createTrustAnchorSet(
-                        Arrays.asList(certChain.getTrustedRootCert()));
-
-        X509CertSelector certSelector = new X509CertSelector();
-        certSelector.setCertificate(certChain.getEndEntityCert());
-
-        try {
-            pkixParams = new PKIXBuilderParameters(trustAnchors, certSelector);
-            pkixParams.setRevocationEnabled(false);
-
-            if (!certChain.getAdditionalCerts().isEmpty()) {
-                CertStore intermediateCertStore =
-                        CertStore.getInstance("Collection",
-                                new CollectionCertStoreParameters(
-                                        certChain.getAdditionalCerts()), "BC");
-                pkixParams.addCertStore(intermediateCertStore);
-            }
-        } catch (Exception e) {
-            throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, e);
-        }
+    /**
+     * Removes all cached certificate paths and PKIX parameters.
+     */
+    public static void clearCache() {
+        VERIFIED_PATH_CACHE.invalidateAll();
+        PKIX_PARAMS_CACHE.invalidateAll();
     }
 
     /**
@@ -146,27 +152,93 @@ public class CertChainVerifier {
     }
 
     private void verifyImpl(List<OCSPResp> ocspResponses, Date atDate) {
-        pkixParams.setDate(atDate);
+        String key = getCacheKey();
+
+        VerifiedPath cached = VERIFIED_PATH_CACHE.getIfPresent(key);
+        if (cached != null && cached.isValidAt(atDate)) {
+            certPath = cached.getCertPath();
+        } else {
+            PKIXBuilderParameters pkixParams = createPkixParams();
+            pkixParams.setDate(atDate);
+            try {
+                certPath = buildCertPath(pkixParams);
+                verifyCertPath(certPath, pkixParams);
+            } catch (CertPathBuilderException ex) {
+                throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, ex);
+            } catch (Exception ex) {
+                throw translateWithPrefix(X_INVALID_CERT_PATH_X, ex);
+            }
+
+            VERIFIED_PATH_CACHE.put(key, new VerifiedPath(certPath, certChain.getTrustedRootCert()));
+        }
+
+        if (ocspResponses != null) {
+            try {
+                verifyOcspResponses(getCerts(), ocspResponses, atDate);
+            } catch (Exception ex) {
+                throw translateWithPrefix(X_INVALID_CERT_PATH_X, ex);
+            }
+        }
+    }
+
+    private String getCacheKey() {
+        try {
+            StringBuilder key = new StringBuilder()
+                    .append(calculateCertHexHash(certChain.getEndEntityCert()))
+                    .append(':')
+                    .append(calculateCertHexHash(certChain.getTrustedRootCert()));
+
+            for (X509Certificate cert : certChain.getAdditionalCerts()) {
+                key.append(':').append(calculateCertHexHash(cert));
+            }
+
+            return key.toString();
+        } catch (Exception e) {
+            throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, e);
+        }
+    }
+
+    private PKIXBuilderParameters createPkixParams() {
+        X509CertSelector certSelector = new X509CertSelector();
+        certSelector.setCertificate(certChain.getEndEntityCert());
+
         try {
-            certPath = buildCertPath(pkixParams);
+            X509Certificate trustedRootCert = certChain.getTrustedRootCert();
+
+            PKIXBuilderParameters template = PKIX_PARAMS_CACHE.get(calculateCertHexHash(trustedRootCert),
+                    () -> createPkixParamsTemplate(trustedRootCert));
 
-            PKIXCertPathValidatorResult pkixResult =
-                    verifyCertPath(certPath, pkixParams);
+            PKIXBuilderParameters pkixParams = (PKIXBuilderParameters) template.clone();
+            pkixParams.setTargetCertConstraints(certSelector);
 
-            if (ocspResponses != null) {
-                verifyOcspResponses(
-                        getCerts(), ocspResponses, pkixResult, atDate);
+            if (!certChain.getAdditionalCerts().isEmpty()) {
+                CertStore intermediateCertStore =
+                        CertStore.getInstance("Collection",
+                                new CollectionCertStoreParameters(
+                                        certChain.getAdditionalCerts()), "BC");
+                pkixParams.addCertStore(intermediateCertStore);
             }
-        } catch (CertPathBuilderException ex) {
-            throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, ex);
-        } catch (Exception ex) {
-            throw translateWithPrefix(X_INVALID_CERT_PATH_X, ex);
+
+            return pkixParams;
+        } catch (Exception e) {
+            throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, e);
         }
     }
 
+    private static PKIXBuilderParameters createPkixParamsTemplate(X509Certificate trustedRootCert)
+            throws Exception {
+        PKIXBuilderParameters pkixParams = new PKIXBuilderParameters(
+                createTrustAnchorSet(Arrays.asList(trustedRootCert)), null);
+        pkixParams.setRevocationEnabled(false);
+
+        return pkixParams;
+    }
+
     private void verifyOcspResponses(List<X509Certificate> certs,
-            List<OCSPResp> ocspResponses, PKIXCertPathValidatorResult result,
-            Date atDate) throws Exception {
+            List<OCSPResp> ocspResponses, Date atDate) throws Exception {
+        OcspVerifier verifier = new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(false),
+                new OcspVerifierOptions(GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
+
         for (X509Certificate subject : certs) {
             X509Certificate issuer =
                     GlobalConf.getCaCert(certChain.getInstanceIdentifier(),
@@ -179,8 +251,6 @@ public class CertChainVerifier {
                         + subject.getSubjectX500Principal().getName());
             }
 
-            OcspVerifier verifier = new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(false),
-                    new OcspVerifierOptions(GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
             verifier.verifyValidityAndStatus(response, subject, issuer,
                     atDate);
         }
@@ -218,4 +288,36 @@ public class CertChainVerifier {
         return trustAnchors;
     }
 
+    /**
+     * Validated certificate path together with the period during which all
+     * of its certificates are valid.
+     */
+    private static final class VerifiedPath {
+        private final CertPath certPath;
+        private final long notBefore;
+        private final long notAfter;
+
+        @SuppressWarnings("unchecked")
+        VerifiedPath(CertPath certPath, X509Certificate trustedRootCert) {
+            this.certPath = certPath;
+
+            long from = trustedRootCert.getNotBefore().getTime();
+            long until = trustedRootCert.getNotAfter().getTime();
+            for (X509Certificate cert : (List<X509Certificate>) certPath.getCertificates()) {
+                from = Math.max(from, cert.getNotBefore().getTime());
+                until = Math.min(until, cert.getNotAfter().getTime());
+            }
+
+            this.notBefore = from;
+            this.notAfter = until;
+        }
+
+        CertPath getCertPath() {
+            return certPath;
+        }
+
+        boolean isValidAt(Date atDate) {
+            return atDate.getTime() >= notBefore && atDate.getTime() <= notAfter;
+        }
+    }
 }
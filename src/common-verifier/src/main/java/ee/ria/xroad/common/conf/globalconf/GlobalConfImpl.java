@@ -33,7 +33,6 @@ import ee.ria.xroad.common.certificateprofile.GetCertificateProfile;
 import ee.ria.xroad.common.certificateprofile.SignCertificateProfileInfo;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.ApprovedCATypeV2;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.ApprovedTSAType;
-import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.CentralServiceType;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.GlobalGroupType;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.MemberClassType;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.MemberType;
@@ -132,15 +131,9 @@ public class GlobalConfImpl implements GlobalConfProvider {
     public ServiceId getServiceId(CentralServiceId serviceId) {
         SharedParametersV2 p = getSharedParameters(serviceId.getXRoadInstance());
 
-        for (CentralServiceType centralServiceType : p.getCentralServices()) {
-            if (centralServiceType.getImplementingService() == null) {
-                continue;
-            }
-
-            if (serviceId.getServiceCode().equals(
-                    centralServiceType.getServiceCode())) {
-                return centralServiceType.getImplementingService();
-            }
+        ServiceId implementingService = p.getCentralServiceImplementation(serviceId.getServiceCode());
+        if (implementingService != null) {
+            return implementingService;
         }
 
         throw new CodedException(X_INTERNAL_ERROR,
@@ -194,11 +187,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
             throw new CodedException(X_INTERNAL_ERROR, e);
         }
 
-        return p == null ? null : p.getMembers().stream()
-                .filter(m -> p.createMemberId(m).memberEquals(clientId))
-                .map(MemberType::getName)
-                .findFirst()
-                .orElse(null);
+        return p == null ? null : p.getMemberName(clientId);
     }
 
     @Override
@@ -237,11 +226,12 @@ public class GlobalConfImpl implements GlobalConfProvider {
             throw new CodedException(X_INTERNAL_ERROR, e);
         }
 
-        return p == null ? null : p.getGlobalGroups().stream()
-                .filter(g -> g.getGroupCode().equals(
-                        globalGroupId.getGroupCode()))
-                .map(GlobalGroupType::getDescription)
-                .findFirst().orElse(null);
+        if (p == null) {
+            return null;
+        }
+
+        GlobalGroupType group = p.findGlobalGroup(globalGroupId);
+        return group == null ? null : group.getDescription();
     }
 
     @Override
@@ -451,10 +441,9 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public ClientId getServerOwner(SecurityServerId serverId) {
         for (SharedParametersV2 p : getSharedParameters()) {
-            SecurityServerType server = p.getSecurityServersById()
-                    .get(serverId);
-            if (server != null) {
-                return p.createMemberId((MemberType) server.getOwner());
+            ClientId owner = p.getSecurityServerOwners().get(serverId);
+            if (owner != null) {
+                return owner;
             }
         }
 
@@ -568,17 +557,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
             log.warn("Got exception while getting shared parameters.", e);
         }
 
-        if (p == null) {
-            return false;
-        }
-
-        GlobalGroupType group = p.findGlobalGroup(groupId);
-        if (group == null) {
-            return false;
-        }
-
-        return group.getGroupMember().stream().filter(m -> m.equals(subjectId))
-                .findFirst().isPresent();
+        return p != null && p.isGlobalGroupMember(groupId, subjectId);
     }
 
     @Override
@@ -586,9 +565,8 @@ public class GlobalConfImpl implements GlobalConfProvider {
             SecurityServerId securityServerId) {
         SharedParametersV2 p = getSharedParameters(securityServerId
                 .getXRoadInstance());
-        return p.getSecurityServerClients().containsKey(securityServerId)
-                && p.getSecurityServerClients().get(securityServerId)
-                        .contains(clientId);
+        Set<ClientId> clients = p.getSecurityServerClients().get(securityServerId);
+        return clients != null && clients.contains(clientId);
     }
 
     @Override
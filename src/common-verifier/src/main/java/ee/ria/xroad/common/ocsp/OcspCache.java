@@ -28,24 +28,39 @@ package ee.ria.xroad.common.ocsp;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
 
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Holds OCSP response per key. When getting the response, it is checked
- * if the response is expired at the specified date, and if it is, the
- * response is removed from the cache and null is returned.
+ * Holds OCSP response per key. When a response is stored, the absolute
+ * deadline until which it is considered fresh is computed from its
+ * thisUpdate and nextUpdate fields and the global OCSP freshness settings.
+ * When getting the response, it is checked if the response is expired at the
+ * specified date, and if it is, the response is removed from the cache and
+ * null is returned. Deadlines are recomputed when the global OCSP freshness
+ * settings change.
  */
 @Slf4j
 public class OcspCache {
 
-    protected final Map<String, OCSPResp> cache = new ConcurrentHashMap<>();
+    private static final long SETTINGS_REFRESH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    protected final Map<String, CachedResponse> cache = new ConcurrentHashMap<>();
+
+    private volatile FreshnessSettings settings;
 
     /**
      * @param key the key
@@ -66,6 +81,28 @@ public class OcspCache {
         return getResponse(key, new Date());
     }
 
+    /**
+     * Unlike {@link #get(Object, Date)}, does not remove a response that is
+     * expired at the specified date from the cache.
+     * @param key the key
+     * @param atDate the date
+     * @return true if a response is cached for the key and is not expired at
+     * the specified date
+     */
+    public boolean isFresh(Object key, Date atDate) {
+        CachedResponse cachedResponse = cache.get(key);
+        if (cachedResponse == null) {
+            return false;
+        }
+
+        FreshnessSettings current = getSettings();
+        if (cachedResponse.getSettings() != current) {
+            cachedResponse = new CachedResponse(cachedResponse.getResponse(), current);
+        }
+
+        return !cachedResponse.isExpired(atDate);
+    }
+
     /**
      * Associates a key with the OCSP response.
      * @param key the key
@@ -74,7 +111,9 @@ public class OcspCache {
      */
     public OCSPResp put(String key, OCSPResp value) {
         log.trace("Setting OCSP response for '{}'", key);
-        return cache.put(key, value);
+
+        CachedResponse previous = cache.put(key, new CachedResponse(value, loadSettings()));
+        return previous != null ? previous.getResponse() : null;
     }
 
     /**
@@ -88,34 +127,132 @@ public class OcspCache {
      * @return a Set view of the mappings contained in this map.
      */
     public Set<Entry<String, OCSPResp>> entrySet() {
-        return cache.entrySet();
+        Set<Entry<String, OCSPResp>> entries = new LinkedHashSet<>();
+        cache.forEach((key, value) -> entries.add(new SimpleImmutableEntry<>(key, value.getResponse())));
+        return entries;
     }
 
     protected OCSPResp getResponse(Object key, Date atDate) {
         log.trace("Retrieving OCSP response for certificate '{}' at {}", key,
                 atDate);
 
-        OCSPResp cachedResponse = cache.get(key);
-        try {
-            if (cachedResponse != null && isExpired(cachedResponse, atDate)) {
-                log.trace("Cached OCSP response for certificate "
-                        + "'{}' has expired", key);
-                cache.remove(key);
-                return null;
-            }
-        } catch (Exception e) {
-            log.error("Failed to check if OCSP response is expired", e);
-            cache.remove(key);
+        CachedResponse cachedResponse = cache.get(key);
+        if (cachedResponse == null) {
             return null;
         }
 
-        return cachedResponse;
+        FreshnessSettings current = getSettings();
+        if (cachedResponse.getSettings() != current) {
+            // global configuration has changed since the deadline was computed
+            CachedResponse recomputed = new CachedResponse(cachedResponse.getResponse(), current);
+            cache.replace((String) key, cachedResponse, recomputed);
+            cachedResponse = recomputed;
+        }
+
+        if (cachedResponse.isExpired(atDate)) {
+            log.trace("Cached OCSP response for certificate "
+                    + "'{}' has expired", key);
+            cache.remove(key, cachedResponse);
+            return null;
+        }
+
+        return cachedResponse.getResponse();
+    }
+
+    /**
+     * Checks the response against the same deadline that is applied to the
+     * responses kept in memory.
+     * @param response the OCSP response
+     * @param atDate the date to check against
+     * @return true if the response is expired at the given date
+     */
+    protected boolean isExpired(OCSPResp response, Date atDate) {
+        return new CachedResponse(response, getSettings()).isExpired(atDate);
+    }
+
+    /**
+     * Returns the freshness settings, reading them from the global
+     * configuration at most once per refresh interval.
+     */
+    private FreshnessSettings getSettings() {
+        FreshnessSettings current = settings;
+        if (current == null
+                || System.currentTimeMillis() - current.loadedAt > SETTINGS_REFRESH_INTERVAL_MILLIS) {
+            current = loadSettings();
+        }
+
+        return current;
+    }
+
+    private FreshnessSettings loadSettings() {
+        FreshnessSettings loaded = new FreshnessSettings(GlobalConf.getOcspFreshnessSeconds(true),
+                GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate());
+
+        FreshnessSettings current = settings;
+        if (loaded.equals(current)) {
+            // keep the instance the cached deadlines were computed with
+            current.loadedAt = loaded.loadedAt;
+            return current;
+        }
+
+        settings = loaded;
+        return loaded;
     }
 
-    protected static boolean isExpired(OCSPResp response, Date atDate)
-            throws Exception {
-        OcspVerifier verifier = new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(true),
-                new OcspVerifierOptions(GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
-        return verifier.isExpired(response, atDate);
+    /**
+     * Global configuration settings affecting the freshness of OCSP responses.
+     */
+    @RequiredArgsConstructor
+    @EqualsAndHashCode(exclude = "loadedAt")
+    private static final class FreshnessSettings {
+        private final int freshnessSeconds;
+        private final boolean verifyNextUpdate;
+        private volatile long loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * OCSP response together with the moment after which it is considered
+     * expired.
+     */
+    protected static final class CachedResponse {
+        private final OCSPResp response;
+        private final FreshnessSettings settings;
+        private final long deadline;
+
+        private CachedResponse(OCSPResp response, FreshnessSettings settings) {
+            this.response = response;
+            this.settings = settings;
+            this.deadline = computeDeadline(response, settings);
+        }
+
+        OCSPResp getResponse() {
+            return response;
+        }
+
+        private FreshnessSettings getSettings() {
+            return settings;
+        }
+
+        boolean isExpired(Date atDate) {
+            return atDate.getTime() > deadline;
+        }
+
+        private static long computeDeadline(OCSPResp response, FreshnessSettings settings) {
+            try {
+                SingleResp singleResp = ((BasicOCSPResp) response.getResponseObject()).getResponses()[0];
+
+                long result = singleResp.getThisUpdate().getTime()
+                        + TimeUnit.SECONDS.toMillis(settings.freshnessSeconds);
+
+                if (settings.verifyNextUpdate && singleResp.getNextUpdate() != null) {
+                    result = Math.min(result, singleResp.getNextUpdate().getTime());
+                }
+
+                return result;
+            } catch (Exception e) {
+                log.error("Failed to check if OCSP response is expired", e);
+                return Long.MIN_VALUE;
+            }
+        }
     }
 }
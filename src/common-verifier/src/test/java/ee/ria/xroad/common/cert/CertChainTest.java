@@ -36,6 +36,7 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import org.bouncycastle.cert.ocsp.CertificateStatus;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.security.cert.CertPathBuilderException;
@@ -62,6 +63,14 @@ public class CertChainTest {
         GlobalConf.reload(new CertChainTestGlobalConf());
     }
 
+    /**
+     * Clears the cached certificate paths.
+     */
+    @Before
+    public void clearCache() {
+        CertChainVerifier.clearCache();
+    }
+
     /**
      * Tests verifying a simple certificate chain without intermediates.
      * @throws Exception if an error occurs
@@ -97,6 +106,29 @@ public class CertChainTest {
                 makeDate(rootCa.getNotBefore(), 1));
     }
 
+    /**
+     * Tests that a cached certificate path is not used outside the validity
+     * period of its certificates.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void cachedChainNotUsedAfterExpiry() throws Exception {
+        X509Certificate rootCa = TestCertUtil.getCertChainCert("root_ca.p12");
+        X509Certificate userCert = TestCertUtil.getCertChainCert("user_0.p12");
+
+        CertChain chain = new CertChain("EE", userCert, rootCa,
+                new ArrayList<X509Certificate>());
+        verifyChainOnly(chain, makeDate(userCert.getNotBefore(), 1));
+        verifyChainOnly(chain, makeDate(userCert.getNotBefore(), 2));
+
+        try {
+            verifyChainOnly(chain, makeDate(userCert.getNotAfter(), 1));
+            fail("Path validation should fail");
+        } catch (CodedException e) {
+            // expected
+        }
+    }
+
     /**
      * Test that verifying a chain with missing intermediate certificate fails.
      * @throws Exception if an error occurs
@@ -0,0 +1,212 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.identifier.CentralServiceId;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.SecurityServerId;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the throughput of the global configuration lookups done for every request (global group membership,
+ * member name, central service and server owner) on concurrent threads. The snapshot based caching configuration
+ * directory is compared with one whose accessors are synchronized, as they were before the snapshots.
+ */
+@Slf4j
+public final class GlobalConfBenchmark {
+    private static final String DEFAULT_CONF_DIR = "../common-util/src/test/resources/globalconf_good_v2";
+    private static final int DEFAULT_THREADS = 32;
+    private static final int DEFAULT_SECONDS = 5;
+
+    private static final ClientId MEMBER = ClientId.create("EE", "BUSINESS", "producer");
+    private static final ClientId SUBSYSTEM = ClientId.create("EE", "BUSINESS", "producer", "subsystem");
+    private static final GlobalGroupId GROUP = GlobalGroupId.create("EE", "Test group");
+    private static final CentralServiceId CENTRAL_SERVICE = CentralServiceId.create("EE", "central1");
+    private static final SecurityServerId SERVER =
+            SecurityServerId.create("EE", "BUSINESS", "producer", "producerServerCode");
+
+    private static final Options OPTIONS = getOptions();
+
+    private GlobalConfBenchmark() {
+    }
+
+    /**
+     * Main function.
+     * @param args args
+     * @throws Exception if something goes wrong.
+     */
+    public static void main(String args[]) throws Exception {
+        CommandLine cmd = parseCommandLine(args);
+
+        if (cmd.hasOption("help")) {
+            usage();
+
+            System.exit(0);
+        }
+
+        String confDir = cmd.getOptionValue("conf", DEFAULT_CONF_DIR);
+        int threads = getIntOption(cmd, "threads", DEFAULT_THREADS);
+        int seconds = getIntOption(cmd, "seconds", DEFAULT_SECONDS);
+
+        System.setProperty(SystemProperties.CONFIGURATION_PATH, confDir);
+
+        log.info("configuration: {}, threads: {}, duration: {} s", confDir, threads, seconds);
+
+        log.info("snapshot: {} lookups/s", run(new GlobalConfImpl(
+                new CachingConfigurationDirectory(confDir, true)), threads, seconds));
+        log.info("synchronized: {} lookups/s", run(new GlobalConfImpl(
+                new SynchronizedConfigurationDirectory(confDir)), threads, seconds));
+    }
+
+    private static long run(GlobalConfProvider conf, int threads, int seconds) throws InterruptedException {
+        // warm up
+        lookup(conf, System.currentTimeMillis() + 1000);
+
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+        long[] lookups = new long[threads];
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+
+            new Thread(() -> {
+                lookups[thread] = lookup(conf, deadline);
+
+                done.countDown();
+            }).start();
+        }
+
+        done.await();
+
+        long total = 0;
+
+        for (long count : lookups) {
+            total += count;
+        }
+
+        return total / seconds;
+    }
+
+    private static long lookup(GlobalConfProvider conf, long deadline) {
+        long lookups = 0;
+        long found = 0;
+
+        while (System.currentTimeMillis() < deadline) {
+            for (int i = 0; i < 1000; i++) {
+                found += conf.isSubjectInGlobalGroup(SUBSYSTEM, GROUP) ? 1 : 0;
+                found += conf.getMemberName(MEMBER) != null ? 1 : 0;
+                found += conf.getServiceId(CENTRAL_SERVICE) != null ? 1 : 0;
+                found += conf.getServerOwner(SERVER) != null ? 1 : 0;
+            }
+
+            lookups += 4000;
+        }
+
+        if (found == 0 && lookups > 0) {
+            throw new IllegalStateException("Nothing found from the configuration");
+        }
+
+        return lookups;
+    }
+
+    private static int getIntOption(CommandLine cmd, String name, int defaultValue) {
+        return cmd.getOptionValue(name) != null ? Integer.parseInt(cmd.getOptionValue(name)) : defaultValue;
+    }
+
+    private static CommandLine parseCommandLine(String args[]) {
+        try {
+            return new BasicParser().parse(OPTIONS, args);
+        } catch (ParseException e) {
+            log.error("Parsing command line failed: {}", e.getMessage());
+
+            usage();
+
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    private static Options getOptions() {
+        Options options = new Options();
+
+        addOption(options, "c", "conf", "global configuration directory (default: " + DEFAULT_CONF_DIR + ")");
+        addOption(options, "t", "threads", "threads doing lookups concurrently (default: " + DEFAULT_THREADS + ")");
+        addOption(options, "s", "seconds", "duration of a run in seconds (default: " + DEFAULT_SECONDS + ")");
+
+        Option usage = new Option("h", "help", false, "help");
+        usage.setRequired(false);
+        options.addOption(usage);
+
+        return options;
+    }
+
+    private static void addOption(Options options, String opt, String longOpt, String description) {
+        Option option = new Option(opt, longOpt, true, description);
+        option.setRequired(false);
+        options.addOption(option);
+    }
+
+    private static void usage() {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("GlobalConfBenchmark", OPTIONS);
+    }
+
+    /**
+     * Serializes the accessors of the caching configuration directory on a single monitor.
+     */
+    private static class SynchronizedConfigurationDirectory extends CachingConfigurationDirectory {
+        SynchronizedConfigurationDirectory(String directoryPath) throws Exception {
+            super(directoryPath, true);
+        }
+
+        @Override
+        public synchronized String getInstanceIdentifier() {
+            return super.getInstanceIdentifier();
+        }
+
+        @Override
+        public synchronized PrivateParametersV2 getPrivate(String instanceId) {
+            return super.getPrivate(instanceId);
+        }
+
+        @Override
+        public synchronized SharedParametersV2 getShared(String instanceId) {
+            return super.getShared(instanceId);
+        }
+    }
+}
@@ -40,10 +40,13 @@ import java.security.cert.X509Certificate;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests the OCSP cache.
@@ -103,4 +106,68 @@ public class OcspCacheTest {
         assertNull(cache.put("foo", ocsp));
         assertNull(cache.get("foo"));
     }
+
+    /**
+     * Tests that an OCSP response is expired after its nextUpdate.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void responseExpiresAtNextUpdate() throws Exception {
+        Date thisUpdate = new Date();
+        Date nextUpdate = Date.from(thisUpdate.toInstant().plus(1, ChronoUnit.SECONDS));
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(subject, issuer,
+                signer, signerKey, CertificateStatus.GOOD, thisUpdate, nextUpdate);
+
+        OcspCache cache = new OcspCache();
+        assertNull(cache.put("foo", ocsp));
+        assertEquals(ocsp, cache.get("foo", thisUpdate));
+        assertNull(cache.get("foo", Date.from(nextUpdate.toInstant().plus(1, ChronoUnit.SECONDS))));
+    }
+
+    /**
+     * Tests that checking the freshness of an OCSP response at a later date
+     * does not remove it from the cache.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void isFreshDoesNotEvict() throws Exception {
+        Date thisUpdate = new Date();
+        Date nextUpdate = Date.from(thisUpdate.toInstant().plus(1, ChronoUnit.HOURS));
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(subject, issuer,
+                signer, signerKey, CertificateStatus.GOOD, thisUpdate, nextUpdate);
+
+        OcspCache cache = new OcspCache();
+        assertNull(cache.put("foo", ocsp));
+        assertTrue(cache.isFresh("foo", thisUpdate));
+        assertFalse(cache.isFresh("foo", Date.from(nextUpdate.toInstant().plus(1, ChronoUnit.SECONDS))));
+        assertFalse(cache.isFresh("bar", thisUpdate));
+        assertEquals(ocsp, cache.get("foo", thisUpdate));
+    }
+
+    /**
+     * Tests that the freshness of a cached OCSP response follows the global
+     * configuration.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void freshnessFollowsGlobalConf() throws Exception {
+        Date thisUpdate = Date.from(Instant.now().minus(1, ChronoUnit.DAYS));
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(subject, issuer,
+                signer, signerKey, CertificateStatus.GOOD, thisUpdate, null);
+
+        try {
+            GlobalConf.reload(new EmptyGlobalConf() {
+                @Override
+                public int getOcspFreshnessSeconds(boolean smallestValue) {
+                    return (int) TimeUnit.DAYS.toSeconds(2);
+                }
+            });
+
+            OcspCache cache = new OcspCache();
+            assertNull(cache.put("foo", ocsp));
+            assertEquals(ocsp, cache.get("foo"));
+        } finally {
+            GlobalConf.reload(new EmptyGlobalConf());
+        }
+    }
 }
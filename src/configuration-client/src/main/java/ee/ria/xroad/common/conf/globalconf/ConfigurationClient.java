@@ -87,7 +87,7 @@ class ConfigurationClient {
     private void initConfigurationAnchor() throws Exception {
         log.trace("initConfigurationAnchor()");
 
-        String anchorFileName = SystemProperties.getConfigurationAnchorFile();
+        String anchorFileName = getConfigurationAnchorFile();
 
         if (!Files.exists(Paths.get(anchorFileName))) {
             log.warn("Cannot download configuration, anchor file {} does not exist", anchorFileName);
@@ -110,8 +110,16 @@ class ConfigurationClient {
         initAdditionalConfigurationSources();
     }
 
+    String getConfigurationAnchorFile() {
+        return SystemProperties.getConfigurationAnchorFile();
+    }
+
+    String getConfigurationPath() {
+        return SystemProperties.getConfigurationPath();
+    }
+
     void saveInstanceIdentifier() throws Exception {
-        ConfigurationDirectory.saveInstanceIdentifier(SystemProperties.getConfigurationPath(),
+        ConfigurationDirectory.saveInstanceIdentifier(getConfigurationPath(),
                 configurationAnchor.getInstanceIdentifier());
     }
 
@@ -120,7 +128,7 @@ class ConfigurationClient {
 
         additionalSources.clear();
 
-        String confDir = SystemProperties.getConfigurationPath();
+        String confDir = getConfigurationPath();
 
         try {
             ConfigurationDirectoryV2 dir = new ConfigurationDirectoryV2(confDir);
@@ -137,20 +137,8 @@ public final class ConfigurationClientMain {
         System.setProperty(SystemProperties.CONFIGURATION_ANCHOR_FILE, configurationAnchorFile);
         System.setProperty(SystemProperties.CONFIGURATION_PATH, configurationPath);
 
-        FileNameProvider fileNameProvider = new FileNameProviderImpl(configurationPath);
-
-        client = new ConfigurationClient(getDummyDownloadedFiles(),
-                new ConfigurationDownloader(fileNameProvider, Integer.parseInt(version)) {
-                    @Override
-                    void addAdditionalConfigurationSources(PrivateParametersV2 privateParameters) {
-                        // Do not download additional source.
-                    }
-                }, Integer.parseInt(version)) {
-            @Override
-            void initAdditionalConfigurationSources() {
-                // Not needed.
-            }
-        };
+        client = OneShotConfigurationClient.createDownloadClient(configurationAnchorFile, configurationPath,
+                Integer.parseInt(version));
 
         return execute();
     }
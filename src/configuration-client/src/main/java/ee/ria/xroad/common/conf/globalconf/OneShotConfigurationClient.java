@@ -0,0 +1,155 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+
+/**
+ * Downloads global configuration once, in the calling process. Unlike the one-shot modes of
+ * {@link ConfigurationClientMain}, the configuration anchor and the download directory are given as arguments
+ * instead of system properties, so several configurations can be downloaded at the same time.
+ */
+@Slf4j
+public final class OneShotConfigurationClient {
+
+    private OneShotConfigurationClient() {
+    }
+
+    /**
+     * Downloads the global configuration described by the configuration anchor. Only the configuration source of
+     * the anchor is downloaded, additional configuration sources are ignored.
+     * @param configurationAnchorFile path to the configuration anchor file
+     * @param configurationPath directory where the configuration is downloaded
+     * @param version the global configuration version to download
+     * @throws Exception if the configuration cannot be downloaded or verified
+     */
+    public static void download(String configurationAnchorFile, String configurationPath, int version)
+            throws Exception {
+        log.debug("Downloading configuration using anchor {} path = {} version = {}",
+                configurationAnchorFile, configurationPath, version);
+
+        createDownloadClient(configurationAnchorFile, configurationPath, version).execute();
+    }
+
+    /**
+     * Downloads the current version of the global configuration described by the configuration anchor and verifies
+     * it, without saving it to disk.
+     * @param configurationAnchorFile path to the configuration anchor file
+     * @throws Exception if the configuration cannot be downloaded or verified
+     */
+    public static void validate(String configurationAnchorFile) throws Exception {
+        log.debug("Validating configuration using anchor {}", configurationAnchorFile);
+
+        createValidateClient(configurationAnchorFile).execute();
+    }
+
+    static ConfigurationClient createDownloadClient(String configurationAnchorFile, String configurationPath,
+            int version) {
+        DownloadedFiles downloadedFiles = new DownloadedFiles(configurationPath) {
+            @Override
+            void delete(Path path) {
+                // old configuration files aren't removed when running as non daemon
+            }
+        };
+
+        ConfigurationDownloader downloader =
+                new ConfigurationDownloader(new FileNameProviderImpl(configurationPath), version) {
+                    @Override
+                    void addAdditionalConfigurationSources(PrivateParametersV2 privateParameters) {
+                        // Do not download additional source.
+                    }
+                };
+
+        return new ConfigurationClient(downloadedFiles, downloader, version) {
+            @Override
+            String getConfigurationAnchorFile() {
+                return configurationAnchorFile;
+            }
+
+            @Override
+            String getConfigurationPath() {
+                return configurationPath;
+            }
+
+            @Override
+            void initAdditionalConfigurationSources() {
+                // Not needed.
+            }
+        };
+    }
+
+    private static ConfigurationClient createValidateClient(String configurationAnchorFile) {
+        String configurationPath = SystemProperties.getConfigurationPath();
+
+        // Nothing is read from or written to the configuration directory
+        DownloadedFiles downloadedFiles = new DownloadedFiles(configurationPath) {
+            @Override
+            void sync() {
+                // Not needed.
+            }
+        };
+
+        ConfigurationDownloader downloader = new ConfigurationDownloader(new FileNameProviderImpl(configurationPath),
+                SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION) {
+            @Override
+            boolean shouldDownload(ConfigurationFile configurationFile, Path file) {
+                return true;
+            }
+
+            @Override
+            void persistContent(byte[] content, Path destination, ConfigurationFile file) {
+                // empty cause we don't want to persist files to disk
+            }
+
+            @Override
+            void updateExpirationDate(Path destination, ConfigurationFile file) {
+                // empty cause we don't want to persist files to disk
+            }
+        };
+
+        return new ConfigurationClient(downloadedFiles, downloader,
+                SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION) {
+            @Override
+            String getConfigurationAnchorFile() {
+                return configurationAnchorFile;
+            }
+
+            @Override
+            void initAdditionalConfigurationSources() {
+                // Not needed.
+            }
+
+            @Override
+            void saveInstanceIdentifier() {
+                // Not needed.
+            }
+        };
+    }
+}
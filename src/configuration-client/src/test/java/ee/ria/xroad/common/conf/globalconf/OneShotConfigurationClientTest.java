@@ -0,0 +1,98 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the in-process one-shot configuration client.
+ */
+public class OneShotConfigurationClientTest {
+
+    /**
+     * Clears the system properties set by the tests.
+     */
+    @After
+    public void tearDown() {
+        System.clearProperty(SystemProperties.CONFIGURATION_ANCHOR_FILE);
+        System.clearProperty(SystemProperties.CONFIGURATION_PATH);
+    }
+
+    /**
+     * Test to ensure the anchor and the download directory are taken from the arguments and not from the system
+     * properties, so that several configurations can be downloaded at the same time.
+     */
+    @Test
+    public void usesGivenAnchorAndPath() {
+        System.setProperty(SystemProperties.CONFIGURATION_ANCHOR_FILE, "build/other-anchor.xml");
+        System.setProperty(SystemProperties.CONFIGURATION_PATH, "build/other-conf");
+
+        ConfigurationClient client = OneShotConfigurationClient.createDownloadClient(
+                "build/anchor.xml", "build/conf", SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION);
+
+        assertEquals("build/anchor.xml", client.getConfigurationAnchorFile());
+        assertEquals("build/conf", client.getConfigurationPath());
+    }
+
+    /**
+     * Test to ensure the download fails when the anchor does not exist.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void downloadFailsWithoutAnchor() throws Exception {
+        try {
+            OneShotConfigurationClient.download("build/missing-anchor.xml", "build/conf",
+                    SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION);
+
+            fail("Should fail to download");
+        } catch (FileNotFoundException expected) {
+            assertEquals("build/missing-anchor.xml", expected.getMessage());
+        }
+    }
+
+    /**
+     * Test to ensure the validation fails when the anchor does not exist.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void validateFailsWithoutAnchor() throws Exception {
+        try {
+            OneShotConfigurationClient.validate("build/missing-anchor.xml");
+
+            fail("Should fail to validate");
+        } catch (FileNotFoundException expected) {
+            assertEquals("build/missing-anchor.xml", expected.getMessage());
+        }
+    }
+}
@@ -25,6 +25,7 @@
  */
 package ee.ria.xroad.confproxy;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.SystemPropertiesLoader;
 import ee.ria.xroad.confproxy.util.ConfProxyHelper;
 import ee.ria.xroad.signer.protocol.SignerClient;
@@ -35,9 +36,15 @@ import lombok.extern.slf4j.Slf4j;
 import scala.concurrent.Await;
 import scala.concurrent.duration.Duration;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static ee.ria.xroad.common.SystemProperties.CONF_FILE_CONFPROXY;
 
@@ -92,7 +99,9 @@ public final class ConfProxyMain {
     }
 
     /**
-     * Executes all configuration proxy instances in sequence.
+     * Executes all configuration proxy instances, up to instance-parallelism
+     * instances at the same time. An instance that fails does not affect the
+     * other instances.
      * @param args program arguments
      * @throws Exception if not able to get list of available instances
      */
@@ -107,15 +116,52 @@ public final class ConfProxyMain {
             log.debug("Instances from available instances: {}", instances);
         }
 
-        for (String instance: instances) {
-            try {
-                ConfProxy proxy = new ConfProxy(instance);
-                log.info("ConfProxy executing for instance {}", instance);
-                proxy.execute();
-            } catch (Exception ex) {
-                log.error("Error when executing configuration-proxy '{}'",
-                        instance, ex);
+        if (instances.isEmpty()) {
+            return;
+        }
+
+        int parallelism = Math.min(instances.size(), SystemProperties.getConfigurationProxyInstanceParallelism());
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread instanceThread = new Thread(r);
+                instanceThread.setName("confproxy-" + threadNumber.incrementAndGet());
+                instanceThread.setDaemon(true);
+
+                return instanceThread;
+            }
+        });
+
+        try {
+            List<Future<?>> executions = new ArrayList<>();
+
+            for (String instance : instances) {
+                executions.add(executor.submit(() -> executeInstance(instance)));
             }
+
+            for (Future<?> execution : executions) {
+                execution.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Executes one configuration proxy instance.
+     * @param instance name of the instance
+     */
+    private static void executeInstance(final String instance) {
+        try {
+            ConfProxy proxy = new ConfProxy(instance);
+            log.info("ConfProxy executing for instance {}", instance);
+            proxy.execute();
+        } catch (Exception ex) {
+            log.error("Error when executing configuration-proxy '{}'",
+                    instance, ex);
         }
     }
 
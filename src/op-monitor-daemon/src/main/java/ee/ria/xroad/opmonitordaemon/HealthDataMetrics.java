@@ -29,29 +29,22 @@ import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 
-import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
-import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getLastRequestTimestampGaugeName;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestCounterName;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestDurationName;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestSizeName;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getResponseSizeName;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getServiceTypeName;
-
 /**
  * Health data metrics forwarded over JMX. Also, these metrics are used when
  * health data is requested using the getSecurityServerHealthData SOAP request.
+ * The metrics of each service are held by a ServiceHealthMetrics instance
+ * that is looked up by the service ID, so processing a record does not depend
+ * on the number of metrics in the registry.
  */
 @Slf4j
 final class HealthDataMetrics {
@@ -60,19 +53,49 @@ final class HealthDataMetrics {
             OpMonitoringSystemProperties
                     .getOpMonitorHealthStatisticsPeriodSeconds();
 
+    private static final int OP_MONITOR_HEALTH_STATS_BUCKETS =
+            OpMonitoringSystemProperties.getOpMonitorHealthStatisticsBuckets();
+
     // The names of metrics that are registered when the operational
     // monitoring daemon starts.
     static final String STATISTICS_PERIOD_SECONDS = "statisticsPeriodSeconds";
     static final String MONITORING_STARTUP_TIMESTAMP =
             "monitoringStartupTimestamp";
 
-    // The timestamps of last successful and unsuccessful requests are stored
-    // for each service that is handled for, and are provided when the
-    // respective gauge is queried.
-    private static Map<String, Long> requestTimestamps = new HashMap<>();
+    // The health metrics of each service, per metric registry. The registry
+    // is only weakly referenced, so that the metrics of a discarded registry
+    // can be collected.
+    private static final Map<MetricRegistry, ServiceIndex> SERVICE_INDEXES =
+            new WeakHashMap<>();
+
+    /**
+     * The health metrics of the services whose records have been processed,
+     * indexed by the service ID and by the escaped form of the service ID
+     * that the metric names contain.
+     */
+    private static final class ServiceIndex {
+        final Map<ServiceId, ServiceHealthMetrics> byServiceId =
+                new ConcurrentHashMap<>();
+        final Map<String, ServiceHealthMetrics> byEscapedId =
+                new ConcurrentHashMap<>();
+
+        ServiceHealthMetrics get(ServiceId serviceId) {
+            ServiceHealthMetrics metrics = byServiceId.get(serviceId);
+
+            if (metrics == null) {
+                // Service IDs with the same escaped form share the metrics,
+                // since the metric names are derived from the escaped form.
+                metrics = byServiceId.computeIfAbsent(serviceId,
+                        id -> byEscapedId.computeIfAbsent(
+                                HealthDataMetricsUtil.escapeServiceId(id),
+                                escapedId -> new ServiceHealthMetrics(id,
+                                        OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS,
+                                        OP_MONITOR_HEALTH_STATS_BUCKETS)));
+            }
 
-    // Stores the service types of the services
-    private static Map<String, String> serviceTypes = new HashMap<>();
+            return metrics;
+        }
+    }
 
     private HealthDataMetrics() {
     }
@@ -99,6 +122,8 @@ final class HealthDataMetrics {
      */
     static void processRecords(MetricRegistry registry,
             List<OperationalDataRecord> records) {
+        ServiceIndex index = getServiceIndex(registry);
+
         for (OperationalDataRecord rec : records) {
             if (!rec.getSecurityServerType().equals(
                     OpMonitoringData.SecurityServerType.PRODUCER)) {
@@ -114,91 +139,27 @@ final class HealthDataMetrics {
                 continue;
             }
 
-            registerOrUpdateGauges(registry, serviceId, rec);
-            registerOrUpdateCounters(registry, serviceId, rec);
-
-            if (rec.getSucceeded()) {
-                // Statistics of request duration and the sizes of the request
-                // and response are computed over the successful requests only.
-                registerOrUpdateHistograms(registry, serviceId, rec);
-            }
-        }
-    }
-
-    private static void registerOrUpdateGauges(MetricRegistry registry,
-            ServiceId serviceId, OperationalDataRecord rec) {
-        // last request timestamp
-        String expectedGaugeName = getLastRequestTimestampGaugeName(serviceId,
-                rec.getSucceeded());
-        requestTimestamps.put(expectedGaugeName, rec.getResponseOutTs());
-        Gauge gauge = HealthDataMetricsUtil.findGauge(registry,
-                expectedGaugeName);
-        if (gauge == null) {
-            registry.register(expectedGaugeName,
-                    (Gauge<Long>) () -> requestTimestamps.get(
-                            expectedGaugeName));
-        }
-
-        // service type
-        String serviceTypeGaugeName = getServiceTypeName(serviceId);
-        serviceTypes.put(serviceTypeGaugeName, rec.getServiceType());
-        Gauge serviceTypeGauge = HealthDataMetricsUtil.findGauge(registry,
-                serviceTypeGaugeName);
-        if (serviceTypeGauge == null) {
-            registry.register(serviceTypeGaugeName,
-                    (Gauge<String>) () -> serviceTypes.get(serviceTypeGaugeName));
+            index.get(serviceId).update(registry, rec);
         }
     }
 
-    private static void registerOrUpdateCounters(MetricRegistry registry,
-            ServiceId serviceId, OperationalDataRecord rec) {
-        String expectedCounterName = getRequestCounterName(serviceId,
-                rec.getSucceeded());
-        Counter counter = HealthDataMetricsUtil.findCounter(registry,
-                expectedCounterName);
-
-        if (counter == null) {
-            // Register and increment a new counter.
-            counter = new SlidingTimeWindowCounter(
-                    OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS, TimeUnit.SECONDS);
-            registry.register(expectedCounterName, counter);
-        }
-
-        counter.inc();
-    }
-
-    private static void registerOrUpdateHistograms(MetricRegistry registry,
-            ServiceId serviceId, OperationalDataRecord rec) {
-        registerOrUpdateHistogram(registry, getRequestDurationName(serviceId), getRequestDuration(rec));
-
-        registerOrUpdateHistogram(registry, getRequestSizeName(serviceId), rec.getRequestSize());
-        registerOrUpdateHistogram(registry, getResponseSizeName(serviceId), rec.getResponseSize());
+    /**
+     * @param registry the metric registry of the operational monitoring daemon
+     * @param escapedServiceId the service ID escaped using
+     *                         HealthDataMetricsUtil.escapeServiceId()
+     * @return the health metrics of the service or null if no records of the
+     * service have been processed
+     */
+    static ServiceHealthMetrics findServiceMetrics(MetricRegistry registry,
+            String escapedServiceId) {
+        return getServiceIndex(registry).byEscapedId.get(escapedServiceId);
     }
 
-    private static void registerOrUpdateHistogram(MetricRegistry registry, String histogramName, Long newValue) {
-
-        if (newValue == null) return;
-
-        Histogram histogram = HealthDataMetricsUtil.findHistogram(registry, histogramName);
-
-        if (histogram == null) {
-            // Add a histogram corresponding to the service and update it.
-            histogram = registry.register(histogramName,
-                    new Histogram(new SlidingTimeWindowReservoir(
-                            OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS,
-                            TimeUnit.SECONDS)));
+    private static ServiceIndex getServiceIndex(MetricRegistry registry) {
+        synchronized (SERVICE_INDEXES) {
+            return SERVICE_INDEXES.computeIfAbsent(registry,
+                    r -> new ServiceIndex());
         }
-
-        histogram.update(newValue);
-    }
-
-    /**
-     * @param record an operational data record
-     * @return the duration of the request (the difference between the
-     * response out timestamp and the request in timestamp of the request.
-     */
-    private static Long getRequestDuration(OperationalDataRecord record) {
-        return record.getResponseOutTs() - record.getRequestInTs();
     }
 
     /**
@@ -35,11 +35,10 @@ import ee.ria.xroad.opmonitordaemon.message.LastPeriodStatisticsType;
 import ee.ria.xroad.opmonitordaemon.message.ServiceEventsType;
 import ee.ria.xroad.opmonitordaemon.message.ServicesEventsType;
 
-import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
-import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -56,15 +55,7 @@ import java.util.stream.Stream;
 
 import static ee.ria.xroad.opmonitordaemon.HealthDataMetrics.MONITORING_STARTUP_TIMESTAMP;
 import static ee.ria.xroad.opmonitordaemon.HealthDataMetrics.STATISTICS_PERIOD_SECONDS;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.findCounter;
 import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.findGauge;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.findHistogram;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getLastRequestTimestampGaugeName;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestCounterName;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestDurationName;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestSizeName;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getResponseSizeName;
-import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getServiceTypeName;
 
 /**
  * Query handler for health data requests.
@@ -139,12 +130,11 @@ public class HealthDataRequestHandler extends QueryRequestHandler {
                 + " in health metrics registry!");
     }
 
-    private Stream<ServiceId> servicesWithAvailableMetrics() {
+    private Stream<String> servicesWithAvailableMetrics() {
         return healthMetricRegistry.getMetrics().entrySet().stream()
                 .map(HealthDataRequestHandler::extractIdentifier)
                 .filter(Objects::nonNull)
-                .distinct()
-                .map(HealthDataRequestHandler::convertIdentifier);
+                .distinct();
     }
 
     private ServicesEventsType buildServicesEvents(
@@ -152,106 +142,86 @@ public class HealthDataRequestHandler extends QueryRequestHandler {
         ServicesEventsType servicesEvents =
                 OBJECT_FACTORY.createServicesEventsType();
 
-        servicesWithAvailableMetrics()
-                // If a client ID was provided in the request then
-                // only include service metrics for that provider
-                .filter(id -> provider.map(id.getClientId()::equals)
-                        .orElse(true))
-                .forEach(service -> servicesEvents.getServiceEvents().add(
-                        buildServiceEvents(service)));
+        servicesWithAvailableMetrics().forEach(id -> {
+            ServiceId service = convertIdentifier(id);
+
+            // If a client ID was provided in the request then
+            // only include service metrics for that provider
+            if (provider.map(service.getClientId()::equals).orElse(true)) {
+                servicesEvents.getServiceEvents().add(buildServiceEvents(
+                        service, HealthDataMetrics.findServiceMetrics(
+                                healthMetricRegistry, id)));
+            }
+        });
 
         return servicesEvents;
     }
 
-    @SuppressWarnings("unchecked")
-    private ServiceEventsType buildServiceEvents(ServiceId service) {
+    private ServiceEventsType buildServiceEvents(ServiceId service,
+            ServiceHealthMetrics metrics) {
         ServiceEventsType serviceEvents =
                 OBJECT_FACTORY.createServiceEventsType();
 
         serviceEvents.setService(service);
 
-        Optional<Gauge<Long>> lastSuccessfulRequestTimestamp =
-                Optional.ofNullable(findGauge(healthMetricRegistry,
-                        getLastRequestTimestampGaugeName(service, true)));
-        lastSuccessfulRequestTimestamp.ifPresent(
-                g -> serviceEvents.setLastSuccessfulRequestTimestamp(
-                        g.getValue()));
+        LastPeriodStatisticsType lastPeriodStats =
+                OBJECT_FACTORY.createLastPeriodStatisticsType();
+        lastPeriodStats.setSuccessfulRequestCount(0);
+        lastPeriodStats.setUnsuccessfulRequestCount(0);
 
-        Optional<Gauge<Long>> lastUnsuccessfulRequestTimestamp =
-                Optional.ofNullable(findGauge(healthMetricRegistry,
-                        getLastRequestTimestampGaugeName(service, false)));
-        lastUnsuccessfulRequestTimestamp.ifPresent(
-                g -> serviceEvents.setLastUnsuccessfulRequestTimestamp(
-                        g.getValue()));
+        serviceEvents.setLastPeriodStatistics(lastPeriodStats);
 
-        Optional<Gauge<String>> serviceType =
-                Optional.ofNullable(findGauge(healthMetricRegistry, getServiceTypeName(service)));
-        serviceType.ifPresent(g -> serviceEvents.setServiceType(g.getValue()));
+        if (metrics == null) {
+            return serviceEvents;
+        }
 
-        serviceEvents.setLastPeriodStatistics(buildLastPeriodStats(service));
+        serviceEvents.setLastSuccessfulRequestTimestamp(
+                metrics.getLastRequestTimestamp(true));
+        serviceEvents.setLastUnsuccessfulRequestTimestamp(
+                metrics.getLastRequestTimestamp(false));
+        serviceEvents.setServiceType(metrics.getServiceType());
+
+        fillLastPeriodStats(lastPeriodStats, metrics);
 
         return serviceEvents;
     }
 
-    private LastPeriodStatisticsType buildLastPeriodStats(ServiceId service) {
-        LastPeriodStatisticsType lastPeriodStats =
-                OBJECT_FACTORY.createLastPeriodStatisticsType();
-
-        lastPeriodStats.setSuccessfulRequestCount(0);
-        Optional<Counter> successfulEventCount =
-                Optional.ofNullable(findCounter(healthMetricRegistry,
-                        getRequestCounterName(service, true)));
-        successfulEventCount.ifPresent(
+    private static void fillLastPeriodStats(
+            LastPeriodStatisticsType lastPeriodStats,
+            ServiceHealthMetrics metrics) {
+        Optional.ofNullable(metrics.getRequestCount(true)).ifPresent(
                 c -> lastPeriodStats.setSuccessfulRequestCount(
                         (int) c.getCount()));
 
-        lastPeriodStats.setUnsuccessfulRequestCount(0);
-        Optional<Counter> unsuccessfulEventCount =
-                Optional.ofNullable(findCounter(healthMetricRegistry,
-                        getRequestCounterName(service, false)));
-        unsuccessfulEventCount.ifPresent(
+        Optional.ofNullable(metrics.getRequestCount(false)).ifPresent(
                 c -> lastPeriodStats.setUnsuccessfulRequestCount(
                         (int) c.getCount()));
 
         if (lastPeriodStats.getSuccessfulRequestCount() > 0) {
-            Optional<Histogram> requestDuration =
-                    Optional.ofNullable(findHistogram(healthMetricRegistry,
-                            getRequestDurationName(service)));
-            requestDuration.ifPresent(h -> {
-                lastPeriodStats.setRequestMinDuration(h.getSnapshot().getMin());
-                lastPeriodStats.setRequestAverageDuration(
-                        h.getSnapshot().getMean());
-                lastPeriodStats.setRequestMaxDuration(h.getSnapshot().getMax());
-                lastPeriodStats.setRequestDurationStdDev(
-                        h.getSnapshot().getStdDev());
+            Optional.ofNullable(metrics.getRequestDuration()).ifPresent(h -> {
+                Snapshot snapshot = h.getSnapshot();
+                lastPeriodStats.setRequestMinDuration(snapshot.getMin());
+                lastPeriodStats.setRequestAverageDuration(snapshot.getMean());
+                lastPeriodStats.setRequestMaxDuration(snapshot.getMax());
+                lastPeriodStats.setRequestDurationStdDev(snapshot.getStdDev());
             });
 
-            Optional<Histogram> requestSize =
-                    Optional.ofNullable(findHistogram(healthMetricRegistry,
-                            getRequestSizeName(service)));
-            requestSize.ifPresent(h -> {
-                lastPeriodStats.setRequestMinSize(h.getSnapshot().getMin());
-                lastPeriodStats.setRequestAverageSize(
-                        h.getSnapshot().getMean());
-                lastPeriodStats.setRequestMaxSize(h.getSnapshot().getMax());
-                lastPeriodStats.setRequestSizeStdDev(
-                        h.getSnapshot().getStdDev());
+            Optional.ofNullable(metrics.getRequestSize()).ifPresent(h -> {
+                Snapshot snapshot = h.getSnapshot();
+                lastPeriodStats.setRequestMinSize(snapshot.getMin());
+                lastPeriodStats.setRequestAverageSize(snapshot.getMean());
+                lastPeriodStats.setRequestMaxSize(snapshot.getMax());
+                lastPeriodStats.setRequestSizeStdDev(snapshot.getStdDev());
             });
 
-            Optional<Histogram> responseSize =
-                    Optional.ofNullable(findHistogram(healthMetricRegistry,
-                            getResponseSizeName(service)));
-            responseSize.ifPresent(h -> {
-                lastPeriodStats.setResponseMinSize(h.getSnapshot().getMin());
-                lastPeriodStats.setResponseAverageSize(
-                        h.getSnapshot().getMean());
-                lastPeriodStats.setResponseMaxSize(h.getSnapshot().getMax());
-                lastPeriodStats.setResponseSizeStdDev(
-                        h.getSnapshot().getStdDev());
+            Optional.ofNullable(metrics.getResponseSize()).ifPresent(h -> {
+                Snapshot snapshot = h.getSnapshot();
+                lastPeriodStats.setResponseMinSize(snapshot.getMin());
+                lastPeriodStats.setResponseAverageSize(snapshot.getMean());
+                lastPeriodStats.setResponseMaxSize(snapshot.getMax());
+                lastPeriodStats.setResponseSizeStdDev(snapshot.getStdDev());
             });
         }
-
-        return lastPeriodStats;
     }
 
     private static String extractIdentifier(Entry<String, Metric> metric) {
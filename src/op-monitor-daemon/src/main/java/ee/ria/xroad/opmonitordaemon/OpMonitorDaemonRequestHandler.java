@@ -27,6 +27,7 @@ package ee.ria.xroad.opmonitordaemon;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataStream;
 import ee.ria.xroad.common.util.HandlerBase;
 import ee.ria.xroad.common.util.JsonUtils;
 import ee.ria.xroad.common.util.MimeTypes;
@@ -61,6 +62,9 @@ class OpMonitorDaemonRequestHandler extends HandlerBase {
 
     private static final byte[] OK_RESPONSE_BYTES = getOkResponseBytes();
 
+    private static final String STORE_REQUEST_CONTENT_TYPES =
+            MimeTypes.JSON + ", " + StoreOpMonitoringDataStream.CONTENT_TYPE;
+
     private final MetricRegistry healthMetricRegistry;
 
     OpMonitorDaemonRequestHandler(MetricRegistry healthMetricRegistry) {
@@ -115,8 +119,8 @@ class OpMonitorDaemonRequestHandler extends HandlerBase {
         }
     }
 
-    // Requests to store data are HTTP requests with JSON payload. Errors
-    // must be reported in JSON format.
+    // Requests to store data are HTTP requests with JSON or length-prefixed
+    // records payload. Errors must be reported in JSON format.
     private void handleStoreRequest(HttpServletRequest request,
             HttpServletResponse response) throws IOException {
         try {
@@ -127,9 +131,10 @@ class OpMonitorDaemonRequestHandler extends HandlerBase {
             String contentType = MimeUtils.getBaseContentType(
                     request.getContentType());
 
-            if (!MimeTypes.JSON.equalsIgnoreCase(contentType)) {
+            if (!MimeTypes.JSON.equalsIgnoreCase(contentType)
+                    && !StoreOpMonitoringDataStream.CONTENT_TYPE.equalsIgnoreCase(contentType)) {
                 throw new RuntimeException(invalidContentTypeError(request,
-                        MimeTypes.JSON));
+                        STORE_REQUEST_CONTENT_TYPES));
             }
 
             log.info("Received store request from {}", request.getRemoteAddr());
@@ -189,6 +194,8 @@ class OpMonitorDaemonRequestHandler extends HandlerBase {
     private static void sendJsonResponse(HttpServletResponse response,
             byte[] messageBytes) throws IOException {
         response.setStatus(HttpServletResponse.SC_OK);
+        response.setHeader(StoreOpMonitoringDataStream.ACCEPT_POST,
+                STORE_REQUEST_CONTENT_TYPES);
         response.setContentType(MimeTypes.JSON);
         response.setContentLength(messageBytes.length);
         response.setCharacterEncoding(MimeUtils.UTF8);
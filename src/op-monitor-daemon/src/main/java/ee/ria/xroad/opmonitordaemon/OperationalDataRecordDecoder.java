@@ -0,0 +1,161 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataStream;
+import ee.ria.xroad.common.util.JsonUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Decodes the operational data records of a store request one record at a time, without reading the whole
+ * request into memory first. Records in the length-prefixed format of
+ * {@link StoreOpMonitoringDataStream} and in JSON are supported.
+ */
+abstract class OperationalDataRecordDecoder implements Iterator<OperationalDataRecord> {
+
+    private static final Gson GSON = JsonUtils.getSerializer();
+
+    private OperationalDataRecord nextRecord;
+    private boolean finished;
+
+    /**
+     * Creates a decoder for the given content type.
+     * @param contentType base content type of the request
+     * @param in the request body
+     * @return JSON decoder unless the content type is the length-prefixed format
+     */
+    static OperationalDataRecordDecoder create(String contentType, InputStream in) {
+        return StoreOpMonitoringDataStream.CONTENT_TYPE.equalsIgnoreCase(contentType)
+                ? new RecordStreamDecoder(in) : new JsonDecoder(in);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextRecord == null && !finished) {
+            try {
+                nextRecord = decodeNext();
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Received invalid request", e);
+            }
+
+            finished = nextRecord == null;
+        }
+
+        return nextRecord != null;
+    }
+
+    @Override
+    public OperationalDataRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        OperationalDataRecord record = nextRecord;
+        nextRecord = null;
+
+        return record;
+    }
+
+    /**
+     * @return the next record or null if there are no more records
+     * @throws IOException if the request is malformed or an I/O error occurs
+     */
+    protected abstract OperationalDataRecord decodeNext() throws IOException;
+
+    private static final class RecordStreamDecoder extends OperationalDataRecordDecoder {
+        private final InputStream in;
+
+        RecordStreamDecoder(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        protected OperationalDataRecord decodeNext() throws IOException {
+            byte[] record = StoreOpMonitoringDataStream.readRecord(in);
+
+            return record != null
+                    ? GSON.fromJson(new String(record, StandardCharsets.UTF_8), OperationalDataRecord.class) : null;
+        }
+    }
+
+    // Reads the records array of an OperationalDataRecords object element by
+    // element instead of reading the whole request into memory.
+    private static final class JsonDecoder extends OperationalDataRecordDecoder {
+        private final JsonReader reader;
+        private boolean inRecords;
+
+        JsonDecoder(InputStream in) {
+            reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        protected OperationalDataRecord decodeNext() throws IOException {
+            if (!inRecords) {
+                try {
+                    reader.beginObject();
+                } catch (EOFException e) {
+                    throw new IOException("No data was found in the request to store data", e);
+                }
+
+                if (!skipToRecords()) {
+                    return null;
+                }
+
+                reader.beginArray();
+                inRecords = true;
+            }
+
+            if (reader.hasNext()) {
+                return GSON.fromJson(reader, OperationalDataRecord.class);
+            }
+
+            return null;
+        }
+
+        private boolean skipToRecords() throws IOException {
+            while (reader.hasNext()) {
+                if ("records".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    return true;
+                }
+
+                reader.skipValue();
+            }
+
+            return false;
+        }
+    }
+}
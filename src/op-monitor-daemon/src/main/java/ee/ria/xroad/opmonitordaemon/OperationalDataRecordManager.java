@@ -30,11 +30,13 @@ import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 
 import lombok.Setter;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -51,6 +53,10 @@ final class OperationalDataRecordManager {
 
     private static final int DEFAULT_BATCH_SIZE = 50;
 
+    // The number of rows fetched from the database cursor at a time when
+    // streaming query results.
+    private static final int QUERY_FETCH_SIZE = 1000;
+
     @Setter
     private static int maxRecordsInPayload = OpMonitoringSystemProperties.getOpMonitorMaxRecordsInPayload();
 
@@ -78,14 +84,33 @@ final class OperationalDataRecordManager {
 
     static OperationalDataRecords queryRecords(long recordsFrom, long recordsTo, ClientId clientFilter,
             ClientId serviceProviderFilter, Set<String> outputFields) throws Exception {
-        OperationalDataRecords records = doInTransaction(session -> queryOperationalDataInTransaction(session,
-                recordsFrom, recordsTo, clientFilter, serviceProviderFilter, outputFields));
-
-        removeMonitoringDataTsIfNotSpecified(records, outputFields);
+        OperationalDataRecords records = new OperationalDataRecords(new ArrayList<>());
+        records.setNextRecordsFrom(streamRecords(recordsFrom, recordsTo, clientFilter, serviceProviderFilter,
+                outputFields, records.getRecords()::add));
 
         return records;
     }
 
+    /**
+     * Queries operational data records from the database using search criteria parameters and passes them to the
+     * handler one at a time, as they are read from a database cursor. The number of handled records is limited by
+     * the configured value maxRecordsInPayload plus overflow records with the same monitoringDataTs timestamp as
+     * the last included record.
+     * @param recordsFrom           records from timestamp seconds
+     * @param recordsTo             records to timestamp seconds
+     * @param clientFilter          filter records by client (if not null)
+     * @param serviceProviderFilter filter records by service provider (if not null)
+     * @param outputFields          list of the requested operational data field
+     * @param handler               the handler of the records
+     * @return the timestamp the next records are available from in case of records overflow, null otherwise
+     * @throws Exception if an error occurs
+     */
+    static Long streamRecords(long recordsFrom, long recordsTo, ClientId clientFilter,
+            ClientId serviceProviderFilter, Set<String> outputFields, RecordHandler handler) throws Exception {
+        return doInTransaction(session -> streamOperationalDataInTransaction(session, recordsFrom, recordsTo,
+                clientFilter, serviceProviderFilter, outputFields, handler));
+    }
+
     private static Void storeInTransaction(Session session, List<OperationalDataRecord> records, long timestamp) {
         int storedCount = 0;
         int batchSize = getConfiguredBatchSize(session);
@@ -119,77 +144,62 @@ final class OperationalDataRecordManager {
     }
 
     /**
-     * Queries operational data records from the database using search criteria parameters. The number of returned
-     * records is limited by the configured value maxRecordsInPayload plus overflow records with the same
-     * monitorindDataTs timestamp as the last included record.
-     * @param session               database session
-     * @param recordsFrom           records from timestamp seconds
-     * @param recordsTo             records to timestamp seconds
-     * @param clientFilter          filter records by client (if not null)
-     * @param serviceProviderFilter filter records by service provider (if not null)
-     * @param outputFields          list of the requested operational data field
-     * @return operational data records.
+     * Streams the operational data records matching the search criteria to the handler in a single pass over the
+     * results ordered by monitoringDataTs. After maxRecordsInPayload records, the records with the same
+     * monitoringDataTs as the last included record are still handled. Any record after those indicates overflow.
+     * @return the timestamp the next records are available from in case of records overflow, null otherwise
      */
-    @SuppressWarnings("unchecked")
-    private static OperationalDataRecords queryOperationalDataInTransaction(Session session, long recordsFrom,
-            long recordsTo, ClientId clientFilter, ClientId serviceProviderFilter, Set<String> outputFields) {
-
+    @SneakyThrows
+    private static Long streamOperationalDataInTransaction(Session session, long recordsFrom, long recordsTo,
+            ClientId clientFilter, ClientId serviceProviderFilter, Set<String> outputFields,
+            RecordHandler handler) {
         final OperationalDataRecordQuery
                 query = new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
         query.between(recordsFrom, recordsTo);
         query.orderByAsc(MONITORING_DATA_TS);
-        query.setMaxRecords(maxRecordsInPayload);
-        OperationalDataRecords records = new OperationalDataRecords(query.list());
 
-        // Check overflow.
-        if (records.size() == maxRecordsInPayload) {
-            log.trace("Check possible records overflow");
+        boolean removeMonitoringDataTs = !outputFields.isEmpty() && !outputFields.contains(MONITORING_DATA_TS);
+        int count = 0;
+        Long lastMonitoringDataTs = null;
 
-            long lastMonitoringDataTs = records.getLastMonitoringDataTs();
-            final OperationalDataRecordQuery overflow =
-                    new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
-            overflow.addOverflowCriteria(lastMonitoringDataTs);
-            OperationalDataRecords overflowRecords = new OperationalDataRecords(overflow.list());
+        try (ScrollableResults results = query.scroll(QUERY_FETCH_SIZE)) {
+            while (results.next()) {
+                OperationalDataRecord record = OperationalDataRecordQuery.toRecord(results.get(0));
+                long monitoringDataTs = record.getMonitoringDataTs();
 
-            records.removeRecordsByMonitoringDataTs(lastMonitoringDataTs);
-            records.append(overflowRecords);
+                if (lastMonitoringDataTs != null && monitoringDataTs != lastMonitoringDataTs) {
+                    // Some records in the range are not included.
+                    log.debug("Records overflow, set nextRecordsFrom to {}", lastMonitoringDataTs + 1);
 
-            if (recordsOverflow(session, lastMonitoringDataTs, recordsTo, clientFilter, serviceProviderFilter)) {
-                log.debug("Records overflow, set nextRecordsFrom to {}", lastMonitoringDataTs + 1);
+                    return lastMonitoringDataTs + 1;
+                }
 
-                records.setNextRecordsFrom(lastMonitoringDataTs + 1);
-            }
-        }
+                if (removeMonitoringDataTs) {
+                    record.setMonitoringDataTs(null);
+                }
 
-        return records;
-    }
+                handler.handle(record);
 
-    private static void removeMonitoringDataTsIfNotSpecified(OperationalDataRecords records, Set<String> outputFields) {
-        if (!outputFields.isEmpty() && !outputFields.contains(MONITORING_DATA_TS)) {
-            records.getRecords().forEach(i -> i.setMonitoringDataTs(null));
-        }
-    }
+                if (++count == maxRecordsInPayload) {
+                    log.trace("Check possible records overflow");
 
-    private static boolean recordsOverflow(Session session, long lastMonitoringDataTs, long recordsTo,
-            ClientId clientFilter, ClientId serviceProviderFilter) {
-        // Indicate overflow only if some records are not included.
-        return lastMonitoringDataTs < recordsTo && hasRecordsLeft(session, lastMonitoringDataTs, recordsTo,
-                clientFilter, serviceProviderFilter);
-    }
-
-    private static boolean hasRecordsLeft(Session session, long lastMonitoringDataTs, long recordsTo,
-            ClientId clientFilter, ClientId serviceProviderFilter) {
-        if (lastMonitoringDataTs == recordsTo) {
-            return false;
+                    lastMonitoringDataTs = monitoringDataTs;
+                }
+            }
         }
 
-        final OperationalDataRecordQuery query =
-                new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter,
-                        Collections.singleton(MONITORING_DATA_TS));
-        // BETWEEN treats the endpoint values as included in the range.
-        query.between(lastMonitoringDataTs + 1, recordsTo);
-        query.setMaxRecords(1);
+        return null;
+    }
 
-        return query.list().size() > 0;
+    /**
+     * Handler of the records streamed from the database.
+     */
+    @FunctionalInterface
+    interface RecordHandler {
+        /**
+         * @param record an operational data record
+         * @throws Exception if the record cannot be handled
+         */
+        void handle(OperationalDataRecord record) throws Exception;
     }
 }
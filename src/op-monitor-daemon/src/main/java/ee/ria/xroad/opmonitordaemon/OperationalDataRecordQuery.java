@@ -27,9 +27,11 @@ package ee.ria.xroad.opmonitordaemon;
 
 import ee.ria.xroad.common.identifier.ClientId;
 
-import lombok.Setter;
 import org.apache.commons.lang3.StringUtils;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.query.Query;
 
 import javax.persistence.Tuple;
 import javax.persistence.TupleElement;
@@ -70,9 +72,6 @@ final class OperationalDataRecordQuery {
     private final Root<OperationalDataRecord> from;
     private final Session session;
 
-    @Setter
-    private int maxRecords = Integer.MAX_VALUE;
-
     private Predicate pred;
     private List<Selection<?>> projection = new ArrayList<>();
     private javax.persistence.criteria.Order order = null;
@@ -91,7 +90,7 @@ final class OperationalDataRecordQuery {
 
     /**
      * Configures the projected output fields
-     * @see #transform
+     * @see #toRecord
      */
     private void configureOutputFields(boolean publicFieldsOnly, Set<String> outputFields) {
         if (publicFieldsOnly) {
@@ -151,19 +150,25 @@ final class OperationalDataRecordQuery {
                                 member.getSubsystemCode()));
     }
 
-    void addOverflowCriteria(long monitoringDataTs) {
-        pred = cb.and(pred, cb.equal(from.get(MONITORING_DATA_TS), monitoringDataTs));
+    /**
+     * Opens a forward-only cursor over the results. The rows are fetched from the database in batches of the given
+     * size as the cursor advances, and can be transformed into records with {@link #toRecord(Object)}.
+     * @param fetchSize the number of rows fetched from the database at a time
+     * @return the results, to be closed by the caller
+     */
+    ScrollableResults scroll(int fetchSize) {
+        return createQuery()
+                .setFetchSize(fetchSize)
+                .scroll(ScrollMode.FORWARD_ONLY);
     }
 
-    List<OperationalDataRecord> list() {
+    private Query<Tuple> createQuery() {
         query.multiselect(projection).where(pred);
         if (order != null) {
             query.orderBy(order);
         }
-        return transform(session.createQuery(query)
-                .setReadOnly(true)
-                .setMaxResults(maxRecords)
-                .getResultList());
+        return session.createQuery(query)
+                .setReadOnly(true);
     }
 
     void between(long fromTs, long toTs) {
@@ -175,32 +180,29 @@ final class OperationalDataRecordQuery {
     }
 
     /**
-     * Transforms a list of Tuple to list of OperationalDataRecord
+     * Transforms a row of the results to an OperationalDataRecord
      *
-     * A tuple represents a partial OperationalDataRecord. Assumes that the column aliases in a tuple match the field
-     * names and a setter for the field exists (uses reflection). Assumes that the values can
+     * A row is a Tuple representing a partial OperationalDataRecord. Assumes that the column aliases in a tuple match
+     * the field names and a setter for the field exists (uses reflection). Assumes that the values can
      * be directly assigned (no recursive tranformation).
+     * @param row a row of the results returned by {@link #scroll(int)}
      * @see #configureOutputFields
      * @see OperationalDataRecord
      */
-    private static List<OperationalDataRecord> transform(List<Tuple> result) {
-        List<OperationalDataRecord> tmp = new ArrayList<>(result.size());
-
-        for (Tuple t : result) {
-            final OperationalDataRecord record = new OperationalDataRecord();
-            for (TupleElement<?> te : t.getElements()) {
-                final Method method = SETTERS.get(te.getAlias());
-                if (method != null) {
-                    try {
-                        method.invoke(record, t.get(te));
-                    } catch (InvocationTargetException | IllegalAccessException e) {
-                        throw new IllegalArgumentException("Unable to transform", e);
-                    }
+    static OperationalDataRecord toRecord(Object row) {
+        final Tuple t = (Tuple) row;
+        final OperationalDataRecord record = new OperationalDataRecord();
+        for (TupleElement<?> te : t.getElements()) {
+            final Method method = SETTERS.get(te.getAlias());
+            if (method != null) {
+                try {
+                    method.invoke(record, t.get(te));
+                } catch (InvocationTargetException | IllegalAccessException e) {
+                    throw new IllegalArgumentException("Unable to transform", e);
                 }
             }
-            tmp.add(record);
         }
-        return tmp;
+        return record;
     }
 
     /*
@@ -0,0 +1,88 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the payload of the request getSecurityServerOperationalData one
+ * record at a time, compressed with gzip. The payload is the same as the
+ * serialized {@link OperationalDataRecords}, without holding all the records
+ * in memory.
+ */
+class OperationalDataRecordsWriter implements Closeable {
+
+    private final Gson gson;
+    private final JsonWriter writer;
+
+    @Getter
+    private int recordsCount;
+
+    /**
+     * Starts writing the payload.
+     * @param out the output stream for the compressed payload
+     * @param gson the serializer of the records
+     * @throws IOException if an I/O error occurs
+     */
+    OperationalDataRecordsWriter(OutputStream out, Gson gson) throws IOException {
+        this.gson = gson;
+        this.writer = gson.newJsonWriter(new OutputStreamWriter(new GZIPOutputStream(out),
+                StandardCharsets.UTF_8));
+
+        writer.beginObject();
+        writer.name("records");
+        writer.beginArray();
+    }
+
+    /**
+     * Writes the next record of the payload.
+     * @param record an operational data record
+     */
+    void write(OperationalDataRecord record) {
+        gson.toJson(record, OperationalDataRecord.class, writer);
+        recordsCount++;
+    }
+
+    /**
+     * Completes the payload and closes the underlying output stream.
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        writer.endArray();
+        writer.endObject();
+        writer.close();
+    }
+}
@@ -35,6 +35,7 @@ import ee.ria.xroad.common.message.SoapMessageEncoder;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import ee.ria.xroad.common.util.MimeTypes;
+import ee.ria.xroad.common.util.SpillingStream;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataResponseType;
 import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataType;
@@ -71,6 +72,10 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
 
     protected static final String CID = "operational-monitoring-data.json.gz";
 
+    // The compressed records payload is kept in memory up to this size and
+    // in a temporary file after that.
+    private static final int PAYLOAD_MEMORY_THRESHOLD = 1024 * 1024;
+
     @Override
     public void handle(SoapMessageImpl requestSoap, OutputStream out,
             Consumer<String> contentTypeCallback) throws Exception {
@@ -102,24 +107,30 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
                 clientId, recordsFrom, recordsTo, serviceProviderId,
                 outputFields);
 
-        GetSecurityServerOperationalDataResponseType opDataResponse =
-                buildOperationalDataResponse(
-                        getClientForFilter(clientId, serverId), recordsFrom,
-                        recordsTo, serviceProviderId, outputFields,
-                        recordsAvailableBefore);
+        SpillingStream payload = new SpillingStream(PAYLOAD_MEMORY_THRESHOLD);
+
+        try {
+            GetSecurityServerOperationalDataResponseType opDataResponse =
+                    buildOperationalDataResponse(
+                            getClientForFilter(clientId, serverId), recordsFrom,
+                            recordsTo, serviceProviderId, outputFields,
+                            recordsAvailableBefore, payload);
 
-        try (SoapMessageEncoder responseEncoder = new MultipartSoapMessageEncoder(out)) {
-            contentTypeCallback.accept(responseEncoder.getContentType());
+            try (SoapMessageEncoder responseEncoder = new MultipartSoapMessageEncoder(out)) {
+                contentTypeCallback.accept(responseEncoder.getContentType());
 
-            SoapEncoderAttachmentMarshaller attachmentMarshaller =
-                    new SoapEncoderAttachmentMarshaller(responseEncoder);
-            Marshaller marshaller = createMarshaller(attachmentMarshaller);
+                SoapEncoderAttachmentMarshaller attachmentMarshaller =
+                        new SoapEncoderAttachmentMarshaller(responseEncoder);
+                Marshaller marshaller = createMarshaller(attachmentMarshaller);
 
-            SoapMessageImpl response = createResponse(requestSoap, marshaller,
-                    createResponseElement(opDataResponse));
-            responseEncoder.soap(response, new HashMap<>());
+                SoapMessageImpl response = createResponse(requestSoap, marshaller,
+                        createResponseElement(opDataResponse));
+                responseEncoder.soap(response, new HashMap<>());
 
-            attachmentMarshaller.encodeAttachments();
+                attachmentMarshaller.encodeAttachments();
+            }
+        } finally {
+            payload.consume();
         }
     }
 
@@ -160,12 +171,17 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
         }
     }
 
+    /**
+     * Builds the response, streaming the records into the compressed
+     * payload of the response attachment.
+     * @param payload the stream the compressed payload is cached in until
+     * the response is encoded
+     */
     protected GetSecurityServerOperationalDataResponseType
             buildOperationalDataResponse(ClientId filterByClient,
             long recordsFrom, long recordsTo, ClientId filterByServiceProvider,
-            Set<String> outputFields, long recordsAvailableBefore)
-            throws IOException {
-        OperationalDataRecords responseRecords;
+            Set<String> outputFields, long recordsAvailableBefore,
+            SpillingStream payload) throws IOException {
         GetSecurityServerOperationalDataResponseType opDataResponse =
                 OBJECT_FACTORY
                         .createGetSecurityServerOperationalDataResponseType();
@@ -180,22 +196,22 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
             opDataResponse.setNextRecordsFrom(recordsAvailableBefore);
         }
 
-        responseRecords = getOperationalDataRecords(filterByClient,
-                recordsFrom, recordsTo, filterByServiceProvider, outputFields);
+        Long nextRecordsFrom;
 
-        opDataResponse.setRecordsCount(responseRecords.size());
-        String payload = responseRecords.getPayload(GSON);
+        try (OperationalDataRecordsWriter writer =
+                new OperationalDataRecordsWriter(payload, GSON)) {
+            nextRecordsFrom = streamOperationalDataRecords(filterByClient,
+                    recordsFrom, recordsTo, filterByServiceProvider,
+                    outputFields, writer::write);
 
-        // Optimize memory usage: release records memory before compressing
-        // operation.
-        responseRecords.getRecords().clear();
+            opDataResponse.setRecordsCount(writer.getRecordsCount());
+        }
 
-        opDataResponse.setRecords(createAttachmentDataSource(compress(payload),
-                CID, MimeTypes.GZIP));
+        opDataResponse.setRecords(createAttachmentDataSource(payload, CID,
+                MimeTypes.GZIP));
 
-        if (responseRecords.getNextRecordsFrom() != null) {
-            opDataResponse.setNextRecordsFrom(
-                    responseRecords.getNextRecordsFrom());
+        if (nextRecordsFrom != null) {
+            opDataResponse.setNextRecordsFrom(nextRecordsFrom);
         }
 
         return opDataResponse;
@@ -207,13 +223,18 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
                 opDataResponse);
     }
 
-    protected OperationalDataRecords getOperationalDataRecords(
+    /**
+     * @return the timestamp the next records are available from in case of
+     * records overflow, null otherwise
+     */
+    protected Long streamOperationalDataRecords(
             ClientId filterByClient, long recordsFrom, long recordsTo,
-            ClientId filterByServiceProvider, Set<String> outputFields) {
+            ClientId filterByServiceProvider, Set<String> outputFields,
+            OperationalDataRecordManager.RecordHandler handler) {
         try {
-            return OperationalDataRecordManager.queryRecords(recordsFrom,
+            return OperationalDataRecordManager.streamRecords(recordsFrom,
                     recordsTo, filterByClient, filterByServiceProvider,
-                    outputFields);
+                    outputFields, handler);
         } catch (Exception e) {
             log.error("Failed to get records for response", e);
 
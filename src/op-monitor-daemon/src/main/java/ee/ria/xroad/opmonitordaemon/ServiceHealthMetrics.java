@@ -0,0 +1,219 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getLastRequestTimestampGaugeName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestCounterName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestDurationName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestSizeName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getResponseSizeName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getServiceTypeName;
+
+/**
+ * The health data metrics of a single service. An instance is created once
+ * per service and metric registry. The metrics are registered in the registry
+ * under the names they are forwarded over JMX with, but are updated and read
+ * through this object, without looking them up from the registry by name.
+ * As before, a metric is registered when the first record that has a value
+ * for it is processed.
+ */
+final class ServiceHealthMetrics {
+
+    private final ServiceId serviceId;
+
+    private final int periodSeconds;
+    private final int bucketCount;
+
+    private volatile Long lastSuccessfulRequestTimestamp;
+    private volatile Long lastUnsuccessfulRequestTimestamp;
+    private volatile String serviceType;
+
+    // A gauge value may be reset to null by a later record, so the
+    // registration of the gauges is tracked separately from their values.
+    private boolean lastSuccessfulRequestTimestampRegistered;
+    private boolean lastUnsuccessfulRequestTimestampRegistered;
+    private boolean serviceTypeRegistered;
+
+    private volatile Counter successfulRequestCount;
+    private volatile Counter unsuccessfulRequestCount;
+
+    private volatile Histogram requestDuration;
+    private volatile Histogram requestSize;
+    private volatile Histogram responseSize;
+
+    /**
+     * @param serviceId     the service ID
+     * @param periodSeconds the period of gathering health statistics
+     * @param bucketCount   the number of time buckets the period is divided into
+     */
+    ServiceHealthMetrics(ServiceId serviceId, int periodSeconds, int bucketCount) {
+        this.serviceId = serviceId;
+        this.periodSeconds = periodSeconds;
+        this.bucketCount = bucketCount;
+    }
+
+    /**
+     * Updates the metrics with an operational data record of the service,
+     * registering the metrics that do not exist yet.
+     * @param registry the metric registry of the operational monitoring daemon
+     * @param rec      an operational data record handled in the producer role
+     */
+    synchronized void update(MetricRegistry registry, OperationalDataRecord rec) {
+        boolean succeeded = rec.getSucceeded();
+
+        updateGauges(registry, succeeded, rec);
+
+        if (succeeded) {
+            if (successfulRequestCount == null) {
+                successfulRequestCount = registry.register(getRequestCounterName(serviceId, true), createCounter());
+            }
+
+            successfulRequestCount.inc();
+
+            // Statistics of request duration and the sizes of the request
+            // and response are computed over the successful requests only.
+            updateHistograms(registry, rec);
+        } else {
+            if (unsuccessfulRequestCount == null) {
+                unsuccessfulRequestCount = registry.register(getRequestCounterName(serviceId, false),
+                        createCounter());
+            }
+
+            unsuccessfulRequestCount.inc();
+        }
+    }
+
+    ServiceId getServiceId() {
+        return serviceId;
+    }
+
+    /**
+     * @param success set to true for the successfully mediated requests
+     * @return the response out timestamp of the last request with the given
+     * status or null if there is none
+     */
+    Long getLastRequestTimestamp(boolean success) {
+        return success ? lastSuccessfulRequestTimestamp : lastUnsuccessfulRequestTimestamp;
+    }
+
+    String getServiceType() {
+        return serviceType;
+    }
+
+    /**
+     * @param success set to true for the successfully mediated requests
+     * @return the counter of the requests with the given status or null if
+     * there have been none
+     */
+    Counter getRequestCount(boolean success) {
+        return success ? successfulRequestCount : unsuccessfulRequestCount;
+    }
+
+    Histogram getRequestDuration() {
+        return requestDuration;
+    }
+
+    Histogram getRequestSize() {
+        return requestSize;
+    }
+
+    Histogram getResponseSize() {
+        return responseSize;
+    }
+
+    private void updateGauges(MetricRegistry registry, boolean succeeded, OperationalDataRecord rec) {
+        // last request timestamp
+        if (succeeded) {
+            lastSuccessfulRequestTimestamp = rec.getResponseOutTs();
+
+            if (!lastSuccessfulRequestTimestampRegistered && lastSuccessfulRequestTimestamp != null) {
+                registry.register(getLastRequestTimestampGaugeName(serviceId, true),
+                        (Gauge<Long>) () -> lastSuccessfulRequestTimestamp);
+                lastSuccessfulRequestTimestampRegistered = true;
+            }
+        } else {
+            lastUnsuccessfulRequestTimestamp = rec.getResponseOutTs();
+
+            if (!lastUnsuccessfulRequestTimestampRegistered && lastUnsuccessfulRequestTimestamp != null) {
+                registry.register(getLastRequestTimestampGaugeName(serviceId, false),
+                        (Gauge<Long>) () -> lastUnsuccessfulRequestTimestamp);
+                lastUnsuccessfulRequestTimestampRegistered = true;
+            }
+        }
+
+        // service type
+        serviceType = rec.getServiceType();
+
+        if (!serviceTypeRegistered && serviceType != null) {
+            registry.register(getServiceTypeName(serviceId), (Gauge<String>) () -> serviceType);
+            serviceTypeRegistered = true;
+        }
+    }
+
+    private void updateHistograms(MetricRegistry registry, OperationalDataRecord rec) {
+        if (rec.getResponseOutTs() != null && rec.getRequestInTs() != null) {
+            if (requestDuration == null) {
+                requestDuration = registry.register(getRequestDurationName(serviceId), createHistogram());
+            }
+
+            requestDuration.update(rec.getResponseOutTs() - rec.getRequestInTs());
+        }
+
+        if (rec.getRequestSize() != null) {
+            if (requestSize == null) {
+                requestSize = registry.register(getRequestSizeName(serviceId), createHistogram());
+            }
+
+            requestSize.update(rec.getRequestSize());
+        }
+
+        if (rec.getResponseSize() != null) {
+            if (responseSize == null) {
+                responseSize = registry.register(getResponseSizeName(serviceId), createHistogram());
+            }
+
+            responseSize.update(rec.getResponseSize());
+        }
+    }
+
+    private Counter createCounter() {
+        return new SlidingTimeWindowCounter(periodSeconds, TimeUnit.SECONDS, bucketCount);
+    }
+
+    private Histogram createHistogram() {
+        return new Histogram(new SlidingTimeWindowStatisticsReservoir(periodSeconds, TimeUnit.SECONDS,
+                bucketCount));
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A ring of time buckets covering a sliding window of time. The window is
+ * divided into a fixed number of buckets of equal duration. The bucket of
+ * the current moment is found in constant time and is replaced with a fresh
+ * one when the ring has wrapped around since it was last used, so the values
+ * of a whole bucket expire at once. Reading visits every bucket that is still
+ * within the window, which means the window covers between the configured
+ * duration and one bucket duration more.
+ * @param <T> the type of the buckets
+ */
+final class SlidingTimeWindowBuckets<T> {
+
+    private final AtomicReferenceArray<Bucket<T>> buckets;
+    private final long bucketDurationNanos;
+    private final Supplier<T> bucketFactory;
+    private final Clock clock;
+
+    /**
+     * Creates a ring of buckets covering the given window of time.
+     * @param window the window of time
+     * @param windowUnit the unit of {@code window}
+     * @param bucketCount the number of buckets the window is divided into
+     * @param bucketFactory the factory for creating empty buckets
+     * @param clock the clock used for finding the current bucket
+     */
+    SlidingTimeWindowBuckets(long window, TimeUnit windowUnit, int bucketCount, Supplier<T> bucketFactory,
+            Clock clock) {
+        if (bucketCount < 1) {
+            throw new IllegalArgumentException("Bucket count must be positive");
+        }
+
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+        this.bucketDurationNanos = Math.max(1, windowUnit.toNanos(window) / bucketCount);
+        this.bucketFactory = bucketFactory;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the bucket of the current moment
+     */
+    T current() {
+        long tick = currentTick();
+        int index = (int) Math.floorMod(tick, (long) buckets.length());
+
+        while (true) {
+            Bucket<T> bucket = buckets.get(index);
+
+            if (bucket != null && bucket.tick == tick) {
+                return bucket.value;
+            }
+
+            if (bucket != null && bucket.tick > tick) {
+                // Another thread has already moved on to a later tick; count
+                // the straggling update in the later bucket.
+                return bucket.value;
+            }
+
+            Bucket<T> fresh = new Bucket<>(tick, bucketFactory.get());
+
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh.value;
+            }
+        }
+    }
+
+    /**
+     * Passes every bucket that is within the window to the given consumer.
+     * @param consumer the consumer of the buckets
+     */
+    void forEach(Consumer<T> consumer) {
+        long oldestTick = currentTick() - buckets.length();
+
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket<T> bucket = buckets.get(i);
+
+            if (bucket != null && bucket.tick > oldestTick) {
+                consumer.accept(bucket.value);
+            }
+        }
+    }
+
+    /**
+     * @param function the function applied to the buckets
+     * @return the sum of the function over the buckets within the window
+     */
+    long sum(ToLongFunction<T> function) {
+        long oldestTick = currentTick() - buckets.length();
+        long sum = 0;
+
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket<T> bucket = buckets.get(i);
+
+            if (bucket != null && bucket.tick > oldestTick) {
+                sum += function.applyAsLong(bucket.value);
+            }
+        }
+
+        return sum;
+    }
+
+    private long currentTick() {
+        return Math.floorDiv(clock.getTick(), bucketDurationNanos);
+    }
+
+    private static final class Bucket<T> {
+        private final long tick;
+        private final T value;
+
+        Bucket(long tick, T value) {
+            this.tick = tick;
+            this.value = value;
+        }
+    }
+}
@@ -25,15 +25,17 @@
  */
 package ee.ria.xroad.opmonitordaemon;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.Counter;
-import com.codahale.metrics.Reservoir;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * A counter metric that uses the sliding time window reservoir internally to
- * support periodic and configurable resetting.
+ * A counter metric over a sliding window of time, to support periodic and
+ * configurable resetting. The window is divided into a ring of time buckets,
+ * each counting with a striped LongAdder, so incrementing takes constant time
+ * under contention and reading sums the buckets within the window.
  * This counter does not support manually decrementing the count (the dec()
  * methods raise a runtime exception).
  * We extend Counter instead of implementing the Metric and Counting
@@ -42,36 +44,47 @@ import java.util.concurrent.TimeUnit;
  */
 class SlidingTimeWindowCounter extends Counter {
 
-    private final Reservoir reservoir;
+    private final SlidingTimeWindowBuckets<LongAdder> buckets;
 
     /**
      * Creates a counter with the given window of time.
      *
-     * @param window     the window of time
-     * @param windowUnit the unit of {@code window}
+     * @param window      the window of time
+     * @param windowUnit  the unit of {@code window}
+     * @param bucketCount the number of time buckets the window is divided into
      */
-    SlidingTimeWindowCounter(long window, TimeUnit windowUnit) {
-        reservoir = new SlidingTimeWindowReservoir(window, windowUnit);
+    SlidingTimeWindowCounter(long window, TimeUnit windowUnit, int bucketCount) {
+        this(window, windowUnit, bucketCount, Clock.defaultClock());
     }
 
     /**
-     * @return the snapshot size of the sliding time window reservoir.
+     * Creates a counter with the given window of time and clock.
+     *
+     * @param window      the window of time
+     * @param windowUnit  the unit of {@code window}
+     * @param bucketCount the number of time buckets the window is divided into
+     * @param clock       the clock used for expiring the counts
+     */
+    SlidingTimeWindowCounter(long window, TimeUnit windowUnit, int bucketCount, Clock clock) {
+        buckets = new SlidingTimeWindowBuckets<>(window, windowUnit, bucketCount, LongAdder::new, clock);
+    }
+
+    /**
+     * @return the sum of the counts within the time window.
      */
     @Override
     public long getCount() {
-        return reservoir.getSnapshot().size();
+        return buckets.sum(LongAdder::sum);
     }
 
     @Override
     public void inc() {
-        reservoir.update(1L);
+        buckets.current().increment();
     }
 
     @Override
     public void inc(long n) {
-        for (int i = 0; i < n; ++i) {
-            inc();
-        }
+        buckets.current().add(n);
     }
 
     @Override
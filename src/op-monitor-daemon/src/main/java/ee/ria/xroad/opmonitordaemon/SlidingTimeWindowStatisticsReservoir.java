@@ -0,0 +1,230 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A reservoir that keeps summary statistics of the values over a sliding
+ * window of time instead of the values themselves. The window is divided into
+ * a ring of time buckets, each keeping the count, sum, sum of squares, minimum
+ * and maximum of its values with striped adders and accumulators, so updating
+ * takes constant time and space regardless of the request rate, and taking a
+ * snapshot merges the buckets within the window.
+ * The minimum, maximum, mean and standard deviation of a snapshot are exact.
+ * Quantiles are estimated from a histogram of power-of-two ranges and
+ * individual values are not available.
+ */
+class SlidingTimeWindowStatisticsReservoir implements Reservoir {
+
+    // One range for zero and negative values and one for each bit length of
+    // a positive long.
+    private static final int RANGES = Long.SIZE;
+
+    private final SlidingTimeWindowBuckets<Statistics> buckets;
+
+    /**
+     * Creates a reservoir with the given window of time.
+     * @param window the window of time
+     * @param windowUnit the unit of {@code window}
+     * @param bucketCount the number of time buckets the window is divided into
+     */
+    SlidingTimeWindowStatisticsReservoir(long window, TimeUnit windowUnit, int bucketCount) {
+        this(window, windowUnit, bucketCount, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a reservoir with the given window of time and clock.
+     * @param window the window of time
+     * @param windowUnit the unit of {@code window}
+     * @param bucketCount the number of time buckets the window is divided into
+     * @param clock the clock used for expiring the values
+     */
+    SlidingTimeWindowStatisticsReservoir(long window, TimeUnit windowUnit, int bucketCount, Clock clock) {
+        buckets = new SlidingTimeWindowBuckets<>(window, windowUnit, bucketCount, Statistics::new, clock);
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, buckets.sum(statistics -> statistics.count.sum()));
+    }
+
+    @Override
+    public void update(long value) {
+        buckets.current().update(value);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        StatisticsSnapshot snapshot = new StatisticsSnapshot();
+        buckets.forEach(snapshot::merge);
+
+        return snapshot;
+    }
+
+    private static int range(long value) {
+        return value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    private static long rangeUpperBound(int range) {
+        return range >= RANGES - 1 ? Long.MAX_VALUE : (1L << range) - 1;
+    }
+
+    private static final class Statistics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final DoubleAdder sumOfSquares = new DoubleAdder();
+        private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        private final AtomicLongArray ranges = new AtomicLongArray(RANGES);
+
+        void update(long value) {
+            count.increment();
+            sum.add(value);
+            sumOfSquares.add((double) value * value);
+            min.accumulate(value);
+            max.accumulate(value);
+            ranges.incrementAndGet(range(value));
+        }
+    }
+
+    private static final class StatisticsSnapshot extends Snapshot {
+        private long count;
+        private long sum;
+        private double sumOfSquares;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private final long[] ranges = new long[RANGES];
+
+        void merge(Statistics statistics) {
+            long bucketCount = statistics.count.sum();
+
+            if (bucketCount == 0) {
+                return;
+            }
+
+            count += bucketCount;
+            sum += statistics.sum.sum();
+            sumOfSquares += statistics.sumOfSquares.sum();
+            min = Math.min(min, statistics.min.get());
+            max = Math.max(max, statistics.max.get());
+
+            for (int i = 0; i < RANGES; i++) {
+                ranges[i] += statistics.ranges.get(i);
+            }
+        }
+
+        /**
+         * @return the upper bound of the power-of-two range containing the
+         * quantile, limited to the minimum and maximum of the values
+         */
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+
+            if (count == 0) {
+                return 0.0;
+            }
+
+            double rank = quantile * count;
+            long seen = 0;
+
+            for (int i = 0; i < RANGES; i++) {
+                seen += ranges[i];
+
+                if (seen >= rank && seen > 0) {
+                    return Math.max(getMin(), Math.min(getMax(), rangeUpperBound(i)));
+                }
+            }
+
+            return getMax();
+        }
+
+        /**
+         * @return an empty array, the individual values are not retained
+         */
+        @Override
+        public long[] getValues() {
+            return new long[0];
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, count);
+        }
+
+        @Override
+        public long getMax() {
+            return count == 0 ? 0 : max;
+        }
+
+        @Override
+        public double getMean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        @Override
+        public long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        /**
+         * @return the sample standard deviation of the values
+         */
+        @Override
+        public double getStdDev() {
+            if (count <= 1) {
+                return 0.0;
+            }
+
+            double variance = (sumOfSquares - (double) sum * sum / count) / (count - 1);
+
+            return Math.sqrt(Math.max(0.0, variance));
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                out.printf("count=%d min=%d max=%d mean=%f stddev=%f%n", count, getMin(), getMax(), getMean(),
+                        getStdDev());
+            }
+        }
+    }
+}
@@ -25,29 +25,27 @@
  */
 package ee.ria.xroad.opmonitordaemon;
 
-import ee.ria.xroad.common.util.JsonUtils;
+import ee.ria.xroad.common.util.MimeUtils;
 
 import com.codahale.metrics.MetricRegistry;
-import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 
 import javax.servlet.http.HttpServletRequest;
 
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import static ee.ria.xroad.common.util.TimeUtils.getEpochSecond;
 
 /**
- * The processor class for store operational monitoring data (JSON) requests.
+ * The processor class for store operational monitoring data requests. The
+ * records are accepted in JSON or in the length-prefixed format of
+ * StoreOpMonitoringDataStream.
  */
 @Slf4j
 class StoreRequestProcessor {
 
-    private static final Gson GSON = JsonUtils.getSerializer();
-
     /** The servlet request. */
     private HttpServletRequest servletRequest;
 
@@ -62,43 +60,27 @@ class StoreRequestProcessor {
 
     /**
      * Processes the incoming message: stores the data and updates the related
-     * statistics.
+     * statistics. The whole request is decoded before the records are stored,
+     * so that the database transaction is not kept open while the request is
+     * still being received.
      * @throws Exception in case of any errors
      */
     void process() throws Exception {
-        String rawJson = IOUtils.toString(servletRequest.getInputStream(),
-                StandardCharsets.UTF_8);
-
-        log.trace("Incoming JSON: {}", rawJson);
-
-        List<OperationalDataRecord> records = prepareRawStoreData(rawJson);
-
-        log.debug("Process {} record{}", records.size(),
-                records.size() == 1 ? "" : "s");
-
-        OperationalDataRecordManager.storeRecords(records, getEpochSecond());
+        String contentType = MimeUtils.getBaseContentType(
+                servletRequest.getContentType());
 
-        HealthDataMetrics.processRecords(healthMetricRegistry, records);
-    }
+        List<OperationalDataRecord> records = new ArrayList<>();
 
-    // Get usable operational data to be stored. If no such data is found,
-    // send an error message right away.
-    private static List<OperationalDataRecord> prepareRawStoreData(
-            String rawJsonData) throws Exception {
-        if (StringUtils.isBlank(rawJsonData)) {
-            throw new Exception(
-                    "No data was found in the request to store data");
+        try (InputStream in = servletRequest.getInputStream()) {
+            OperationalDataRecordDecoder.create(contentType, in)
+                    .forEachRemaining(records::add);
         }
 
-        OperationalDataRecords records;
+        OperationalDataRecordManager.storeRecords(records, getEpochSecond());
 
-        try {
-            records = GSON.fromJson(rawJsonData, OperationalDataRecords.class);
-        } catch (Exception e) {
-            throw new Exception("Received invalid request", e);
-        }
+        log.debug("Processed {} record{}", records.size(),
+                records.size() == 1 ? "" : "s");
 
-        return records.getRecords();
+        HealthDataMetrics.processRecords(healthMetricRegistry, records);
     }
-
 }
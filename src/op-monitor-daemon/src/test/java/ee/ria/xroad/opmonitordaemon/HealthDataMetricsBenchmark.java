@@ -0,0 +1,344 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.SlidingTimeWindowReservoir;
+import com.codahale.metrics.Snapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time bucketed health data metrics with the per-value sliding time window reservoir they replace.
+ * Feeds a request rate per service in simulated time over two statistics periods and reports the update and read
+ * cost and the heap retained by the metrics, then measures concurrent update throughput in real time.
+ * The reservoir retains every value of the period, so it needs a heap of several gigabytes at 10000 requests per
+ * second.
+ */
+@Slf4j
+public final class HealthDataMetricsBenchmark {
+    private static final int DEFAULT_SERVICES = 1;
+    private static final int DEFAULT_RATE = 10000;
+    private static final int DEFAULT_PERIOD_SECONDS = 600;
+    private static final int DEFAULT_BUCKETS = 60;
+    private static final int DEFAULT_THREADS = 4;
+
+    private static final int READ_INTERVAL_SECONDS = 60;
+    private static final long CONCURRENT_RUN_MILLIS = 5000;
+
+    private static final Options OPTIONS = getOptions();
+
+    private static final MemoryMXBean MEMORY_MX_BEAN = ManagementFactory.getMemoryMXBean();
+
+    private HealthDataMetricsBenchmark() {
+    }
+
+    /**
+     * Main function.
+     * @param args args
+     * @throws Exception if something goes wrong.
+     */
+    public static void main(String args[]) throws Exception {
+        CommandLine cmd = parseCommandLine(args);
+
+        if (cmd.hasOption("help")) {
+            usage();
+
+            System.exit(0);
+        }
+
+        int services = getIntOption(cmd, "services", DEFAULT_SERVICES);
+        int rate = getIntOption(cmd, "rate", DEFAULT_RATE);
+        int period = getIntOption(cmd, "period", DEFAULT_PERIOD_SECONDS);
+        int buckets = getIntOption(cmd, "buckets", DEFAULT_BUCKETS);
+        int threads = getIntOption(cmd, "threads", DEFAULT_THREADS);
+
+        log.info("services: {}, requests per second per service: {}, period: {} s, buckets: {}", services, rate,
+                period, buckets);
+
+        report("time buckets", runSimulated(clock -> new BucketedMetrics(period, buckets, clock), services, rate,
+                period), services, rate, period);
+        report("sliding time window reservoir", runSimulated(clock -> new ReservoirMetrics(period, clock), services,
+                rate, period), services, rate, period);
+
+        log.info("time buckets, {} threads: {} updates/s", threads,
+                runConcurrent(new BucketedMetrics(period, buckets, Clock.defaultClock()), threads));
+        log.info("sliding time window reservoir, {} threads: {} updates/s", threads,
+                runConcurrent(new ReservoirMetrics(period, Clock.defaultClock()), threads));
+    }
+
+    /**
+     * Feeds the requests of two periods in simulated time, reading the metrics of every service once a minute.
+     * @return the update time, the read time and the retained heap at the end
+     */
+    private static long[] runSimulated(MetricsFactory factory, int services, int rate, int period) {
+        SimulatedClock clock = new SimulatedClock();
+        List<ServiceMetrics> metrics = new ArrayList<>();
+
+        for (int i = 0; i < services; i++) {
+            metrics.add(factory.create(clock));
+        }
+
+        long heapBefore = usedHeap();
+        long tickNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long updateNanos = 0;
+        long readNanos = 0;
+        long checksum = 0;
+
+        for (int second = 0; second < 2 * period; second++) {
+            long start = System.nanoTime();
+
+            for (int request = 0; request < rate; request++) {
+                clock.tick += tickNanos;
+
+                for (ServiceMetrics serviceMetrics : metrics) {
+                    serviceMetrics.update(request);
+                }
+            }
+
+            long updated = System.nanoTime();
+            updateNanos += updated - start;
+
+            if ((second + 1) % READ_INTERVAL_SECONDS == 0) {
+                for (ServiceMetrics serviceMetrics : metrics) {
+                    checksum += serviceMetrics.read();
+                }
+
+                readNanos += System.nanoTime() - updated;
+            }
+        }
+
+        long retained = usedHeap() - heapBefore;
+
+        if (checksum == 0 || metrics.isEmpty()) {
+            throw new IllegalStateException("No requests counted");
+        }
+
+        return new long[] {updateNanos, readNanos, retained};
+    }
+
+    private static long runConcurrent(ServiceMetrics metrics, int threads) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CONCURRENT_RUN_MILLIS;
+        long[] updates = new long[threads];
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                while (System.currentTimeMillis() < deadline) {
+                    for (int j = 0; j < 1000; j++) {
+                        metrics.update(random.nextInt(10000));
+                    }
+
+                    updates[thread] += 1000;
+                }
+
+                done.countDown();
+            }).start();
+        }
+
+        done.await();
+
+        long total = 0;
+
+        for (long count : updates) {
+            total += count;
+        }
+
+        return total * 1000 / CONCURRENT_RUN_MILLIS;
+    }
+
+    private static void report(String name, long[] result, int services, int rate, int period) {
+        long requests = 2L * period * services * rate;
+        long reads = 2L * period / READ_INTERVAL_SECONDS * services;
+
+        log.info("{}: {} ns/request, {} ns/read of service metrics, {} bytes retained per service", name,
+                result[0] / requests, result[1] / Math.max(1, reads), result[2] / services);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return MEMORY_MX_BEAN.getHeapMemoryUsage().getUsed();
+    }
+
+    private static int getIntOption(CommandLine cmd, String name, int defaultValue) {
+        return cmd.getOptionValue(name) != null ? Integer.parseInt(cmd.getOptionValue(name)) : defaultValue;
+    }
+
+    private static CommandLine parseCommandLine(String args[]) {
+        try {
+            return new BasicParser().parse(OPTIONS, args);
+        } catch (ParseException e) {
+            log.error("Parsing command line failed: {}", e.getMessage());
+
+            usage();
+
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    private static Options getOptions() {
+        Options options = new Options();
+
+        addOption(options, "s", "services", "services (default: " + DEFAULT_SERVICES + ")");
+        addOption(options, "r", "rate", "requests per second per service (default: " + DEFAULT_RATE + ")");
+        addOption(options, "p", "period", "statistics period in seconds (default: " + DEFAULT_PERIOD_SECONDS + ")");
+        addOption(options, "b", "buckets", "time buckets in period (default: " + DEFAULT_BUCKETS + ")");
+        addOption(options, "t", "threads", "threads updating concurrently (default: " + DEFAULT_THREADS + ")");
+
+        Option usage = new Option("h", "help", false, "help");
+        usage.setRequired(false);
+        options.addOption(usage);
+
+        return options;
+    }
+
+    private static void addOption(Options options, String opt, String longOpt, String description) {
+        Option option = new Option(opt, longOpt, true, description);
+        option.setRequired(false);
+        options.addOption(option);
+    }
+
+    private static void usage() {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("HealthDataMetricsBenchmark", OPTIONS);
+    }
+
+    @FunctionalInterface
+    private interface MetricsFactory {
+        ServiceMetrics create(Clock clock);
+    }
+
+    /**
+     * The windowed metrics HealthDataMetrics keeps for a service: a request counter and the request duration,
+     * request size and response size histograms.
+     */
+    private abstract static class ServiceMetrics {
+        private final Counter counter;
+        private final Histogram[] histograms;
+
+        ServiceMetrics(Counter counter, Histogram... histograms) {
+            this.counter = counter;
+            this.histograms = histograms;
+        }
+
+        void update(long value) {
+            counter.inc();
+
+            for (Histogram histogram : histograms) {
+                histogram.update(value);
+            }
+        }
+
+        long read() {
+            long sum = counter.getCount();
+
+            for (Histogram histogram : histograms) {
+                Snapshot snapshot = histogram.getSnapshot();
+                sum += snapshot.getMin() + snapshot.getMax() + (long) snapshot.getMean()
+                        + (long) snapshot.getStdDev();
+            }
+
+            return sum;
+        }
+    }
+
+    private static final class BucketedMetrics extends ServiceMetrics {
+        BucketedMetrics(int period, int buckets, Clock clock) {
+            super(new SlidingTimeWindowCounter(period, TimeUnit.SECONDS, buckets, clock),
+                    histogram(period, buckets, clock), histogram(period, buckets, clock),
+                    histogram(period, buckets, clock));
+        }
+
+        private static Histogram histogram(int period, int buckets, Clock clock) {
+            return new Histogram(new SlidingTimeWindowStatisticsReservoir(period, TimeUnit.SECONDS, buckets, clock));
+        }
+    }
+
+    private static final class ReservoirMetrics extends ServiceMetrics {
+        ReservoirMetrics(int period, Clock clock) {
+            super(new ReservoirCounter(period, clock), histogram(period, clock), histogram(period, clock),
+                    histogram(period, clock));
+        }
+
+        private static Histogram histogram(int period, Clock clock) {
+            return new Histogram(new SlidingTimeWindowReservoir(period, TimeUnit.SECONDS, clock));
+        }
+    }
+
+    /**
+     * The counter as it was implemented before, counting the values in a sliding time window reservoir.
+     */
+    private static final class ReservoirCounter extends Counter {
+        private final SlidingTimeWindowReservoir reservoir;
+
+        ReservoirCounter(int period, Clock clock) {
+            reservoir = new SlidingTimeWindowReservoir(period, TimeUnit.SECONDS, clock);
+        }
+
+        @Override
+        public long getCount() {
+            return reservoir.getSnapshot().size();
+        }
+
+        @Override
+        public void inc() {
+            reservoir.update(1L);
+        }
+    }
+
+    private static final class SimulatedClock extends Clock {
+        private long tick = TimeUnit.DAYS.toNanos(1);
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.escapeServiceId;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.findCounter;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.findGauge;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.findHistogram;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getLastRequestTimestampGaugeName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestCounterName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestDurationName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getServiceTypeName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests processing operational data records into health data metrics.
+ */
+public class HealthDataMetricsTest {
+
+    private static final ServiceId SERVICE_ID = ServiceId.create("EE", "GOV", "testmember", "testsub",
+            "test.service", "v1");
+
+    @Test
+    public void registersServiceMetricsUnderMetricNames() {
+        MetricRegistry registry = new MetricRegistry();
+
+        HealthDataMetrics.processRecords(registry, Arrays.asList(createRecord(true, 1000L),
+                createRecord(true, 2000L)));
+
+        ServiceHealthMetrics metrics = HealthDataMetrics.findServiceMetrics(registry,
+                escapeServiceId(SERVICE_ID));
+        assertNotNull(metrics);
+
+        assertEquals(Long.valueOf(2000L), metrics.getLastRequestTimestamp(true));
+        assertNull(metrics.getLastRequestTimestamp(false));
+        assertEquals("WSDL", metrics.getServiceType());
+        assertEquals(2, metrics.getRequestCount(true).getCount());
+        assertNull(metrics.getRequestCount(false));
+        assertEquals(100, metrics.getRequestDuration().getSnapshot().getMax());
+
+        // The metrics are forwarded over JMX under the same names as before
+        assertEquals(2000L, findGauge(registry, getLastRequestTimestampGaugeName(SERVICE_ID, true)).getValue());
+        assertNull(findGauge(registry, getLastRequestTimestampGaugeName(SERVICE_ID, false)));
+        assertEquals("WSDL", findGauge(registry, getServiceTypeName(SERVICE_ID)).getValue());
+        assertSame(metrics.getRequestCount(true), findCounter(registry, getRequestCounterName(SERVICE_ID, true)));
+        assertSame(metrics.getRequestDuration(), findHistogram(registry, getRequestDurationName(SERVICE_ID)));
+    }
+
+    @Test
+    public void reusesServiceMetricsAcrossBatches() {
+        MetricRegistry registry = new MetricRegistry();
+
+        HealthDataMetrics.processRecords(registry, Arrays.asList(createRecord(true, 1000L)));
+        ServiceHealthMetrics metrics = HealthDataMetrics.findServiceMetrics(registry,
+                escapeServiceId(SERVICE_ID));
+
+        HealthDataMetrics.processRecords(registry, Arrays.asList(createRecord(false, 3000L)));
+
+        assertSame(metrics, HealthDataMetrics.findServiceMetrics(registry, escapeServiceId(SERVICE_ID)));
+        assertEquals(1, metrics.getRequestCount(true).getCount());
+        assertEquals(1, metrics.getRequestCount(false).getCount());
+        assertEquals(Long.valueOf(3000L), metrics.getLastRequestTimestamp(false));
+        assertEquals(3000L, findGauge(registry, getLastRequestTimestampGaugeName(SERVICE_ID, false)).getValue());
+
+        // The metrics of a registry are not visible through another registry
+        assertNull(HealthDataMetrics.findServiceMetrics(new MetricRegistry(), escapeServiceId(SERVICE_ID)));
+    }
+
+    @Test
+    public void registersGaugesOnceWhenValuesAreReset() {
+        MetricRegistry registry = new MetricRegistry();
+
+        OperationalDataRecord withoutValues = createRecord(true, 2000L);
+        withoutValues.setResponseOutTs(null);
+        withoutValues.setServiceType(null);
+
+        OperationalDataRecord withValues = createRecord(true, 3000L);
+        withValues.setServiceType("REST");
+
+        HealthDataMetrics.processRecords(registry, Arrays.asList(createRecord(true, 1000L)));
+        HealthDataMetrics.processRecords(registry, Arrays.asList(withoutValues));
+
+        assertNull(findGauge(registry, getLastRequestTimestampGaugeName(SERVICE_ID, true)).getValue());
+        assertNull(findGauge(registry, getServiceTypeName(SERVICE_ID)).getValue());
+
+        HealthDataMetrics.processRecords(registry, Arrays.asList(withValues));
+
+        ServiceHealthMetrics metrics = HealthDataMetrics.findServiceMetrics(registry,
+                escapeServiceId(SERVICE_ID));
+        assertEquals(3, metrics.getRequestCount(true).getCount());
+        assertEquals(3000L, findGauge(registry, getLastRequestTimestampGaugeName(SERVICE_ID, true)).getValue());
+        assertEquals("REST", findGauge(registry, getServiceTypeName(SERVICE_ID)).getValue());
+    }
+
+    private static OperationalDataRecord createRecord(boolean succeeded, long responseOutTs) {
+        OperationalDataRecord rec = new OperationalDataRecord();
+        rec.setSecurityServerType(OpMonitoringData.SecurityServerType.PRODUCER.getTypeString());
+        rec.setServiceXRoadInstance(SERVICE_ID.getXRoadInstance());
+        rec.setServiceMemberClass(SERVICE_ID.getMemberClass());
+        rec.setServiceMemberCode(SERVICE_ID.getMemberCode());
+        rec.setServiceSubsystemCode(SERVICE_ID.getSubsystemCode());
+        rec.setServiceCode(SERVICE_ID.getServiceCode());
+        rec.setServiceVersion(SERVICE_ID.getServiceVersion());
+        rec.setServiceType("WSDL");
+        rec.setSucceeded(succeeded);
+        rec.setRequestInTs(responseOutTs - 100);
+        rec.setResponseOutTs(responseOutTs);
+        rec.setRequestSize(10L);
+        rec.setResponseSize(20L);
+
+        return rec;
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.escapeServiceId;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.findCounter;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.findGauge;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.findHistogram;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getLastRequestTimestampGaugeName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestCounterName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestDurationName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestSizeName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getResponseSizeName;
+import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getServiceTypeName;
+
+/**
+ * Compares processing operational data records into health data metrics and reading the metrics of a service
+ * through the per-service metrics index with looking the metrics up from the registry by name, as was done before.
+ * The registry holds the metrics of the given number of services. The registry lookup scans every metric with a
+ * regular expression, so it is run for far fewer records than the index.
+ */
+@Slf4j
+public final class HealthDataProcessingBenchmark {
+    private static final int DEFAULT_SERVICES = 10000;
+    private static final int DEFAULT_RECORDS = 1000000;
+    private static final int DEFAULT_LOOKUP_RECORDS = 20;
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int STATISTICS_PERIOD_SECONDS = 600;
+    private static final int STATISTICS_BUCKETS = 60;
+
+    private static final Options OPTIONS = getOptions();
+
+    private HealthDataProcessingBenchmark() {
+    }
+
+    /**
+     * Main function.
+     * @param args args
+     * @throws Exception if something goes wrong.
+     */
+    public static void main(String args[]) throws Exception {
+        CommandLine cmd = parseCommandLine(args);
+
+        if (cmd.hasOption("help")) {
+            usage();
+
+            System.exit(0);
+        }
+
+        int services = getIntOption(cmd, "services", DEFAULT_SERVICES);
+        int records = getIntOption(cmd, "records", DEFAULT_RECORDS);
+        int lookupRecords = getIntOption(cmd, "lookup-records", DEFAULT_LOOKUP_RECORDS);
+
+        log.info("services: {}, records: {}, records with registry lookup: {}", services, records, lookupRecords);
+
+        List<ServiceId> serviceIds = new ArrayList<>(services);
+
+        for (int i = 0; i < services; i++) {
+            serviceIds.add(ServiceId.create("EE", "GOV", "member" + (i % 100), "subsystem", "service" + i, "v1"));
+        }
+
+        // Register the metrics of every service, like a daemon that has been running for a while
+        MetricRegistry registry = new MetricRegistry();
+        List<OperationalDataRecord> initial = new ArrayList<>(2 * services);
+
+        for (ServiceId serviceId : serviceIds) {
+            initial.add(createRecord(serviceId, true));
+            initial.add(createRecord(serviceId, false));
+        }
+
+        HealthDataMetrics.processRecords(registry, initial);
+
+        log.info("metrics in registry: {}", registry.getMetrics().size());
+
+        Random random = new Random(1);
+
+        long start = System.nanoTime();
+
+        for (int processed = 0; processed < records; processed += BATCH_SIZE) {
+            HealthDataMetrics.processRecords(registry, createRecords(serviceIds, random,
+                    Math.min(BATCH_SIZE, records - processed)));
+        }
+
+        long indexNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        processWithRegistryLookup(registry, createRecords(serviceIds, random, lookupRecords));
+        long lookupNanos = System.nanoTime() - start;
+
+        log.info("store, per-service index: {} ns/record", indexNanos / Math.max(1, records));
+        log.info("store, registry lookup: {} ns/record", lookupNanos / Math.max(1, lookupRecords));
+
+        List<ServiceId> queried = serviceIds.subList(0, Math.min(services, lookupRecords));
+        long checksum = 0;
+
+        start = System.nanoTime();
+
+        for (ServiceId serviceId : serviceIds) {
+            checksum += readWithIndex(registry, serviceId);
+        }
+
+        indexNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+
+        for (ServiceId serviceId : queried) {
+            checksum += readWithRegistryLookup(registry, serviceId);
+        }
+
+        lookupNanos = System.nanoTime() - start;
+
+        if (checksum == 0) {
+            throw new IllegalStateException("No requests counted");
+        }
+
+        log.info("query, per-service index: {} ns/service", indexNanos / services);
+        log.info("query, registry lookup: {} ns/service", lookupNanos / Math.max(1, queried.size()));
+    }
+
+    private static List<OperationalDataRecord> createRecords(List<ServiceId> serviceIds, Random random, int count) {
+        List<OperationalDataRecord> records = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            records.add(createRecord(serviceIds.get(random.nextInt(serviceIds.size())), random.nextInt(10) > 0));
+        }
+
+        return records;
+    }
+
+    private static OperationalDataRecord createRecord(ServiceId serviceId, boolean succeeded) {
+        long now = System.currentTimeMillis();
+
+        OperationalDataRecord record = new OperationalDataRecord();
+        record.setSecurityServerType(OpMonitoringData.SecurityServerType.PRODUCER.getTypeString());
+        record.setServiceXRoadInstance(serviceId.getXRoadInstance());
+        record.setServiceMemberClass(serviceId.getMemberClass());
+        record.setServiceMemberCode(serviceId.getMemberCode());
+        record.setServiceSubsystemCode(serviceId.getSubsystemCode());
+        record.setServiceCode(serviceId.getServiceCode());
+        record.setServiceVersion(serviceId.getServiceVersion());
+        record.setServiceType("WSDL");
+        record.setSucceeded(succeeded);
+        record.setRequestInTs(now - 100);
+        record.setResponseOutTs(now);
+        record.setRequestSize(1000L);
+        record.setResponseSize(2000L);
+
+        return record;
+    }
+
+    /**
+     * Processes the records the way HealthDataMetrics did before the per-service index, looking up every metric
+     * from the registry by name.
+     */
+    private static void processWithRegistryLookup(MetricRegistry registry, List<OperationalDataRecord> records) {
+        for (OperationalDataRecord rec : records) {
+            ServiceId serviceId = HealthDataMetricsUtil.getServiceId(rec);
+
+            String gaugeName = getLastRequestTimestampGaugeName(serviceId, rec.getSucceeded());
+
+            if (findGauge(registry, gaugeName) == null) {
+                registry.register(gaugeName, (Gauge<Long>) rec::getResponseOutTs);
+            }
+
+            String serviceTypeName = getServiceTypeName(serviceId);
+
+            if (findGauge(registry, serviceTypeName) == null) {
+                registry.register(serviceTypeName, (Gauge<String>) rec::getServiceType);
+            }
+
+            String counterName = getRequestCounterName(serviceId, rec.getSucceeded());
+            Counter counter = findCounter(registry, counterName);
+
+            if (counter == null) {
+                counter = registry.register(counterName, new SlidingTimeWindowCounter(STATISTICS_PERIOD_SECONDS,
+                        TimeUnit.SECONDS, STATISTICS_BUCKETS));
+            }
+
+            counter.inc();
+
+            if (rec.getSucceeded()) {
+                updateHistogram(registry, getRequestDurationName(serviceId),
+                        rec.getResponseOutTs() - rec.getRequestInTs());
+                updateHistogram(registry, getRequestSizeName(serviceId), rec.getRequestSize());
+                updateHistogram(registry, getResponseSizeName(serviceId), rec.getResponseSize());
+            }
+        }
+    }
+
+    private static void updateHistogram(MetricRegistry registry, String name, long value) {
+        Histogram histogram = findHistogram(registry, name);
+
+        if (histogram == null) {
+            histogram = registry.register(name, new Histogram(new SlidingTimeWindowStatisticsReservoir(
+                    STATISTICS_PERIOD_SECONDS, TimeUnit.SECONDS, STATISTICS_BUCKETS)));
+        }
+
+        histogram.update(value);
+    }
+
+    private static long readWithIndex(MetricRegistry registry, ServiceId serviceId) {
+        ServiceHealthMetrics metrics = HealthDataMetrics.findServiceMetrics(registry, escapeServiceId(serviceId));
+
+        return metrics.getLastRequestTimestamp(true) + metrics.getRequestCount(true).getCount()
+                + metrics.getRequestCount(false).getCount() + metrics.getRequestDuration().getSnapshot().getMax()
+                + metrics.getRequestSize().getSnapshot().getMax() + metrics.getResponseSize().getSnapshot().getMax();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long readWithRegistryLookup(MetricRegistry registry, ServiceId serviceId) {
+        Gauge<Long> timestamp = findGauge(registry, getLastRequestTimestampGaugeName(serviceId, true));
+
+        return timestamp.getValue() + findCounter(registry, getRequestCounterName(serviceId, true)).getCount()
+                + findCounter(registry, getRequestCounterName(serviceId, false)).getCount()
+                + findHistogram(registry, getRequestDurationName(serviceId)).getSnapshot().getMax()
+                + findHistogram(registry, getRequestSizeName(serviceId)).getSnapshot().getMax()
+                + findHistogram(registry, getResponseSizeName(serviceId)).getSnapshot().getMax();
+    }
+
+    private static int getIntOption(CommandLine cmd, String name, int defaultValue) {
+        return cmd.getOptionValue(name) != null ? Integer.parseInt(cmd.getOptionValue(name)) : defaultValue;
+    }
+
+    private static CommandLine parseCommandLine(String args[]) {
+        try {
+            return new BasicParser().parse(OPTIONS, args);
+        } catch (ParseException e) {
+            log.error("Parsing command line failed: {}", e.getMessage());
+
+            usage();
+
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    private static Options getOptions() {
+        Options options = new Options();
+
+        addOption(options, "s", "services", "services (default: " + DEFAULT_SERVICES + ")");
+        addOption(options, "r", "records", "records processed with the per-service index (default: "
+                + DEFAULT_RECORDS + ")");
+        addOption(options, "l", "lookup-records", "records processed and services queried with registry lookup "
+                + "(default: " + DEFAULT_LOOKUP_RECORDS + ")");
+
+        Option usage = new Option("h", "help", false, "help");
+        usage.setRequired(false);
+        options.addOption(usage);
+
+        return options;
+    }
+
+    private static void addOption(Options options, String opt, String longOpt, String description) {
+        Option option = new Option(opt, longOpt, true, description);
+        option.setRequired(false);
+        options.addOption(option);
+    }
+
+    private static void usage() {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("HealthDataProcessingBenchmark", OPTIONS);
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataStream;
+import ee.ria.xroad.common.util.MimeTypes;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.formatFullOperationalDataAsJson;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests decoding the records of store operational data requests.
+ */
+public class OperationalDataRecordDecoderTest {
+
+    /**
+     * Test decoding records in the length-prefixed format.
+     * @throws Exception if an error occurs.
+     */
+    @Test
+    public void decodeRecordStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] record = formatFullOperationalDataAsJson().getBytes(StandardCharsets.UTF_8);
+
+        StoreOpMonitoringDataStream.writeRecord(out, record);
+        StoreOpMonitoringDataStream.writeRecord(out, record);
+
+        assertFullRecords(2, decode(StoreOpMonitoringDataStream.CONTENT_TYPE, out.toByteArray()));
+    }
+
+    /**
+     * Test decoding records in JSON.
+     * @throws Exception if an error occurs.
+     */
+    @Test
+    public void decodeJson() throws Exception {
+        String json = "{\"records\":[" + formatFullOperationalDataAsJson() + ","
+                + formatFullOperationalDataAsJson() + "]}";
+
+        assertFullRecords(2, decode(MimeTypes.JSON, json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Test that a truncated record is rejected.
+     * @throws Exception if an error occurs.
+     */
+    @Test
+    public void rejectTruncatedRecordStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StoreOpMonitoringDataStream.writeRecord(out, formatFullOperationalDataAsJson().getBytes(
+                StandardCharsets.UTF_8));
+
+        byte[] content = out.toByteArray();
+        byte[] truncated = new byte[content.length - 1];
+        System.arraycopy(content, 0, truncated, 0, truncated.length);
+
+        try {
+            decode(StoreOpMonitoringDataStream.CONTENT_TYPE, truncated);
+            fail("Truncated record must be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Received invalid request", e.getMessage());
+        }
+    }
+
+    /**
+     * Test that an empty JSON request is rejected.
+     * @throws Exception if an error occurs.
+     */
+    @Test
+    public void rejectEmptyJson() throws Exception {
+        try {
+            decode(MimeTypes.JSON, new byte[0]);
+            fail("Empty request must be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No data was found in the request to store data", e.getCause().getMessage());
+        }
+    }
+
+    private static List<OperationalDataRecord> decode(String contentType, byte[] content) {
+        List<OperationalDataRecord> records = new ArrayList<>();
+
+        OperationalDataRecordDecoder.create(contentType, new ByteArrayInputStream(content))
+                .forEachRemaining(records::add);
+
+        return records;
+    }
+
+    private static void assertFullRecords(int expectedCount, List<OperationalDataRecord> records) {
+        assertEquals(expectedCount, records.size());
+
+        for (OperationalDataRecord record : records) {
+            assertEquals("xroadGetRandom", record.getServiceCode());
+            assertEquals(OpMonitoringData.SecurityServerType.CLIENT, record.getSecurityServerType());
+            assertEquals(Integer.valueOf(200), record.getStatusCode());
+        }
+    }
+}
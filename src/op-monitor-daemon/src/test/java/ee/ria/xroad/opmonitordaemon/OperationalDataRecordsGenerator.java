@@ -178,7 +178,7 @@ public final class OperationalDataRecordsGenerator {
         OperationalDataRecordManager.storeRecords(records, timestamp);
     }
 
-    private static List<OperationalDataRecord> generateRecords(int count,
+    static List<OperationalDataRecord> generateRecords(int count,
             long timestamp, String longString, String shortString) {
         List<OperationalDataRecord> records = new ArrayList<>();
         OperationalDataRecord record;
@@ -0,0 +1,85 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.util.JsonUtils;
+
+import com.google.gson.Gson;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests streaming the operational data records payload.
+ */
+public class OperationalDataRecordsWriterTest {
+
+    private static final Gson GSON = JsonUtils.getSerializer();
+
+    private static final long TIMESTAMP = 1474968960L;
+
+    /**
+     * Ensure that the streamed payload matches the payload of the records.
+     * @throws Exception if an error occurs.
+     */
+    @Test
+    public void writesSamePayloadAsRecords() throws Exception {
+        List<OperationalDataRecord> records = OperationalDataRecordsGenerator.generateRecords(10, TIMESTAMP,
+                "long-string", "short-string");
+
+        assertEquals(new OperationalDataRecords(records).getPayload(GSON), write(records));
+    }
+
+    /**
+     * Ensure that an empty payload is streamed if there are no records.
+     * @throws Exception if an error occurs.
+     */
+    @Test
+    public void writesEmptyPayload() throws Exception {
+        assertEquals("{\"records\":[]}", write(new ArrayList<>()));
+    }
+
+    private static String write(List<OperationalDataRecord> records) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (OperationalDataRecordsWriter writer = new OperationalDataRecordsWriter(out, GSON)) {
+            records.forEach(writer::write);
+
+            assertEquals(records.size(), writer.getRecordsCount());
+        }
+
+        return IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())),
+                StandardCharsets.UTF_8);
+    }
+}
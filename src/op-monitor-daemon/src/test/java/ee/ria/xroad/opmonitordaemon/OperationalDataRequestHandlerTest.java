@@ -27,6 +27,7 @@ package ee.ria.xroad.opmonitordaemon;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.util.SpillingStream;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataResponseType;
 
@@ -74,12 +75,19 @@ public class OperationalDataRequestHandlerTest extends BaseTestUsingDB {
                 new OperationalDataRequestHandler();
         long recordsAvailableBefore = TimeUtils.getEpochSecond();
 
-        GetSecurityServerOperationalDataResponseType response = handler
-                .buildOperationalDataResponse(client, 1474968960L,
-                        recordsAvailableBefore + 10, null,
-                        Collections.emptySet(), recordsAvailableBefore);
+        SpillingStream payload = new SpillingStream(1024);
 
-        assertNotNull(response.getNextRecordsFrom());
+        try {
+            GetSecurityServerOperationalDataResponseType response = handler
+                    .buildOperationalDataResponse(client, 1474968960L,
+                            recordsAvailableBefore + 10, null,
+                            Collections.emptySet(), recordsAvailableBefore,
+                            payload);
+
+            assertNotNull(response.getNextRecordsFrom());
+        } finally {
+            payload.consume();
+        }
     }
 
     @Test
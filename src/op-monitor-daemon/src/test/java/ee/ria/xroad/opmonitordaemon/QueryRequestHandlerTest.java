@@ -52,7 +52,6 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -97,11 +96,12 @@ public class QueryRequestHandlerTest {
 
         QueryRequestHandler handler = new OperationalDataRequestHandler() {
             @Override
-            protected OperationalDataRecords getOperationalDataRecords(
+            protected Long streamOperationalDataRecords(
                     ClientId filterByClient, long recordsFrom, long recordsTo,
                     ClientId filterByServiceProvider,
-                    Set<String> outputFields) {
-                return new OperationalDataRecords(Collections.emptyList());
+                    Set<String> outputFields,
+                    OperationalDataRecordManager.RecordHandler handler) {
+                return null;
             }
 
             @Override
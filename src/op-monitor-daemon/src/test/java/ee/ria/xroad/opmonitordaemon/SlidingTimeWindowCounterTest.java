@@ -0,0 +1,112 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests against the time bucketed sliding time window counter.
+ */
+public class SlidingTimeWindowCounterTest {
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    public void countsIncrementsWithinWindow() {
+        SlidingTimeWindowCounter counter = new SlidingTimeWindowCounter(60, TimeUnit.SECONDS, 6, clock);
+
+        counter.inc();
+        clock.advance(15, TimeUnit.SECONDS);
+        counter.inc(5);
+        clock.advance(30, TimeUnit.SECONDS);
+        counter.inc();
+
+        assertEquals(7, counter.getCount());
+    }
+
+    @Test
+    public void expiresBucketsOutsideWindow() {
+        SlidingTimeWindowCounter counter = new SlidingTimeWindowCounter(60, TimeUnit.SECONDS, 6, clock);
+
+        counter.inc(3);
+        clock.advance(35, TimeUnit.SECONDS);
+        counter.inc(2);
+
+        clock.advance(30, TimeUnit.SECONDS);
+        // The first bucket is older than the window now.
+        assertEquals(2, counter.getCount());
+
+        clock.advance(1, TimeUnit.HOURS);
+        assertEquals(0, counter.getCount());
+
+        counter.inc();
+        assertEquals(1, counter.getCount());
+    }
+
+    @Test
+    public void countsConcurrentIncrements() throws Exception {
+        SlidingTimeWindowCounter counter = new SlidingTimeWindowCounter(60, TimeUnit.SECONDS, 6, clock);
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    counter.inc();
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, counter.getCount());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void doesNotDecrement() {
+        new SlidingTimeWindowCounter(60, TimeUnit.SECONDS, 6, clock).dec();
+    }
+
+    static final class ManualClock extends Clock {
+        private long tick = TimeUnit.DAYS.toNanos(1);
+
+        void advance(long duration, TimeUnit unit) {
+            tick += unit.toNanos(duration);
+        }
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformSnapshot;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests against the time bucketed sliding time window statistics reservoir.
+ */
+public class SlidingTimeWindowStatisticsReservoirTest {
+
+    private static final double DELTA = 1e-9;
+
+    private final SlidingTimeWindowCounterTest.ManualClock clock = new SlidingTimeWindowCounterTest.ManualClock();
+
+    @Test
+    public void computesSameStatisticsAsUniformSnapshot() {
+        SlidingTimeWindowStatisticsReservoir reservoir =
+                new SlidingTimeWindowStatisticsReservoir(60, TimeUnit.SECONDS, 6, clock);
+        long[] values = {120, 5, 77, 1024, 3, 3, 650};
+
+        for (long value : values) {
+            reservoir.update(value);
+            clock.advance(5, TimeUnit.SECONDS);
+        }
+
+        Snapshot expected = new UniformSnapshot(values);
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        assertEquals(values.length, reservoir.size());
+        assertEquals(expected.size(), snapshot.size());
+        assertEquals(expected.getMin(), snapshot.getMin());
+        assertEquals(expected.getMax(), snapshot.getMax());
+        assertEquals(expected.getMean(), snapshot.getMean(), DELTA);
+        assertEquals(expected.getStdDev(), snapshot.getStdDev(), DELTA);
+    }
+
+    @Test
+    public void expiresBucketsOutsideWindow() {
+        SlidingTimeWindowStatisticsReservoir reservoir =
+                new SlidingTimeWindowStatisticsReservoir(60, TimeUnit.SECONDS, 6, clock);
+
+        reservoir.update(1000);
+        clock.advance(35, TimeUnit.SECONDS);
+        reservoir.update(10);
+        reservoir.update(20);
+        clock.advance(30, TimeUnit.SECONDS);
+
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        assertEquals(2, snapshot.size());
+        assertEquals(10, snapshot.getMin());
+        assertEquals(20, snapshot.getMax());
+        assertEquals(15.0, snapshot.getMean(), DELTA);
+
+        clock.advance(1, TimeUnit.HOURS);
+        snapshot = reservoir.getSnapshot();
+
+        assertEquals(0, snapshot.size());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0.0, snapshot.getMean(), DELTA);
+        assertEquals(0.0, snapshot.getStdDev(), DELTA);
+    }
+
+    @Test
+    public void estimatesQuantilesWithinPowerOfTwoRanges() {
+        SlidingTimeWindowStatisticsReservoir reservoir =
+                new SlidingTimeWindowStatisticsReservoir(60, TimeUnit.SECONDS, 6, clock);
+
+        for (long value = 1; value <= 1000; value++) {
+            reservoir.update(value);
+        }
+
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        // The median 500 is in the range [256, 511].
+        assertEquals(511.0, snapshot.getMedian(), DELTA);
+        assertEquals(1000.0, snapshot.get999thPercentile(), DELTA);
+        assertEquals(1.0, snapshot.getValue(0.0), DELTA);
+    }
+}
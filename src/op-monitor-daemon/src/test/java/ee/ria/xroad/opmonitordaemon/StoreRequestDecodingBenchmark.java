@@ -0,0 +1,211 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataStream;
+import ee.ria.xroad.common.util.JsonUtils;
+import ee.ria.xroad.common.util.MimeTypes;
+
+import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compares decoding store operational data requests in JSON, as a whole and streamed, with decoding the
+ * length-prefixed records format. Reports the decoding time and the heap allocated per record.
+ */
+@Slf4j
+public final class StoreRequestDecodingBenchmark {
+    private static final int DEFAULT_RECORDS_IN_MESSAGE = 100;
+    private static final int DEFAULT_MESSAGE_COUNT = 10000;
+    private static final int DEFAULT_STRING_LENGTH = 50;
+
+    private static final long TIMESTAMP = 1451606401;
+
+    private static final Gson GSON = JsonUtils.getSerializer();
+
+    private static final Options OPTIONS = getOptions();
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private StoreRequestDecodingBenchmark() {
+    }
+
+    /**
+     * Main function.
+     * @param args args
+     * @throws Exception if something goes wrong.
+     */
+    public static void main(String args[]) throws Exception {
+        CommandLine cmd = parseCommandLine(args);
+
+        if (cmd.hasOption("help")) {
+            usage();
+
+            System.exit(0);
+        }
+
+        int recordsInMessage = cmd.getOptionValue("records") != null
+                ? Integer.parseInt(cmd.getOptionValue("records"))
+                : DEFAULT_RECORDS_IN_MESSAGE;
+
+        int messageCount = cmd.getOptionValue("count") != null
+                ? Integer.parseInt(cmd.getOptionValue("count"))
+                : DEFAULT_MESSAGE_COUNT;
+
+        String string = Strings.repeat("X", DEFAULT_STRING_LENGTH);
+        List<OperationalDataRecord> records = OperationalDataRecordsGenerator.generateRecords(recordsInMessage,
+                TIMESTAMP, string, string);
+
+        byte[] json = new OperationalDataRecords(records).getPayload(GSON).getBytes(StandardCharsets.UTF_8);
+        byte[] recordStream = toRecordStream(records);
+
+        log.info("records in message: {}, JSON message: {} bytes, length-prefixed message: {} bytes",
+                recordsInMessage, json.length, recordStream.length);
+
+        Decoder wholeJson = content -> GSON.fromJson(IOUtils.toString(new ByteArrayInputStream(content),
+                StandardCharsets.UTF_8), OperationalDataRecords.class).size();
+        Decoder streamedJson = content -> decode(MimeTypes.JSON, content);
+        Decoder streamedRecords = content -> decode(StoreOpMonitoringDataStream.CONTENT_TYPE, content);
+
+        // warm up
+        run(wholeJson, json, messageCount);
+        run(streamedJson, json, messageCount);
+        run(streamedRecords, recordStream, messageCount);
+
+        report("JSON (whole request)", run(wholeJson, json, messageCount), messageCount * recordsInMessage);
+        report("JSON (streamed)", run(streamedJson, json, messageCount), messageCount * recordsInMessage);
+        report("length-prefixed records", run(streamedRecords, recordStream, messageCount),
+                messageCount * recordsInMessage);
+    }
+
+    private static long[] run(Decoder decoder, byte[] content, int messageCount) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        int decoded = 0;
+
+        for (int i = 0; i < messageCount; i++) {
+            decoded += decoder.decode(content);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        if (decoded == 0) {
+            throw new IllegalStateException("No records decoded");
+        }
+
+        return new long[] {elapsed, allocated};
+    }
+
+    private static void report(String name, long[] result, long recordCount) {
+        log.info("{}: {} ns/record, {} bytes allocated/record", name, result[0] / recordCount,
+                result[1] / recordCount);
+    }
+
+    private static int decode(String contentType, byte[] content) {
+        int count = 0;
+        OperationalDataRecordDecoder decoder = OperationalDataRecordDecoder.create(contentType,
+                new ByteArrayInputStream(content));
+
+        while (decoder.hasNext()) {
+            decoder.next();
+            count++;
+        }
+
+        return count;
+    }
+
+    private static byte[] toRecordStream(List<OperationalDataRecord> records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (OperationalDataRecord record : records) {
+            StoreOpMonitoringDataStream.writeRecord(out, GSON.toJson(record).getBytes(StandardCharsets.UTF_8));
+        }
+
+        return out.toByteArray();
+    }
+
+    private static CommandLine parseCommandLine(String args[]) {
+        try {
+            return new BasicParser().parse(OPTIONS, args);
+        } catch (ParseException e) {
+            log.error("Parsing command line failed: {}", e.getMessage());
+
+            usage();
+
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    private static Options getOptions() {
+        Options options = new Options();
+
+        Option records = new Option("r", "records", true,
+                "records in message (default: " + DEFAULT_RECORDS_IN_MESSAGE + ")");
+        records.setRequired(false);
+        options.addOption(records);
+
+        Option count = new Option("c", "count", true,
+                "message count (default: " + DEFAULT_MESSAGE_COUNT + ")");
+        count.setRequired(false);
+        options.addOption(count);
+
+        Option usage = new Option("h", "help", false, "help");
+        usage.setRequired(false);
+        options.addOption(usage);
+
+        return options;
+    }
+
+    private static void usage() {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("StoreRequestDecodingBenchmark", OPTIONS);
+    }
+
+    @FunctionalInterface
+    private interface Decoder {
+        int decode(byte[] content) throws Exception;
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xroad.restapi.cache;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.conf.globalconf.GlobalGroupInfo;
+import ee.ria.xroad.common.conf.globalconf.MemberInfo;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+import ee.ria.xroad.common.identifier.XRoadObjectType;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.niis.xroad.restapi.dto.ServiceClientDto;
+import org.niis.xroad.restapi.facade.GlobalConfFacade;
+import org.niis.xroad.restapi.scheduling.GlobalConfChecker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory search index of the global configuration subjects (subsystems and global groups) that can be
+ * granted access rights.
+ *
+ * Instance, member class and subject type are looked up from exact match indexes. Text search terms are matched
+ * as case-insensitive substrings: the candidates are narrowed down with trigram indexes and then verified against
+ * the indexed values. The index is built lazily from the global configuration and discarded at the rate
+ * the global configuration is reloaded.
+ */
+@Slf4j
+@Component
+public class ServiceClientCandidateIndex {
+
+    public static final int EVICT_RATE_MS = GlobalConfChecker.JOB_REPEAT_INTERVAL_MS;
+
+    private static final int GRAM_LENGTH = 3;
+    private static final int[] NONE = new int[0];
+
+    private final GlobalConfFacade globalConfFacade;
+
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public ServiceClientCandidateIndex(GlobalConfFacade globalConfFacade) {
+        this.globalConfFacade = globalConfFacade;
+    }
+
+    /**
+     * Find subsystems and global groups by search terms. Members are not included since they cannot have
+     * access rights.
+     * @param subjectType search term for subjectType. Null value is considered a match
+     * @param memberNameOrGroupDescription search term for memberName or groupDescription (depending on subject's type).
+     * Null or empty value is considered a match
+     * @param instance search term for instance. Null or empty value is considered a match
+     * @param memberClass search term for memberClass. Null or empty value is considered a match
+     * @param memberGroupCode search term for memberCode or groupCode (depending on subject's type).
+     * Null or empty value is considered a match
+     * @param subsystemCode search term for subsystemCode. Null or empty value is considered a match
+     * @return new {@link ServiceClientDto ServiceClientDtos} of the matching subjects, in global configuration order
+     */
+    public List<ServiceClientDto> find(XRoadObjectType subjectType, String memberNameOrGroupDescription,
+            String instance, String memberClass, String memberGroupCode, String subsystemCode) {
+        return getSnapshot().find(subjectType, lowerCase(memberNameOrGroupDescription), lowerCase(instance),
+                lowerCase(memberClass), lowerCase(memberGroupCode), lowerCase(subsystemCode));
+    }
+
+    /**
+     * Discards the index so that it is rebuilt from the current global configuration on next use
+     */
+    @Scheduled(fixedDelay = EVICT_RATE_MS, initialDelay = EVICT_RATE_MS)
+    public synchronized void evict() {
+        snapshot = null;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        return current != null ? current : buildSnapshot();
+    }
+
+    private synchronized Snapshot buildSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = new Snapshot(globalConfFacade.getMembers(), getGlobalGroups());
+            snapshot = current;
+            log.debug("Built service client candidate index of {} subjects", current.entries.size());
+        }
+        return current;
+    }
+
+    private List<GlobalGroupInfo> getGlobalGroups() {
+        try {
+            return globalConfFacade.getGlobalGroups();
+        } catch (CodedException e) {
+            // no GlobalGroups found -> GlobalGroups are just ignored in the results
+            log.debug("Global groups not found", e);
+            return Collections.emptyList();
+        }
+    }
+
+    private static String lowerCase(String term) {
+        return StringUtils.isEmpty(term) ? null : term.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+        private final XRoadId subjectId;
+        private final String memberName;
+        private final String groupDescription;
+
+        // lower case values used for searching
+        private final String nameOrDescription;
+        private final String code;
+        private final String subsystemCode;
+
+        Entry(ClientId clientId, String memberName) {
+            this.subjectId = clientId;
+            this.memberName = memberName;
+            this.groupDescription = null;
+            this.nameOrDescription = lowerCase(memberName);
+            this.code = lowerCase(clientId.getMemberCode());
+            this.subsystemCode = lowerCase(clientId.getSubsystemCode());
+        }
+
+        Entry(GlobalGroupId groupId, String description) {
+            this.subjectId = groupId;
+            this.memberName = null;
+            this.groupDescription = description;
+            this.nameOrDescription = lowerCase(description);
+            this.code = lowerCase(groupId.getGroupCode());
+            this.subsystemCode = null;
+        }
+
+        boolean matches(String nameTerm, String codeTerm, String subsystemTerm) {
+            return contains(nameOrDescription, nameTerm)
+                    && contains(code, codeTerm)
+                    && contains(subsystemCode, subsystemTerm);
+        }
+
+        ServiceClientDto toDto() {
+            ServiceClientDto dto = new ServiceClientDto();
+            dto.setSubjectId(subjectId);
+            dto.setMemberName(memberName);
+            dto.setLocalGroupDescription(groupDescription);
+            return dto;
+        }
+
+        private static boolean contains(String value, String term) {
+            return term == null || (value != null && value.contains(term));
+        }
+    }
+
+    private static final class Snapshot {
+        private final List<Entry> entries = new ArrayList<>();
+
+        private final Map<XRoadObjectType, int[]> byType;
+        private final Map<String, int[]> byInstance;
+        private final Map<String, int[]> byMemberClass;
+        private final Map<String, int[]> nameGrams;
+        private final Map<String, int[]> codeGrams;
+        private final Map<String, int[]> subsystemGrams;
+
+        Snapshot(List<MemberInfo> members, List<GlobalGroupInfo> globalGroups) {
+            Map<XRoadObjectType, List<Integer>> types = new HashMap<>();
+            Map<String, List<Integer>> instances = new HashMap<>();
+            Map<String, List<Integer>> memberClasses = new HashMap<>();
+            Map<String, List<Integer>> names = new HashMap<>();
+            Map<String, List<Integer>> codes = new HashMap<>();
+            Map<String, List<Integer>> subsystems = new HashMap<>();
+
+            for (MemberInfo member : members) {
+                ClientId clientId = member.getId();
+                // Ultimately members cannot have access rights to Services -> no members in the index
+                if (clientId.getObjectType() == XRoadObjectType.MEMBER) {
+                    continue;
+                }
+                int index = entries.size();
+                Entry entry = new Entry(clientId, member.getName());
+                entries.add(entry);
+                memberClasses.computeIfAbsent(lowerCase(clientId.getMemberClass()), k -> new ArrayList<>())
+                        .add(index);
+                addCommon(entry, index, types, instances, names, codes);
+                addGrams(subsystems, entry.subsystemCode, index);
+            }
+
+            for (GlobalGroupInfo group : globalGroups) {
+                int index = entries.size();
+                Entry entry = new Entry(group.getId(), group.getDescription());
+                entries.add(entry);
+                addCommon(entry, index, types, instances, names, codes);
+            }
+
+            byType = toPostings(types);
+            byInstance = toPostings(instances);
+            byMemberClass = toPostings(memberClasses);
+            nameGrams = toPostings(names);
+            codeGrams = toPostings(codes);
+            subsystemGrams = toPostings(subsystems);
+        }
+
+        List<ServiceClientDto> find(XRoadObjectType subjectType, String nameTerm, String instance,
+                String memberClass, String codeTerm, String subsystemTerm) {
+            int[] candidates = null;
+            if (subjectType != null) {
+                candidates = intersect(candidates, byType.get(subjectType));
+            }
+            if (instance != null) {
+                candidates = intersect(candidates, byInstance.get(instance));
+            }
+            if (memberClass != null) {
+                candidates = intersect(candidates, byMemberClass.get(memberClass));
+            }
+            candidates = intersectGrams(candidates, nameGrams, nameTerm);
+            candidates = intersectGrams(candidates, codeGrams, codeTerm);
+            candidates = intersectGrams(candidates, subsystemGrams, subsystemTerm);
+
+            List<ServiceClientDto> dtos = new ArrayList<>();
+            if (candidates == null) {
+                for (Entry entry : entries) {
+                    if (entry.matches(nameTerm, codeTerm, subsystemTerm)) {
+                        dtos.add(entry.toDto());
+                    }
+                }
+            } else {
+                for (int index : candidates) {
+                    Entry entry = entries.get(index);
+                    if (entry.matches(nameTerm, codeTerm, subsystemTerm)) {
+                        dtos.add(entry.toDto());
+                    }
+                }
+            }
+            return dtos;
+        }
+
+        private static void addCommon(Entry entry, int index, Map<XRoadObjectType, List<Integer>> types,
+                Map<String, List<Integer>> instances, Map<String, List<Integer>> names,
+                Map<String, List<Integer>> codes) {
+            types.computeIfAbsent(entry.subjectId.getObjectType(), k -> new ArrayList<>()).add(index);
+            instances.computeIfAbsent(lowerCase(entry.subjectId.getXRoadInstance()), k -> new ArrayList<>())
+                    .add(index);
+            addGrams(names, entry.nameOrDescription, index);
+            addGrams(codes, entry.code, index);
+        }
+
+        private static void addGrams(Map<String, List<Integer>> grams, String value, int index) {
+            if (value != null) {
+                for (String gram : grams(value)) {
+                    grams.computeIfAbsent(gram, k -> new ArrayList<>()).add(index);
+                }
+            }
+        }
+
+        private static Set<String> grams(String value) {
+            Set<String> grams = new LinkedHashSet<>();
+            for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+                grams.add(value.substring(i, i + GRAM_LENGTH));
+            }
+            return grams;
+        }
+
+        private static <K> Map<K, int[]> toPostings(Map<K, List<Integer>> lists) {
+            Map<K, int[]> postings = new HashMap<>(lists.size() * 2);
+            lists.forEach((key, list) -> postings.put(key, list.stream().mapToInt(Integer::intValue).toArray()));
+            return postings;
+        }
+
+        /**
+         * Narrows down the candidates to those containing all the trigrams of the term. Terms shorter than
+         * a trigram do not narrow down the candidates.
+         */
+        private static int[] intersectGrams(int[] candidates, Map<String, int[]> postings, String term) {
+            if (term == null) {
+                return candidates;
+            }
+            int[] result = candidates;
+            for (String gram : grams(term)) {
+                result = intersect(result, postings.get(gram));
+                if (result.length == 0) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Intersects two sorted posting lists. A null candidates list stands for all entries.
+         */
+        private static int[] intersect(int[] candidates, int[] postings) {
+            if (postings == null) {
+                return NONE;
+            }
+            if (candidates == null) {
+                return postings;
+            }
+            int[] result = new int[Math.min(candidates.length, postings.length)];
+            int count = 0;
+            for (int i = 0, j = 0; i < candidates.length && j < postings.length;) {
+                if (candidates[i] < postings[j]) {
+                    i++;
+                } else if (candidates[i] > postings[j]) {
+                    j++;
+                } else {
+                    result[count++] = candidates[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+    }
+}
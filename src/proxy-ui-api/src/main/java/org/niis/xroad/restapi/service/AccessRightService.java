@@ -26,8 +26,6 @@
 
 package org.niis.xroad.restapi.service;
 
-import ee.ria.xroad.common.CodedException;
-import ee.ria.xroad.common.conf.globalconf.GlobalGroupInfo;
 import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
 import ee.ria.xroad.common.conf.serverconf.model.ClientType;
 import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
@@ -40,11 +38,11 @@ import ee.ria.xroad.common.identifier.XRoadObjectType;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.niis.xroad.restapi.cache.ServiceClientCandidateIndex;
 import org.niis.xroad.restapi.config.audit.AuditDataHelper;
 import org.niis.xroad.restapi.dto.ServiceClientAccessRightDto;
 import org.niis.xroad.restapi.dto.ServiceClientDto;
 import org.niis.xroad.restapi.exceptions.ErrorDeviation;
-import org.niis.xroad.restapi.facade.GlobalConfFacade;
 import org.niis.xroad.restapi.repository.ClientRepository;
 import org.niis.xroad.restapi.util.FormatUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -80,7 +78,7 @@ import static org.niis.xroad.restapi.config.audit.RestApiAuditProperty.SUBJECT_I
 @PreAuthorize("isAuthenticated()")
 public class AccessRightService {
 
-    private final GlobalConfFacade globalConfFacade;
+    private final ServiceClientCandidateIndex serviceClientCandidateIndex;
     private final ClientRepository clientRepository;
     private final IdentifierService identifierService;
     private final EndpointService endpointService;
@@ -89,13 +87,13 @@ public class AccessRightService {
     private final ClientService clientService;
 
     @Autowired
-    public AccessRightService(GlobalConfFacade globalConfFacade,
+    public AccessRightService(ServiceClientCandidateIndex serviceClientCandidateIndex,
             ClientRepository clientRepository, IdentifierService identifierService,
             EndpointService endpointService,
             ServiceDescriptionService serviceDescriptionService,
             ClientService clientService,
             AuditDataHelper auditDataHelper) {
-        this.globalConfFacade = globalConfFacade;
+        this.serviceClientCandidateIndex = serviceClientCandidateIndex;
         this.clientRepository = clientRepository;
         this.identifierService = identifierService;
         this.endpointService = endpointService;
@@ -627,35 +625,21 @@ public class AccessRightService {
             String memberNameOrGroupDescription,
             XRoadObjectType subjectType, String instance, String memberClass, String memberGroupCode,
             String subsystemCode) throws ClientNotFoundException {
-        List<ServiceClientDto> dtos = new ArrayList<>();
-
         // get client
         ClientType client = clientService.getLocalClientOrThrowNotFound(clientId);
 
-        // get global members
-        List<ServiceClientDto> globalMembers = getGlobalMembersAsDtos();
-        if (globalMembers.size() > 0) {
-            dtos.addAll(globalMembers);
-        }
-
-        // get global groups
-        List<ServiceClientDto> globalGroups = getGlobalGroupsAsDtos(instance);
-        if (globalMembers.size() > 0) {
-            dtos.addAll(globalGroups);
-        }
-
-        // get local groups
-        List<ServiceClientDto> localGroups = getLocalGroupsAsDtos(client.getLocalGroup());
-        if (localGroups.size() > 0) {
-            dtos.addAll(localGroups);
-        }
+        // get matching global members and groups
+        List<ServiceClientDto> dtos = new ArrayList<>(serviceClientCandidateIndex.find(subjectType,
+                memberNameOrGroupDescription, instance, memberClass, memberGroupCode, subsystemCode));
 
+        // get matching local groups
         Predicate<ServiceClientDto> matchingSearchTerms = buildSubjectSearchPredicate(subjectType,
                 memberNameOrGroupDescription, instance, memberClass, memberGroupCode, subsystemCode);
-
-        return dtos.stream()
+        getLocalGroupsAsDtos(client.getLocalGroup()).stream()
                 .filter(matchingSearchTerms)
-                .collect(Collectors.toList());
+                .forEach(dtos::add);
+
+        return dtos;
     }
 
     private List<ServiceClientDto> getLocalGroupsAsDtos(List<LocalGroupType> localGroupTypes) {
@@ -670,48 +654,6 @@ public class AccessRightService {
                 }).collect(Collectors.toList());
     }
 
-    private List<ServiceClientDto> getGlobalMembersAsDtos() {
-        return globalConfFacade.getMembers().stream()
-                .map(memberInfo -> {
-                    ServiceClientDto serviceClientDto = new ServiceClientDto();
-                    serviceClientDto.setSubjectId(memberInfo.getId());
-                    serviceClientDto.setMemberName(memberInfo.getName());
-                    return serviceClientDto;
-                })
-                .collect(Collectors.toList());
-    }
-
-    private List<ServiceClientDto> getGlobalGroupsAsDtos(String instance) {
-        List<ServiceClientDto> globalGroups = new ArrayList<>();
-        List<String> globalGroupInstances = globalConfFacade.getInstanceIdentifiers();
-        List<GlobalGroupInfo> globalGroupInfos = null;
-        // core throws CodedException if nothing is found for the provided instance/instances
-        try {
-            if (!StringUtils.isEmpty(instance)) {
-                List<String> globalGroupInstancesMatchingSearch = globalGroupInstances.stream()
-                        .filter(s -> s.contains(instance))
-                        .collect(Collectors.toList());
-                if (globalGroupInstancesMatchingSearch.size() > 0) {
-                    globalGroupInfos = globalConfFacade
-                            .getGlobalGroups(globalGroupInstancesMatchingSearch.toArray(new String[] {}));
-                }
-            } else {
-                globalGroupInfos = globalConfFacade.getGlobalGroups();
-            }
-        } catch (CodedException e) {
-            // no GlobalGroups found for the provided instance -> GlobalGroups are just ignored in the results
-        }
-        if (globalGroupInfos != null && globalGroupInfos.size() > 0) {
-            globalGroupInfos.forEach(globalGroupInfo -> {
-                ServiceClientDto serviceClientDto = new ServiceClientDto();
-                serviceClientDto.setSubjectId(globalGroupInfo.getId());
-                serviceClientDto.setLocalGroupDescription(globalGroupInfo.getDescription());
-                globalGroups.add(serviceClientDto);
-            });
-        }
-        return globalGroups;
-    }
-
     /**
      * Composes a {@link Predicate} that will be used to filter {@link ServiceClientDto ServiceClientDtos}
      * against the given search terms. The given ServiceClientDto has a {@link ServiceClientDto#getSubjectId()}
@@ -0,0 +1,233 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xroad.restapi.cache;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalGroupInfo;
+import ee.ria.xroad.common.conf.globalconf.MemberInfo;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+import ee.ria.xroad.common.identifier.XRoadObjectType;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.niis.xroad.restapi.dto.ServiceClientDto;
+import org.niis.xroad.restapi.facade.GlobalConfFacade;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that the service client candidate index finds the same subjects as filtering all subjects with
+ * the search terms
+ */
+public class ServiceClientCandidateIndexTest {
+
+    private static final List<XRoadObjectType> TYPES = Arrays.asList(null, XRoadObjectType.SUBSYSTEM,
+            XRoadObjectType.GLOBALGROUP, XRoadObjectType.MEMBER);
+    private static final List<String> NAMES = Arrays.asList(null, "", "a", "tax", "tAX aUTH", "Service",
+            "name for: ss", "zzz");
+    private static final List<String> INSTANCES = Arrays.asList(null, "fi", "EE", "F");
+    private static final List<String> MEMBER_CLASSES = Arrays.asList(null, "gov", "PRO", "GO");
+    private static final List<String> CODES = Arrays.asList(null, "1", "m12", "AGEN", "taxgroup", "servers", "zzz");
+    private static final List<String> SUBSYSTEMS = Arrays.asList(null, "s", "ss1", "PAY", "rOlL", "ssone", "zzz");
+
+    private GlobalConfFacade globalConfFacade;
+    private ServiceClientCandidateIndex index;
+
+    private List<MemberInfo> members;
+    private List<GlobalGroupInfo> globalGroups;
+
+    @Before
+    public void setup() {
+        members = new ArrayList<>(Arrays.asList(
+                member("FI", "GOV", "M1", null, "Tax Authority"),
+                member("FI", "GOV", "M1", "SS1", "Tax Authority"),
+                member("FI", "GOV", "M12345", "Payments", "Taxi Service"),
+                member("FI", "PRO", "Agency7", "PAYROLL", "Customs Board"),
+                member("EE", "GOV", "M1", "ssOne", "Name for: SS1"),
+                member("EE", "PRO", "agency", "SS12", "TAX AUTHORITY"),
+                member("EE", "COM", "M2", "roll", null)));
+        globalGroups = new ArrayList<>(Arrays.asList(
+                new GlobalGroupInfo(GlobalGroupId.create("FI", "security-servers"), "Security servers"),
+                new GlobalGroupInfo(GlobalGroupId.create("EE", "TaxGroup"), "Tax authorities group"),
+                new GlobalGroupInfo(GlobalGroupId.create("EE", "M1"), null)));
+
+        globalConfFacade = mock(GlobalConfFacade.class);
+        when(globalConfFacade.getMembers()).thenAnswer(invocation -> members);
+        when(globalConfFacade.getGlobalGroups()).thenAnswer(invocation -> globalGroups);
+
+        index = new ServiceClientCandidateIndex(globalConfFacade);
+    }
+
+    @Test
+    public void findsSameSubjectsAsFilteringAllSubjects() {
+        int nonEmptyResults = 0;
+
+        for (XRoadObjectType type : TYPES) {
+            for (String name : NAMES) {
+                for (String instance : INSTANCES) {
+                    for (String memberClass : MEMBER_CLASSES) {
+                        for (String code : CODES) {
+                            for (String subsystem : SUBSYSTEMS) {
+                                List<String> expected = filterAll(type, name, instance, memberClass, code,
+                                        subsystem);
+                                List<String> actual = toStrings(index.find(type, name, instance, memberClass,
+                                        code, subsystem));
+
+                                assertEquals(String.join("|", Arrays.asList(String.valueOf(type), name, instance,
+                                        memberClass, code, subsystem)), expected, actual);
+
+                                if (!expected.isEmpty()) {
+                                    nonEmptyResults++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // make sure the search terms are not too strict to test anything
+        assertTrue(nonEmptyResults > 100);
+    }
+
+    @Test
+    public void findsSubjectsByTermsLongerThanGram() {
+        assertEquals(Arrays.asList("SUBSYSTEM:FI/GOV/M1/SS1", "SUBSYSTEM:EE/PRO/agency/SS12"),
+                subjectIds(index.find(XRoadObjectType.SUBSYSTEM, "tax auth", null, null, null, "Ss1")));
+        assertEquals(Collections.singletonList("SUBSYSTEM:FI/PRO/Agency7/PAYROLL"),
+                subjectIds(index.find(null, null, "fi", "pro", "agency", "yRoL")));
+        assertEquals(Collections.singletonList("GLOBALGROUP:EE/TaxGroup"),
+                subjectIds(index.find(XRoadObjectType.GLOBALGROUP, "TAX", "ee", null, "xgr", null)));
+        assertTrue(index.find(null, "tax authority", "FI", "PRO", null, null).isEmpty());
+    }
+
+    @Test
+    public void excludesMembers() {
+        assertTrue(index.find(XRoadObjectType.MEMBER, null, null, null, null, null).isEmpty());
+        assertTrue(subjectIds(index.find(null, null, null, null, null, null)).stream()
+                .noneMatch(id -> id.startsWith("MEMBER:")));
+    }
+
+    @Test
+    public void evictRebuildsFromGlobalConf() {
+        assertTrue(index.find(null, null, null, null, "newcode", null).isEmpty());
+
+        members.add(member("FI", "GOV", "NewCode", "SS1", "New member"));
+
+        // the index is not rebuilt before eviction
+        assertTrue(index.find(null, null, null, null, "newcode", null).isEmpty());
+
+        index.evict();
+
+        assertEquals(Collections.singletonList("SUBSYSTEM:FI/GOV/NewCode/SS1"),
+                subjectIds(index.find(null, null, null, null, "newcode", null)));
+    }
+
+    @Test
+    public void returnsNewDtos() {
+        ServiceClientDto dto = index.find(null, null, null, null, null, "ss1").get(0);
+        dto.setMemberName("changed");
+
+        assertEquals("Tax Authority", index.find(null, null, null, null, null, "ss1").get(0).getMemberName());
+    }
+
+    private static MemberInfo member(String instance, String memberClass, String memberCode, String subsystem,
+            String name) {
+        return new MemberInfo(ClientId.create(instance, memberClass, memberCode, subsystem), name);
+    }
+
+    /**
+     * Filters all subjects with the search terms the way the subjects were searched before the index
+     */
+    private List<String> filterAll(XRoadObjectType type, String name, String instance, String memberClass,
+            String code, String subsystem) {
+        List<ServiceClientDto> dtos = new ArrayList<>();
+        for (MemberInfo member : members) {
+            ServiceClientDto dto = new ServiceClientDto();
+            dto.setSubjectId(member.getId());
+            dto.setMemberName(member.getName());
+            dtos.add(dto);
+        }
+        for (GlobalGroupInfo group : globalGroups) {
+            ServiceClientDto dto = new ServiceClientDto();
+            dto.setSubjectId(group.getId());
+            dto.setLocalGroupDescription(group.getDescription());
+            dtos.add(dto);
+        }
+
+        return toStrings(dtos.stream()
+                .filter(dto -> dto.getSubjectId().getObjectType() != XRoadObjectType.MEMBER)
+                .filter(dto -> type == null || dto.getSubjectId().getObjectType() == type)
+                .filter(dto -> StringUtils.isEmpty(name)
+                        || StringUtils.containsIgnoreCase(dto.getMemberName(), name)
+                        || StringUtils.containsIgnoreCase(dto.getLocalGroupDescription(), name))
+                .filter(dto -> StringUtils.isEmpty(instance)
+                        || instance.equalsIgnoreCase(dto.getSubjectId().getXRoadInstance()))
+                .filter(dto -> StringUtils.isEmpty(memberClass)
+                        || (dto.getSubjectId() instanceof ClientId
+                        && memberClass.equalsIgnoreCase(((ClientId) dto.getSubjectId()).getMemberClass())))
+                .filter(dto -> StringUtils.isEmpty(subsystem)
+                        || (dto.getSubjectId() instanceof ClientId
+                        && StringUtils.containsIgnoreCase(((ClientId) dto.getSubjectId()).getSubsystemCode(),
+                                subsystem)))
+                .filter(dto -> StringUtils.isEmpty(code)
+                        || StringUtils.containsIgnoreCase(getCode(dto.getSubjectId()), code))
+                .collect(Collectors.toList()));
+    }
+
+    private static String getCode(XRoadId subjectId) {
+        if (subjectId instanceof ClientId) {
+            return ((ClientId) subjectId).getMemberCode();
+        } else if (subjectId instanceof GlobalGroupId) {
+            return ((GlobalGroupId) subjectId).getGroupCode();
+        }
+        return null;
+    }
+
+    private static List<String> toStrings(List<ServiceClientDto> dtos) {
+        return dtos.stream()
+                .map(dto -> dto.getSubjectId().toShortString() + "|" + dto.getMemberName() + "|"
+                        + dto.getLocalGroupDescription())
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> subjectIds(List<ServiceClientDto> dtos) {
+        return dtos.stream()
+                .map(dto -> dto.getSubjectId().getObjectType() + ":" + dto.getSubjectId().toShortString())
+                .collect(Collectors.toList());
+    }
+}
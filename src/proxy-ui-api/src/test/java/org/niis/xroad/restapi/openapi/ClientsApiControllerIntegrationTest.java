@@ -37,6 +37,7 @@ import ee.ria.xroad.signer.protocol.dto.TokenInfo;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.stubbing.Answer;
+import org.niis.xroad.restapi.cache.ServiceClientCandidateIndex;
 import org.niis.xroad.restapi.openapi.model.AccessRight;
 import org.niis.xroad.restapi.openapi.model.AccessRights;
 import org.niis.xroad.restapi.openapi.model.CertificateDetails;
@@ -153,11 +154,16 @@ public class ClientsApiControllerIntegrationTest extends AbstractApiControllerTe
         when(managementRequestSenderService.sendOwnerChangeRequest(any())).thenReturn(0);
         when(serverConfService.getSecurityServerId()).thenReturn(OWNER_SERVER_ID);
         when(currentSecurityServerId.getServerId()).thenReturn(OWNER_SERVER_ID);
+        // rebuild the service client candidate index from the mocks above
+        serviceClientCandidateIndex.evict();
     }
 
     @Autowired
     private ClientsApiController clientsApiController;
 
+    @Autowired
+    private ServiceClientCandidateIndex serviceClientCandidateIndex;
+
     @Test
     @WithMockUser(authorities = "VIEW_CLIENTS")
     public void getAllClients() {
@@ -37,6 +37,7 @@ import ee.ria.xroad.common.identifier.XRoadId;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.niis.xroad.restapi.cache.ServiceClientCandidateIndex;
 import org.niis.xroad.restapi.dto.ServiceClientAccessRightDto;
 import org.niis.xroad.restapi.dto.ServiceClientDto;
 import org.niis.xroad.restapi.repository.ClientRepository;
@@ -80,6 +81,9 @@ public class AccessRightServiceIntegrationTest extends AbstractServiceIntegratio
     @Autowired
     EndpointService endpointService;
 
+    @Autowired
+    ServiceClientCandidateIndex serviceClientCandidateIndex;
+
     private List<MemberInfo> memberInfos = new ArrayList<>(Arrays.asList(
             TestUtils.getMemberInfo(TestUtils.INSTANCE_FI, TestUtils.MEMBER_CLASS_GOV, TestUtils.MEMBER_CODE_M1, null),
             TestUtils.getMemberInfo(TestUtils.INSTANCE_EE, TestUtils.MEMBER_CLASS_GOV, TestUtils.MEMBER_CODE_M1,
@@ -130,6 +134,9 @@ public class AccessRightServiceIntegrationTest extends AbstractServiceIntegratio
             if (identifiers == null) return true; // some further mocking later causes this null
             return !identifiers.contains(OBSOLETE_GGROUP_ID);
         }).when(globalConfService).globalGroupsExist(any());
+
+        // rebuild the index from the mocks above
+        serviceClientCandidateIndex.evict();
     }
 
     @Autowired
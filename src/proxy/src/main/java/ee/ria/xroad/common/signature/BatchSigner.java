@@ -32,24 +32,31 @@ import ee.ria.xroad.signer.protocol.message.GetTokenBatchSigningEnabled;
 import ee.ria.xroad.signer.protocol.message.Sign;
 import ee.ria.xroad.signer.protocol.message.SignResponse;
 
-import akka.actor.AbstractActorWithStash;
+import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import akka.actor.ReceiveTimeout;
 import akka.actor.UntypedAbstractActor;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
 import lombok.Data;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.bouncycastle.operator.OperatorCreationException;
 import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
 
-import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.SIGNER_X;
@@ -66,7 +73,11 @@ import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmId;
  *
  * Moreover, multiple signing requests for the same signing certificate
  * (and thus the same key id) are signed in batch and the resulting hash
- * chain is produced for each request.
+ * chain is produced for each request, if batch signing is enabled for the
+ * token of the key. A batch is signed when it has reached the maximum batch
+ * size, when its oldest request has waited for the maximum batch wait time
+ * or, if the wait time is 0, as soon as a signing slot is free. Up to the
+ * maximum number of outstanding batches are signed concurrently per key.
  *
  * The batch signer is an Akka actor, it creates child actors per
  * signing certificate, which means there is essentially one batch signer
@@ -78,9 +89,25 @@ public class BatchSigner extends UntypedAbstractActor {
     private static final int TIMEOUT_MILLIS = SystemProperties.getSignerClientTimeout();
     private static final Timeout DEFAULT_TIMEOUT = new Timeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
 
+    private static final int MAX_BATCH_SIZE = SystemProperties.getBatchSignerMaxBatchSize();
+    private static final int MAX_BATCH_WAIT_MILLIS = SystemProperties.getBatchSignerMaxBatchWaitTime();
+    private static final int MAX_OUTSTANDING_BATCHES = SystemProperties.getBatchSignerMaxOutstandingBatches();
+
+    // Histograms of the number of requests in the signed batches and of the
+    // time in milliseconds the batches waited before being signed, exposed
+    // over JMX for tuning the batch size and wait time.
+    private static final MetricRegistry METRICS = new MetricRegistry();
+    private static final Histogram BATCH_SIZE_HISTOGRAM =
+            METRICS.histogram(MetricRegistry.name(BatchSigner.class, "batchSize"));
+    private static final Histogram BATCH_WAIT_TIME_HISTOGRAM =
+            METRICS.histogram(MetricRegistry.name(BatchSigner.class, "batchWaitTime"));
+
     // Holds the actor instance, which sends and receives messages.
     private static ActorRef instance;
 
+    // Reports the histograms over JMX while the batch signer actor is alive.
+    private JmxReporter reporter;
+
     /**
      * Initializes the batch signer with the given actor system.
      *
@@ -113,6 +140,17 @@ public class BatchSigner extends UntypedAbstractActor {
                 DEFAULT_TIMEOUT.duration()));
     }
 
+    @Override
+    public void preStart() {
+        reporter = JmxReporter.forRegistry(METRICS).build();
+        reporter.start();
+    }
+
+    @Override
+    public void postStop() {
+        reporter.stop();
+    }
+
     @Override
     public void onReceive(Object message) throws Exception {
         try {
@@ -149,7 +187,8 @@ public class BatchSigner extends UntypedAbstractActor {
         if (worker == null) {
             log.trace("Creating new worker for cert '{}'", name);
 
-            worker = getContext().actorOf(Props.create(WorkerImpl.class), name);
+            worker = getContext().actorOf(Props.create(WorkerImpl.class, MAX_BATCH_SIZE, MAX_BATCH_WAIT_MILLIS,
+                    MAX_OUTSTANDING_BATCHES), name);
         }
 
         return worker;
@@ -158,176 +197,162 @@ public class BatchSigner extends UntypedAbstractActor {
     /**
      * This is the worker that does the heavy lifting.
      */
-    private static class WorkerImpl extends AbstractActorWithStash {
+    static class WorkerImpl extends AbstractActor {
 
-        // The currently active signing ctx.
-        private BatchSignatureCtx workingSigningCtx;
+        private final int maxBatchSize;
+        private final int maxBatchWaitMillis;
+        private final int maxOutstandingBatches;
 
-        // The next signing ctx, if batch signing.
-        private BatchSignatureCtx nextSigningCtx;
+        // The batches waiting to be signed, oldest first. Only the last one
+        // takes new requests.
+        private final Deque<BatchSignatureCtx> pendingBatches = new ArrayDeque<>();
 
-        private long signStartTime;
-        private boolean workerBusy;
+        // The batches being signed, by the actor receiving the result.
+        private final Map<ActorRef, BatchSignatureCtx> batchesInFlight = new HashMap<>();
 
+        // Whether batch signing is enabled for the token, null until Signer
+        // has answered. Requests are signed one by one until then.
         private Boolean batchSigningEnabled;
+        private boolean batchSigningEnabledQueried;
+
+        WorkerImpl(int maxBatchSize, int maxBatchWaitMillis, int maxOutstandingBatches) {
+            this.maxBatchSize = Math.max(1, maxBatchSize);
+            this.maxBatchWaitMillis = Math.max(0, maxBatchWaitMillis);
+            this.maxOutstandingBatches = Math.max(1, maxOutstandingBatches);
+        }
 
         @Override
         public Receive createReceive() {
             return receiveBuilder()
                     .match(SigningRequestWrapper.class, this::handleSignRequest)
-                    .match(SignResponse.class, this::handleSignResponse)
-                    .match(Exception.class, this::handleException)
+                    .match(SignResult.class, this::handleSignResult)
+                    .match(BatchWaitTimeElapsed.class, this::handleBatchWaitTimeElapsed)
+                    .match(Boolean.class, this::handleBatchSigningEnabled)
+                    .match(Exception.class, this::handleBatchSigningEnabledException)
                     .matchAny(this::unhandled)
                     .build();
         }
 
-        private void handleSignRequest(SigningRequestWrapper signRequest) throws Exception {
+        private void handleSignRequest(SigningRequestWrapper signRequest) {
             log.trace("handleSignRequest()");
 
             // If we do not know whether batch signing is enabled for the token,
-            // we ask from Signer. This call will block until response is
-            // received or error occurs.
-            if (batchSigningEnabled == null) {
-                queryBatchSigningEnabled(signRequest.getKeyId());
-            }
+            // we ask from Signer without waiting for the answer.
+            if (batchSigningEnabled == null && !batchSigningEnabledQueried) {
+                batchSigningEnabledQueried = true;
 
-            // Handle incoming sign request. If the token worker is currently
-            // busy (signing, generating key, etc...) and batch signing is
-            // enabled then create signing context and collect all following
-            // sign requests to be signed in batch. Otherwise just sign the
-            // data straight away.
-            if (isWorkerBusy()) {
-                if (batchSigningEnabled) {
-                    doBatchSign(signRequest);
-                } else {
-                    log.trace("Batch signing not enabled, stashing request");
-                    // Batch signing not enabled, but currently busy,
-                    // so stash this message for future.
-                    stash();
-                }
-            } else {
-                doSign(signRequest);
+                sendToSigner(new GetTokenBatchSigningEnabled(signRequest.getKeyId()), getSelf());
             }
-        }
 
-        private void queryBatchSigningEnabled(String keyId) {
-            try {
-                batchSigningEnabled = SignerClient.execute(new GetTokenBatchSigningEnabled(keyId));
-            } catch (Exception e) {
-                log.error("Failed to query if batch signing is enabled for token with key {}", keyId, e);
-            }
-        }
+            // Add the request to the newest batch, or start a new one if it is
+            // full. The batch is signed as soon as it is ready and there is a
+            // free signing slot.
+            BatchSignatureCtx batch = pendingBatches.peekLast();
 
-        private void doBatchSign(SigningRequestWrapper wrapper) {
-            log.trace("doBatchSign()");
+            if (batch == null || batch.getClients().size() >= getMaxBatchSize()) {
+                batch = new BatchSignatureCtx(signRequest.getKeyId(), signRequest.getSignatureAlgorithmId());
+                pendingBatches.addLast(batch);
 
-            if (nextSigningCtx == null) {
-                nextSigningCtx = new BatchSignatureCtx(wrapper.getKeyId(), wrapper.getSignatureAlgorithmId());
+                if (maxBatchWaitMillis > 0) {
+                    scheduleBatchWaitTimeElapsed(batch);
+                }
             }
 
-            nextSigningCtx.add(getSender(), wrapper.getRequest());
-        }
-
-        private void doSign(SigningRequestWrapper wrapper) throws Exception {
-            log.trace("doSign()");
-
-            BatchSignatureCtx ctx = new BatchSignatureCtx(wrapper.getKeyId(), wrapper.getSignatureAlgorithmId());
-            ctx.add(getSender(), wrapper.getRequest());
-
-            workingSigningCtx = ctx;
+            batch.add(getSender(), signRequest.getRequest());
 
-            doCalculateSignature(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), ctx.getDataToBeSigned());
+            signReadyBatches();
         }
 
-        private void handleSignResponse(SignResponse signResponse) {
-            log.trace("handleSignResponse()");
+        private void handleBatchSigningEnabled(Boolean enabled) {
+            log.trace("handleBatchSigningEnabled({})", enabled);
 
-            workerBusy = false;
+            batchSigningEnabled = enabled;
+        }
 
-            // Handle the (successful) signature calculation result that came
-            // from Signer -- send the signature to the clients.
-            sendResponse(signResponse);
+        private void handleBatchSigningEnabledException(Exception exception) {
+            // Only the query for whether batch signing is enabled is answered
+            // to this actor directly, ask again with the next request.
+            log.error("Failed to query if batch signing is enabled for token", exception);
 
-            // If batch signing is not enabled, then start signing the next
-            // stashed messages.
-            if (!batchSigningEnabled) {
-                unstashAll();
-            } else if (nextSigningCtx != null) {
-                // Start the next batch signing (if any).
-                startNextBatchSigning();
-            }
+            batchSigningEnabledQueried = false;
         }
 
-        private void handleException(Exception exception) {
-            log.trace("handleException()");
-
-            workerBusy = false;
+        private void handleBatchWaitTimeElapsed(BatchWaitTimeElapsed message) {
+            message.getBatch().setWaitTimeElapsed(true);
 
-            sendResponse(exception);
+            signReadyBatches();
         }
 
-        private void startNextBatchSigning() {
-            log.trace("startNextBatchSigning()");
+        private void handleSignResult(SignResult result) {
+            log.trace("handleSignResult()");
 
-            workingSigningCtx = nextSigningCtx;
-            nextSigningCtx = null;
-
-            try {
-                doCalculateSignature(workingSigningCtx.getKeyId(), workingSigningCtx.getSignatureAlgorithmId(),
-                        workingSigningCtx.getDataToBeSigned());
-            } catch (Exception e) {
-                sendResponse(workingSigningCtx, translateException(e));
+            BatchSignatureCtx batch = batchesInFlight.remove(getSender());
 
-                workerBusy = true;
-                workingSigningCtx = null;
+            if (batch == null) {
+                log.warn("Received signing result for unknown batch");
+            } else if (result.getMessage() instanceof SignResponse) {
+                // Handle the (successful) signature calculation result that
+                // came from Signer -- send the signature to the clients.
+                try {
+                    sendSignatureResponse(batch, ((SignResponse) result.getMessage()).getSignature());
+                } catch (Exception e) {
+                    sendResponse(batch, e);
+                }
+            } else {
+                sendResponse(batch, result.getMessage());
             }
-        }
 
-        private boolean isWorkerBusy() {
-            if (isSignatureCreationTimedOut()) {
-                workerBusy = false;
+            signReadyBatches();
+        }
 
-                throw new CodedException(X_INTERNAL_ERROR, "Signature creation timed out");
+        private void signReadyBatches() {
+            while (batchesInFlight.size() < maxOutstandingBatches && isReady(pendingBatches.peekFirst())) {
+                sign(pendingBatches.removeFirst());
             }
+        }
 
-            return workerBusy;
+        private boolean isReady(BatchSignatureCtx batch) {
+            return batch != null && (maxBatchWaitMillis == 0 || batch.isWaitTimeElapsed()
+                    || batch.getClients().size() >= getMaxBatchSize());
         }
 
-        private boolean isSignatureCreationTimedOut() {
-            return workerBusy && System.currentTimeMillis() - signStartTime >= DEFAULT_TIMEOUT.duration().length();
+        private int getMaxBatchSize() {
+            return Boolean.TRUE.equals(batchSigningEnabled) ? maxBatchSize : 1;
         }
 
-        private void doCalculateSignature(String keyId, String signatureAlgorithmId, byte[] data)
-                throws NoSuchAlgorithmException, IOException, OperatorCreationException {
-            workerBusy = true;
-            signStartTime = System.currentTimeMillis();
+        private void sign(BatchSignatureCtx batch) {
+            log.trace("sign({})", batch.getClients().size());
 
-            byte[] digest = calculateDigest(getDigestAlgorithmId(signatureAlgorithmId), data);
+            BATCH_SIZE_HISTOGRAM.update(batch.getClients().size());
+            BATCH_WAIT_TIME_HISTOGRAM.update(System.currentTimeMillis() - batch.getCreatedAt());
 
-            // Proxy this request to the Signer.
-            SignerClient.execute(new Sign(keyId, signatureAlgorithmId, digest), getSelf());
-        }
+            ActorRef resultReceiver = getContext().actorOf(Props.create(SignResultReceiver.class));
 
-        private void sendResponse(Object message) {
-            log.trace("sendResponse({})", message);
+            try {
+                byte[] digest = calculateDigest(getDigestAlgorithmId(batch.getSignatureAlgorithmId()),
+                        batch.getDataToBeSigned());
 
-            if (workingSigningCtx != null) {
-                try {
-                    if (message instanceof SignResponse) {
-                        sendSignatureResponse(workingSigningCtx, ((SignResponse) message).getSignature());
-                    } else {
-                        sendResponse(workingSigningCtx, message);
-                    }
-                } catch (Exception e) {
-                    sendResponse(workingSigningCtx, e);
-                }
+                batchesInFlight.put(resultReceiver, batch);
 
-                workingSigningCtx = null;
-            } else {
-                throw new RuntimeException("No signing context");
+                // Proxy this request to the Signer.
+                sendToSigner(new Sign(batch.getKeyId(), batch.getSignatureAlgorithmId(), digest), resultReceiver);
+            } catch (Exception e) {
+                getContext().stop(resultReceiver);
+
+                sendResponse(batch, translateException(e));
             }
         }
 
+        void sendToSigner(Object message, ActorRef receiver) {
+            SignerClient.execute(message, receiver);
+        }
+
+        private void scheduleBatchWaitTimeElapsed(BatchSignatureCtx batch) {
+            getContext().getSystem().scheduler().scheduleOnce(
+                    Duration.create(maxBatchWaitMillis, TimeUnit.MILLISECONDS), getSelf(),
+                    new BatchWaitTimeElapsed(batch), getContext().getDispatcher(), ActorRef.noSender());
+        }
+
         private void sendSignatureResponse(BatchSignatureCtx ctx, byte[] signatureValue) throws Exception {
             String signature = ctx.createSignatureXml(signatureValue);
 
@@ -357,12 +382,38 @@ public class BatchSigner extends UntypedAbstractActor {
 
     }
 
+    /**
+     * Receives the result of signing one batch from Signer and passes it to
+     * the worker, so that concurrently signed batches can be told apart.
+     */
+    private static class SignResultReceiver extends AbstractActor {
+
+        @Override
+        public void preStart() {
+            getContext().setReceiveTimeout(DEFAULT_TIMEOUT.duration());
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(ReceiveTimeout.class, timeout -> forward(
+                            new CodedException(X_INTERNAL_ERROR, "Signature creation timed out")))
+                    .matchAny(this::forward)
+                    .build();
+        }
+
+        private void forward(Object message) {
+            getContext().getParent().tell(new SignResult(message), getSelf());
+            getContext().stop(getSelf());
+        }
+    }
+
     /**
      * Convenience class that wraps the request along with the keyId
      * and algorithm id.
      */
     @Data
-    private static class SigningRequestWrapper {
+    static class SigningRequestWrapper {
         private final String keyId;
         private final String signatureAlgorithmId;
         private final SigningRequest request;
@@ -372,6 +423,23 @@ public class BatchSigner extends UntypedAbstractActor {
         }
     }
 
+    /**
+     * The signature or the error Signer answered to the signing of a batch.
+     */
+    @Data
+    private static class SignResult {
+        private final Object message;
+    }
+
+    /**
+     * Tells the worker that the given batch has waited for the maximum batch
+     * wait time.
+     */
+    @Data
+    private static class BatchWaitTimeElapsed {
+        private final BatchSignatureCtx batch;
+    }
+
     /**
      * This signature context is used for batch signing where there might
      * be more than one signature receiver (client).
@@ -384,6 +452,13 @@ public class BatchSigner extends UntypedAbstractActor {
         @Getter
         private final String keyId;
 
+        @Getter
+        private final long createdAt = System.currentTimeMillis();
+
+        @Getter
+        @Setter
+        private boolean waitTimeElapsed;
+
         BatchSignatureCtx(String keyId, String signatureAlgorithmId) {
             super(signatureAlgorithmId);
 
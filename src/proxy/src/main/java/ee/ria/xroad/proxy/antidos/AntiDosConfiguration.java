@@ -59,4 +59,12 @@ class AntiDosConfiguration {
     double getMaxHeapUsage() {
         return SystemProperties.getAntiDosMaxHeapUsage();
     }
+
+    /**
+     * @return the interval in milliseconds at which resource usage and
+     * known member addresses are sampled
+     */
+    int getResourceSampleInterval() {
+        return SystemProperties.getAntiDosResourceSampleInterval();
+    }
 }
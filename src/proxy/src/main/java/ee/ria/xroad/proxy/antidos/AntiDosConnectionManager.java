@@ -31,23 +31,38 @@ import ee.ria.xroad.common.util.SystemMetrics;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages the incoming connections and prevents system resource exhaustion.
+ *
+ * Accepting a connection does not take any locks: the partner is looked up
+ * from an immutable address database and the connection is appended to the
+ * partner's queue. A partner is present in the buffer of active partners at
+ * most once, which gives round-robin scheduling between partners in constant
+ * time per connection. System resource usage and the known member addresses
+ * are sampled by a background thread instead of on every connection.
  */
 @Slf4j
 class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
-    // Tiny wrapper class for active connections of a partner
+    // Tiny wrapper class for waiting connections of a partner
     private class HostData {
-        final Deque<T> connections = new LinkedBlockingDeque<>();
+        final Queue<T> connections = new ConcurrentLinkedQueue<>();
+
+        // Whether the partner is currently in the buffer of active partners
+        final AtomicBoolean scheduled = new AtomicBoolean();
     }
 
     // The IP used for unknown members
@@ -56,8 +71,8 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     // Holds the configuration
     protected final AntiDosConfiguration configuration;
 
-    // IP to HostData mapping
-    protected Map<String, HostData> database = new HashMap<>();
+    // IP to HostData mapping, replaced as a whole when the members change
+    protected volatile Map<String, HostData> database;
 
     // Buffer of partners with waiting connections
     protected LinkedBlockingQueue<HostData> activePartners =
@@ -67,6 +82,17 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     // Used to determine if should sync the database when conf changed.
     private Set<String> previousKnownOrganizations = new HashSet<>();
 
+    // Most recently sampled resource usage
+    private volatile long freeFileDescriptorCount = Long.MAX_VALUE;
+    private volatile double cpuLoad;
+    private volatile double heapUsage;
+
+    // Connections accepted since resources were last sampled, each of which
+    // is assumed to consume a file handle
+    private final AtomicLong acceptedSinceSample = new AtomicLong();
+
+    private ScheduledExecutorService sampler;
+
     AntiDosConnectionManager(AntiDosConfiguration configuration) {
         if (configuration == null) {
             throw new IllegalArgumentException("configuration cannot be null");
@@ -74,12 +100,46 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         this.configuration = configuration;
         this.previousKnownOrganizations.add(UNKNOWN_ORG_IP);
-        this.database.put(UNKNOWN_ORG_IP, new HostData());
+
+        Map<String, HostData> initialDatabase = new HashMap<>();
+        initialDatabase.put(UNKNOWN_ORG_IP, new HostData());
+        this.database = initialDatabase;
     }
 
     void init() throws Exception {
         // Populate the database based on registered members' IPs.
         syncDatabase();
+        sampleResources();
+    }
+
+    /**
+     * Starts the background thread that periodically samples resource usage
+     * and synchronizes the database with the known members.
+     */
+    synchronized void start() {
+        if (sampler != null) {
+            return;
+        }
+
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AntiDosResourceSampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = configuration.getResourceSampleInterval();
+        sampler.scheduleWithFixedDelay(this::refresh, interval, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background sampling thread.
+     */
+    synchronized void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
     }
 
     /**
@@ -87,7 +147,7 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
      * we have at least one free file handle.
      */
     boolean canAccept() {
-        long freeFileHandles = getFreeFileDescriptorCount();
+        long freeFileHandles = getEstimatedFreeFileDescriptorCount();
         log.trace("canAccept({})", freeFileHandles);
         return freeFileHandles > 0;
     }
@@ -95,20 +155,17 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     /**
      * Adds the connection into the partner's connection queue.
      */
-    synchronized void accept(T connection) {
-        // We need to synchronize the database with the existing members.
-        syncDatabase();
+    void accept(T connection) {
+        acceptedSinceSample.incrementAndGet();
 
         // Find the host data for the incoming connection and register
         // the new connection to this host data
         HostData currentPartner = getHostData(connection.getHostAddress());
-        currentPartner.connections.addFirst(connection);
+        currentPartner.connections.offer(connection);
 
         // If the host data is not for an active partner,
         // add it to the connection buffer as the newest partner.
-        if (!activePartners.contains(currentPartner)) {
-            activePartners.add(currentPartner);
-        }
+        schedule(currentPartner);
     }
 
     /**
@@ -137,15 +194,25 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         HostData oldestPartner = activePartners.take();
 
         // Take the oldest connection.
-        T sock = oldestPartner.connections.pollLast();
-        if (sock == null) {
-            return null;
-        }
+        T sock = oldestPartner.connections.poll();
 
         // If there are more connections left for this partner, add the partner
-        // back to the buffer as the first partner.
+        // back to the buffer as the newest partner. Otherwise the partner is
+        // rescheduled by the next accepted connection.
         if (!oldestPartner.connections.isEmpty()) {
             activePartners.add(oldestPartner);
+        } else {
+            oldestPartner.scheduled.set(false);
+
+            // A connection may have been added after the emptiness check
+            // but before the flag was cleared.
+            if (!oldestPartner.connections.isEmpty()) {
+                schedule(oldestPartner);
+            }
+        }
+
+        if (sock == null) {
+            return null;
         }
 
         // Processing a connection consumes file handles and other resources
@@ -163,6 +230,18 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         return null;
     }
 
+    /**
+     * Samples the current resource usage. Resource checks of the incoming
+     * connections use the sampled values.
+     */
+    protected void sampleResources() {
+        acceptedSinceSample.set(0);
+
+        freeFileDescriptorCount = getFreeFileDescriptorCount();
+        cpuLoad = getCpuLoad();
+        heapUsage = getHeapUsage();
+    }
+
     protected long getFreeFileDescriptorCount() {
         return SystemMetrics.getFreeFileDescriptorCount();
     }
@@ -181,12 +260,32 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         return SystemMetrics.getHeapUsage();
     }
 
+    private void refresh() {
+        try {
+            syncDatabase();
+            sampleResources();
+        } catch (Exception e) {
+            log.error("Error sampling resource usage", e);
+        }
+    }
+
+    private void schedule(HostData partner) {
+        if (partner.scheduled.compareAndSet(false, true)) {
+            activePartners.add(partner);
+        }
+    }
+
+    private long getEstimatedFreeFileDescriptorCount() {
+        return freeFileDescriptorCount - acceptedSinceSample.get();
+    }
+
     private HostData getHostData(String ip) {
-        return database.containsKey(ip)
-                ? database.get(ip) : database.get(UNKNOWN_ORG_IP);
+        Map<String, HostData> currentDatabase = database;
+        HostData hostData = currentDatabase.get(ip);
+        return hostData != null ? hostData : currentDatabase.get(UNKNOWN_ORG_IP);
     }
 
-    private void syncDatabase() {
+    private synchronized void syncDatabase() {
         Set<String> knownAddresses = getAllAddresses();
 
         if (previousKnownOrganizations.equals(knownAddresses)) {
@@ -194,17 +293,18 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
             return;
         }
 
+        Map<String, HostData> currentDatabase = database;
         Map<String, HostData> newDatabase = new HashMap<>();
 
         // Retain existing members connections
-        database.keySet().stream()
+        currentDatabase.keySet().stream()
                 .filter(knownAddresses::contains)
                 .forEach(existingAddress -> newDatabase.put(
-                        existingAddress, database.get(existingAddress)));
+                        existingAddress, currentDatabase.get(existingAddress)));
 
         // Add new members
         knownAddresses.stream()
-                .filter(knownAddress -> !database.containsKey(knownAddress))
+                .filter(knownAddress -> !currentDatabase.containsKey(knownAddress))
                 .forEach(knownAddress ->
                         registerHostData(newDatabase, knownAddress));
 
@@ -219,21 +319,19 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     }
 
     private boolean hasSufficientResources() {
-        long freeFileDescriptorCount = getFreeFileDescriptorCount();
+        long freeFileDescriptors = getEstimatedFreeFileDescriptorCount();
         int minFreeFileHandles = configuration.getMinFreeFileHandles();
-        double cpuLoad = getCpuLoad();
         double maxCpuLoad = configuration.getMaxCpuLoad();
-        double heapUsage = getHeapUsage();
         double maxHeapUsage = configuration.getMaxHeapUsage();
 
         log.trace("Resource usage when considering connection:\n"
                 + "freeFileDescriptorCount: {} ( >= {})\n"
                 + "cpuLoad: {} ( < {})\n"
                 + "heapUsage: {} ( < {})",
-                new Object[] {freeFileDescriptorCount, minFreeFileHandles,
+                new Object[] {freeFileDescriptors, minFreeFileHandles,
                     cpuLoad, maxCpuLoad, heapUsage, maxHeapUsage});
 
-        return freeFileDescriptorCount >= minFreeFileHandles
+        return freeFileDescriptors >= minFreeFileHandles
                 && cpuLoad < maxCpuLoad
                 && heapUsage < maxHeapUsage;
     }
@@ -26,6 +26,7 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
@@ -44,6 +45,7 @@ import ee.ria.xroad.common.monitoring.MessageInfo;
 import ee.ria.xroad.common.monitoring.MessageInfo.Origin;
 import ee.ria.xroad.common.monitoring.MonitorAgent;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.proxy.conf.KeyConf;
@@ -55,7 +57,9 @@ import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.http.client.HttpClient;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.util.Arrays;
 import org.xml.sax.Attributes;
@@ -65,11 +69,14 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.Writer;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -90,6 +97,7 @@ import static ee.ria.xroad.common.SystemProperties.isSslEnabled;
 import static ee.ria.xroad.common.util.AbstractHttpSender.CHUNKED_LENGTH;
 import static ee.ria.xroad.common.util.CryptoUtils.decodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
+import static ee.ria.xroad.common.util.MimeUtils.getBoundary;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_CONTENT_TYPE;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_SOAP_ACTION;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_REQUEST_ID;
@@ -103,6 +111,11 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
      */
     private static final int WAIT_FOR_SOAP_TIMEOUT = 30; // seconds
 
+    /**
+     * Length of the random part of the multipart boundary of the request sent to the server proxy.
+     */
+    private static final int BOUNDARY_LENGTH = 30;
+
     /**
      * By using a count down latch we can make the main thread wait for the
      * request handler thread to read the SOAP request, since we cannot open
@@ -136,6 +149,16 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     private ProxyMessageEncoder request;
     private String xRequestId;
 
+    /**
+     * If true, the request is parsed, encoded, signed and sent to the server proxy in the
+     * calling thread, without the SOAP handler thread and the piped streams.
+     */
+    private final boolean singleThreaded;
+
+    /** Holds the request SOAP part headers and the cached attachments in single-threaded mode. */
+    private Map<String, String> requestSoapHeaders;
+    private final List<CachedAttachment> requestAttachments = new ArrayList<>();
+
     /** Holds the response from server proxy. */
     private ProxyMessage response;
 
@@ -158,9 +181,13 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             HttpClient httpClient, IsAuthenticationData clientCert, OpMonitoringData opMonitoringData)
             throws Exception {
         super(servletRequest, servletResponse, httpClient, clientCert, opMonitoringData);
-        this.reqIns = new PipedInputStream();
-        this.reqOuts = new PipedOutputStream(reqIns);
+        this.singleThreaded = SystemProperties.isClientProxySoapSingleThreadedProcessing();
         this.xRequestId = UUID.randomUUID().toString();
+
+        if (!singleThreaded) {
+            this.reqIns = new PipedInputStream();
+            this.reqOuts = new PipedOutputStream(reqIns);
+        }
     }
 
     @Override
@@ -170,6 +197,14 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         opMonitoringData.setXRequestId(xRequestId);
         updateOpMonitoringClientSecurityServerAddress();
 
+        if (singleThreaded) {
+            processSingleThreaded();
+        } else {
+            processWithSoapHandler();
+        }
+    }
+
+    private void processWithSoapHandler() throws Exception {
         Future<?> soapHandler = SOAP_HANDLER_EXECUTOR.submit(this::handleSoap);
 
         try {
@@ -210,6 +245,55 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         }
     }
 
+    private void processSingleThreaded() throws Exception {
+        try {
+            // Read the whole request before opening the connection to the server proxy.
+            // The SOAP part stays in memory, attachments are cached in temporary files.
+            readSoapRequest();
+
+            // Check that incoming identifiers do not contain illegal characters
+            checkRequestIdentifiers();
+
+            // Verify that the client is registered.
+            ClientId client = requestSoap.getClient();
+            verifyClientStatus(client);
+
+            // Check client authentication mode.
+            verifyClientAuthentication(client);
+
+            processRequest();
+
+            if (response != null) {
+                sendResponse();
+            }
+        } finally {
+            for (CachedAttachment attachment : requestAttachments) {
+                attachment.content.consume();
+            }
+
+            if (response != null) {
+                response.consume();
+            }
+        }
+    }
+
+    private void readSoapRequest() throws Exception {
+        log.trace("readSoapRequest()");
+
+        try (CachingSoapMessageHandler handler = new CachingSoapMessageHandler()) {
+            SoapMessageDecoder soapMessageDecoder = new SoapMessageDecoder(servletRequest.getContentType(),
+                    handler, new RequestSoapParserImpl());
+            try {
+                originalSoapAction = validateSoapActionHeader(servletRequest.getHeader("SOAPAction"));
+                soapMessageDecoder.parse(servletRequest.getInputStream());
+            } catch (Exception ex) {
+                throw new ClientException(translateException(ex));
+            }
+        }
+
+        checkError();
+    }
+
     private void checkRequestIdentifiers() {
         checkIdentifier(requestSoap.getClient());
         checkIdentifier(requestSoap.getService());
@@ -238,7 +322,10 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             sendRequest(httpSender);
 
             // Check for any errors from the handler thread once more.
-            waitForRequestSent();
+            if (!singleThreaded) {
+                waitForRequestSent();
+            }
+
             checkError();
 
             parseResponse(httpSender);
@@ -262,9 +349,21 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
             try {
                 opMonitoringData.setRequestOutTs(getEpochMillisecond());
-                httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+
+                if (singleThreaded) {
+                    httpSender.doPost(getServiceAddress(addresses), new ProxyMessageEntity(
+                            MimeUtils.mpMixedContentType("xtop" + RandomStringUtils.randomAlphabetic(BOUNDARY_LENGTH))));
+                } else {
+                    httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+                }
+
                 opMonitoringData.setResponseInTs(getEpochMillisecond());
             } catch (Exception e) {
+                // Encoding or signing the request failed, this is not a server proxy failure
+                if (singleThreaded) {
+                    checkError();
+                }
+
                 // Failed to connect to server proxy
                 MonitorAgent.serverProxyFailed(createRequestMessageInfo());
 
@@ -450,6 +549,30 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
                 requestSoap.getQueryId());
     }
 
+    private void updateOpMonitoringData() {
+        opMonitoringData.setRequestAttachmentCount(request.getAttachmentCount());
+
+        if (request.getAttachmentCount() > 0) {
+            opMonitoringData.setRequestMimeSize(requestSoap.getBytes().length + request.getAttachmentsByteCount());
+        }
+    }
+
+    private void logRequestMessage() throws Exception {
+        log.trace("logRequestMessage()");
+
+        MessageLog.log(requestSoap, request.getSignature(), true, xRequestId);
+    }
+
+    private void writeOcspResponses() throws Exception {
+        CertChain chain = KeyConf.getAuthKey().getCertChain();
+        // exclude TopCA
+        List<OCSPResp> ocspResponses = KeyConf.getAllOcspResponses(chain.getAllCertsWithoutTrustedRoot());
+
+        for (OCSPResp ocsp : ocspResponses) {
+            request.ocspResponse(ocsp);
+        }
+    }
+
     public void handleSoap() {
         try (SoapMessageHandler handler = new SoapMessageHandler()) {
             SoapMessageDecoder soapMessageDecoder = new SoapMessageDecoder(servletRequest.getContentType(),
@@ -533,18 +656,87 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             }
         }
 
-        private void updateOpMonitoringData() {
-            opMonitoringData.setRequestAttachmentCount(request.getAttachmentCount());
+        @Override
+        public void onError(Exception e) throws Exception {
+            log.error("onError()", e);
+
+            // Simply re-throw
+            throw e;
+        }
 
-            if (request.getAttachmentCount() > 0) {
-                opMonitoringData.setRequestMimeSize(requestSoap.getBytes().length + request.getAttachmentsByteCount());
+        @Override
+        public void close() {
+            if (request != null) {
+                try {
+                    request.close();
+                } catch (Exception e) {
+                    setError(e);
+                }
             }
         }
+    }
 
-        private void logRequestMessage() throws Exception {
-            log.trace("logRequestMessage()");
+    /**
+     * Request attachment that has been read ahead into a temporary file.
+     */
+    private static final class CachedAttachment {
+        private final String contentType;
+        private final Map<String, String> additionalHeaders;
+        private final CachingStream content;
 
-            MessageLog.log(requestSoap, request.getSignature(), true, xRequestId);
+        CachedAttachment(String contentType, Map<String, String> additionalHeaders, CachingStream content) {
+            this.contentType = contentType;
+            this.additionalHeaders = additionalHeaders;
+            this.content = content;
+        }
+    }
+
+    /**
+     * Reads the request SOAP message and caches the attachments, so that the request can be encoded
+     * and sent to the server proxy afterwards in the same thread.
+     */
+    private class CachingSoapMessageHandler implements SoapMessageDecoder.Callback {
+
+        @Override
+        public void soap(SoapMessage message, Map<String, String> headers) throws Exception {
+            if (log.isTraceEnabled()) {
+                log.trace("soap({})", message.getXml());
+            }
+
+            requestSoap = (SoapMessageImpl) message;
+            requestServiceId = requestSoap.getService();
+            requestSoapHeaders = headers;
+
+            updateOpMonitoringDataBySoapMessage(opMonitoringData, requestSoap);
+        }
+
+        @Override
+        public void attachment(String contentType, InputStream content, Map<String, String> additionalHeaders)
+                throws Exception {
+            log.trace("attachment()");
+
+            CachingStream cache = new CachingStream();
+            requestAttachments.add(new CachedAttachment(contentType, additionalHeaders, cache));
+
+            try {
+                IOUtils.copy(content, cache);
+            } finally {
+                cache.close();
+            }
+        }
+
+        @Override
+        public void fault(SoapFault fault) throws Exception {
+            onError(fault.toCodedException());
+        }
+
+        @Override
+        public void onCompleted() {
+            log.trace("onCompleted()");
+
+            if (requestSoap == null) {
+                setError(new ClientException(X_MISSING_SOAP, "Request does not contain SOAP message"));
+            }
         }
 
         @Override
@@ -554,25 +746,67 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             // Simply re-throw
             throw e;
         }
+    }
 
-        private void writeOcspResponses() throws Exception {
-            CertChain chain = KeyConf.getAuthKey().getCertChain();
-            // exclude TopCA
-            List<OCSPResp> ocspResponses = KeyConf.getAllOcspResponses(chain.getAllCertsWithoutTrustedRoot());
+    /**
+     * Encodes, signs and logs the request while it is being written to the server proxy connection.
+     */
+    private class ProxyMessageEntity extends AbstractHttpEntity {
 
-            for (OCSPResp ocsp : ocspResponses) {
-                request.ocspResponse(ocsp);
-            }
+        ProxyMessageEntity(String contentType) {
+            super();
+            setContentType(contentType);
+            setChunked(true);
         }
 
         @Override
-        public void close() {
-            if (request != null) {
-                try {
-                    request.close();
-                } catch (Exception e) {
-                    setError(e);
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return CHUNKED_LENGTH;
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            try {
+                request = new ProxyMessageEncoder(outstream, SoapUtils.getHashAlgoId(),
+                        getBoundary(contentType.getValue()));
+
+                // In SSL mode, we need to send the OCSP response of our SSL cert.
+                if (isSslEnabled()) {
+                    writeOcspResponses();
+                }
+
+                request.soap(requestSoap, requestSoapHeaders);
+
+                for (CachedAttachment attachment : requestAttachments) {
+                    request.attachment(attachment.contentType, attachment.content.getCachedContents(),
+                            attachment.additionalHeaders);
                 }
+
+                updateOpMonitoringData();
+
+                request.sign(KeyConf.getSigningCtx(requestSoap.getClient()));
+                logRequestMessage();
+                request.writeSignature();
+                request.close();
+            } catch (Exception ex) {
+                setError(ex);
+
+                throw new IOException("Failed to encode request", ex);
             }
         }
     }
@@ -34,6 +34,8 @@ import ee.ria.xroad.proxy.util.SSLContextUtil;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
@@ -98,6 +100,8 @@ public class ClientProxy implements StartStop {
     private CloseableHttpClient client;
     private IdleConnectionMonitorThread connectionMonitor;
 
+    private final ProviderStatistics providerStatistics = new ProviderStatistics();
+
     /**
      * Constructs and configures a new client proxy.
      * @throws Exception in case of any errors
@@ -149,6 +153,10 @@ public class ClientProxy implements StartStop {
         // Disable request retry
         cb.setRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
 
+        // Measure the latency of service providers for selecting between them
+        cb.addInterceptorLast((HttpRequestInterceptor)providerStatistics::onRequest);
+        cb.addInterceptorFirst((HttpResponseInterceptor)providerStatistics::onResponse);
+
         client = cb.build();
     }
 
@@ -176,9 +184,9 @@ public class ClientProxy implements StartStop {
         return poolingManager;
     }
 
-    private static SSLConnectionSocketFactory createSSLSocketFactory() throws Exception {
-        return new FastestConnectionSelectingSSLSocketFactory(SSLContextUtil.createXroadSSLContext()
-        );
+    private SSLConnectionSocketFactory createSSLSocketFactory() throws Exception {
+        return new FastestConnectionSelectingSSLSocketFactory(SSLContextUtil.createXroadSSLContext(),
+                providerStatistics);
     }
 
     private void createConnectors() throws Exception {
@@ -31,8 +31,6 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.HttpHost;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
@@ -49,7 +47,6 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.URI;
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_NETWORK_ERROR;
@@ -59,11 +56,11 @@ import static ee.ria.xroad.proxy.clientproxy.AuthTrustVerifier.verify;
  * This is a custom SSL socket factory that connects to the fastest target
  * address given a list of target addresses.
  *
- * The fastest target address is selected by initializing socket connection
- * to all provided addresses and choosing the first one to respond.
- *
- * If an SSL session already exists to one of the provided addresses, then
- * that address is selected immediately without previous selection algorithm.
+ * The target address is selected by {@link ProviderStatistics} based on the
+ * latency and error rate of previous requests to the addresses. If there are
+ * no statistics yet, the fastest target address is selected by initializing
+ * socket connection to all provided addresses and choosing the first one to
+ * respond.
  */
 @Slf4j
 class FastestConnectionSelectingSSLSocketFactory
@@ -74,27 +71,24 @@ class FastestConnectionSelectingSSLSocketFactory
      */
     public static final String ID_TARGETS = "ee.ria.xroad.serverproxy.targets";
     /**
-     * The timeout when connecting to previously selected "fastest" provider
+     * The timeout when connecting to the provider selected based on statistics
      */
     public static final int CACHED_TIMEOUT = 5000;
 
     public static final int MIN_TIMEOUT = 5000;
 
-    public static final int CACHE_MAXIMUM_SIZE = 10000;
-
     private final javax.net.ssl.SSLSocketFactory socketfactory;
 
-    private final Cache<CacheKey, URI> selectedHosts;
-    private final boolean cachingEnabled;
+    private final ProviderStatistics providerStatistics;
 
     FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext) {
+        this(sslContext, new ProviderStatistics());
+    }
+
+    FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext, ProviderStatistics providerStatistics) {
         super(sslContext, null, SystemProperties.getXroadTLSCipherSuites(), (HostnameVerifier)null);
         this.socketfactory = sslContext.getSocketFactory();
-        this.selectedHosts = CacheBuilder.newBuilder()
-                .expireAfterWrite(SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod(), TimeUnit.SECONDS)
-                .maximumSize(CACHE_MAXIMUM_SIZE)
-                .build();
-        this.cachingEnabled = SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0;
+        this.providerStatistics = providerStatistics;
     }
 
     @Override
@@ -111,25 +105,23 @@ class FastestConnectionSelectingSSLSocketFactory
 
         // Read target addresses from the context.
         final URI[] addressesFromContext = getAddressesFromContext(context);
-        final boolean useCache = cachingEnabled && (addressesFromContext.length > 1);
+        final boolean trackProviders = addressesFromContext.length > 1;
         final FastestSocketSelector selector = new FastestSocketSelector();
 
-        CacheKey cacheKey = null;
-        URI cachedURI = null;
+        URI selectedURI = null;
 
         if (log.isTraceEnabled()) {
             log.trace("addresses from context {} current thread id {}", addressesFromContext,
                     Thread.currentThread().getId());
         }
 
-        // If URI cache is enabled, check for a previously selected host, avoiding the selection process.
-        if (useCache) {
-            cacheKey = new CacheKey(addressesFromContext);
-            cachedURI = selectedHosts.getIfPresent(cacheKey);
+        // Select the provider based on previous requests, avoiding the connection race.
+        if (trackProviders) {
+            selectedURI = providerStatistics.select(addressesFromContext);
 
-            if (cachedURI != null) {
-                log.trace("Use cached URI {}", cachedURI);
-                selector.add(cachedURI);
+            if (selectedURI != null) {
+                log.trace("Use selected URI {}", selectedURI);
+                selector.add(selectedURI);
             }
         }
 
@@ -138,7 +130,7 @@ class FastestConnectionSelectingSSLSocketFactory
         }
 
         Exception deferredException = null;
-        int connectTimeout = (cachedURI == null ? timeout : CACHED_TIMEOUT);
+        int connectTimeout = (selectedURI == null ? timeout : CACHED_TIMEOUT);
         while (!selector.isEmpty()) {
             SocketInfo selectedSocket = null;
             SSLSocket sslSocket = null;
@@ -152,9 +144,9 @@ class FastestConnectionSelectingSSLSocketFactory
                 log.trace("Connected to {}", selectedSocket.getUri());
                 updateOpMonitoringData(context, selectedSocket);
 
-                if (useCache && cachedURI == null) {
-                    log.trace("Store the fastest provider URI to cache {}", selectedSocket.getUri());
-                    selectedHosts.put(cacheKey, selectedSocket.getUri());
+                if (trackProviders) {
+                    // Lets ProviderStatistics attribute the responses received over this connection
+                    sslSocket.getSession().putValue(ProviderStatistics.SESSION_TARGET, selectedSocket.getUri());
                 }
                 return sslSocket;
             } catch (IOException | RuntimeException e) {
@@ -166,11 +158,17 @@ class FastestConnectionSelectingSSLSocketFactory
                 } else {
                     log.debug("Failed to connect", e);
                 }
-                if (cachedURI != null) {
-                    selectedHosts.asMap().remove(cacheKey, cachedURI);
+                if (trackProviders) {
+                    URI failedURI = selectedSocket != null ? selectedSocket.getUri() : selectedURI;
+
+                    if (failedURI != null) {
+                        providerStatistics.recordConnectFailure(failedURI);
+                    }
+                }
+                if (selectedURI != null) {
                     selector.addAll(addressesFromContext);
-                    selector.remove(cachedURI);
-                    cachedURI = null;
+                    selector.remove(selectedURI);
+                    selectedURI = null;
                     connectTimeout = timeout;
                 } else {
                     if (selectedSocket == null) {
@@ -278,32 +276,4 @@ class FastestConnectionSelectingSSLSocketFactory
         }
     }
 
-    static final class CacheKey {
-        private final URI[] addresses;
-        private final int hash;
-
-        CacheKey(URI[] addresses) {
-            // address lists are small, using an sorted arraylist as a key
-            // will have a lower overhead than using a hashset or treeset
-            final URI[] tmp = addresses.clone();
-            Arrays.sort(tmp);
-            this.addresses = tmp;
-            this.hash = Arrays.hashCode(this.addresses);
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof CacheKey)) return false;
-            final CacheKey key = (CacheKey)o;
-            if (hash != key.hash) return false;
-            return Arrays.equals(addresses, key.addresses);
-        }
-
-        @Override
-        public int hashCode() {
-            return hash;
-        }
-    }
-
 }
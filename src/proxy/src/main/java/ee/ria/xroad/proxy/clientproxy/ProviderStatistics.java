@@ -0,0 +1,296 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.MimeTypes;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpCoreContext;
+
+import javax.net.ssl.SSLSession;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the latency and error rate of service providing security servers and selects
+ * the server to connect to when a service is provided by several security servers.
+ *
+ * Latency and error rate are exponentially weighted moving averages over completed requests.
+ * The selection uses the power of two choices: two random servers are compared and the one with
+ * the lower latency, weighted by its error rate, is selected. A server that repeatedly fails to
+ * accept connections is ejected from the selection for a while.
+ *
+ * When none of the servers have statistics, no server is selected and the caller falls back to
+ * selecting the fastest connecting server.
+ */
+@Slf4j
+class ProviderStatistics {
+
+    /**
+     * The SSL session value holding the address the session was established with.
+     */
+    static final String SESSION_TARGET = "ee.ria.xroad.serverproxy.target";
+
+    private static final String REQUEST_STARTED = "ee.ria.xroad.serverproxy.requestStarted";
+
+    static final double ALPHA = 0.3;
+
+    static final int EJECTION_THRESHOLD = 3;
+
+    static final long EJECTION_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final double MAX_ERROR_RATE = 0.99;
+
+    private static final int CACHE_MAXIMUM_SIZE = 10000;
+
+    private final Ticker ticker;
+
+    private final Cache<URI, Stats> statistics;
+
+    private final boolean enabled;
+
+    ProviderStatistics() {
+        this(SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod(), Ticker.systemTicker());
+    }
+
+    ProviderStatistics(int expirySeconds, Ticker ticker) {
+        this.ticker = ticker;
+        this.enabled = expirySeconds > 0;
+        this.statistics = CacheBuilder.newBuilder()
+                .expireAfterAccess(Math.max(0, expirySeconds), TimeUnit.SECONDS)
+                .maximumSize(CACHE_MAXIMUM_SIZE)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Selects one of the given addresses based on the collected statistics.
+     * @param addresses the candidate addresses
+     * @return the selected address or null if there are no statistics to base the selection on
+     */
+    URI select(URI[] addresses) {
+        if (!enabled) {
+            return null;
+        }
+
+        long now = ticker.read();
+        List<URI> candidates = new ArrayList<>(addresses.length);
+        List<Stats> candidateStats = new ArrayList<>(addresses.length);
+        double bestKnownScore = Double.MAX_VALUE;
+
+        for (URI address : addresses) {
+            Stats stats = statistics.getIfPresent(address);
+
+            if (stats == null) {
+                candidates.add(address);
+                candidateStats.add(null);
+            } else if (!stats.isEjected(now)) {
+                candidates.add(address);
+                candidateStats.add(stats);
+
+                if (stats.hasResponded()) {
+                    bestKnownScore = Math.min(bestKnownScore, stats.score());
+                }
+            }
+        }
+
+        if (bestKnownScore == Double.MAX_VALUE) {
+            // None of the available servers has responded yet
+            return null;
+        }
+
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+
+        if (second >= first) {
+            second++;
+        }
+
+        // Servers without statistics are assumed to be as good as the best one so that they get probed
+        double firstScore = score(candidateStats.get(first), bestKnownScore);
+        double secondScore = score(candidateStats.get(second), bestKnownScore);
+
+        return candidates.get(firstScore <= secondScore ? first : second);
+    }
+
+    /**
+     * Records a completed request.
+     * @param address the address of the server
+     * @param latencyNanos time from sending the request to receiving the response
+     * @param failed whether the request failed in the server or in the connection to it
+     */
+    void recordResponse(URI address, long latencyNanos, boolean failed) {
+        if (enabled) {
+            getStats(address).recordResponse(latencyNanos, failed);
+        }
+    }
+
+    /**
+     * Records a failure to connect to the server.
+     * @param address the address of the server
+     */
+    void recordConnectFailure(URI address) {
+        if (enabled) {
+            getStats(address).recordConnectFailure(ticker.read());
+        }
+    }
+
+    /**
+     * Marks the start of a request. Added as a request interceptor of the HTTP client.
+     */
+    void onRequest(HttpRequest request, HttpContext context) {
+        context.setAttribute(REQUEST_STARTED, ticker.read());
+    }
+
+    /**
+     * Records the latency of a request sent over a connection created by
+     * {@link FastestConnectionSelectingSSLSocketFactory}. Added as a response interceptor of the HTTP client.
+     */
+    void onResponse(HttpResponse response, HttpContext context) {
+        Object started = context.getAttribute(REQUEST_STARTED);
+        URI target = getSessionTarget(context);
+
+        if (started instanceof Long && target != null) {
+            recordResponse(target, ticker.read() - (Long)started, isProxyFailure(response));
+        }
+    }
+
+    /**
+     * The responses of the provider's service, errors included, are encapsulated in a multipart message that the
+     * server proxy sends with status 200. Any other response is an error of the server proxy itself (a SOAP fault)
+     * or of the connection to it.
+     */
+    static boolean isProxyFailure(HttpResponse response) {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            return true;
+        }
+
+        Header contentType = response.getFirstHeader(HTTP.CONTENT_TYPE);
+
+        return contentType == null
+                || !contentType.getValue().toLowerCase(Locale.ROOT).startsWith(MimeTypes.MULTIPART_MIXED);
+    }
+
+    private static URI getSessionTarget(HttpContext context) {
+        try {
+            Object connection = context.getAttribute(HttpCoreContext.HTTP_CONNECTION);
+
+            if (connection instanceof ManagedHttpClientConnection) {
+                SSLSession session = ((ManagedHttpClientConnection)connection).getSSLSession();
+                Object target = session != null ? session.getValue(SESSION_TARGET) : null;
+
+                return target instanceof URI ? (URI)target : null;
+            }
+        } catch (RuntimeException e) {
+            // The connection has already been released
+            log.trace("Could not get the target of the connection", e);
+        }
+
+        return null;
+    }
+
+    private Stats getStats(URI address) {
+        Stats stats = statistics.getIfPresent(address);
+
+        if (stats == null) {
+            stats = statistics.asMap().computeIfAbsent(address, a -> new Stats());
+        }
+
+        return stats;
+    }
+
+    private static double score(Stats stats, double defaultScore) {
+        return stats != null ? stats.score() : defaultScore;
+    }
+
+    static final class Stats {
+        private double latencyNanos = -1;
+        private double errorRate;
+        private int consecutiveConnectFailures;
+        private long ejectedUntil;
+        private boolean ejected;
+
+        synchronized void recordResponse(long latency, boolean failed) {
+            latencyNanos = latencyNanos < 0 ? latency : ALPHA * latency + (1 - ALPHA) * latencyNanos;
+            errorRate = ALPHA * (failed ? 1 : 0) + (1 - ALPHA) * errorRate;
+            consecutiveConnectFailures = 0;
+            ejected = false;
+        }
+
+        synchronized void recordConnectFailure(long now) {
+            errorRate = ALPHA + (1 - ALPHA) * errorRate;
+
+            if (ejected && now - ejectedUntil >= 0) {
+                // The ejection has expired, the server is ejected again only after as many new failures
+                ejected = false;
+                consecutiveConnectFailures = 0;
+            }
+
+            if (++consecutiveConnectFailures >= EJECTION_THRESHOLD) {
+                log.debug("Ejecting provider after {} connection failures", consecutiveConnectFailures);
+
+                ejected = true;
+                ejectedUntil = now + EJECTION_PERIOD_NANOS;
+            }
+        }
+
+        synchronized boolean hasResponded() {
+            return latencyNanos >= 0;
+        }
+
+        synchronized boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+
+        synchronized double score() {
+            // A server that has only failed is ranked after every server that has responded
+            double latency = latencyNanos < 0 ? Double.MAX_VALUE / 2 : latencyNanos;
+
+            return latency / (1 - Math.min(errorRate, MAX_ERROR_RATE));
+        }
+    }
+}
@@ -26,11 +26,14 @@
 package ee.ria.xroad.proxy.messagelog;
 
 import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.message.RestRequest;
 import ee.ria.xroad.common.message.RestResponse;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
 import ee.ria.xroad.common.messagelog.FindByQueryId;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.RestLogMessage;
 import ee.ria.xroad.common.messagelog.SoapLogMessage;
@@ -48,7 +51,9 @@ import akka.util.Timeout;
 import lombok.extern.slf4j.Slf4j;
 import scala.concurrent.Await;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.LogRecord;
 
@@ -147,6 +152,30 @@ public final class MessageLog {
         log(request, message, signature, body, clientside, null);
     }
 
+    /**
+     * Tells whether the message log stores the REST message bodies of the given service. The
+     * message body needs to be cached for the message log only when this returns true.
+     *
+     * @param service    the service
+     * @param clientSide whether the message is logged by the client proxy
+     * @return true if the message body may be logged
+     */
+    public static boolean isBodyLogged(ServiceId service, boolean clientSide) {
+        if (NullLogManager.class.equals(getLogManagerImpl()) || MessageLogProperties.getMaxLoggableBodySize() == 0) {
+            return false;
+        }
+
+        Collection<ClientId> overrides = clientSide
+                ? MessageLogProperties.getMessageBodyLoggingRemoteProducerOverrides()
+                : MessageLogProperties.getMessageBodyLoggingLocalProducerOverrides();
+
+        ClientId provider = service.getClientId();
+        boolean overridden = overrides.stream().anyMatch(override -> override.memberEquals(provider)
+                && Objects.equals(override.getSubsystemCode(), provider.getSubsystemCode()));
+
+        return MessageLogProperties.isMessageBodyLoggingEnabled() != overridden;
+    }
+
     /**
      * Returns a log record for a given message Query Id, start and end time.
      *
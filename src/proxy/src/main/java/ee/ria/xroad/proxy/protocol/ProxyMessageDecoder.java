@@ -42,6 +42,7 @@ import ee.ria.xroad.proxy.signedmessage.Verifier;
 
 import lombok.Getter;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.io.input.TeeInputStream;
 import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.james.mime4j.MimeException;
@@ -83,6 +84,12 @@ public class ProxyMessageDecoder {
     private static final Logger LOG =
             LoggerFactory.getLogger(ProxyMessageDecoder.class);
 
+    /**
+     * Maximum size of the REST message part (request line or status line and headers).
+     * The REST body is streamed separately and is not limited.
+     */
+    static final int MAX_REST_MESSAGE_SIZE = 1024 * 1024;
+
     private final ProxyMessageConsumer callback;
 
     /**
@@ -368,8 +375,7 @@ public class ProxyMessageDecoder {
 
     private void handleRest(BodyDescriptor bd, InputStream is) {
         try {
-            //The request size is unbounded; should have a limit?
-            final byte[] request = IOUtils.toByteArray(is);
+            final byte[] request = readRestMessage(is);
             final byte[] digest = CryptoUtils.calculateDigest(getHashAlgoId(), request);
             callback.rest(new RestRequest(request));
             verifier.addPart(MessageFileNames.MESSAGE, getHashAlgoId(), digest, request);
@@ -380,8 +386,7 @@ public class ProxyMessageDecoder {
 
     private void handleRestResponse(BodyDescriptor bd, InputStream is) {
         try {
-            //The response size is unbounded; should have a limit?
-            final byte[] request = IOUtils.toByteArray(is);
+            final byte[] request = readRestMessage(is);
             callback.rest(RestResponse.of(request));
             verifier.addPart(MessageFileNames.MESSAGE,
                     getHashAlgoId(),
@@ -392,6 +397,17 @@ public class ProxyMessageDecoder {
         }
     }
 
+    private static byte[] readRestMessage(InputStream is) throws IOException {
+        final byte[] message = IOUtils.toByteArray(new BoundedInputStream(is, MAX_REST_MESSAGE_SIZE + 1L));
+
+        if (message.length > MAX_REST_MESSAGE_SIZE) {
+            throw new CodedException(X_INVALID_MESSAGE, "REST message exceeds the maximum size of %d bytes",
+                    MAX_REST_MESSAGE_SIZE);
+        }
+
+        return message;
+    }
+
     private void handleRestBody(BodyDescriptor bd, InputStream is) {
         try {
             final DigestCalculator dc = CryptoUtils.createDigestCalculator(getHashAlgoId());
@@ -592,9 +592,14 @@ class ServerRestMessageProcessor extends MessageProcessorBase {
             messageEncoder.restResponse(restResponse);
 
             if (response.getEntity() != null) {
-                restResponseBody = new CachingStream();
-                TeeInputStream tee = new TeeInputStream(response.getEntity().getContent(), restResponseBody);
-                messageEncoder.restBody(tee);
+                if (MessageLog.isBodyLogged(requestProxyMessage.getRest().getServiceId(), false)) {
+                    // The body is read again by the message log, cache it while streaming
+                    restResponseBody = new CachingStream();
+                    TeeInputStream tee = new TeeInputStream(response.getEntity().getContent(), restResponseBody);
+                    messageEncoder.restBody(tee);
+                } else {
+                    messageEncoder.restBody(response.getEntity().getContent());
+                }
                 EntityUtils.consume(response.getEntity());
             }
 
@@ -0,0 +1,268 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+package ee.ria.xroad.common.signature;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.MessageFileNames;
+import ee.ria.xroad.signer.protocol.message.GetTokenBatchSigningEnabled;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.TestProbe;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the batching of signing requests in the batch signer worker.
+ */
+public class BatchSignerTest {
+    private static final ActorSystem ACTOR_SYSTEM = ActorSystem.create();
+
+    private static final String KEY_ID = "consumer";
+    private static final int NO_WAIT = 0;
+    private static final int LONG_WAIT_MILLIS = 60000;
+    private static final FiniteDuration NO_MESSAGE_TIMEOUT = Duration.create(300, TimeUnit.MILLISECONDS);
+
+    private static X509Certificate signingCert;
+    private static byte[] message;
+
+    static {
+        TestSecurityUtil.initSecurity();
+    }
+
+    /**
+     * Worker that sends the messages meant for Signer to a test probe.
+     */
+    private static class TestWorker extends BatchSigner.WorkerImpl {
+        private final ActorRef signer;
+
+        TestWorker(ActorRef signer, int maxBatchSize, int maxBatchWaitMillis, int maxOutstandingBatches) {
+            super(maxBatchSize, maxBatchWaitMillis, maxOutstandingBatches);
+
+            this.signer = signer;
+        }
+
+        @Override
+        void sendToSigner(Object msg, ActorRef receiver) {
+            signer.tell(msg, receiver);
+        }
+    }
+
+    /**
+     * Loads the signing certificate and the message to sign.
+     * @throws Exception in case of any unexpected error
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        signingCert = TestCertUtil.getConsumer().certChain[0];
+        message = Files.readAllBytes(Paths.get("../common-test/src/test/signatures/message-0.xml"));
+    }
+
+    /**
+     * Stops the actor system.
+     * @throws Exception in case of any unexpected error
+     */
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        Await.ready(ACTOR_SYSTEM.terminate(), Duration.Inf());
+    }
+
+    @Test
+    public void queriesBatchSigningEnabledOnFirstRequest() throws Exception {
+        TestProbe signer = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client = new TestProbe(ACTOR_SYSTEM);
+
+        ActorRef worker = createWorker(signer, 2, LONG_WAIT_MILLIS, 1);
+
+        // until Signer has answered, the requests are signed one by one
+        client.send(worker, createRequest());
+
+        signer.expectMsgClass(GetTokenBatchSigningEnabled.class);
+        signer.expectMsgClass(Sign.class);
+        signer.reply(new SignResponse(new byte[] {1}));
+
+        assertFalse(client.expectMsgClass(SignatureData.class).isBatchSignature());
+    }
+
+    @Test
+    public void signsBatchWhenFull() throws Exception {
+        TestProbe signer = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client1 = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client2 = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client3 = new TestProbe(ACTOR_SYSTEM);
+
+        ActorRef worker = createBatchSigningWorker(signer, 3, LONG_WAIT_MILLIS, 1);
+
+        client1.send(worker, createRequest());
+        client2.send(worker, createRequest());
+
+        signer.expectNoMessage(NO_MESSAGE_TIMEOUT);
+
+        client3.send(worker, createRequest());
+
+        signer.expectMsgClass(Sign.class);
+        signer.reply(new SignResponse(new byte[] {1}));
+
+        assertTrue(client1.expectMsgClass(SignatureData.class).isBatchSignature());
+        assertTrue(client2.expectMsgClass(SignatureData.class).isBatchSignature());
+        assertTrue(client3.expectMsgClass(SignatureData.class).isBatchSignature());
+    }
+
+    @Test
+    public void signsBatchAfterMaxWaitTime() throws Exception {
+        TestProbe signer = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client1 = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client2 = new TestProbe(ACTOR_SYSTEM);
+
+        ActorRef worker = createBatchSigningWorker(signer, 10, 1000, 1);
+
+        client1.send(worker, createRequest());
+        client2.send(worker, createRequest());
+
+        // the batch is not full, it is signed once the oldest request has waited long enough
+        signer.expectNoMessage(NO_MESSAGE_TIMEOUT);
+        signer.expectMsgClass(Sign.class);
+        signer.reply(new SignResponse(new byte[] {1}));
+
+        assertTrue(client1.expectMsgClass(SignatureData.class).isBatchSignature());
+        assertTrue(client2.expectMsgClass(SignatureData.class).isBatchSignature());
+    }
+
+    @Test
+    public void limitsOutstandingBatches() throws Exception {
+        TestProbe signer = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client1 = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client2 = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client3 = new TestProbe(ACTOR_SYSTEM);
+
+        ActorRef worker = createBatchSigningWorker(signer, 1, NO_WAIT, 2);
+
+        client1.send(worker, createRequest());
+        client2.send(worker, createRequest());
+        client3.send(worker, createRequest());
+
+        signer.expectMsgClass(Sign.class);
+        ActorRef batch1 = signer.lastSender();
+        signer.expectMsgClass(Sign.class);
+        ActorRef batch2 = signer.lastSender();
+
+        // the third batch waits for a free signing slot
+        signer.expectNoMessage(NO_MESSAGE_TIMEOUT);
+
+        signer.send(batch1, new SignResponse(new byte[] {1}));
+        client1.expectMsgClass(SignatureData.class);
+
+        signer.expectMsgClass(Sign.class);
+        signer.reply(new SignResponse(new byte[] {3}));
+        client3.expectMsgClass(SignatureData.class);
+
+        signer.send(batch2, new SignResponse(new byte[] {2}));
+        client2.expectMsgClass(SignatureData.class);
+    }
+
+    @Test
+    public void sendsResultsToRequestersOfBatch() throws Exception {
+        TestProbe signer = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client1 = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client2 = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client3 = new TestProbe(ACTOR_SYSTEM);
+        TestProbe client4 = new TestProbe(ACTOR_SYSTEM);
+
+        ActorRef worker = createBatchSigningWorker(signer, 2, NO_WAIT, 2);
+
+        // the first two requests are signed at once, the next two wait in
+        // one batch for a free signing slot
+        client1.send(worker, createRequest());
+        signer.expectMsgClass(Sign.class);
+        ActorRef batch1 = signer.lastSender();
+
+        client2.send(worker, createRequest());
+        signer.expectMsgClass(Sign.class);
+        ActorRef batch2 = signer.lastSender();
+
+        client3.send(worker, createRequest());
+        client4.send(worker, createRequest());
+
+        signer.send(batch2, new CodedException(X_INTERNAL_ERROR, "Signing failed"));
+        client2.expectMsgClass(CodedException.class);
+
+        signer.expectMsgClass(Sign.class);
+        ActorRef batch3 = signer.lastSender();
+
+        signer.send(batch1, new SignResponse(new byte[] {1}));
+        assertFalse(client1.expectMsgClass(SignatureData.class).isBatchSignature());
+
+        signer.send(batch3, new SignResponse(new byte[] {3}));
+        assertTrue(client3.expectMsgClass(SignatureData.class).isBatchSignature());
+        assertTrue(client4.expectMsgClass(SignatureData.class).isBatchSignature());
+
+        client1.expectNoMessage(NO_MESSAGE_TIMEOUT);
+        client2.expectNoMessage(NO_MESSAGE_TIMEOUT);
+    }
+
+    private static ActorRef createWorker(TestProbe signer, int maxBatchSize, int maxBatchWaitMillis,
+            int maxOutstandingBatches) {
+        return ACTOR_SYSTEM.actorOf(Props.create(TestWorker.class, signer.ref(), maxBatchSize, maxBatchWaitMillis,
+                maxOutstandingBatches));
+    }
+
+    private static ActorRef createBatchSigningWorker(TestProbe signer, int maxBatchSize, int maxBatchWaitMillis,
+            int maxOutstandingBatches) {
+        ActorRef worker = createWorker(signer, maxBatchSize, maxBatchWaitMillis, maxOutstandingBatches);
+
+        // answer as Signer does when batch signing is enabled for the token
+        worker.tell(Boolean.TRUE, ActorRef.noSender());
+
+        return worker;
+    }
+
+    private static BatchSigner.SigningRequestWrapper createRequest() throws Exception {
+        MessagePart part = new MessagePart(MessageFileNames.MESSAGE, CryptoUtils.SHA512_ID,
+                CryptoUtils.calculateDigest(CryptoUtils.SHA512_ID, message), message);
+
+        return new BatchSigner.SigningRequestWrapper(KEY_ID, CryptoUtils.SHA512WITHRSA_ID,
+                new SigningRequest(signingCert, Collections.singletonList(part)));
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.util.MimeTypes;
+import ee.ria.xroad.proxy.testutil.TestServerConf;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Load benchmark comparing the threaded (SOAP handler thread and piped streams) and the single-threaded
+ * client proxy SOAP request processing. Reports the peak JVM thread count and the request latency percentiles.
+ * The load can be adjusted with the system properties "soapLoadTest.requests" and "soapLoadTest.concurrency".
+ */
+@Slf4j
+public class SoapProxyLoadTest extends AbstractProxyIntegrationTest {
+
+    private static final int REQUESTS = Integer.getInteger("soapLoadTest.requests", 2000);
+    private static final int CONCURRENCY = Integer.getInteger("soapLoadTest.concurrency", 50);
+    private static final int WARMUP_REQUESTS = 200;
+
+    private static final String SOAP_REQUEST = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+            + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " xmlns:xroad=\"http://x-road.eu/xsd/xroad.xsd\" xmlns:id=\"http://x-road.eu/xsd/identifiers\">"
+            + "<SOAP-ENV:Header>"
+            + "<xroad:client id:objectType=\"SUBSYSTEM\"><id:xRoadInstance>EE</id:xRoadInstance>"
+            + "<id:memberClass>BUSINESS</id:memberClass><id:memberCode>consumer</id:memberCode>"
+            + "<id:subsystemCode>sub</id:subsystemCode></xroad:client>"
+            + "<xroad:service id:objectType=\"SERVICE\"><id:xRoadInstance>EE</id:xRoadInstance>"
+            + "<id:memberClass>BUSINESS</id:memberClass><id:memberCode>producer</id:memberCode>"
+            + "<id:subsystemCode>sub</id:subsystemCode><id:serviceCode>testQuery</id:serviceCode></xroad:service>"
+            + "<xroad:id>1234567890</xroad:id><xroad:protocolVersion>4.0</xroad:protocolVersion>"
+            + "</SOAP-ENV:Header>"
+            + "<SOAP-ENV:Body><ns1:testQuery xmlns:ns1=\"http://consumer.ee.x-road.eu\">"
+            + "<request><name>foo</name><age>35</age></request></ns1:testQuery></SOAP-ENV:Body>"
+            + "</SOAP-ENV:Envelope>";
+
+    private ExecutorService clients;
+
+    @Before
+    public void before() {
+        ServerConf.reload(new TestServerConf(servicePort) {
+            @Override
+            public DescriptionType getDescriptionType(ServiceId service) {
+                return DescriptionType.WSDL;
+            }
+        });
+
+        clients = Executors.newFixedThreadPool(CONCURRENCY);
+    }
+
+    @After
+    public void shutdown() throws InterruptedException {
+        System.clearProperty(SystemProperties.CLIENTPROXY_SOAP_SINGLE_THREADED_PROCESSING);
+
+        clients.shutdownNow();
+        clients.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void compareThreadedAndSingleThreadedProcessing() throws Exception {
+        Result threaded = runLoad(false);
+        Result singleThreaded = runLoad(true);
+
+        log.info("SOAP load ({} requests, {} concurrent clients)", REQUESTS, CONCURRENCY);
+        log.info("threaded:        {}", threaded);
+        log.info("single-threaded: {}", singleThreaded);
+
+        assertEquals(REQUESTS, threaded.succeeded);
+        assertEquals(REQUESTS, singleThreaded.succeeded);
+    }
+
+    private Result runLoad(boolean singleThreaded) throws Exception {
+        System.setProperty(SystemProperties.CLIENTPROXY_SOAP_SINGLE_THREADED_PROCESSING,
+                String.valueOf(singleThreaded));
+
+        execute(WARMUP_REQUESTS);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+
+        long start = System.nanoTime();
+        long[] latencies = execute(REQUESTS);
+        long elapsed = System.nanoTime() - start;
+
+        return new Result(latencies, elapsed, threadsBefore, threads.getPeakThreadCount());
+    }
+
+    private long[] execute(int count) throws Exception {
+        List<Future<Long>> futures = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            futures.add(clients.submit(SoapProxyLoadTest::sendRequest));
+        }
+
+        long[] latencies = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            latencies[i] = futures.get(i).get();
+        }
+
+        return latencies;
+    }
+
+    private static long sendRequest() throws Exception {
+        long start = System.nanoTime();
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + proxyClientPort)
+                .openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", MimeTypes.TEXT_XML_UTF8);
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(SOAP_REQUEST.getBytes(StandardCharsets.UTF_8));
+        }
+
+        int status = connection.getResponseCode();
+
+        try (InputStream in = status == HttpURLConnection.HTTP_OK
+                ? connection.getInputStream() : connection.getErrorStream()) {
+            IOUtils.toByteArray(in);
+        }
+
+        return status == HttpURLConnection.HTTP_OK ? System.nanoTime() - start : -1;
+    }
+
+    private static final class Result {
+        private final int succeeded;
+        private final double throughput;
+        private final long p50;
+        private final long p99;
+        private final int threadsBefore;
+        private final int peakThreads;
+
+        Result(long[] latencies, long elapsedNanos, int threadsBefore, int peakThreads) {
+            long[] sorted = Arrays.stream(latencies).filter(l -> l >= 0).sorted().toArray();
+
+            this.succeeded = sorted.length;
+            this.throughput = sorted.length / (elapsedNanos / 1e9);
+            this.p50 = percentile(sorted, 0.50);
+            this.p99 = percentile(sorted, 0.99);
+            this.threadsBefore = threadsBefore;
+            this.peakThreads = peakThreads;
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+
+            return TimeUnit.NANOSECONDS.toMillis(sorted[(int) Math.ceil(p * sorted.length) - 1]);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d ok, %.0f req/s, p50 %d ms, p99 %d ms, threads %d (peak %d)",
+                    succeeded, throughput, p50, p99, threadsBefore, peakThreads);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.antidos;
+
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.util.SystemMetrics;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Floods the anti-dos connection manager with connections from unknown addresses while known members
+ * keep connecting at a steady pace, and reports the accept throughput and the time known members'
+ * connections wait in the queue. Connections are taken by a single thread, as the connector does.
+ */
+@Slf4j
+public final class AntiDosFloodBenchmark {
+    private static final int DEFAULT_SECONDS = 5;
+    private static final int DEFAULT_ATTACKERS = 4;
+    private static final int DEFAULT_MEMBERS = 4;
+    private static final int DEFAULT_KNOWN_ADDRESSES = 1000;
+    private static final int DEFAULT_BACKLOG = 10000;
+    private static final int OCTET = 256;
+
+    private static final Options OPTIONS = getOptions();
+
+    private AntiDosFloodBenchmark() {
+    }
+
+    /**
+     * Main function.
+     * @param args args
+     * @throws Exception if something goes wrong.
+     */
+    public static void main(String args[]) throws Exception {
+        CommandLine cmd = parseCommandLine(args);
+
+        if (cmd.hasOption("help")) {
+            usage();
+
+            System.exit(0);
+        }
+
+        int seconds = getIntOption(cmd, "seconds", DEFAULT_SECONDS);
+        int attackers = getIntOption(cmd, "attackers", DEFAULT_ATTACKERS);
+        int members = getIntOption(cmd, "members", DEFAULT_MEMBERS);
+        int knownAddresses = getIntOption(cmd, "known-addresses", DEFAULT_KNOWN_ADDRESSES);
+        int backlog = getIntOption(cmd, "backlog", DEFAULT_BACKLOG);
+
+        Set<String> addresses = new HashSet<>();
+
+        for (int i = 0; i < knownAddresses; i++) {
+            addresses.add(memberAddress(i));
+        }
+
+        GlobalConf.reload(new EmptyGlobalConf() {
+            @Override
+            public Set<String> getKnownAddresses() {
+                return addresses;
+            }
+        });
+
+        SystemMetrics.init();
+
+        // Resource checks always pass, the benchmark measures scheduling only
+        AntiDosConnectionManager<TimedConnection> manager =
+                new AntiDosConnectionManager<>(new TestConfiguration(Integer.MIN_VALUE, Double.MAX_VALUE));
+        manager.init();
+        manager.start();
+
+        log.info("attackers: {}, members: {}, known addresses: {}, backlog: {}, duration: {} s",
+                attackers, members, knownAddresses, backlog, seconds);
+
+        try {
+            run(manager, attackers, members, knownAddresses, backlog, seconds);
+        } finally {
+            manager.stop();
+        }
+    }
+
+    private static void run(AntiDosConnectionManager<TimedConnection> manager, int attackers, int members,
+            int knownAddresses, int backlog, int seconds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+        Semaphore pending = new Semaphore(backlog);
+        AtomicLong accepted = new AtomicLong();
+        AtomicLong taken = new AtomicLong();
+        AtomicLong memberConnections = new AtomicLong();
+        AtomicLong memberWaitNanos = new AtomicLong();
+        AtomicLong maxMemberWaitNanos = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(attackers + members);
+
+        Thread consumer = new Thread(() -> {
+            try {
+                while (true) {
+                    TimedConnection connection = manager.takeNextConnection();
+                    pending.release();
+                    taken.incrementAndGet();
+
+                    if (connection.isMember()) {
+                        long wait = System.nanoTime() - connection.getAcceptedAt();
+
+                        memberConnections.incrementAndGet();
+                        memberWaitNanos.addAndGet(wait);
+                        maxMemberWaitNanos.accumulateAndGet(wait, Math::max);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.setDaemon(true);
+        consumer.start();
+
+        for (int i = 0; i < attackers; i++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                try {
+                    while (System.currentTimeMillis() < deadline) {
+                        if (pending.tryAcquire(1, TimeUnit.MILLISECONDS)) {
+                            manager.accept(new TimedConnection(attackerAddress(random), false));
+                            accepted.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                done.countDown();
+            }).start();
+        }
+
+        for (int i = 0; i < members; i++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                try {
+                    while (System.currentTimeMillis() < deadline) {
+                        pending.acquire();
+                        manager.accept(new TimedConnection(memberAddress(random.nextInt(knownAddresses)), true));
+                        accepted.incrementAndGet();
+
+                        Thread.sleep(1);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                done.countDown();
+            }).start();
+        }
+
+        done.await();
+
+        long memberCount = memberConnections.get();
+
+        log.info("accepted: {}/s, processed: {}/s", accepted.get() / seconds, taken.get() / seconds);
+        log.info("member connections: {}, average wait: {} µs, maximum wait: {} µs", memberCount,
+                memberCount > 0 ? TimeUnit.NANOSECONDS.toMicros(memberWaitNanos.get() / memberCount) : 0,
+                TimeUnit.NANOSECONDS.toMicros(maxMemberWaitNanos.get()));
+    }
+
+    private static String memberAddress(int index) {
+        return "192.168." + (index / OCTET) % OCTET + "." + index % OCTET;
+    }
+
+    private static String attackerAddress(ThreadLocalRandom random) {
+        return "10." + random.nextInt(OCTET) + "." + random.nextInt(OCTET) + "." + random.nextInt(OCTET);
+    }
+
+    private static int getIntOption(CommandLine cmd, String name, int defaultValue) {
+        return cmd.getOptionValue(name) != null ? Integer.parseInt(cmd.getOptionValue(name)) : defaultValue;
+    }
+
+    private static CommandLine parseCommandLine(String args[]) {
+        try {
+            return new BasicParser().parse(OPTIONS, args);
+        } catch (ParseException e) {
+            log.error("Parsing command line failed: {}", e.getMessage());
+
+            usage();
+
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    private static Options getOptions() {
+        Options options = new Options();
+
+        addOption(options, "s", "seconds", "duration of the run in seconds (default: " + DEFAULT_SECONDS + ")");
+        addOption(options, "a", "attackers", "number of threads flooding from unknown addresses (default: "
+                + DEFAULT_ATTACKERS + ")");
+        addOption(options, "m", "members", "number of threads connecting from known addresses (default: "
+                + DEFAULT_MEMBERS + ")");
+        addOption(options, "k", "known-addresses", "number of known member addresses (default: "
+                + DEFAULT_KNOWN_ADDRESSES + ")");
+        addOption(options, "b", "backlog", "maximum number of queued connections (default: "
+                + DEFAULT_BACKLOG + ")");
+
+        Option usage = new Option("h", "help", false, "help");
+        usage.setRequired(false);
+        options.addOption(usage);
+
+        return options;
+    }
+
+    private static void addOption(Options options, String opt, String longOpt, String description) {
+        Option option = new Option(opt, longOpt, true, description);
+        option.setRequired(false);
+        options.addOption(option);
+    }
+
+    private static void usage() {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("AntiDosFloodBenchmark", OPTIONS);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class TimedConnection implements SocketChannelWrapper {
+        private final String hostAddress;
+        private final boolean member;
+        private final long acceptedAt = System.nanoTime();
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
@@ -42,10 +42,20 @@ class TestConnectionManager
     protected TestSocketChannel getNextConnection()
             throws InterruptedException {
         systemMetrics.next();
+        sampleResources();
 
         return super.getNextConnection();
     }
 
+    @Override
+    protected void sampleResources() {
+        // Resources are sampled before taking each connection, once
+        // the test load has been set
+        if (systemMetrics.get() != null) {
+            super.sampleResources();
+        }
+    }
+
     @Override
     protected long getFreeFileDescriptorCount() {
         return systemMetrics.get().getMinFreeFileHandles();
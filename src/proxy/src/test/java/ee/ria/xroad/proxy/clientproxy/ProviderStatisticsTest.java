@@ -0,0 +1,209 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.google.common.base.Ticker;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HTTP;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.clientproxy.ProviderStatistics.EJECTION_PERIOD_NANOS;
+import static ee.ria.xroad.proxy.clientproxy.ProviderStatistics.EJECTION_THRESHOLD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test ProviderStatistics
+ */
+public class ProviderStatisticsTest {
+
+    private static final int EXPIRY_SECONDS = 3600;
+    private static final int SELECTIONS = 100;
+
+    private static final URI FAST = URI.create("https://fast:5500/");
+    private static final URI SLOW = URI.create("https://slow:5500/");
+    private static final URI NEW = URI.create("https://new:5500/");
+
+    private FakeTicker ticker;
+    private ProviderStatistics statistics;
+
+    /**
+     * Create statistics with a fake clock.
+     */
+    @Before
+    public void setUp() {
+        ticker = new FakeTicker();
+        statistics = new ProviderStatistics(EXPIRY_SECONDS, ticker);
+    }
+
+    @Test
+    public void noSelectionWithoutStatistics() {
+        assertNull(statistics.select(new URI[] {FAST, SLOW}));
+    }
+
+    @Test
+    public void noSelectionWhenDisabled() {
+        statistics = new ProviderStatistics(0, ticker);
+        statistics.recordResponse(FAST, millis(10), false);
+
+        assertNull(statistics.select(new URI[] {FAST, SLOW}));
+    }
+
+    @Test
+    public void selectsLowerLatency() {
+        statistics.recordResponse(FAST, millis(10), false);
+        statistics.recordResponse(SLOW, millis(100), false);
+
+        for (int i = 0; i < SELECTIONS; i++) {
+            assertEquals(FAST, statistics.select(new URI[] {FAST, SLOW}));
+        }
+    }
+
+    @Test
+    public void probesProvidersWithoutStatistics() {
+        statistics.recordResponse(FAST, millis(10), false);
+
+        Set<URI> selected = new HashSet<>();
+
+        for (int i = 0; i < SELECTIONS; i++) {
+            selected.add(statistics.select(new URI[] {FAST, NEW}));
+        }
+
+        assertTrue(selected.contains(FAST));
+        assertTrue(selected.contains(NEW));
+    }
+
+    @Test
+    public void errorsOutweighLatency() {
+        statistics.recordResponse(SLOW, millis(20), false);
+
+        for (int i = 0; i < 3; i++) {
+            statistics.recordResponse(FAST, millis(10), true);
+        }
+
+        assertEquals(SLOW, statistics.select(new URI[] {FAST, SLOW}));
+    }
+
+    @Test
+    public void ejectsProviderAfterConnectFailures() {
+        statistics.recordResponse(FAST, millis(10), false);
+
+        for (int i = 0; i < EJECTION_THRESHOLD - 1; i++) {
+            statistics.recordConnectFailure(FAST);
+        }
+
+        assertEquals(FAST, statistics.select(new URI[] {FAST}));
+
+        statistics.recordConnectFailure(FAST);
+
+        // Every provider is ejected, fall back to the connection race
+        assertNull(statistics.select(new URI[] {FAST}));
+
+        ticker.advance(EJECTION_PERIOD_NANOS, TimeUnit.NANOSECONDS);
+
+        assertEquals(FAST, statistics.select(new URI[] {FAST}));
+    }
+
+    @Test
+    public void ejectionExpiryResetsConnectFailures() {
+        statistics.recordResponse(FAST, millis(10), false);
+
+        for (int i = 0; i < EJECTION_THRESHOLD; i++) {
+            statistics.recordConnectFailure(FAST);
+        }
+
+        assertNull(statistics.select(new URI[] {FAST}));
+
+        ticker.advance(EJECTION_PERIOD_NANOS, TimeUnit.NANOSECONDS);
+
+        // A single failure after the ejection period does not eject the provider again
+        statistics.recordConnectFailure(FAST);
+        assertEquals(FAST, statistics.select(new URI[] {FAST}));
+
+        for (int i = 1; i < EJECTION_THRESHOLD; i++) {
+            statistics.recordConnectFailure(FAST);
+        }
+
+        assertNull(statistics.select(new URI[] {FAST}));
+    }
+
+    @Test
+    public void countsOnlyProxyFailures() {
+        // Errors of the provider's service are encapsulated in the proxy message
+        assertFalse(ProviderStatistics.isProxyFailure(response(HttpStatus.SC_OK, "multipart/mixed; boundary=xyz")));
+
+        assertTrue(ProviderStatistics.isProxyFailure(response(HttpStatus.SC_OK, "text/xml; charset=UTF-8")));
+        assertTrue(ProviderStatistics.isProxyFailure(response(HttpStatus.SC_BAD_GATEWAY, "text/html")));
+        assertTrue(ProviderStatistics.isProxyFailure(response(HttpStatus.SC_OK, null)));
+    }
+
+    @Test
+    public void statisticsExpire() {
+        statistics.recordResponse(FAST, millis(10), false);
+
+        ticker.advance(EXPIRY_SECONDS + 1, TimeUnit.SECONDS);
+
+        assertNull(statistics.select(new URI[] {FAST, SLOW}));
+    }
+
+    private static BasicHttpResponse response(int status, String contentType) {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+
+        if (contentType != null) {
+            response.setHeader(HTTP.CONTENT_TYPE, contentType);
+        }
+
+        return response;
+    }
+
+    private static long millis(long value) {
+        return TimeUnit.MILLISECONDS.toNanos(value);
+    }
+
+    static class FakeTicker extends Ticker {
+        long ticks = 0;
+
+        @Override
+        public long read() {
+            return ticks;
+        }
+
+        void advance(long t, TimeUnit unit) {
+            ticks += unit.toNanos(t);
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.protocol;
+
+import ee.ria.xroad.common.ExpectedCodedException;
+import ee.ria.xroad.common.message.RestMessage;
+import ee.ria.xroad.common.message.RestRequest;
+import ee.ria.xroad.common.message.SoapFault;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.proxy.testutil.IntegrationTest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INVALID_MESSAGE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that REST message bodies are streamed through the proxy message encoder and decoder.
+ */
+public class ProxyMessageRestBodyTest {
+
+    private static final String HASH_ALGO_ID = CryptoUtils.DEFAULT_DIGEST_ALGORITHM_ID;
+
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private static final long EXTRA_BODY_SIZE = 64 * 1024 * 1024;
+
+    @Rule
+    public ExpectedCodedException thrown = ExpectedCodedException.none();
+
+    /**
+     * Test to ensure a REST body larger than the heap is streamed from the encoder to the decoder.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    @Category(IntegrationTest.class)
+    public void streamsBodyLargerThanHeap() throws Exception {
+        final long bodySize = Runtime.getRuntime().maxMemory() + EXTRA_BODY_SIZE;
+
+        final PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        final PipedOutputStream out = new PipedOutputStream(in);
+        final ProxyMessageEncoder encoder = new ProxyMessageEncoder(out, HASH_ALGO_ID);
+        final AtomicReference<Exception> encoderError = new AtomicReference<>();
+
+        final Thread sender = new Thread(() -> {
+            try {
+                encoder.restRequest(createRequest(new ArrayList<>()));
+                encoder.restBody(new GeneratedInputStream(bodySize));
+                encoder.close();
+                out.close();
+            } catch (Exception e) {
+                encoderError.set(e);
+            }
+        });
+        sender.setDaemon(true);
+        sender.start();
+
+        final BodyCountingConsumer consumer = new BodyCountingConsumer();
+        final ProxyMessageDecoder decoder = new ProxyMessageDecoder(consumer, encoder.getContentType(),
+                HASH_ALGO_ID);
+        decoder.parse(in);
+
+        sender.join();
+
+        assertNull(encoderError.get());
+        assertEquals(bodySize, consumer.getBodySize());
+        assertEquals(bodySize, decoder.getAttachmentsByteCount());
+        assertArrayEquals(encoder.getRestBodyDigest(), decoder.getRestBodyDigest());
+    }
+
+    /**
+     * Test to ensure an oversized REST message (request line and headers) is rejected.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void rejectsOversizedRestMessage() throws Exception {
+        final List<Header> headers = new ArrayList<>();
+        headers.add(new BasicHeader("X-Large", StringUtils.repeat('x', ProxyMessageDecoder.MAX_REST_MESSAGE_SIZE)));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ProxyMessageEncoder encoder = new ProxyMessageEncoder(out, HASH_ALGO_ID);
+        encoder.restRequest(createRequest(headers));
+        encoder.restBody(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        encoder.close();
+
+        thrown.expectError(X_INVALID_MESSAGE);
+
+        new ProxyMessageDecoder(new BodyCountingConsumer(), encoder.getContentType(), HASH_ALGO_ID)
+                .parse(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static RestRequest createRequest(List<Header> headers) {
+        headers.addAll(Arrays.asList(
+                new BasicHeader("X-Road-Client", "Instance/Class/Member/SubSystem"),
+                new BasicHeader("X-Road-Id", "42")));
+
+        return new RestRequest("POST",
+                String.format("/r%d/Instance/Class/Member/SubSystem/ServiceCode", RestMessage.PROTOCOL_VERSION),
+                null, headers, "xid");
+    }
+
+    /**
+     * Produces the given number of bytes without holding them in memory.
+     */
+    private static final class GeneratedInputStream extends InputStream {
+        private long remaining;
+
+        GeneratedInputStream(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            return (int) (--remaining & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            final int count = (int) Math.min(len, remaining);
+
+            for (int i = 0; i < count; i++) {
+                b[off + i] = (byte) (--remaining & 0xFF);
+            }
+
+            return count;
+        }
+    }
+
+    private static final class BodyCountingConsumer implements ProxyMessageConsumer {
+        private final byte[] buffer = new byte[PIPE_SIZE];
+        private long bodySize;
+
+        long getBodySize() {
+            return bodySize;
+        }
+
+        @Override
+        public void rest(RestRequest message) {
+            // only the body is of interest
+        }
+
+        @Override
+        public void restBody(InputStream content) throws Exception {
+            int count;
+
+            while ((count = content.read(buffer)) != -1) {
+                bodySize += count;
+            }
+        }
+
+        @Override
+        public void soap(SoapMessageImpl message, Map<String, String> additionalHeaders) {
+            throw new IllegalStateException("Unexpected SOAP message");
+        }
+
+        @Override
+        public void attachment(String contentType, InputStream content, Map<String, String> additionalHeaders) {
+            throw new IllegalStateException("Unexpected attachment");
+        }
+
+        @Override
+        public void ocspResponse(OCSPResp resp) {
+            throw new IllegalStateException("Unexpected OCSP response");
+        }
+
+        @Override
+        public void signature(SignatureData signature) {
+            throw new IllegalStateException("Unexpected signature");
+        }
+
+        @Override
+        public void fault(SoapFault fault) {
+            throw new IllegalStateException("Unexpected fault");
+        }
+    }
+}
@@ -31,7 +31,6 @@ import ee.ria.xroad.common.conf.InternalSSLKey;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.model.ClientType;
 import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
-import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
 import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityCategoryId;
@@ -66,7 +65,7 @@ public class CachingServerConfImpl extends ServerConfImpl {
     private volatile SecurityServerId serverId;
     private final Cache<Object, List<String>> tspCache;
     private final Cache<ServiceId, Optional<ServiceType>> serviceCache;
-    private final Cache<AclCacheKey, List<EndpointType>> aclCache;
+    private final Cache<AclCacheKey, ServiceAccessRights> aclCache;
     private final Cache<ClientId, Optional<ClientType>> clientCache;
     private final Cache<String, InternalSSLKey> internalKeyCache;
 
@@ -102,7 +101,7 @@ public class CachingServerConfImpl extends ServerConfImpl {
                 .build();
 
         aclCache = CacheBuilder.newBuilder()
-                .weigher((AclCacheKey k, List<EndpointType> v) -> v.size() + 1)
+                .weigher((AclCacheKey k, ServiceAccessRights v) -> v.size() + 1)
                 .maximumWeight(SystemProperties.getServerConfAclCacheSize())
                 .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .recordStats()
@@ -219,21 +218,21 @@ public class CachingServerConfImpl extends ServerConfImpl {
     }
 
     @Override
-    protected List<EndpointType> getEndpoints(Session session, ClientId client, ServiceId service) {
-        final AclCacheKey key = new AclCacheKey(client, service);
+    protected ServiceAccessRights getAccessRights(Session session, ServiceId service) {
+        final AclCacheKey key = new AclCacheKey(service.getClientId(), service.getServiceCode());
         try {
             /*
              * Implementation note. It seems that the loader function is executed in the same thread, in which case the
              * transaction simply joins the current one. However, this is not explicitly promised by the API,
              * so we start a transaction if necessary.
              */
-            return aclCache.get(key, () -> tx(s -> super.getEndpoints(s, client, service)));
+            return aclCache.get(key, () -> tx(s -> super.getAccessRights(s, service)));
         } catch (ExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
             }
-            log.debug("Failed get list of endpoints", e);
-            return Collections.emptyList();
+            log.debug("Failed to get access rights", e);
+            return ServiceAccessRights.compile(null, Collections.emptyList());
         }
     }
 
@@ -277,7 +276,7 @@ public class CachingServerConfImpl extends ServerConfImpl {
 
     @Value
     private static class AclCacheKey {
-        final ClientId client;
-        final ServiceId serviceId;
+        final ClientId serviceOwner;
+        final String serviceCode;
     }
 }
@@ -27,10 +27,8 @@ package ee.ria.xroad.common.conf.serverconf;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.conf.InternalSSLKey;
-import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.dao.CertificateDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ClientDAOImpl;
-import ee.ria.xroad.common.conf.serverconf.dao.IdentifierDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServerConfDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServiceDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServiceDescriptionDAOImpl;
@@ -44,13 +42,9 @@ import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
 import ee.ria.xroad.common.conf.serverconf.model.TspType;
 import ee.ria.xroad.common.db.TransactionCallback;
 import ee.ria.xroad.common.identifier.ClientId;
-import ee.ria.xroad.common.identifier.GlobalGroupId;
-import ee.ria.xroad.common.identifier.LocalGroupId;
 import ee.ria.xroad.common.identifier.SecurityCategoryId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
-import ee.ria.xroad.common.identifier.XRoadId;
-import ee.ria.xroad.common.identifier.XRoadObjectType;
 import ee.ria.xroad.common.util.UriUtils;
 
 import lombok.extern.slf4j.Slf4j;
@@ -67,7 +61,6 @@ import java.net.URI;
 import java.security.cert.X509Certificate;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_SERVERCONF;
@@ -86,7 +79,6 @@ public class ServerConfImpl implements ServerConfProvider {
     protected static final int DEFAULT_SERVICE_TIMEOUT = 30;
 
     private final ServiceDAOImpl serviceDao = new ServiceDAOImpl();
-    private final IdentifierDAOImpl identifierDao = new IdentifierDAOImpl();
     private final ClientDAOImpl clientDao = new ClientDAOImpl();
     private final CertificateDAOImpl certificateDao = new CertificateDAOImpl();
     private final ServerConfDAOImpl serverConfDao = new ServerConfDAOImpl();
@@ -334,11 +326,11 @@ public class ServerConfImpl implements ServerConfProvider {
         } else {
             normalizedPath = UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
         }
-        return getEndpoints(session, client, service).stream().anyMatch(ep -> ep.matches(method, normalizedPath));
+        return getAccessRights(session, service).isAllowed(client, method, normalizedPath);
     }
 
-    protected List<EndpointType> getEndpoints(Session session, ClientId client, ServiceId service) {
-        log.debug("getAcl, session = {}", session);
+    protected ServiceAccessRights getAccessRights(Session session, ServiceId service) {
+        log.debug("getAccessRights, session = {}", session);
 
         final ClientType serviceOwner = getClient(session, service.getClientId());
 
@@ -348,45 +340,19 @@ public class ServerConfImpl implements ServerConfProvider {
             throw new CodedException(X_UNKNOWN_SERVICE, "Service '%s' owner not found", service);
         }
 
-        final ClientId localClientId = identifierDao.findClientId(session, client);
-        // localClientId can be null if the permissions are defined by a global group
-
         final CriteriaBuilder cb = session.getCriteriaBuilder();
         final CriteriaQuery<AccessRightType> query = cb.createQuery(AccessRightType.class);
         final Root<ClientType> root = query.from(ClientType.class);
         final Join<ClientType, AccessRightType> acl = root.join("acl");
         final Join<AccessRightType, EndpointType> endpoint = acl.join("endpoint");
-        final Join<AccessRightType, XRoadId> identifier = acl.join("subjectId");
         acl.fetch("endpoint");
+        acl.fetch("subjectId");
 
-        query.select(acl).where(cb.and(
+        query.select(acl).where(
                 cb.equal(root, serviceOwner),
-                cb.equal(endpoint.get("serviceCode"), service.getServiceCode())),
-                cb.or(cb.equal(identifier, localClientId),
-                        cb.equal(identifier.get("type"), XRoadObjectType.GLOBALGROUP),
-                        cb.equal(identifier.get("type"), XRoadObjectType.LOCALGROUP)));
-
-        return session.createQuery(query).setReadOnly(true).list().stream()
-                .filter(it -> subjectMatches(serviceOwner, it.getSubjectId(), client))
-                .map(AccessRightType::getEndpoint)
-                .collect(Collectors.toList());
-    }
-
-    private boolean subjectMatches(ClientType serviceOwner, XRoadId aclSubject, ClientId client) {
-        if (aclSubject instanceof GlobalGroupId) {
-            return GlobalConf.isSubjectInGlobalGroup(client, (GlobalGroupId)aclSubject);
-        } else if (aclSubject instanceof LocalGroupId) {
-            return isMemberInLocalGroup(client, (LocalGroupId)aclSubject, serviceOwner);
-        } else {
-            return client.equals(aclSubject);
-        }
-    }
+                cb.equal(endpoint.get("serviceCode"), service.getServiceCode()));
 
-    private boolean isMemberInLocalGroup(ClientId member, LocalGroupId groupId, ClientType groupOwner) {
-        return groupOwner.getLocalGroup().stream()
-                .filter(g -> Objects.equals(groupId.getGroupCode(), g.getGroupCode()))
-                .flatMap(g -> g.getGroupMember().stream())
-                .anyMatch(m -> m.getGroupMemberId().equals(member));
+        return ServiceAccessRights.compile(serviceOwner, session.createQuery(query).setReadOnly(true).list());
     }
 
     /**
@@ -0,0 +1,262 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Access rights of one service, compiled for fast lookups.
+ *
+ * <br/>
+ * The endpoints are indexed by method and by the literal leading segments of their path globs, so that checking
+ * a request walks the request path once and only evaluates the glob patterns that share its literal prefix.
+ * The permitted clients (including the members of local groups) are kept in hash sets. Global group membership
+ * is checked from the global configuration at query time.
+ * <br/>
+ * The instances are immutable and safe to share between threads.
+ */
+public final class ServiceAccessRights {
+
+    private final PathTrie anyMethod;
+    private final Map<String, PathTrie> byMethod;
+    private final int size;
+
+    private ServiceAccessRights(PathTrie anyMethod, Map<String, PathTrie> byMethod, int size) {
+        this.anyMethod = anyMethod;
+        this.byMethod = byMethod;
+        this.size = size;
+    }
+
+    /**
+     * Compiles the access rights of a service.
+     * @param serviceOwner owner of the service (used for resolving local groups)
+     * @param accessRights access rights of the service
+     * @return compiled access rights
+     */
+    public static ServiceAccessRights compile(ClientType serviceOwner, Collection<AccessRightType> accessRights) {
+        final Map<String, Map<String, Subjects>> endpoints = new LinkedHashMap<>();
+        Map<String, Set<ClientId>> localGroups = null;
+
+        for (AccessRightType accessRight : accessRights) {
+            final EndpointType endpoint = accessRight.getEndpoint();
+            final XRoadId subject = accessRight.getSubjectId();
+            final Subjects subjects = endpoints
+                    .computeIfAbsent(endpoint.getMethod().toUpperCase(Locale.ROOT), m -> new LinkedHashMap<>())
+                    .computeIfAbsent(endpoint.getPath(), p -> new Subjects());
+
+            if (subject instanceof GlobalGroupId) {
+                subjects.globalGroups.add((GlobalGroupId)subject);
+            } else if (subject instanceof LocalGroupId) {
+                if (localGroups == null) {
+                    localGroups = getLocalGroups(serviceOwner);
+                }
+                Set<ClientId> members = localGroups.get(((LocalGroupId)subject).getGroupCode());
+                if (members != null) {
+                    subjects.clients.addAll(members);
+                }
+            } else if (subject instanceof ClientId) {
+                subjects.clients.add((ClientId)subject);
+            }
+        }
+
+        PathTrie anyMethod = new PathTrie();
+        final Map<String, PathTrie> byMethod = new HashMap<>();
+        for (Map.Entry<String, Map<String, Subjects>> entry : endpoints.entrySet()) {
+            final PathTrie trie;
+            if (EndpointType.ANY_METHOD.equals(entry.getKey())) {
+                trie = anyMethod;
+            } else {
+                trie = new PathTrie();
+                byMethod.put(entry.getKey(), trie);
+            }
+            entry.getValue().forEach(trie::add);
+        }
+
+        return new ServiceAccessRights(anyMethod, byMethod, accessRights.size());
+    }
+
+    /**
+     * Returns true if the client is allowed to access the given endpoint of the service.
+     * @param client the client
+     * @param method request method (null if not applicable)
+     * @param path normalized request path (null if not applicable)
+     * @return true if access is allowed
+     */
+    public boolean isAllowed(ClientId client, String method, String path) {
+        if (anyMethod.isAllowed(client, path)) {
+            return true;
+        }
+        if (method == null) {
+            return false;
+        }
+        final PathTrie trie = byMethod.get(method.toUpperCase(Locale.ROOT));
+        return trie != null && trie.isAllowed(client, path);
+    }
+
+    /**
+     * @return number of access rights compiled into this instance
+     */
+    public int size() {
+        return size;
+    }
+
+    private static Map<String, Set<ClientId>> getLocalGroups(ClientType serviceOwner) {
+        final Map<String, Set<ClientId>> groups = new HashMap<>();
+        for (LocalGroupType group : serviceOwner.getLocalGroup()) {
+            final Set<ClientId> members = groups.computeIfAbsent(group.getGroupCode(), c -> new HashSet<>());
+            for (GroupMemberType member : group.getGroupMember()) {
+                members.add(member.getGroupMemberId());
+            }
+        }
+        return groups;
+    }
+
+    private static boolean isLiteral(String segment) {
+        return segment.indexOf('*') < 0 && segment.indexOf('\\') < 0;
+    }
+
+    private static final class Subjects {
+        final Set<ClientId> clients = new HashSet<>();
+        final Set<GlobalGroupId> globalGroups = new HashSet<>();
+
+        boolean contains(ClientId client) {
+            if (clients.contains(client)) {
+                return true;
+            }
+            for (GlobalGroupId group : globalGroups) {
+                if (GlobalConf.isSubjectInGlobalGroup(client, group)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Glob {
+        final Pattern pattern;
+        final Subjects subjects;
+
+        Glob(Pattern pattern, Subjects subjects) {
+            this.pattern = pattern;
+            this.subjects = subjects;
+        }
+    }
+
+    /*
+     * A node is reached by the literal path segments leading to it. A path that ends at the node matches the
+     * literal paths stored in the node. A path that continues past the node is matched against the globs whose
+     * literal prefix ends at the node; the globs of the root node are matched against all paths.
+     */
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        final List<Glob> globs = new ArrayList<>();
+        Subjects literal;
+    }
+
+    private static final class PathTrie {
+        private final Node root = new Node();
+        private Subjects anyPath;
+
+        void add(String glob, Subjects subjects) {
+            if (EndpointType.ANY_PATH.equals(glob)) {
+                anyPath = subjects;
+                return;
+            }
+
+            Node node = root;
+            int start = 0;
+            while (true) {
+                final int end = glob.indexOf('/', start);
+                final String segment = end < 0 ? glob.substring(start) : glob.substring(start, end);
+                if (!isLiteral(segment)) {
+                    node.globs.add(new Glob(PathGlob.compile(glob), subjects));
+                    return;
+                }
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+                if (end < 0) {
+                    node.literal = subjects;
+                    return;
+                }
+                start = end + 1;
+            }
+        }
+
+        boolean isAllowed(ClientId client, String path) {
+            if (anyPath != null && anyPath.contains(client)) {
+                return true;
+            }
+            if (path == null) {
+                return false;
+            }
+
+            Node node = root;
+            int start = 0;
+            while (true) {
+                if (matchesGlob(node, client, path)) {
+                    return true;
+                }
+                final int end = path.indexOf('/', start);
+                node = node.children.get(end < 0 ? path.substring(start) : path.substring(start, end));
+                if (node == null) {
+                    return false;
+                }
+                if (end < 0) {
+                    return node.literal != null && node.literal.contains(client);
+                }
+                start = end + 1;
+            }
+        }
+
+        private static boolean matchesGlob(Node node, ClientId client, String path) {
+            for (Glob glob : node.globs) {
+                if (glob.pattern.matcher(path).matches() && glob.subjects.contains(client)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.ServiceAccessRights;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ServiceAccessRights Unit Tests
+ */
+public class ServiceAccessRightsTest {
+
+    private static final String SERVICE_CODE = "rest";
+
+    private static final ClientId CLIENT = ClientId.create("EE", "GOV", "client");
+    private static final ClientId GROUP_MEMBER = ClientId.create("EE", "GOV", "member");
+    private static final ClientId GLOBAL_GROUP_MEMBER = ClientId.create("EE", "GOV", "global");
+    private static final ClientId OTHER = ClientId.create("EE", "GOV", "other");
+
+    private static final GlobalGroupId GLOBAL_GROUP = GlobalGroupId.create("EE", "group");
+
+    /**
+     * Sets up global configuration for global group membership.
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        GlobalConf.reload(new EmptyGlobalConf() {
+            @Override
+            public boolean isSubjectInGlobalGroup(ClientId subject, GlobalGroupId group) {
+                return GLOBAL_GROUP.equals(group) && GLOBAL_GROUP_MEMBER.equals(subject);
+            }
+        });
+    }
+
+    /**
+     * Tests that the compiled access rights match the same requests as the endpoints.
+     */
+    @Test
+    public void matchesLikeEndpoints() {
+        final List<String> methods = Arrays.asList("*", "GET", "post", "DELETE");
+        final List<String> globs = Arrays.asList("**", "", "/", "/api", "/api/", "/api/*", "/api/*/foo",
+                "/api/**", "/api/te*/**", "/api/test", "/api/test/foo", "*", "**/bar", "/api\\*", "/api/\\*");
+        final List<String> paths = Arrays.asList(null, "", "/", "/api", "/api/", "/api/test", "/api/test/",
+                "/api/test/foo", "/api/tests/foo/bar", "/api/test/bar", "/api*", "/api/*", "/other", "bar",
+                "/api//foo");
+        final List<String> requestMethods = Arrays.asList(null, "GET", "Post", "DELETE", "PUT");
+
+        for (String method : methods) {
+            for (String glob : globs) {
+                final EndpointType endpoint = new EndpointType(SERVICE_CODE, method, glob, false);
+                final ServiceAccessRights rights = ServiceAccessRights.compile(new ClientType(),
+                        Collections.singletonList(accessRight(CLIENT, endpoint)));
+
+                for (String requestMethod : requestMethods) {
+                    for (String path : paths) {
+                        final boolean expected = path == null
+                                ? EndpointType.ANY_PATH.equals(glob) && endpoint.matches(requestMethod, "")
+                                : endpoint.matches(requestMethod, path);
+                        assertEquals(method + " " + glob + " vs " + requestMethod + " " + path,
+                                expected, rights.isAllowed(CLIENT, requestMethod, path));
+                        assertFalse(rights.isAllowed(OTHER, requestMethod, path));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that access is granted to the subjects of the access rights only.
+     */
+    @Test
+    public void matchesSubjects() {
+        final ClientType owner = new ClientType();
+        final LocalGroupType localGroup = new LocalGroupType();
+        localGroup.setGroupCode("local");
+        final GroupMemberType member = new GroupMemberType();
+        member.setGroupMemberId(GROUP_MEMBER);
+        localGroup.getGroupMember().add(member);
+        owner.getLocalGroup().add(localGroup);
+
+        final List<AccessRightType> acl = new ArrayList<>();
+        acl.add(accessRight(CLIENT, new EndpointType(SERVICE_CODE, "GET", "/api/**", false)));
+        acl.add(accessRight(LocalGroupId.create("local"), new EndpointType(SERVICE_CODE, "GET", "/api/foo", false)));
+        acl.add(accessRight(LocalGroupId.create("missing"), new EndpointType(SERVICE_CODE, "*", "**", false)));
+        acl.add(accessRight(GLOBAL_GROUP, new EndpointType(SERVICE_CODE, "POST", "/api/*", false)));
+
+        final ServiceAccessRights rights = ServiceAccessRights.compile(owner, acl);
+        assertEquals(acl.size(), rights.size());
+
+        assertTrue(rights.isAllowed(CLIENT, "GET", "/api/foo"));
+        assertTrue(rights.isAllowed(CLIENT, "GET", "/api/bar/baz"));
+        assertFalse(rights.isAllowed(CLIENT, "POST", "/api/foo"));
+
+        assertTrue(rights.isAllowed(GROUP_MEMBER, "GET", "/api/foo"));
+        assertFalse(rights.isAllowed(GROUP_MEMBER, "GET", "/api/bar"));
+
+        assertTrue(rights.isAllowed(GLOBAL_GROUP_MEMBER, "POST", "/api/foo"));
+        assertFalse(rights.isAllowed(GLOBAL_GROUP_MEMBER, "POST", "/api/foo/bar"));
+        assertFalse(rights.isAllowed(GLOBAL_GROUP_MEMBER, "GET", "/api/foo"));
+
+        assertFalse(rights.isAllowed(OTHER, "GET", "/api/foo"));
+        assertFalse(rights.isAllowed(OTHER, null, null));
+    }
+
+    private static AccessRightType accessRight(XRoadId subject, EndpointType endpoint) {
+        final AccessRightType accessRight = new AccessRightType();
+        accessRight.setSubjectId(subject);
+        accessRight.setEndpoint(endpoint);
+        return accessRight;
+    }
+}
@@ -25,14 +25,25 @@
  */
 package ee.ria.xroad.signer.certmanager;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.MimeTypes;
-import ee.ria.xroad.common.util.MimeUtils;
 
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.ocsp.CertificateID;
@@ -42,16 +53,12 @@ import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.operator.ContentSigner;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.ConnectException;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * OCSP client downloads OCSP responses for specified certificates using responders defined in the Global Configuration.
@@ -63,6 +70,11 @@ final class OcspClient {
     private static final int CONNECT_TIMEOUT_MS = 20000;
     private static final int READ_TIMEOUT_MS = 60000;
 
+    private static final int VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MILLIS = 2000;
+    private static final int IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+
+    private static final ContentType OCSP_REQUEST = ContentType.create(MimeTypes.OCSP_REQUEST);
+
     // TODO make it configurable
     private static final String DIGEST_ALGORITHM_ID = CryptoUtils.SHA512_ID;
     private static final String SIGN_MECHANISM_NAME = CryptoUtils.CKM_RSA_PKCS_NAME;
@@ -70,6 +82,32 @@ final class OcspClient {
     private OcspClient() {
     }
 
+    // Keep-alive connections to the OCSP responders. The number of connections per route limits
+    // the number of concurrent requests to a single responder.
+    private static final class ClientHolder {
+        static final CloseableHttpClient CLIENT = createClient();
+
+        private static CloseableHttpClient createClient() {
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setDefaultMaxPerRoute(SystemProperties.getOcspFetchConnectionsPerResponder());
+            connectionManager.setMaxTotal(Integer.MAX_VALUE);
+            connectionManager.setValidateAfterInactivity(VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MILLIS);
+
+            return HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                            .setConnectionRequestTimeout(READ_TIMEOUT_MS)
+                            .setSocketTimeout(READ_TIMEOUT_MS)
+                            .build())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .disableAutomaticRetries()
+                    .disableCookieManagement()
+                    .build();
+        }
+    }
+
     static OCSPResp queryCertStatus(X509Certificate subject) throws Exception {
         X509Certificate issuer = GlobalConf.getCaCert(GlobalConf.getInstanceIdentifier(), subject);
 
@@ -119,17 +157,12 @@ final class OcspClient {
 
     static OCSPResp fetchResponse(String responderURI, X509Certificate subject, X509Certificate issuer,
             PrivateKey signerKey, X509Certificate signer, String signAlgoId) throws Exception {
-        HttpURLConnection connection = createConnection(responderURI);
-
         OCSPReq ocspRequest = createRequest(subject, issuer, signerKey, signer, signAlgoId);
 
         log.debug("Fetching certificate '{}' status from responder: {}", subject.getIssuerX500Principal(),
-                connection.getURL());
+                responderURI);
 
-        sendRequest(connection, ocspRequest);
-        verifyResponseCode(connection);
-
-        byte[] responseData = getResponseData(connection);
+        byte[] responseData = sendRequest(responderURI, ocspRequest);
         OCSPResp response = parseResponse(responseData);
 
         verifyResponse(response);
@@ -137,26 +170,36 @@ final class OcspClient {
         return response;
     }
 
-    private static byte[] getResponseData(HttpURLConnection connection) throws IOException {
-        byte[] responseData = IOUtils.toByteArray((InputStream) connection.getContent());
+    private static byte[] sendRequest(String responderURI, OCSPReq ocspRequest) throws IOException {
+        HttpPost post;
 
-        if (responseData == null || responseData.length == 0) {
-            throw new IOException("No response from responder");
+        try {
+            post = new HttpPost(responderURI);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid responder URI: " + responderURI, e);
         }
 
-        return responseData;
-    }
+        post.setHeader(HttpHeaders.ACCEPT, MimeTypes.OCSP_RESPONSE);
+        post.setEntity(new ByteArrayEntity(ocspRequest.getEncoded(), OCSP_REQUEST));
 
-    private static void verifyResponseCode(HttpURLConnection connection) throws IOException {
-        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-            throw new IOException("Invalid http response code from responder: " + connection.getResponseCode());
-        }
-    }
+        // The response is read fully so that the connection is returned to the pool
+        try (CloseableHttpResponse response = ClientHolder.CLIENT.execute(post)) {
+            HttpEntity entity = response.getEntity();
+            int responseCode = response.getStatusLine().getStatusCode();
 
-    private static void sendRequest(HttpURLConnection connection, OCSPReq ocspRequest) throws IOException {
-        try (DataOutputStream outStream = new DataOutputStream(
-                new BufferedOutputStream(connection.getOutputStream()))) {
-            outStream.write(ocspRequest.getEncoded());
+            if (responseCode != HttpStatus.SC_OK) {
+                EntityUtils.consumeQuietly(entity);
+
+                throw new IOException("Invalid http response code from responder: " + responseCode);
+            }
+
+            byte[] responseData = entity != null ? EntityUtils.toByteArray(entity) : null;
+
+            if (responseData == null || responseData.length == 0) {
+                throw new IOException("No response from responder");
+            }
+
+            return responseData;
         }
     }
 
@@ -181,22 +224,6 @@ final class OcspClient {
         }
     }
 
-    private static HttpURLConnection createConnection(String destination) throws IOException {
-        return createConnection(new URL(destination));
-    }
-
-    private static HttpURLConnection createConnection(URL url) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestProperty(MimeUtils.HEADER_CONTENT_TYPE, MimeTypes.OCSP_REQUEST);
-        connection.setRequestProperty("Accept", MimeTypes.OCSP_RESPONSE);
-        connection.setDoOutput(true);
-        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        connection.setReadTimeout(READ_TIMEOUT_MS);
-        connection.connect();
-
-        return connection;
-    }
-
     private static OCSPReq createRequest(X509Certificate subjectCert, X509Certificate issuerCert, PrivateKey signerKey,
             X509Certificate signerCert, String signAlgoId) throws Exception {
         OCSPReqBuilder requestBuilder = new OCSPReqBuilder();
@@ -29,6 +29,7 @@ import ee.ria.xroad.common.CertificationServiceDiagnostics;
 import ee.ria.xroad.common.CertificationServiceStatus;
 import ee.ria.xroad.common.DiagnosticsErrorCodes;
 import ee.ria.xroad.common.OcspResponderStatus;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
@@ -60,10 +61,18 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
@@ -78,6 +87,9 @@ import static java.util.Collections.emptyList;
  * server and providing the responses to the message signer.
  *
  * The certificate status is queried from the server at a fixed interval.
+ * Certificates are queried concurrently, and a certificate is skipped if its
+ * cached response was refreshed recently enough to remain fresh well past the
+ * next refresh cycle.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -100,11 +112,20 @@ public class OcspClientWorker extends AbstractSignerActor {
 
     private CertificationServiceDiagnostics certServDiagnostics;
 
+    private ExecutorService fetchExecutor;
+
     @Override
     public void preStart() throws Exception {
         super.preStart();
         changeChecker = new GlobalConfChangeChecker();
         certServDiagnostics = new CertificationServiceDiagnostics();
+        fetchExecutor = createFetchExecutor();
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        fetchExecutor.shutdownNow();
+        super.postStop();
     }
 
     @Override
@@ -211,19 +232,38 @@ public class OcspClientWorker extends AbstractSignerActor {
 
         log.info("Fetching OCSP responses for {} certificates", certs.size());
 
-        Boolean failed = false;
-        Map<String, OCSPResp> statuses = new HashMap<>();
+        OcspVerifierOptions verifierOptions = new OcspVerifierOptions(
+                GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate());
+
+        Map<X509Certificate, Future<OCSPResp>> results = new LinkedHashMap<>();
 
         for (X509Certificate subject : certs) {
+            results.put(subject, fetchExecutor.submit(() -> queryCertStatus(subject, verifierOptions)));
+        }
+
+        boolean failed = false;
+        Map<String, OCSPResp> statuses = new HashMap<>();
+
+        for (Entry<X509Certificate, Future<OCSPResp>> result : results.entrySet()) {
+            X509Certificate subject = result.getKey();
+
             try {
-                OCSPResp status = queryCertStatus(subject, new OcspVerifierOptions(
-                        GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
+                OCSPResp status = result.getValue().get();
                 if (status != null) {
                     String subjectHash = calculateCertHexHash(subject);
                     statuses.put(subjectHash, status);
                 } else {
                     failed = true;
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+
+                log.error("Interrupted when querying certificate '{}'", subject.getSerialNumber());
+            } catch (ExecutionException e) {
+                failed = true;
+
+                log.error("Error when querying certificate '{}'", subject.getSerialNumber(), e.getCause());
             } catch (Exception e) {
                 failed = true;
 
@@ -349,7 +389,7 @@ public class OcspClientWorker extends AbstractSignerActor {
         }
     }
 
-    private void reportOcspDiagnostics(X509Certificate issuer, String responderURI, int statusCode,
+    private synchronized void reportOcspDiagnostics(X509Certificate issuer, String responderURI, int statusCode,
             OffsetDateTime prevUpdate, OffsetDateTime nextUpdate) {
 
         OcspResponderStatus responderStatus = new OcspResponderStatus(statusCode, responderURI, prevUpdate, nextUpdate);
@@ -386,7 +426,7 @@ public class OcspClientWorker extends AbstractSignerActor {
 
     /**
      * @return true if the response for given certificate does not exist, is expired (in which case it is also
-     * removed from cache) or is not valid
+     * removed from cache), is not valid or does not remain fresh well past the next refresh cycle
      */
     boolean shouldFetchResponse(X509Certificate subject) throws Exception {
         if (!CertUtils.isValid(subject)) {
@@ -424,10 +464,11 @@ public class OcspClientWorker extends AbstractSignerActor {
     }
 
     boolean isCachedOcspResponse(String certHash) throws Exception {
-        // Check if the OCSP response is in the cache
+        // Check if the OCSP response is in the cache and does not need to be refreshed yet
         Date atDate = new Date();
+        Date freshUntil = new Date(atDate.getTime() + TimeUnit.SECONDS.toMillis(getRefreshMarginSeconds()));
         Object isCachedOcspResponseObject = SignerUtil.ask(getOcspResponseManager(getContext()),
-                new IsCachedOcspResponse(certHash, atDate));
+                new IsCachedOcspResponse(certHash, atDate, freshUntil));
 
         if (isCachedOcspResponseObject instanceof Exception) {
             Exception e = (Exception)isCachedOcspResponseObject;
@@ -444,6 +485,30 @@ public class OcspClientWorker extends AbstractSignerActor {
         return isCachedOcspResponse;
     }
 
+    /**
+     * A cached response is kept as long as it remains fresh for the given number of seconds, which keeps
+     * responses that have been refreshed within the last half of the fetch interval. Responses refreshed
+     * in the previous cycle, and responses about to pass their nextUpdate, are refreshed.
+     */
+    private static long getRefreshMarginSeconds() {
+        int freshnessSeconds = GlobalConf.getOcspFreshnessSeconds(true);
+
+        return Math.max(0, freshnessSeconds - getNextOcspFetchIntervalSeconds() / 2);
+    }
+
+    private static ExecutorService createFetchExecutor() {
+        return Executors.newFixedThreadPool(SystemProperties.getOcspFetchThreads(), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "OcspFetcher-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     private List<X509Certificate> getCertChain(X509Certificate cert) {
         try {
             CertChain chain = GlobalConf.getCertChain(GlobalConf.getInstanceIdentifier(), cert);
@@ -69,12 +69,13 @@ public class OcspResponseManager extends AbstractSignerActor {
 
     /**
      * Value object for checking if certificate has OCSP response at
-     * specified date.
+     * specified date that remains fresh until the given later date.
      */
     @Value
     public static class IsCachedOcspResponse implements Serializable {
         private final String certHash;
         private final Date atDate;
+        private final Date freshUntil;
     }
 
     /** Maps a certificate hash to an OCSP response. */
@@ -180,7 +181,7 @@ public class OcspResponseManager extends AbstractSignerActor {
             throws Exception {
         OCSPResp response = responseCache.get(message.getCertHash(), message.getAtDate());
         TokenManager.setOcspResponse(message.getCertHash(), response);
-        sendResponse(Boolean.FALSE);
+        sendResponse(response != null && responseCache.isFresh(message.getCertHash(), message.getFreshUntil()));
     }
 
     OCSPResp getResponse(String certHash) throws Exception {
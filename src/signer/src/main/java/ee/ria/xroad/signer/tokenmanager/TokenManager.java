@@ -47,11 +47,14 @@ import ee.ria.xroad.signer.tokenmanager.token.TokenType;
 import ee.ria.xroad.signer.util.SignerUtil;
 import ee.ria.xroad.signer.util.TokenAndKey;
 
+import lombok.Getter;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -69,12 +72,19 @@ import static java.util.Collections.unmodifiableList;
 
 /**
  * Manages the current state of tokens, their keys and certificates.
+ *
+ * Modifications are made to the token model while holding the class lock,
+ * after which an immutable snapshot of the model, indexed by token id, key id,
+ * certificate id, certificate hash and certificate request id, is published.
+ * Queries are served from the current snapshot without locking.
  */
 @Slf4j
 public final class TokenManager {
 
     private static volatile List<Token> currentTokens = new ArrayList<>();
 
+    private static volatile Snapshot snapshot = new Snapshot(currentTokens);
+
     private static boolean initialized;
 
     // configure the implementation somewhere else if multiple implementations created
@@ -88,7 +98,7 @@ public final class TokenManager {
      *
      * @throws Exception if an error occurs
      */
-    public static void init() throws Exception {
+    public static synchronized void init() throws Exception {
         try {
             TokenConf.getInstance().load();
         } catch (Exception e) {
@@ -96,6 +106,7 @@ public final class TokenManager {
         }
 
         currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+        publish();
 
         initialized = true;
     }
@@ -136,6 +147,7 @@ public final class TokenManager {
             synchronized (TokenManager.class) {
                 result = mergeStrategy.merge(fileTokens, currentTokens);
                 currentTokens = result.getResultTokens();
+                publish();
             }
             if (listener != null) {
                 listener.mergeDone(result.getAddedCertificates());
@@ -154,11 +166,8 @@ public final class TokenManager {
     /**
      * @return list of tokens
      */
-    public static synchronized List<TokenInfo> listTokens() {
-        return unmodifiableList(
-                currentTokens.stream()
-                        .map(t -> t.toDTO())
-                        .collect(Collectors.toList()));
+    public static List<TokenInfo> listTokens() {
+        return snapshot.getTokens();
     }
 
     /**
@@ -187,6 +196,7 @@ public final class TokenManager {
         token.setAvailable(true);
 
         currentTokens.add(token);
+        publish();
 
         return token.toDTO();
     }
@@ -209,13 +219,11 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return the token info DTO for the token id or null of not found
      */
-    public static synchronized TokenInfo getTokenInfo(String tokenId) {
+    public static TokenInfo getTokenInfo(String tokenId) {
         log.trace("getTokenInfo({})", tokenId);
 
-        return currentTokens.stream()
-                .filter(t -> t.getId().equals(tokenId))
-                .map(t -> t.toDTO())
-                .findFirst().orElse(null);
+        TokenEntry token = snapshot.getTokensById().get(tokenId);
+        return token != null ? token.getInfo() : null;
     }
 
     /**
@@ -223,82 +231,82 @@ public final class TokenManager {
      * @return the token info DTO for the token
      * @throws Exception if key was not found
      */
-    public static synchronized TokenInfo findTokenInfoForKeyId(String keyId) {
+    public static TokenInfo findTokenInfoForKeyId(String keyId) {
         log.trace("getTokenInfoForKeyId({})", keyId);
-        String tokenId = findTokenIdForKeyId(keyId);
-        return getTokenInfo(tokenId);
+
+        return findKeyEntry(keyId).getToken().getInfo();
     }
 
     /**
      * @param keyId the key id
      * @return the token and key or throws exception if not found
      */
-    public static synchronized TokenAndKey findTokenAndKey(String keyId) {
+    public static TokenAndKey findTokenAndKey(String keyId) {
         log.trace("findTokenAndKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenAndKey(t.getId(), k.toDTO()))
-                .orElseThrow(() -> keyNotFound(keyId));
+        KeyEntry key = findKeyEntry(keyId);
+        return new TokenAndKey(key.getToken().getInfo().getId(), key.getInfo());
     }
 
     /**
      * @param certHash the certificate hash
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
         log.trace("findTokenAndKeyIdForCertHash({})", certHash);
 
-        String keyId = forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> k.getId())
-                .orElseThrow(() -> certWithHashNotFound(certHash));
+        CertEntry cert = snapshot.getCertsByHash().get(certHash);
+        if (cert == null) {
+            throw certWithHashNotFound(certHash);
+        }
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        KeyEntry key = cert.getKey();
+        return new TokenInfoAndKeyId(key.getToken().getInfo(), key.getInfo().getId());
     }
 
     /**
      * @param certRequestId the certificate request id
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
         log.trace("findTokenAndKeyIdForCertRequestId({})", certRequestId);
 
-        String keyId = forCertRequest((k, c) -> certRequestId.equals(c.getId()),
-                (k, c) -> k.getId())
-                .orElseThrow(() -> csrWithIdNotFound(certRequestId));
+        CertRequestEntry certRequest = snapshot.getCertRequestsById().get(certRequestId);
+        if (certRequest == null) {
+            throw csrWithIdNotFound(certRequestId);
+        }
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        KeyEntry key = certRequest.getKey();
+        return new TokenInfoAndKeyId(key.getToken().getInfo(), key.getInfo().getId());
     }
 
     /**
      * @param keyId the key id
      * @return the token id for the key id or throws exception if not found
      */
-    public static synchronized String findTokenIdForKeyId(String keyId) {
+    public static String findTokenIdForKeyId(String keyId) {
         log.trace("findTokenIdForKeyId({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> t.getId()).orElseThrow(() -> keyNotFound(keyId));
+        return findKeyEntry(keyId).getToken().getInfo().getId();
     }
 
     /**
      * @return the software token id
      */
-    public static synchronized String getSoftwareTokenId() {
-        return forToken(t -> t.getType().equals(SoftwareModuleType.TYPE),
-                t -> t.getId()).orElse(null);
+    public static String getSoftwareTokenId() {
+        return snapshot.getTokens().stream()
+                .filter(t -> t.getType().equals(SoftwareModuleType.TYPE))
+                .map(TokenInfo::getId)
+                .findFirst().orElse(null);
     }
 
     /**
      * @param tokenId the token id
      * @return the module id for the token id or null if not found
      */
-    public static synchronized String getModuleId(String tokenId) {
-        return forToken(t -> t.getId().equals(tokenId),
-                t -> t.getModuleId()).orElse(null);
+    public static String getModuleId(String tokenId) {
+        TokenEntry token = snapshot.getTokensById().get(tokenId);
+        return token != null ? token.getModuleId() : null;
     }
 
     /**
@@ -318,44 +326,44 @@ public final class TokenManager {
      * @param keyId the key id
      * @return the key info for the key id or null if not found
      */
-    public static synchronized KeyInfo getKeyInfo(String keyId) {
+    public static KeyInfo getKeyInfo(String keyId) {
         log.trace("getKeyInfo({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> k.toDTO()).orElse(null);
+        KeyEntry key = snapshot.getKeysById().get(keyId);
+        return key != null ? key.getInfo() : null;
     }
 
     /**
      * @param clientId the client id
      * @return the list of keys for the given client id
      */
-    public static synchronized List<KeyInfo> getKeyInfo(ClientId clientId) {
+    public static List<KeyInfo> getKeyInfo(ClientId clientId) {
         log.trace("getKeyInfo({})", clientId);
 
         List<KeyInfo> keyInfo = new ArrayList<>();
 
-        for (Token token : currentTokens) {
-            if (token.isInActive()) {
+        for (TokenInfo token : snapshot.getTokens()) {
+            if (!token.isActive() || !token.isAvailable()) {
                 // Ignore inactive (not usable) tokens
                 continue;
             }
 
-            for (Key key : token.getKeys()) {
-                if (!key.isValidForSigning()) {
+            for (KeyInfo key : token.getKeyInfo()) {
+                if (!key.isAvailable() || !key.isForSigning()) {
                     // Ignore authentication keys
                     continue;
                 }
 
-                for (Cert cert : key.getCerts()) {
-                    if (cert.isInvalid()) {
+                for (CertificateInfo cert : key.getCerts()) {
+                    if (!cert.isActive() || cert.getMemberId() == null) {
                         // Ignore inactive and invalid certificates
                         continue;
                     }
 
-                    if (certBelongsToMember(cert.toDTO(), clientId)) {
+                    if (certBelongsToMember(cert, clientId)) {
                         log.debug("Found key '{}' for client '{}'",
                                 key.getId(), cert.getMemberId());
-                        keyInfo.add(key.toDTO());
+                        keyInfo.add(key);
                     }
                 }
             }
@@ -382,48 +390,44 @@ public final class TokenManager {
      * @param certId the certificate id
      * @return the certificate info for the certificate id or null if not found
      */
-    public static synchronized CertificateInfo getCertificateInfo(
-            String certId) {
+    public static CertificateInfo getCertificateInfo(String certId) {
         log.trace("getCertificateInfo({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId), (k, c) -> c.toDTO())
-                .orElse(null);
+        CertEntry cert = snapshot.getCertsById().get(certId);
+        return cert != null ? cert.getInfo() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate info for the certificate hash or null
      */
-    public static synchronized CertificateInfo getCertificateInfoForCertHash(
-            String certHash) {
+    public static CertificateInfo getCertificateInfoForCertHash(String certHash) {
         log.trace("getCertificateInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.toDTO()).orElse(null);
+        CertEntry cert = snapshot.getCertsByHash().get(certHash);
+        return cert != null ? cert.getInfo() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate for the certificate hash or null
      */
-    public static synchronized X509Certificate getCertificateForCertHash(
-            String certHash) {
+    public static X509Certificate getCertificateForCertHash(String certHash) {
         log.trace("getCertificateForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.getCertificate()).orElse(null);
+        CertEntry cert = snapshot.getCertsByHash().get(certHash);
+        return cert != null ? cert.getCertificate() : null;
     }
 
     /**
      * @return all certificates
      */
-    public static synchronized List<CertificateInfo> getAllCerts() {
+    public static List<CertificateInfo> getAllCerts() {
         log.trace("getAllCerts()");
 
-        return currentTokens.stream()
-                .flatMap(t -> t.getKeys().stream())
+        return snapshot.getTokens().stream()
+                .flatMap(t -> t.getKeyInfo().stream())
                 .flatMap(k -> k.getCerts().stream())
-                .map(c -> c.toDTO())
                 .collect(Collectors.toList());
     }
 
@@ -442,6 +446,7 @@ public final class TokenManager {
                     c.setOcspResponse(response);
                     return null;
                 });
+        publish();
     }
 
     /**
@@ -449,49 +454,47 @@ public final class TokenManager {
      * @param memberId the member id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String keyId,
-                                                                  ClientId memberId) {
+    public static CertRequestInfo getCertRequestInfo(String keyId, ClientId memberId) {
         log.trace("getCertRequestInfo({}, {})", keyId, memberId);
 
-        Key key = findKey(keyId);
+        KeyInfo key = findKeyEntry(keyId).getInfo();
         return key.getCertRequests().stream()
                 .filter(c -> key.getUsage() == KeyUsageInfo.AUTHENTICATION
                         || memberId.equals(c.getMemberId()))
-                .map(c -> c.toDTO()).findFirst().orElse(null);
+                .findFirst().orElse(null);
     }
 
     /**
      * @param certReqId cert request id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String certReqId) {
+    public static CertRequestInfo getCertRequestInfo(String certReqId) {
         log.trace("getCertRequestInfo({})", certReqId);
 
-        return forCertRequest((k, c) -> certReqId.equals(c.getId()),
-                (k, c) -> c.toDTO())
-                .orElse(null);
+        CertRequestEntry certRequest = snapshot.getCertRequestsById().get(certReqId);
+        return certRequest != null ? certRequest.getInfo() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return key info for the certificate hash
      */
-    public static synchronized KeyInfo getKeyInfoForCertHash(String certHash) {
+    public static KeyInfo getKeyInfoForCertHash(String certHash) {
         log.trace("getKeyInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> k.toDTO()).orElse(null);
+        CertEntry cert = snapshot.getCertsByHash().get(certHash);
+        return cert != null ? cert.getKey().getInfo() : null;
     }
 
     /**
      * @param certId the certificate id
      * @return key info for certificate id
      */
-    public static synchronized KeyInfo getKeyInfoForCertId(String certId) {
+    public static KeyInfo getKeyInfoForCertId(String certId) {
         log.trace("getKeyInfoForCertId({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
-                (k, c) -> k.toDTO()).orElse(null);
+        CertEntry cert = snapshot.getCertsById().get(certId);
+        return cert != null ? cert.getKey().getInfo() : null;
     }
 
     /**
@@ -509,20 +512,20 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return true if token is available
      */
-    public static synchronized boolean isTokenAvailable(String tokenId) {
+    public static boolean isTokenAvailable(String tokenId) {
         log.trace("isTokenAvailable({})", tokenId);
 
-        return findToken(tokenId).isAvailable();
+        return findTokenInfo(tokenId).isAvailable();
     }
 
     /**
      * @param tokenId the token id
      * @return true if token is active (logged in)
      */
-    public static synchronized boolean isTokenActive(String tokenId) {
+    public static boolean isTokenActive(String tokenId) {
         log.trace("isTokenActive({})", tokenId);
 
-        return findToken(tokenId).isActive();
+        return findTokenInfo(tokenId).isActive();
     }
 
     /**
@@ -540,6 +543,7 @@ public final class TokenManager {
         Token token = findToken(tokenId);
         token.setAvailable(available);
         token.setModuleId(tokenType.getModuleType());
+        publish();
     }
 
     /**
@@ -552,6 +556,7 @@ public final class TokenManager {
         log.trace("setTokenAvailable({}, {})", tokenId, available);
 
         findToken(tokenId).setAvailable(available);
+        publish();
     }
 
     /**
@@ -565,6 +570,7 @@ public final class TokenManager {
         log.trace("setTokenActive({}, {})", tokenId, active);
 
         findToken(tokenId).setActive(active);
+        publish();
     }
 
     /**
@@ -578,16 +584,17 @@ public final class TokenManager {
         log.trace("setTokenFriendlyName({}, {})", tokenId, friendlyName);
 
         findToken(tokenId).setFriendlyName(friendlyName);
+        publish();
     }
 
     /**
      * @param tokenId the token if
      * @return the token status info
      */
-    public static synchronized TokenStatusInfo getTokenStatus(String tokenId) {
+    public static TokenStatusInfo getTokenStatus(String tokenId) {
         log.trace("getTokenStatus({})", tokenId);
 
-        return findToken(tokenId).getStatus();
+        return findTokenInfo(tokenId).getStatus();
     }
 
     /**
@@ -601,6 +608,7 @@ public final class TokenManager {
         log.trace("setTokenStatus({}, {})", tokenId, status);
 
         findToken(tokenId).setStatus(status);
+        publish();
     }
 
     /**
@@ -614,16 +622,17 @@ public final class TokenManager {
         log.trace("setKeyAvailable({}, {})", keyId, available);
 
         findKey(keyId).setAvailable(available);
+        publish();
     }
 
     /**
      * @param keyId the key id
      * @return true if key is available
      */
-    public static synchronized boolean isKeyAvailable(String keyId) {
+    public static boolean isKeyAvailable(String keyId) {
         log.trace("isKeyAvailable()");
 
-        return findKey(keyId).isAvailable();
+        return findKeyInfo(keyId).isAvailable();
     }
 
     /**
@@ -637,6 +646,7 @@ public final class TokenManager {
         log.trace("setKeyFriendlyName({}, {})", keyId, friendlyName);
 
         findKey(keyId).setFriendlyName(friendlyName);
+        publish();
     }
 
     /**
@@ -649,6 +659,7 @@ public final class TokenManager {
         log.trace("setKeyLabel({}, {})", keyId, label);
 
         findKey(keyId).setLabel(label);
+        publish();
     }
 
     /**
@@ -662,6 +673,7 @@ public final class TokenManager {
         log.trace("setKeyUsage({}, {})", keyId, keyUsage);
 
         findKey(keyId).setUsage(keyUsage);
+        publish();
     }
 
     /**
@@ -681,6 +693,7 @@ public final class TokenManager {
         key.setPublicKey(publicKeyBase64);
 
         token.addKey(key);
+        publish();
 
         return key.toDTO();
     }
@@ -694,8 +707,11 @@ public final class TokenManager {
     public static synchronized boolean removeKey(String keyId) {
         log.trace("removeKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
+        boolean removed = forKey((t, k) -> k.getId().equals(keyId),
                 (t, k) -> t.getKeys().remove(k)).orElse(false);
+        publish();
+
+        return removed;
     }
 
     /**
@@ -709,6 +725,7 @@ public final class TokenManager {
         log.trace("setPublicKey({}, {})", keyId, publicKeyBase64);
 
         findKey(keyId).setPublicKey(publicKeyBase64);
+        publish();
     }
 
     /**
@@ -726,6 +743,7 @@ public final class TokenManager {
         cert.setCertificate(certBytes);
 
         key.addCert(cert);
+        publish();
     }
 
     /**
@@ -749,6 +767,7 @@ public final class TokenManager {
         cert.setStatus(certInfo.getStatus());
 
         key.addCert(cert);
+        publish();
     }
 
     /**
@@ -762,6 +781,7 @@ public final class TokenManager {
         log.trace("setCertActive({}, {})", certId, active);
 
         findCert(certId).setActive(active);
+        publish();
     }
 
     /**
@@ -775,6 +795,7 @@ public final class TokenManager {
         log.trace("setCertStatus({}, {})", certId, status);
 
         findCert(certId).setStatus(status);
+        publish();
     }
 
     /**
@@ -786,8 +807,11 @@ public final class TokenManager {
     public static synchronized boolean removeCert(String certId) {
         log.trace("removeCert({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
+        boolean removed = forCert((k, c) -> c.getId().equals(certId),
                 (k, c) -> k.getCerts().remove(c)).orElse(false);
+        publish();
+
+        return removed;
     }
 
     /**
@@ -813,6 +837,7 @@ public final class TokenManager {
         }
 
         key.setUsage(keyUsage);
+        publish();
 
         for (CertRequest certRequest : key.getCertRequests()) {
             ClientId crMember = certRequest.getMemberId();
@@ -830,6 +855,7 @@ public final class TokenManager {
 
         String certId = SignerUtil.randomId();
         key.addCertRequest(new CertRequest(certId, memberId, subjectName));
+        publish();
 
         log.info("Added new certificate request (memberId: {}, "
                         + "subjectId: {}) under key {}",
@@ -847,7 +873,7 @@ public final class TokenManager {
     public static synchronized String removeCertRequest(String certReqId) {
         log.trace("removeCertRequest({})", certReqId);
 
-        return forCertRequest((k, c) -> c.getId().equals(certReqId),
+        String keyId = forCertRequest((k, c) -> c.getId().equals(certReqId),
                 (k, c) -> {
                     if (!k.getCertRequests().remove(c)) {
                         return null;
@@ -855,6 +881,9 @@ public final class TokenManager {
 
                     return k.getId();
                 }).orElse(null);
+        publish();
+
+        return keyId;
     }
 
     /**
@@ -865,16 +894,22 @@ public final class TokenManager {
      */
     public static synchronized void setTokenInfo(String tokenId, Map<String, String> info) {
         findToken(tokenId).setInfo(info);
+        publish();
     }
 
     /**
      * @param tokenId the token id
      * @return true if batch signing is enabled for a token
      */
-    public static synchronized boolean isBatchSigningEnabled(String tokenId) {
+    public static boolean isBatchSigningEnabled(String tokenId) {
         log.trace("isBatchSigningEnabled({})", tokenId);
 
-        return findToken(tokenId).isBatchSigningEnabled();
+        TokenEntry token = snapshot.getTokensById().get(tokenId);
+        if (token == null) {
+            throw tokenNotFound(tokenId);
+        }
+
+        return token.isBatchSigningEnabled();
     }
 
     // ------------------------------------------------------------------------
@@ -956,6 +991,23 @@ public final class TokenManager {
                 .orElseThrow(() -> certWithIdNotFound(certId));
     }
 
+    private static KeyEntry findKeyEntry(String keyId) {
+        KeyEntry key = snapshot.getKeysById().get(keyId);
+        if (key == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return key;
+    }
+
+    /**
+     * Publishes a new snapshot of the current tokens. Must be called while
+     * holding the class lock after every modification of the token model.
+     */
+    private static void publish() {
+        snapshot = new Snapshot(currentTokens);
+    }
+
     private static String getDefaultFriendlyName(TokenType tokenType) {
         String name = tokenType.getModuleType();
 
@@ -973,4 +1025,79 @@ public final class TokenManager {
 
         return name;
     }
+
+    /**
+     * Immutable view of the tokens, their keys and certificates with
+     * indexes for the lookups.
+     */
+    @Getter
+    private static final class Snapshot {
+        private final List<TokenInfo> tokens;
+        private final Map<String, TokenEntry> tokensById = new HashMap<>();
+        private final Map<String, KeyEntry> keysById = new HashMap<>();
+        private final Map<String, CertEntry> certsById = new HashMap<>();
+        private final Map<String, CertEntry> certsByHash = new HashMap<>();
+        private final Map<String, CertRequestEntry> certRequestsById = new HashMap<>();
+
+        Snapshot(List<Token> currentTokens) {
+            List<TokenInfo> tokenInfos = new ArrayList<>();
+
+            for (Token token : currentTokens) {
+                TokenInfo tokenInfo = token.toDTO();
+                tokenInfos.add(tokenInfo);
+
+                TokenEntry tokenEntry = new TokenEntry(tokenInfo, token.getModuleId(),
+                        token.isBatchSigningEnabled());
+                tokensById.putIfAbsent(tokenInfo.getId(), tokenEntry);
+
+                // the DTO lists are in the same order as the model lists
+                for (int i = 0; i < token.getKeys().size(); i++) {
+                    Key key = token.getKeys().get(i);
+                    KeyEntry keyEntry = new KeyEntry(tokenEntry, tokenInfo.getKeyInfo().get(i));
+                    keysById.putIfAbsent(key.getId(), keyEntry);
+
+                    for (int j = 0; j < key.getCerts().size(); j++) {
+                        Cert cert = key.getCerts().get(j);
+                        CertEntry certEntry = new CertEntry(keyEntry, keyEntry.getInfo().getCerts().get(j),
+                                cert.getCertificate());
+                        certsById.putIfAbsent(cert.getId(), certEntry);
+                        certsByHash.putIfAbsent(cert.getHash(), certEntry);
+                    }
+
+                    for (CertRequestInfo certRequest : keyEntry.getInfo().getCertRequests()) {
+                        certRequestsById.putIfAbsent(certRequest.getId(),
+                                new CertRequestEntry(keyEntry, certRequest));
+                    }
+                }
+            }
+
+            this.tokens = unmodifiableList(tokenInfos);
+        }
+    }
+
+    @Value
+    private static class TokenEntry {
+        TokenInfo info;
+        String moduleId;
+        boolean batchSigningEnabled;
+    }
+
+    @Value
+    private static class KeyEntry {
+        TokenEntry token;
+        KeyInfo info;
+    }
+
+    @Value
+    private static class CertEntry {
+        KeyEntry key;
+        CertificateInfo info;
+        X509Certificate certificate;
+    }
+
+    @Value
+    private static class CertRequestEntry {
+        KeyEntry key;
+        CertRequestInfo info;
+    }
 }
@@ -173,17 +173,27 @@ public abstract class AbstractTokenWorker extends AbstractUpdateableActor {
         sendSuccessResponse();
     }
 
-    private void handleCalculateSignature(CalculateSignature signRequest) throws Exception {
+    protected void handleCalculateSignature(CalculateSignature signRequest) throws Exception {
+        sendResponse(calculateSignature(signRequest));
+    }
+
+    /**
+     * Calculates the signature for the request. Does not access the actor
+     * context, so it may be called outside the actor.
+     * @param signRequest the signing request
+     * @return the calculated signature or the error that occurred
+     */
+    protected CalculatedSignature calculateSignature(CalculateSignature signRequest) {
         try {
             byte data[] = SignerUtil.createDataToSign(signRequest.getDigest(), signRequest.getSignatureAlgorithmId());
 
             byte[] signature = sign(signRequest.getKeyId(), signRequest.getSignatureAlgorithmId(), data);
-            sendResponse(new CalculatedSignature(signRequest, signature, null));
+            return new CalculatedSignature(signRequest, signature, null);
         } catch (Exception e) { // catch-log-rethrow
             log.error("Error while signing with key '{}'", signRequest.getKeyId(), e);
 
             CodedException tr = translateError(customizeException(e)).withPrefix(X_CANNOT_SIGN);
-            sendResponse(new CalculatedSignature(signRequest, null, tr));
+            return new CalculatedSignature(signRequest, null, tr);
         }
     }
 
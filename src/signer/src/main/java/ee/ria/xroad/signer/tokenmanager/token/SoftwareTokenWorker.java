@@ -37,8 +37,10 @@ import ee.ria.xroad.signer.protocol.message.ActivateToken;
 import ee.ria.xroad.signer.protocol.message.GenerateKey;
 import ee.ria.xroad.signer.protocol.message.InitSoftwareToken;
 import ee.ria.xroad.signer.tokenmanager.TokenManager;
+import ee.ria.xroad.signer.util.CalculateSignature;
 import ee.ria.xroad.signer.util.SignerUtil;
 
+import akka.actor.ActorRef;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.FileNotFoundException;
@@ -50,8 +52,10 @@ import java.security.KeyPair;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.Signature;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_PIN_INCORRECT;
@@ -90,7 +94,18 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
     // Use no digesting algorithm, since the input data is already a digest
     private static final String SIGNATURE_ALGORITHM = "NONEwithRSA";
 
-    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    private static final ThreadLocal<Signature> SIGNATURE = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance(SIGNATURE_ALGORITHM);
+        } catch (Exception e) {
+            throw new CodedException(X_INTERNAL_ERROR, e);
+        }
+    });
+
+    // accessed by the signing threads as well as the actor
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    private ExecutorService signingExecutor;
 
     /**
      * Creates new worker.
@@ -101,6 +116,29 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         super(tokenInfo);
     }
 
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+
+        int signingThreads = SystemProperties.getSignerSoftwareTokenSigningThreads();
+        if (signingThreads > 1) {
+            log.info("Signing with software token using {} threads", signingThreads);
+
+            signingExecutor = Executors.newFixedThreadPool(signingThreads);
+        }
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        try {
+            if (signingExecutor != null) {
+                signingExecutor.shutdown();
+            }
+        } finally {
+            super.postStop();
+        }
+    }
+
     @Override
     protected void onUpdate() throws Exception {
         log.trace("onUpdate()");
@@ -128,6 +166,19 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         }
     }
 
+    @Override
+    protected void handleCalculateSignature(CalculateSignature signRequest) throws Exception {
+        if (signingExecutor == null) {
+            super.handleCalculateSignature(signRequest);
+            return;
+        }
+
+        ActorRef sender = getSender();
+        ActorRef self = getSelf();
+
+        signingExecutor.execute(() -> sender.tell(calculateSignature(signRequest), self));
+    }
+
     @Override
     protected void activateToken(ActivateToken message) throws Exception {
         if (message.isActivate()) {
@@ -171,6 +222,8 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         log.info("Deleting key file {}", path);
 
         Files.deleteIfExists(path);
+
+        privateKeys.remove(keyId);
     }
 
     @Override
@@ -200,7 +253,11 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
         log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
 
-        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+        return sign(key, data);
+    }
+
+    static byte[] sign(PrivateKey key, byte[] data) throws Exception {
+        Signature signature = SIGNATURE.get();
         signature.initSign(key);
         signature.update(data);
 
@@ -346,7 +403,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         setTokenActive(tokenId, false);
     }
 
-    private PrivateKey loadPrivateKey(String keyId) throws Exception {
+    protected PrivateKey loadPrivateKey(String keyId) throws Exception {
         String keyStoreFile = getKeyStoreFileName(keyId);
 
         log.trace("Loading pkcs#12 private key '{}' from file '{}'", keyId, keyStoreFile);
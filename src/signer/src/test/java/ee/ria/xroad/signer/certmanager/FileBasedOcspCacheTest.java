@@ -45,6 +45,7 @@ import java.util.Date;
 
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -105,6 +106,32 @@ public class FileBasedOcspCacheTest {
         assertNull(spy.get("foo"));
     }
 
+    /**
+     * Test that a response read from disk is subject to the same next update
+     * check as the responses kept in memory.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void responseFromFilePastNextUpdate() throws Exception {
+        Date thisUpdate = Date.from(Instant.now().minus(10, ChronoUnit.MINUTES));
+        Date nextUpdate = Date.from(Instant.now().minus(1, ChronoUnit.MINUTES));
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(subject, issuer,
+                signer, signerKey, CertificateStatus.GOOD, thisUpdate, nextUpdate);
+
+        FileBasedOcspCache cache = new FileBasedOcspCache();
+        FileBasedOcspCache spy = Mockito.spy(cache);
+
+        Mockito.doReturn(ocsp).when(spy).loadResponseFromFile(
+                Mockito.any(File.class));
+
+        assertNull(spy.get("foo"));
+        assertNull(spy.get("foo"));
+
+        Mockito.verify(spy, Mockito.times(2)).loadResponseFromFile(
+                Mockito.any(File.class));
+        assertTrue(spy.entrySet().isEmpty());
+    }
+
     /**
      * Test.
      * @throws Exception if an error occurs
@@ -68,8 +68,11 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
@@ -92,6 +95,7 @@ public class OcspClientTest {
     private static byte[] responseData;
 
     private static final Map<String, OCSPResp> OCSP_RESPONSES = new HashMap<>();
+    private static final Set<Integer> CLIENT_PORTS = ConcurrentHashMap.newKeySet();
     private static X509Certificate ocspResponderCert;
 
     private TestActorRef<TestOcspClient> testActor;
@@ -246,6 +250,30 @@ public class OcspClientTest {
         OcspClient.fetchResponse(RESPONDER_URI, subject, issuer, null, null, null);
     }
 
+    /**
+     * Test.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void responsesFetchedOverKeepAliveConnection() throws Exception {
+        X509Certificate subject = getDefaultClientCert();
+
+        GlobalConf.reload(getTestGlobalConf());
+
+        Date thisUpdate = Date.from(Instant.now().plus(1, ChronoUnit.DAYS));
+
+        responseData = OcspTestUtils.createOCSPResponse(subject, GlobalConf.getCaCert("EE", subject), ocspResponderCert,
+                getOcspSignerKey(), CertificateStatus.GOOD, thisUpdate, null).getEncoded();
+
+        X509Certificate issuer = GlobalConf.getCaCert("EE", subject);
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(OcspClient.fetchResponse(RESPONDER_URI, subject, issuer, null, null, null));
+        }
+
+        assertEquals(1, CLIENT_PORTS.size());
+    }
+
     // ------------------------------------------------------------------------
 
     /**
@@ -266,6 +294,7 @@ public class OcspClientTest {
     @Before
     public void startup() throws Exception {
         OCSP_RESPONSES.clear();
+        CLIENT_PORTS.clear();
 
         if (ocspResponderCert == null) {
             ocspResponderCert = TestCertUtil.getOcspSigner().certChain[0];
@@ -356,6 +385,7 @@ public class OcspClientTest {
         public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
                 throws IOException, ServletException {
             try {
+                CLIENT_PORTS.add(request.getRemotePort());
                 response.setContentType(responseContentType);
 
                 if (responseData != null) {
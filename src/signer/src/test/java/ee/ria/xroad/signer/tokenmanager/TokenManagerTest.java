@@ -0,0 +1,228 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.signer.protocol.dto.CertRequestInfo;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.RestoreSystemProperties;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that the lookups of {@link TokenManager} by id and by hash agree with each other
+ * and with the token listings after every modification.
+ */
+public class TokenManagerTest {
+
+    private static final Path KEY_CONF = Paths.get("./build/resources/test/mergetesting/"
+            + "keyconf_base_no_duplicate_keyIds.xml");
+
+    private static final String KEY_ID = "tokenmanagertestkey";
+    private static final ClientId MEMBER = ClientId.create("EE", "GOV", "tokenmanagertest");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public final RestoreSystemProperties restoreSystemProperties = new RestoreSystemProperties();
+
+    private String tokenId;
+
+    /**
+     * Init the {@link TokenManager} from a copy of a key configuration.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        File keyConf = temporaryFolder.newFile("keyconf-testing.xml");
+        Files.copy(KEY_CONF, keyConf.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        System.setProperty(SystemProperties.KEY_CONFIGURATION_FILE, keyConf.getPath());
+
+        TokenManager.init();
+
+        tokenId = TokenManager.listTokens().get(0).getId();
+    }
+
+    @Test
+    public void addAndRemoveKey() {
+        TokenManager.addKey(tokenId, KEY_ID, "publickey");
+
+        assertEquals(KEY_ID, TokenManager.findKeyInfo(KEY_ID).getId());
+        assertEquals(tokenId, TokenManager.findTokenIdForKeyId(KEY_ID));
+        assertEquals(tokenId, TokenManager.findTokenAndKey(KEY_ID).getTokenId());
+        assertEquals(tokenId, TokenManager.findTokenInfoForKeyId(KEY_ID).getId());
+        assertTrue(keyIds(TokenManager.listKeys(tokenId)).contains(KEY_ID));
+
+        TokenManager.setKeyFriendlyName(KEY_ID, "friendly");
+
+        assertEquals("friendly", TokenManager.findKeyInfo(KEY_ID).getFriendlyName());
+        assertEquals("friendly", TokenManager.findTokenAndKey(KEY_ID).getKey().getFriendlyName());
+        assertEquals("friendly", findKey(TokenManager.findTokenInfo(tokenId).getKeyInfo(), KEY_ID)
+                .getFriendlyName());
+
+        assertTrue(TokenManager.removeKey(KEY_ID));
+
+        assertNull(TokenManager.getKeyInfo(KEY_ID));
+        assertFalse(keyIds(TokenManager.listKeys(tokenId)).contains(KEY_ID));
+        assertNotFound(() -> TokenManager.findTokenIdForKeyId(KEY_ID));
+        assertNotFound(() -> TokenManager.findTokenAndKey(KEY_ID));
+    }
+
+    @Test
+    public void moveCertBetweenKeys() {
+        // the hash index holds one of the certificates with the same contents
+        List<CertificateInfo> certs = TokenManager.getAllCerts();
+        CertificateInfo existing = certs.stream()
+                .filter(c -> certs.stream().filter(o -> hash(o).equals(hash(c))).count() == 1)
+                .findFirst().orElseThrow(() -> new IllegalStateException("test setup failure"));
+        String hash = hash(existing);
+        String oldKeyId = TokenManager.getKeyInfoForCertHash(hash).getId();
+
+        assertEquals(oldKeyId, TokenManager.getKeyInfoForCertId(existing.getId()).getId());
+
+        assertTrue(TokenManager.removeCert(existing.getId()));
+
+        assertNull(TokenManager.getCertificateInfo(existing.getId()));
+        assertNull(TokenManager.getCertificateInfoForCertHash(hash));
+        assertNull(TokenManager.getCertificateForCertHash(hash));
+        assertNull(TokenManager.getKeyInfoForCertHash(hash));
+        assertNull(TokenManager.getKeyInfoForCertId(existing.getId()));
+        assertFalse(certIds(TokenManager.findKeyInfo(oldKeyId).getCerts()).contains(existing.getId()));
+        assertFalse(certIds(TokenManager.getAllCerts()).contains(existing.getId()));
+        assertNotFound(() -> TokenManager.findTokenAndKeyIdForCertHash(hash));
+
+        TokenManager.addKey(tokenId, KEY_ID, "publickey");
+        TokenManager.addCert(KEY_ID, existing.getCertificateBytes());
+
+        CertificateInfo added = TokenManager.getCertificateInfoForCertHash(hash);
+        assertNotNull(added);
+        assertEquals(added, TokenManager.findCertificateInfo(added.getId()));
+        assertNotNull(TokenManager.getCertificateForCertHash(hash));
+        assertEquals(KEY_ID, TokenManager.getKeyInfoForCertHash(hash).getId());
+        assertEquals(KEY_ID, TokenManager.getKeyInfoForCertId(added.getId()).getId());
+        assertEquals(KEY_ID, TokenManager.findTokenAndKeyIdForCertHash(hash).getKeyId());
+        assertEquals(tokenId, TokenManager.findTokenAndKeyIdForCertHash(hash).getTokenInfo().getId());
+        assertTrue(certIds(TokenManager.findKeyInfo(KEY_ID).getCerts()).contains(added.getId()));
+        assertTrue(certIds(TokenManager.getAllCerts()).contains(added.getId()));
+
+        TokenManager.setCertActive(added.getId(), !added.isActive());
+        TokenManager.setCertStatus(added.getId(), "teststatus");
+
+        CertificateInfo updated = TokenManager.findCertificateInfo(added.getId());
+        assertEquals(!added.isActive(), updated.isActive());
+        assertEquals("teststatus", updated.getStatus());
+        assertEquals(updated, TokenManager.getCertificateInfoForCertHash(hash));
+        assertEquals(updated, TokenManager.getKeyInfoForCertHash(hash).getCerts().get(0));
+        assertEquals(updated, TokenManager.findTokenAndKeyIdForCertHash(hash).getKeyInfo().getCerts().get(0));
+
+        assertTrue(TokenManager.removeKey(KEY_ID));
+
+        assertNull(TokenManager.getCertificateInfo(added.getId()));
+        assertNull(TokenManager.getCertificateInfoForCertHash(hash));
+        assertNull(TokenManager.getKeyInfoForCertHash(hash));
+        assertNull(TokenManager.getKeyInfoForCertId(added.getId()));
+    }
+
+    @Test
+    public void addAndRemoveCertRequest() {
+        TokenManager.addKey(tokenId, KEY_ID, "publickey");
+
+        String certRequestId = TokenManager.addCertRequest(KEY_ID, MEMBER, "CN=test", KeyUsageInfo.SIGNING);
+
+        CertRequestInfo certRequest = TokenManager.getCertRequestInfo(certRequestId);
+        assertNotNull(certRequest);
+        assertEquals(MEMBER, certRequest.getMemberId());
+        assertEquals(certRequest, TokenManager.getCertRequestInfo(KEY_ID, MEMBER));
+        assertEquals(KeyUsageInfo.SIGNING, TokenManager.findKeyInfo(KEY_ID).getUsage());
+        assertEquals(KEY_ID, TokenManager.findTokenAndKeyIdForCertRequestId(certRequestId).getKeyId());
+        assertEquals(certRequest, TokenManager.findKeyInfo(KEY_ID).getCertRequests().get(0));
+
+        // adding the same request again returns the existing one
+        assertEquals(certRequestId, TokenManager.addCertRequest(KEY_ID, MEMBER, "cn=TEST", KeyUsageInfo.SIGNING));
+        assertEquals(1, TokenManager.findKeyInfo(KEY_ID).getCertRequests().size());
+
+        assertEquals(KEY_ID, TokenManager.removeCertRequest(certRequestId));
+
+        assertNull(TokenManager.getCertRequestInfo(certRequestId));
+        assertNull(TokenManager.getCertRequestInfo(KEY_ID, MEMBER));
+        assertTrue(TokenManager.findKeyInfo(KEY_ID).getCertRequests().isEmpty());
+        assertNotFound(() -> TokenManager.findTokenAndKeyIdForCertRequestId(certRequestId));
+        assertNull(TokenManager.removeCertRequest(certRequestId));
+    }
+
+    private static void assertNotFound(Runnable lookup) {
+        try {
+            lookup.run();
+            fail("Lookup should have failed");
+        } catch (CodedException expected) {
+            // expected
+        }
+    }
+
+    private static String hash(CertificateInfo cert) {
+        try {
+            return calculateCertHexHash(cert.getCertificateBytes());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static KeyInfo findKey(List<KeyInfo> keys, String keyId) {
+        return keys.stream().filter(k -> keyId.equals(k.getId())).findFirst().orElse(null);
+    }
+
+    private static List<String> keyIds(List<KeyInfo> keys) {
+        return keys.stream().map(KeyInfo::getId).collect(Collectors.toList());
+    }
+
+    private static List<String> certIds(List<CertificateInfo> certs) {
+        return certs.stream().map(CertificateInfo::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.signer.util.SignerUtil;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.security.PrivateKey;
+import java.util.concurrent.CountDownLatch;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256WITHRSA_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+
+/**
+ * Measures the software token signing throughput with a growing number of signing threads, doubling the
+ * number of threads until the number of available processors is reached. Each thread signs with the same
+ * cached private key using its own Signature instance, as the software token signing threads do.
+ */
+@Slf4j
+public final class SoftwareTokenSigningBenchmark {
+    private static final int DEFAULT_SECONDS = 5;
+
+    private static final Options OPTIONS = getOptions();
+
+    private SoftwareTokenSigningBenchmark() {
+    }
+
+    /**
+     * Main function.
+     * @param args args
+     * @throws Exception if something goes wrong.
+     */
+    public static void main(String args[]) throws Exception {
+        CommandLine cmd = parseCommandLine(args);
+
+        if (cmd.hasOption("help")) {
+            usage();
+
+            System.exit(0);
+        }
+
+        int maxThreads = getIntOption(cmd, "threads", Runtime.getRuntime().availableProcessors());
+        int seconds = getIntOption(cmd, "seconds", DEFAULT_SECONDS);
+        int keyLength = getIntOption(cmd, "key-length", SystemProperties.getSignerKeyLength());
+
+        PrivateKey key = SoftwareTokenUtil.generateKeyPair(keyLength).getPrivate();
+        byte[] data = SignerUtil.createDataToSign(calculateDigest(SHA256_ID, new byte[] {1, 2, 3}),
+                SHA256WITHRSA_ID);
+
+        log.info("processors: {}, key length: {}, duration: {} s",
+                Runtime.getRuntime().availableProcessors(), keyLength, seconds);
+
+        // warm up
+        sign(key, data, System.currentTimeMillis() + 1000);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            log.info("threads: {}, {} signatures/s", threads, run(key, data, threads, seconds));
+        }
+    }
+
+    private static long run(PrivateKey key, byte[] data, int threads, int seconds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+        long[] signatures = new long[threads];
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+
+            new Thread(() -> {
+                signatures[thread] = sign(key, data, deadline);
+
+                done.countDown();
+            }).start();
+        }
+
+        done.await();
+
+        long total = 0;
+
+        for (long count : signatures) {
+            total += count;
+        }
+
+        return total / seconds;
+    }
+
+    private static long sign(PrivateKey key, byte[] data, long deadline) {
+        long signatures = 0;
+
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                SoftwareTokenWorker.sign(key, data);
+
+                signatures++;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Signing failed", e);
+        }
+
+        return signatures;
+    }
+
+    private static int getIntOption(CommandLine cmd, String name, int defaultValue) {
+        return cmd.getOptionValue(name) != null ? Integer.parseInt(cmd.getOptionValue(name)) : defaultValue;
+    }
+
+    private static CommandLine parseCommandLine(String args[]) {
+        try {
+            return new BasicParser().parse(OPTIONS, args);
+        } catch (ParseException e) {
+            log.error("Parsing command line failed: {}", e.getMessage());
+
+            usage();
+
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    private static Options getOptions() {
+        Options options = new Options();
+
+        addOption(options, "t", "threads", "maximum number of signing threads (default: available processors)");
+        addOption(options, "s", "seconds", "duration of a run in seconds (default: " + DEFAULT_SECONDS + ")");
+        addOption(options, "k", "key-length", "RSA key length (default: signer key length)");
+
+        Option usage = new Option("h", "help", false, "help");
+        usage.setRequired(false);
+        options.addOption(usage);
+
+        return options;
+    }
+
+    private static void addOption(Options options, String opt, String longOpt, String description) {
+        Option option = new Option(opt, longOpt, true, description);
+        option.setRequired(false);
+        options.addOption(option);
+    }
+
+    private static void usage() {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("SoftwareTokenSigningBenchmark", OPTIONS);
+    }
+}
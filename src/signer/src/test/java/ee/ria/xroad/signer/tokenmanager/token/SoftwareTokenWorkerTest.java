@@ -0,0 +1,216 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.protocol.message.DeleteKey;
+import ee.ria.xroad.signer.protocol.message.SuccessResponse;
+import ee.ria.xroad.signer.tokenmanager.TokenManager;
+import ee.ria.xroad.signer.util.CalculateSignature;
+import ee.ria.xroad.signer.util.CalculatedSignature;
+
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.TestActorRef;
+import akka.testkit.javadsl.TestKit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.RestoreSystemProperties;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256WITHRSA_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static ee.ria.xroad.signer.tokenmanager.token.SoftwareTokenUtil.getKeyStoreFileName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests signing with the software token on several signing threads.
+ */
+public class SoftwareTokenWorkerTest {
+
+    private static final int SIGNING_THREADS = 4;
+    private static final int SIGNATURES = 100;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private static final String KEY_ID = "softwaretokenworkertestkey";
+
+    private static KeyPair keyPair;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public final RestoreSystemProperties restoreSystemProperties = new RestoreSystemProperties();
+
+    private ActorSystem system;
+    private TestKit probe;
+    private TestActorRef<TestSoftwareTokenWorker> worker;
+    private String tokenId;
+
+    /**
+     * Creates an active software token with one key and its worker.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        if (keyPair == null) {
+            keyPair = SoftwareTokenUtil.generateKeyPair(SystemProperties.getSignerKeyLength());
+        }
+
+        File keyConf = temporaryFolder.newFile("keyconf.xml");
+        Files.copy(Paths.get("./build/resources/test/mergetesting/keyconf_base_no_duplicate_keyIds.xml"),
+                keyConf.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        System.setProperty(SystemProperties.KEY_CONFIGURATION_FILE, keyConf.getPath());
+        System.setProperty(SystemProperties.SIGNER_SOFTWARE_TOKEN_SIGNING_THREADS, String.valueOf(SIGNING_THREADS));
+
+        TokenManager.init();
+
+        TokenInfo tokenInfo = TokenManager.createToken(new SoftwareTokenType());
+        tokenId = tokenInfo.getId();
+
+        TokenManager.setTokenActive(tokenId, true);
+        TokenManager.addKey(tokenId, KEY_ID, null);
+        TokenManager.setKeyAvailable(KEY_ID, true);
+
+        // the worker loads the private key only if the key store file exists
+        assertTrue(new File(getKeyStoreFileName(KEY_ID)).createNewFile());
+
+        system = ActorSystem.create("SoftwareTokenWorkerTest");
+        probe = new TestKit(system);
+        worker = TestActorRef.create(system, Props.create(TestSoftwareTokenWorker.class, tokenInfo,
+                new SoftwareTokenType()));
+    }
+
+    /**
+     * Stops the worker.
+     */
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    @Test
+    public void signsConcurrently() throws Exception {
+        Map<CalculateSignature, byte[]> requests = new HashMap<>();
+
+        for (int i = 0; i < SIGNATURES; i++) {
+            byte[] data = ("data" + i).getBytes(StandardCharsets.UTF_8);
+            CalculateSignature request = signRequest(data);
+
+            requests.put(request, data);
+            worker.tell(request, probe.getRef());
+        }
+
+        Set<CalculateSignature> signed = new HashSet<>();
+
+        for (Object response : probe.receiveN(SIGNATURES, TIMEOUT)) {
+            CalculatedSignature signature = (CalculatedSignature) response;
+
+            assertNull(signature.getException());
+            assertTrue(verify(requests.get(signature.getRequest()), signature.getSignature()));
+
+            signed.add(signature.getRequest());
+        }
+
+        assertEquals(requests.keySet(), signed);
+        assertEquals(SIGNING_THREADS, worker.underlyingActor().signingThreads.size());
+    }
+
+    @Test
+    public void deletingKeyClearsCachedPrivateKey() throws Exception {
+        worker.tell(signRequest(new byte[] {0}), probe.getRef());
+        assertNull(probe.expectMsgClass(TIMEOUT, CalculatedSignature.class).getException());
+
+        worker.tell(new DeleteKey(KEY_ID, true), probe.getRef());
+        probe.expectMsgClass(TIMEOUT, SuccessResponse.class);
+
+        assertNull(TokenManager.getKeyInfo(KEY_ID));
+
+        // a key with the same id can not be used for signing without a key store
+        TokenManager.addKey(tokenId, KEY_ID, null);
+        TokenManager.setKeyAvailable(KEY_ID, true);
+
+        worker.tell(signRequest(new byte[] {1}), probe.getRef());
+        assertNotNull(probe.expectMsgClass(TIMEOUT, CalculatedSignature.class).getException());
+    }
+
+    private CalculateSignature signRequest(byte[] data) throws Exception {
+        return new CalculateSignature(probe.getRef(), KEY_ID, SHA256WITHRSA_ID, calculateDigest(SHA256_ID, data));
+    }
+
+    private static boolean verify(byte[] data, byte[] signature) throws Exception {
+        Signature verifier = Signature.getInstance("SHA256withRSA");
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+
+        return verifier.verify(signature);
+    }
+
+    /**
+     * Software token worker reading the private key from memory instead of a PIN protected key store.
+     */
+    static class TestSoftwareTokenWorker extends SoftwareTokenWorker {
+        final Set<Thread> signingThreads = ConcurrentHashMap.newKeySet();
+
+        TestSoftwareTokenWorker(TokenInfo tokenInfo, SoftwareTokenType type) {
+            super(tokenInfo, type);
+        }
+
+        @Override
+        protected PrivateKey loadPrivateKey(String keyId) {
+            return new File(getKeyStoreFileName(keyId)).exists() ? keyPair.getPrivate() : null;
+        }
+
+        @Override
+        protected byte[] sign(String keyId, String signatureAlgorithmId, byte[] data) throws Exception {
+            signingThreads.add(Thread.currentThread());
+
+            return super.sign(keyId, signatureAlgorithmId, data);
+        }
+    }
+}